@@ -1,5 +1,6 @@
 package com.example.springbootredisdemo.config;
 
+import com.example.springbootredisdemo.utils.ResizableJedisPool;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,9 +33,15 @@ public class RedisConfig {
     @Value("${spring.redis.timeout}")
     private int timeout;
 
+    @Value("${spring.redis.jedis.pool.max-active}")
+    private int maxActive;
+
     @Value("${spring.redis.jedis.pool.max-idle}")
     private int maxIdle;
 
+    @Value("${spring.redis.jedis.pool.min-idle}")
+    private int minIdle;
+
     @Value("${spring.redis.jedis.pool.max-wait}")
     private long maxWaitMillis;
 
@@ -44,18 +51,30 @@ public class RedisConfig {
     @Value("${spring.redis.block-when-exhausted}")
     private boolean  blockWhenExhausted;
 
+    /**
+     * 连接池配置,主库连接池与分片节点连接池共用
+     * @return
+     */
     @Bean
-    public JedisPool redisPoolFactory(){
-        log.info("JedisPool注入成功！");
-        log.info("redis地址：" + host + ":" + port);
+    public JedisPoolConfig jedisPoolConfig(){
         JedisPoolConfig jedisPoolConfig = new JedisPoolConfig();
+        jedisPoolConfig.setMaxTotal(maxActive);
         jedisPoolConfig.setMaxIdle(maxIdle);
+        // 空闲连接检查线程按min-idle补足连接, JedisPoolConfig默认每30秒一次
+        jedisPoolConfig.setMinIdle(minIdle);
         jedisPoolConfig.setMaxWaitMillis(maxWaitMillis);
         // 连接耗尽时是否阻塞, false报异常,ture阻塞直到超时, 默认true
         jedisPoolConfig.setBlockWhenExhausted(blockWhenExhausted);
         // 是否启用pool的jmx管理功能, 默认true
         jedisPoolConfig.setJmxEnabled(true);
-        JedisPool jedisPool = new JedisPool(jedisPoolConfig,host,port,timeout,password);
+        return jedisPoolConfig;
+    }
+
+    @Bean
+    public JedisPool redisPoolFactory(JedisPoolConfig jedisPoolConfig){
+        log.info("JedisPool注入成功！");
+        log.info("redis地址：" + host + ":" + port);
+        JedisPool jedisPool = new ResizableJedisPool(jedisPoolConfig,host,port,timeout,password);
         return jedisPool;
     }
 
@@ -0,0 +1,48 @@
+package com.example.springbootredisdemo.config;
+
+import com.example.springbootredisdemo.interceptor.DeadlineInterceptor;
+import com.example.springbootredisdemo.interceptor.ReadYourWritesInterceptor;
+import com.example.springbootredisdemo.interceptor.RedisTraceInterceptor;
+import com.example.springbootredisdemo.utils.RedisTracer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: web配置,注册拦截器
+ * @packname: com.example.springbootredisdemo.config
+ * @author: wzp
+ * @create: 2026-10-19 11:55
+ */
+@Configuration
+public class WebMvcConfig implements WebMvcConfigurer {
+
+    @Autowired
+    private RedisTracer redisTracer;
+
+    @Value("${spring.redis.replica.read-your-writes:true}")
+    private boolean readYourWrites;
+    @Value("${spring.redis.deadline.enabled:true}")
+    private boolean deadlineEnabled;
+    @Value("${spring.redis.deadline.default-budget:1000}")
+    private long defaultBudget;
+    @Value("${spring.redis.trace.allow-force:false}")
+    private boolean traceAllowForce;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        if (redisTracer.isEnabled()) {
+            registry.addInterceptor(new RedisTraceInterceptor(redisTracer, traceAllowForce));
+        }
+        if (readYourWrites) {
+            registry.addInterceptor(new ReadYourWritesInterceptor());
+        }
+        if (deadlineEnabled) {
+            registry.addInterceptor(new DeadlineInterceptor(defaultBudget));
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.springbootredisdemo.controller;
+
+import com.example.springbootredisdemo.utils.Bulkheads;
+import com.example.springbootredisdemo.utils.HedgedReader;
+import com.example.springbootredisdemo.utils.OfflineStore;
+import com.example.springbootredisdemo.utils.PoolSizer;
+import com.example.springbootredisdemo.utils.RedisHealth;
+import com.example.springbootredisdemo.utils.RedisRouter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: redis连接层指标:健康状态、连接池大小及借连接耗时、熔断器状态及切换次数、隔离舱、对冲读、降级存储
+ * @packname: com.example.springbootredisdemo.controller
+ * @author: wzp
+ * @create: 2026-10-19 22:50
+ */
+@RestController
+@RequestMapping("/redis/metrics")
+public class RedisMetricsController {
+    @Autowired
+    private RedisRouter redisRouter;
+    @Autowired
+    private RedisHealth redisHealth;
+    @Autowired
+    private PoolSizer poolSizer;
+    @Autowired
+    private Bulkheads bulkheads;
+    @Autowired
+    private HedgedReader hedgedReader;
+    @Autowired
+    private OfflineStore offlineStore;
+
+    @RequestMapping("")
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("health", redisHealth.getStats());
+        metrics.put("pools", poolSizer.getStats());
+        metrics.put("breakers", redisRouter.getBreakerStats());
+        metrics.put("bulkheads", bulkheads.getStats());
+        metrics.put("hedge", hedgedReader.getStats());
+        metrics.put("offline", offlineStore.getStats());
+        return metrics;
+    }
+}
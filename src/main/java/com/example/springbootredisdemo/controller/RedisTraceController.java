@@ -0,0 +1,43 @@
+package com.example.springbootredisdemo.controller;
+
+import com.example.springbootredisdemo.utils.RedisTracer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: redis调用追踪:最近被采样的请求、单个请求的调用明细、慢调用日志
+ * @packname: com.example.springbootredisdemo.controller
+ * @author: wzp
+ * @create: 2026-10-19 23:40
+ */
+@RestController
+@RequestMapping("/redis/trace")
+public class RedisTraceController {
+    @Autowired
+    private RedisTracer redisTracer;
+
+    @RequestMapping("")
+    public List<Map<String, Object>> recent() {
+        return redisTracer.getRecent();
+    }
+
+    @RequestMapping("/slow")
+    public List<Map<String, Object>> slow() {
+        return redisTracer.getSlowLog();
+    }
+
+    @RequestMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> trace(@PathVariable String id) {
+        Map<String, Object> trace = redisTracer.getTrace(id);
+        return trace == null ? ResponseEntity.status(HttpStatus.NOT_FOUND).build() : ResponseEntity.ok(trace);
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.springbootredisdemo.controller;
+
+import com.example.springbootredisdemo.service.CacheWarmUp;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 缓存预热状态,作为就绪探针;预热结束前返回503
+ * @packname: com.example.springbootredisdemo.controller
+ * @author: wzp
+ * @create: 2026-10-19 21:10
+ */
+@RestController
+public class WarmUpController {
+    @Autowired
+    private CacheWarmUp cacheWarmUp;
+
+    @RequestMapping("/warmup/status")
+    public ResponseEntity<Map<String, Object>> status() {
+        return ResponseEntity.status(cacheWarmUp.isReady() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE)
+                .body(cacheWarmUp.getStatus());
+    }
+}
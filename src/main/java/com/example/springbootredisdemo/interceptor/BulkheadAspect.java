@@ -0,0 +1,113 @@
+package com.example.springbootredisdemo.interceptor;
+
+import com.example.springbootredisdemo.utils.Bulkheads;
+import com.example.springbootredisdemo.utils.RedisRejectedException;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: RedisUtils方法执行期间占用对应隔离舱的名额;被拒绝时返回该方法自己捕获异常时的返回值
+ * (如set返回"0",del/expire等返回0L,exists返回false,其余返回null,基本类型返回false/0),
+ * 不借连接,拒绝次数见/redis/metrics;在RedisTraceAspect之内执行,排队耗时计入调用追踪
+ * @packname: com.example.springbootredisdemo.interceptor
+ * @author: wzp
+ * @create: 2026-10-19 23:00
+ */
+@Aspect
+@Component
+@Order(2)
+public class BulkheadAspect {
+    private static final Logger log = LoggerFactory.getLogger(BulkheadAspect.class);
+    static final Map<String, Object> FAILURE_VALUES = new HashMap<>();
+
+    static {
+        FAILURE_VALUES.put("set(String,String,int)", "0");
+        FAILURE_VALUES.put("set(byte[],byte[],int)", "0");
+        FAILURE_VALUES.put("del(String[])", 0L);
+        FAILURE_VALUES.put("del(int,byte[][])", 0L);
+        FAILURE_VALUES.put("append(String,String)", 0L);
+        FAILURE_VALUES.put("exists(String)", false);
+        FAILURE_VALUES.put("expire(String,int,int)", 0L);
+        FAILURE_VALUES.put("ttl(String,int)", 0L);
+        FAILURE_VALUES.put("persist(String)", -1L);
+        FAILURE_VALUES.put("setnx(String,String)", 0L);
+        FAILURE_VALUES.put("setrange(String,int,String)", 0L);
+        FAILURE_VALUES.put("msetnx(String[])", 0L);
+        FAILURE_VALUES.put("hexists(String,String)", false);
+        FAILURE_VALUES.put("zcount(String,double,double)", 0L);
+        FAILURE_VALUES.put("hincrBy(String,String,long)", 0L);
+    }
+
+    @Autowired
+    private Bulkheads bulkheads;
+
+    @Around("execution(public * com.example.springbootredisdemo.utils.RedisUtils.*(..))")
+    public Object around(ProceedingJoinPoint joinPoint) throws Throwable {
+        try {
+            return bulkheads.invokeCommand(joinPoint.getSignature().getName(), joinPoint::proceed);
+        } catch (RedisRejectedException e) {
+            log.error(e.getMessage());
+            return failureValue(((MethodSignature) joinPoint.getSignature()).getMethod());
+        }
+    }
+
+    /**
+     * RedisUtils方法异常时的返回值,与方法中catch块的返回值保持一致;没有登记的方法返回null
+     * @param method
+     * @return
+     */
+    static Object failureValue(Method method) {
+        String key = signature(method);
+        if (FAILURE_VALUES.containsKey(key)) {
+            return FAILURE_VALUES.get(key);
+        }
+        return emptyValue(method.getReturnType());
+    }
+
+    static String signature(Method method) {
+        StringBuilder builder = new StringBuilder(method.getName()).append('(');
+        Class<?>[] types = method.getParameterTypes();
+        for (int i = 0; i < types.length; i++) {
+            builder.append(i == 0 ? "" : ",").append(types[i].getSimpleName());
+        }
+        return builder.append(')').toString();
+    }
+
+    private static Object emptyValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == double.class) {
+            return 0D;
+        }
+        if (type == float.class) {
+            return 0F;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        return type == short.class ? (Object) (short) 0 : (Object) (byte) 0;
+    }
+}
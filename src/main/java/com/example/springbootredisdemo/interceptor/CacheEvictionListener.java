@@ -0,0 +1,38 @@
+package com.example.springbootredisdemo.interceptor;
+
+import com.example.springbootredisdemo.utils.CacheInvalidator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: JPA实体监听器,实体通过@EntityListeners(CacheEvictionListener.class)启用;
+ * 实体写入后把实体交给CacheInvalidator,处于事务中时在提交后才失效缓存
+ * 监听器由JPA实例化而不是spring,CacheInvalidator通过静态字段注入
+ * @packname: com.example.springbootredisdemo.interceptor
+ * @author: wzp
+ * @create: 2026-10-19 21:00
+ */
+@Component
+public class CacheEvictionListener {
+    private static CacheInvalidator invalidator;
+
+    @Autowired
+    public void setInvalidator(CacheInvalidator invalidator) {
+        CacheEvictionListener.invalidator = invalidator;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void changed(Object entity) {
+        if (invalidator != null) {
+            invalidator.entityChanged(entity);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.springbootredisdemo.interceptor;
+
+import com.example.springbootredisdemo.utils.Deadline;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 以http请求为范围设置redis命令的deadline;上游通过请求头传入剩余时间(毫秒)时取其与默认预算中较小的一个
+ * @packname: com.example.springbootredisdemo.interceptor
+ * @author: wzp
+ * @create: 2026-10-19 22:50
+ */
+public class DeadlineInterceptor implements HandlerInterceptor {
+    public static final String HEADER = "X-Request-Budget-Ms";
+
+    private final long defaultBudget;
+
+    public DeadlineInterceptor(long defaultBudget) {
+        this.defaultBudget = defaultBudget;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        long budget = defaultBudget;
+        String header = request.getHeader(HEADER);
+        if (header != null) {
+            try {
+                budget = Math.min(budget, Long.parseLong(header.trim()));
+            } catch (NumberFormatException e) {
+                // 忽略格式错误的请求头,使用默认预算
+            }
+        }
+        Deadline.begin(budget);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Deadline.end();
+    }
+}
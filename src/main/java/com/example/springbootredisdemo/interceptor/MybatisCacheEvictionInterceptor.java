@@ -0,0 +1,92 @@
+package com.example.springbootredisdemo.interceptor;
+
+import com.example.springbootredisdemo.utils.CacheInvalidator;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: MyBatis插件,insert/update/delete执行成功后把参数中的实体交给CacheInvalidator;
+ * 多参数方法的参数Map和批量操作的集合会被展开,同一实体只提交一次;
+ * Long、String等简单类型的参数视为主键,按语句所在mapper用CacheInvalidator.registerMapper注册的换算失效,
+ * 没有注册的mapper中只传主键的语句(如deleteById(Long))不会触发失效
+ * mybatis-spring-boot-starter会自动注册容器中的Interceptor
+ * @packname: com.example.springbootredisdemo.interceptor
+ * @author: wzp
+ * @create: 2026-10-19 21:00
+ */
+@Component
+@Intercepts(@Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}))
+public class MybatisCacheEvictionInterceptor implements Interceptor {
+    @Autowired
+    private CacheInvalidator invalidator;
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Object res = invocation.proceed();
+        MappedStatement statement = (MappedStatement) invocation.getArgs()[0];
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        collect(statement.getId(), invocation.getArgs()[1], seen, new HashSet<>());
+        return res;
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+    }
+
+    /**
+     * @param seen 已处理的实体,按引用判断
+     * @param ids 已处理的主键,按值判断(参数Map中同一主键会以参数名和param1各出现一次)
+     */
+    private void collect(String statement, Object parameter, Set<Object> seen, Set<Object> ids) {
+        if (parameter == null) {
+            return;
+        }
+        if (BeanUtils.isSimpleValueType(parameter.getClass())) {
+            if (ids.add(parameter)) {
+                invalidator.idChanged(statement, parameter);
+            }
+            return;
+        }
+        if (!seen.add(parameter)) {
+            return;
+        }
+        if (parameter instanceof Map) {
+            for (Object value : ((Map<?, ?>) parameter).values()) {
+                collect(statement, value, seen, ids);
+            }
+        } else if (parameter instanceof Collection) {
+            for (Object value : (Collection<?>) parameter) {
+                collect(statement, value, seen, ids);
+            }
+        } else if (parameter instanceof Object[]) {
+            for (Object value : (Object[]) parameter) {
+                collect(statement, value, seen, ids);
+            }
+        } else {
+            invalidator.entityChanged(parameter);
+        }
+    }
+}
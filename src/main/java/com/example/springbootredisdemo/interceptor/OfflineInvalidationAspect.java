@@ -0,0 +1,101 @@
+package com.example.springbootredisdemo.interceptor;
+
+import com.example.springbootredisdemo.utils.OfflineStore;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: RedisUtils中修改key的方法执行后(不论成败)从降级存储的本地缓存中删除这些key,避免redis不可用时读到旧值
+ * 只读的方法不处理;get/set/setex/del(String...)由RedisUtils自己维护本地缓存;flushDB作废整个本地缓存
+ * key取名为key/keys/srckey/dstkey/destKey/destkey的参数,mset/msetnx取keysvalues中的key,库取indexdb参数,没有时为0
+ * @packname: com.example.springbootredisdemo.interceptor
+ * @author: wzp
+ * @create: 2026-10-20 10:00
+ */
+@Aspect
+@Component
+@Order(4)
+public class OfflineInvalidationAspect {
+    private static final Set<String> READS = new HashSet<>(Arrays.asList(
+            "get", "exists", "ttl", "mget", "getrange", "strlen", "hget", "hmget", "hexists", "hlen", "hkeys",
+            "hvals", "hgetall", "lindex", "llen", "lrange", "sort", "sdiff", "sinter", "sunion", "scard",
+            "sismember", "srandmember", "smembers", "zrange", "zcount", "zrank", "zrevrank", "zrevrange",
+            "zrangebyscore", "zrangeByScore", "zcard", "zscore", "keys", "keysBySelect", "type", "pfcount",
+            "getbit", "getbits", "bitcount", "geodist", "geopos", "georadius"));
+    private static final Set<String> SELF_MAINTAINED = new HashSet<>(Arrays.asList("set", "setex", "del"));
+    private static final Set<String> KEY_PARAMETERS = new HashSet<>(Arrays.asList(
+            "key", "keys", "srckey", "dstkey", "destKey", "destkey"));
+
+    @Autowired
+    private OfflineStore offlineStore;
+
+    @Around("execution(public * com.example.springbootredisdemo.utils.RedisUtils.*(..))")
+    public Object around(ProceedingJoinPoint joinPoint) throws Throwable {
+        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+        String name = signature.getName();
+        if (!offlineStore.isEnabled() || READS.contains(name)) {
+            return joinPoint.proceed();
+        }
+        try {
+            return joinPoint.proceed();
+        } finally {
+            invalidate(name, signature, joinPoint.getArgs());
+        }
+    }
+
+    private void invalidate(String name, MethodSignature signature, Object[] args) {
+        if ("flushDB".equals(name)) {
+            offlineStore.removeAll();
+            return;
+        }
+        Class<?>[] types = signature.getParameterTypes();
+        if (SELF_MAINTAINED.contains(name) && (types[0] == String.class || types[0] == String[].class)) {
+            return;
+        }
+        String[] names = signature.getParameterNames();
+        if (names == null) {
+            return;
+        }
+        int indexdb = 0;
+        for (int i = 0; i < names.length; i++) {
+            if ("indexdb".equals(names[i]) && args[i] instanceof Integer) {
+                indexdb = (Integer) args[i];
+            }
+        }
+        for (int i = 0; i < names.length; i++) {
+            Object arg = args[i];
+            if ("keysvalues".equals(names[i]) && arg instanceof String[]) {
+                String[] keysvalues = (String[]) arg;
+                for (int j = 0; j < keysvalues.length; j += 2) {
+                    offlineStore.remove(indexdb, keysvalues[j]);
+                }
+            } else if (KEY_PARAMETERS.contains(names[i])) {
+                remove(indexdb, arg);
+            }
+        }
+    }
+
+    private void remove(int indexdb, Object key) {
+        if (key instanceof String) {
+            offlineStore.remove(indexdb, (String) key);
+        } else if (key instanceof byte[]) {
+            offlineStore.remove(indexdb, new String((byte[]) key, StandardCharsets.UTF_8));
+        } else if (key instanceof Object[]) {
+            for (Object item : (Object[]) key) {
+                remove(indexdb, item);
+            }
+        }
+    }
+}
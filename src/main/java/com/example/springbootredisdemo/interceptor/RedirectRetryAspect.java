@@ -0,0 +1,76 @@
+package com.example.springbootredisdemo.interceptor;
+
+import com.example.springbootredisdemo.utils.ClusterRedirect;
+import com.example.springbootredisdemo.utils.RedisRouter;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.SafeEncoder;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 集群模式下RedisUtils单key方法收到MOVED/ASK时重试一次;MOVED已由RedisRouter更新槽位表,直接重新执行,
+ * ASK重试时该槽位连接到目标节点并先发送ASKING
+ * 只重试参数中没有多个key(数组、集合、Map)且第一个key正是被重定向槽位的调用,多key命令由RedisRouter.executeOnSlots处理重定向
+ * 在BulkheadAspect之内执行,重试沿用同一个隔离舱名额
+ * @packname: com.example.springbootredisdemo.interceptor
+ * @author: wzp
+ * @create: 2026-10-20 10:30
+ */
+@Aspect
+@Component
+@Order(3)
+public class RedirectRetryAspect {
+
+    @Autowired
+    private RedisRouter redisRouter;
+
+    @Around("execution(public * com.example.springbootredisdemo.utils.RedisUtils.*(..))")
+    public Object around(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!redisRouter.isCluster()) {
+            return joinPoint.proceed();
+        }
+        ClusterRedirect.clear();
+        Object result = joinPoint.proceed();
+        ClusterRedirect redirect = ClusterRedirect.take();
+        if (redirect == null || !isSingleKey((MethodSignature) joinPoint.getSignature(), joinPoint.getArgs(),
+                redirect.getSlot())) {
+            return result;
+        }
+        try {
+            return redirect.isAsk() ? redirect.asking(joinPoint::proceed) : joinPoint.proceed();
+        } finally {
+            ClusterRedirect.clear();
+        }
+    }
+
+    private boolean isSingleKey(MethodSignature signature, Object[] args, int slot) {
+        String[] names = signature.getParameterNames();
+        int indexdb = 0;
+        String key = null;
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            if (names != null && "indexdb".equals(names[i]) && arg instanceof Integer) {
+                indexdb = (Integer) arg;
+            }
+            if (arg instanceof Object[] || arg instanceof Collection || arg instanceof Map) {
+                return false;
+            }
+            if (key == null && arg instanceof String) {
+                key = (String) arg;
+            } else if (key == null && arg instanceof byte[]) {
+                key = SafeEncoder.encode((byte[]) arg);
+            }
+        }
+        return key != null && JedisClusterCRC16.getSlot(redisRouter.dbKey(key, indexdb)) == slot;
+    }
+}
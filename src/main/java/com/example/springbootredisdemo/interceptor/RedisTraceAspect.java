@@ -0,0 +1,35 @@
+package com.example.springbootredisdemo.interceptor;
+
+import com.example.springbootredisdemo.utils.RedisTracer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 记录RedisUtils和RedisUtil的每次调用;在BulkheadAspect之外执行,隔离舱排队耗时也计入调用耗时
+ * @packname: com.example.springbootredisdemo.interceptor
+ * @author: wzp
+ * @create: 2026-10-19 23:40
+ */
+@Aspect
+@Component
+@Order(1)
+public class RedisTraceAspect {
+
+    @Autowired
+    private RedisTracer redisTracer;
+
+    @Around("execution(public * com.example.springbootredisdemo.utils.RedisUtils.*(..))"
+            + " || execution(public * com.example.springbootredisdemo.utils.RedisUtil.*(..))")
+    public Object around(ProceedingJoinPoint joinPoint) throws Throwable {
+        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+        return redisTracer.invoke(signature.getName(), signature.getParameterNames(), joinPoint.getArgs(),
+                joinPoint::proceed);
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.springbootredisdemo.interceptor;
+
+import com.example.springbootredisdemo.utils.RedisTrace;
+import com.example.springbootredisdemo.utils.RedisTracer;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 以http请求为范围记录redis调用;请求头X-Redis-Trace为1时强制采样,
+ * 被采样的请求在响应头X-Redis-Trace-Id中返回记录id,明细通过/redis/trace/{id}查看
+ * @packname: com.example.springbootredisdemo.interceptor
+ * @author: wzp
+ * @create: 2026-10-19 23:40
+ */
+public class RedisTraceInterceptor implements HandlerInterceptor {
+    public static final String HEADER = "X-Redis-Trace";
+    public static final String ID_HEADER = "X-Redis-Trace-Id";
+
+    private final RedisTracer redisTracer;
+    private final boolean allowForce;
+
+    public RedisTraceInterceptor(RedisTracer redisTracer, boolean allowForce) {
+        this.redisTracer = redisTracer;
+        this.allowForce = allowForce;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        RedisTrace trace = redisTracer.start(request.getRequestURI(), allowForce && "1".equals(request.getHeader(HEADER)));
+        if (trace != null && trace.isSampled()) {
+            response.setHeader(ID_HEADER, trace.getId());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        redisTracer.finish();
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.springbootredisdemo.interceptor;
+
+import com.example.springbootredisdemo.utils.RedisTrace;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 被采样的请求在写出响应体之前加上响应头X-Redis-Time,内容为本次请求的redis调用次数和耗时分解(毫秒)
+ * 拦截器的postHandle执行时@ResponseBody的响应已经提交,只能在这里设置
+ * @packname: com.example.springbootredisdemo.interceptor
+ * @author: wzp
+ * @create: 2026-10-19 23:40
+ */
+@ControllerAdvice
+public class RedisTraceResponseAdvice implements ResponseBodyAdvice<Object> {
+    public static final String HEADER = "X-Redis-Time";
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        RedisTrace trace = RedisTrace.current();
+        if (trace != null && trace.isSampled()) {
+            response.getHeaders().set(HEADER, trace.summary());
+        }
+        return body;
+    }
+}
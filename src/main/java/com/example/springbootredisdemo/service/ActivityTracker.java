@@ -0,0 +1,262 @@
+package com.example.springbootredisdemo.service;
+
+import com.example.springbootredisdemo.utils.RedisRouter;
+import com.example.springbootredisdemo.utils.RedisUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.BitOP;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 基于bitmap的用户活跃统计;每天一个bitmap,用户id作为位偏移量,1亿用户一天约12MB
+ * 留存、同期群等集合运算在服务端用BITOP完成,只把计数结果返回客户端;
+ * 需要明细时按chunk-bytes分段GETRANGE读取,在客户端转为java.util.BitSet分析
+ * 同一统计名的所有key带相同的hash tag,分片/集群模式下可以直接做BITOP
+ * 用户id范围为0 ~ Integer.MAX_VALUE,与BitSet的下标范围一致(redis本身最多支持2^32位),超出范围直接拒绝
+ * @packname: com.example.springbootredisdemo.service
+ * @author: wzp
+ * @create: 2026-10-19 17:05
+ */
+@Service
+public class ActivityTracker {
+    private static final Logger log = LoggerFactory.getLogger(ActivityTracker.class);
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyyMMdd");
+    /**
+     * 最大用户id
+     */
+    public static final long MAX_USER_ID = Integer.MAX_VALUE;
+
+    @Autowired
+    private RedisRouter redisRouter;
+    @Autowired
+    private RedisUtils redisUtils;
+
+    @Value("${spring.redis.activity.expire-days:400}")
+    private int expireDays;
+    @Value("${spring.redis.activity.chunk-bytes:65536}")
+    private int chunkBytes;
+    @Value("${spring.redis.activity.temp-expire:60}")
+    private int tempExpire;
+
+    /**
+     * 统计名 -> 本实例最近一次设置过期时间的日期
+     */
+    private final Map<String, LocalDate> expired = new ConcurrentHashMap<>();
+
+    /**
+     * 记录用户某天活跃
+     * @param name 统计名
+     * @param userId 0 ~ MAX_USER_ID
+     * @param date
+     * @return 成功true,失败false
+     * @throws IllegalArgumentException id超出范围
+     */
+    public boolean mark(String name, long userId, LocalDate date) {
+        return markAll(name, Collections.singletonList(userId), date);
+    }
+
+    /**
+     * 批量记录用户某天活跃,一次pipeline
+     * @param name
+     * @param userIds
+     * @param date
+     * @return
+     */
+    public boolean markAll(String name, Collection<Long> userIds, LocalDate date) {
+        for (Long userId : userIds) {
+            checkUserId(userId);
+        }
+        String key = dayKey(name, date);
+        if (!redisUtils.setbits(key, userIds, true)) {
+            return false;
+        }
+        LocalDate last = expired.put(name, date);
+        if (!date.equals(last)) {
+            redisUtils.expire(key, expireDays * 86400, 0);
+        }
+        return true;
+    }
+
+    /**
+     * 用户某天是否活跃
+     * @param name
+     * @param userId
+     * @param date
+     * @return
+     */
+    public Boolean isActive(String name, long userId, LocalDate date) {
+        checkUserId(userId);
+        return redisUtils.getbit(dayKey(name, date), userId);
+    }
+
+    /**
+     * 批量判断用户某天是否活跃,一次pipeline
+     * @param name
+     * @param userIds
+     * @param date
+     * @return 与userIds顺序一致
+     */
+    public List<Boolean> areActive(String name, List<Long> userIds, LocalDate date) {
+        for (Long userId : userIds) {
+            checkUserId(userId);
+        }
+        return redisUtils.getbits(dayKey(name, date), userIds);
+    }
+
+    /**
+     * 某天的活跃用户数
+     * @param name
+     * @param date
+     * @return
+     */
+    public Long activeCount(String name, LocalDate date) {
+        return redisUtils.bitcount(dayKey(name, date));
+    }
+
+    /**
+     * 多天活跃用户的组合计数:AND为每天都活跃,OR为任意一天活跃
+     * @param name
+     * @param op
+     * @param dates
+     * @return 异常返回null
+     */
+    public Long activeCount(String name, BitOP op, List<LocalDate> dates) {
+        String temp = tempKey(name);
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getResource(temp);
+            Pipeline pipeline = jedis.pipelined();
+            pipeline.bitop(op, temp, dayKeys(name, dates));
+            pipeline.expire(temp, tempExpire);
+            Response<Long> count = pipeline.bitcount(temp);
+            pipeline.del(temp);
+            pipeline.sync();
+            return count.get();
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            return null;
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * 同期群留存:在cohortDates任意一天活跃的用户中,在之后第N天仍活跃的比例
+     * @param name
+     * @param cohortDates 同期群的日期,如注册周的7天
+     * @param days 要计算的留存天数,相对cohortDates最后一天,如1、7、30
+     * @return 天数 -> 留存率,同期群为空时留存率为0,异常返回null
+     */
+    public Map<Integer, Double> retention(String name, List<LocalDate> cohortDates, int... days) {
+        String cohort = tempKey(name);
+        String retained = tempKey(name);
+        LocalDate base = cohortDates.get(cohortDates.size() - 1);
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getResource(cohort);
+            Pipeline pipeline = jedis.pipelined();
+            pipeline.bitop(BitOP.OR, cohort, dayKeys(name, cohortDates));
+            pipeline.expire(cohort, tempExpire);
+            Response<Long> cohortSize = pipeline.bitcount(cohort);
+            Map<Integer, Response<Long>> counts = new LinkedHashMap<>();
+            for (int day : days) {
+                pipeline.bitop(BitOP.AND, retained, cohort, dayKey(name, base.plusDays(day)));
+                pipeline.expire(retained, tempExpire);
+                counts.put(day, pipeline.bitcount(retained));
+            }
+            pipeline.del(cohort, retained);
+            pipeline.sync();
+            Map<Integer, Double> res = new LinkedHashMap<>();
+            long size = cohortSize.get();
+            for (Map.Entry<Integer, Response<Long>> entry : counts.entrySet()) {
+                long count = entry.getValue().get();
+                res.put(entry.getKey(), size == 0 ? 0D : (double) count / size);
+            }
+            return res;
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            return null;
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * 读取某天全部活跃用户,按chunk-bytes分段GETRANGE,避免一次返回几十MB阻塞redis
+     * redis的bitmap每个字节从高位开始编号,与BitSet.valueOf的字节内位序相反,这里逐位转换
+     * @param name
+     * @param date
+     * @return 下标为用户id,异常返回null
+     */
+    public BitSet activeUsers(String name, LocalDate date) {
+        byte[] key = SafeEncoder.encode(dayKey(name, date));
+        BitSet bits = new BitSet();
+        for (long start = 0; ; start += chunkBytes) {
+            byte[] chunk = redisUtils.getrange(key, start, start + chunkBytes - 1);
+            if (chunk == null) {
+                return null;
+            }
+            for (int i = 0; i < chunk.length; i++) {
+                int b = chunk[i] & 0xff;
+                while (b != 0) {
+                    int bit = Integer.numberOfLeadingZeros(b) - 24;
+                    long offset = (start + i) * 8 + bit;
+                    if (offset > MAX_USER_ID) {
+                        // 超出范围的位不是本类写入的,无法放入BitSet
+                        throw new IllegalStateException("bitmap中存在超出范围的用户id：" + offset);
+                    }
+                    bits.set((int) offset);
+                    b &= ~(0x80 >>> bit);
+                }
+            }
+            if (chunk.length < chunkBytes) {
+                return bits;
+            }
+        }
+    }
+
+    private static void checkUserId(Long userId) {
+        if (userId == null || userId < 0 || userId > MAX_USER_ID) {
+            throw new IllegalArgumentException("用户id超出范围：" + userId);
+        }
+    }
+
+    private String[] dayKeys(String name, List<LocalDate> dates) {
+        String[] keys = new String[dates.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = dayKey(name, dates.get(i));
+        }
+        return keys;
+    }
+
+    private static String dayKey(String name, LocalDate date) {
+        return "act:{" + name + "}:" + date.format(DAY);
+    }
+
+    private static String tempKey(String name) {
+        return "act:{" + name + "}:tmp:" + UUID.randomUUID();
+    }
+}
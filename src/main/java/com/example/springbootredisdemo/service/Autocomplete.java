@@ -0,0 +1,372 @@
+package com.example.springbootredisdemo.service;
+
+import com.example.springbootredisdemo.utils.RedisRouter;
+import com.example.springbootredisdemo.utils.RedisScript;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 前缀自动补全;所有词条以"规范化词条\0原词条"为成员、分数都为0写入一个zset,
+ * 用ZRANGEBYLEX [前缀 ~ [前缀\xff 取出按字典序排列的候选,复杂度O(log N + M),百万词条下单次查询在亚毫秒级
+ * 开启热度排序时,额外为每个长度不超过max-prefix-length的前缀维护一个只保留top-k个词条的zset,
+ * 分数为词条热度;热度变化时用lua同时更新总热度和各前缀zset,查询直接ZREVRANGE
+ * 短前缀命中率高且候选多,长度不超过cache-prefix-length的前缀结果在本地LRU缓存cache-ttl毫秒;
+ * 本实例添加/删除词条或修改热度时立即作废受影响前缀的缓存,其他实例的修改要等缓存过期
+ * 同一词典的所有key带相同的hash tag,分片/集群模式下落在同一节点
+ * @packname: com.example.springbootredisdemo.service
+ * @author: wzp
+ * @create: 2026-10-19 18:40
+ */
+@Service
+public class Autocomplete {
+    private static final Logger log = LoggerFactory.getLogger(Autocomplete.class);
+    private static final byte SEPARATOR = 0;
+    /**
+     * UTF-8编码中不会出现0xff,作为前缀范围的上界
+     */
+    private static final byte MAX_BYTE = (byte) 0xff;
+
+    /**
+     * KEYS[1] 总热度zset KEYS[2..] 各前缀zset; ARGV[1] 词条 ARGV[2] 热度 ARGV[3] incr/set ARGV[4] top-k
+     */
+    private static final RedisScript SCORE = new RedisScript(
+            "local score "
+                    + "if ARGV[3] == 'incr' then score = redis.call('ZINCRBY', KEYS[1], ARGV[2], ARGV[1]) "
+                    + "else redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1]) score = ARGV[2] end "
+                    + "local k = tonumber(ARGV[4]) "
+                    + "for i = 2, #KEYS do "
+                    + "  redis.call('ZADD', KEYS[i], score, ARGV[1]) "
+                    + "  redis.call('ZREMRANGEBYRANK', KEYS[i], 0, -k - 1) "
+                    + "end "
+                    + "return score");
+
+    @Autowired
+    private RedisRouter redisRouter;
+
+    @Value("${spring.redis.autocomplete.scored:true}")
+    private boolean scored;
+    @Value("${spring.redis.autocomplete.max-prefix-length:10}")
+    private int maxPrefixLength;
+    @Value("${spring.redis.autocomplete.top-k:10}")
+    private int topK;
+    @Value("${spring.redis.autocomplete.batch-size:1000}")
+    private int batchSize;
+    @Value("${spring.redis.autocomplete.cache-size:10000}")
+    private int cacheSize;
+    @Value("${spring.redis.autocomplete.cache-ttl:5000}")
+    private long cacheTtl;
+    @Value("${spring.redis.autocomplete.cache-prefix-length:3}")
+    private int cachePrefixLength;
+
+    /**
+     * 词典:前缀:条数 -> 查询结果,按访问顺序淘汰
+     */
+    private final Map<String, Cached> cache = new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            return size() > cacheSize;
+        }
+    };
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong queries = new AtomicLong();
+
+    /**
+     * 添加词条
+     * @param dict 词典名
+     * @param term
+     * @param score 初始热度,不排序时忽略
+     * @return 成功true,失败false
+     */
+    public boolean add(String dict, String term, double score) {
+        boolean success = writeBatch(dict, new ArrayList<>(Collections.singletonMap(term, score).entrySet()));
+        invalidate(dict, term);
+        return success;
+    }
+
+    /**
+     * 从批量数据源构建索引,每batch-size个词条一条pipeline
+     * @param dict
+     * @param source 词条 -> 热度
+     * @return 全部成功true,任一批失败false
+     */
+    public boolean build(String dict, Iterator<Map.Entry<String, Double>> source) {
+        boolean success = true;
+        long total = 0;
+        while (source.hasNext()) {
+            List<Map.Entry<String, Double>> batch = new ArrayList<>(batchSize);
+            while (source.hasNext() && batch.size() < batchSize) {
+                batch.add(source.next());
+            }
+            success &= writeBatch(dict, batch);
+            total += batch.size();
+        }
+        invalidate(dict, null);
+        log.info("词典" + dict + "写入" + total + "个词条");
+        return success;
+    }
+
+    /**
+     * 增加词条热度,如用户选中了某个补全结果;词条必须已经添加
+     * @param dict
+     * @param term
+     * @param delta
+     * @return 新的热度,异常返回null
+     */
+    public Double boost(String dict, String term, double delta) {
+        if (!scored) {
+            return null;
+        }
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getResource(lexKey(dict));
+            Object res = SCORE.eval(jedis, scoreKeys(dict, term),
+                    Arrays.asList(term, String.valueOf(delta), "incr", String.valueOf(topK)));
+            invalidate(dict, term);
+            return Double.valueOf(res.toString());
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            redisRouter.onException(e);
+            return null;
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * 删除词条
+     * @param dict
+     * @param term
+     * @return
+     */
+    public boolean remove(String dict, String term) {
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getResource(lexKey(dict));
+            Pipeline pipeline = jedis.pipelined();
+            pipeline.zrem(bytes(lexKey(dict)), lexMember(term));
+            for (String key : scoreKeys(dict, term)) {
+                pipeline.zrem(key, term);
+            }
+            pipeline.sync();
+            invalidate(dict, term);
+            return true;
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            redisRouter.onException(e);
+            return false;
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * 前缀补全
+     * @param dict
+     * @param prefix
+     * @param limit 最多返回的条数
+     * @return 开启热度排序且前缀不超过max-prefix-length时按热度降序,否则按字典序;异常返回空列表
+     */
+    public List<String> suggest(String dict, String prefix, int limit) {
+        String normalized = normalize(prefix);
+        if (normalized.isEmpty()) {
+            return new ArrayList<>();
+        }
+        queries.incrementAndGet();
+        int length = normalized.codePointCount(0, normalized.length());
+        boolean cacheable = length <= cachePrefixLength;
+        String cacheKey = dict + ":" + normalized + ":" + limit;
+        if (cacheable) {
+            synchronized (cache) {
+                Cached cached = cache.get(cacheKey);
+                if (cached != null && cached.expireAt > System.currentTimeMillis()) {
+                    cacheHits.incrementAndGet();
+                    return cached.terms;
+                }
+            }
+        }
+        List<String> terms = new ArrayList<>();
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getReadResource(lexKey(dict));
+            if (scored && length <= maxPrefixLength) {
+                terms.addAll(jedis.zrevrange(prefixKey(dict, normalized), 0, limit - 1));
+            } else {
+                byte[] min = range(normalized, false);
+                byte[] max = range(normalized, true);
+                for (byte[] member : jedis.zrangeByLex(bytes(lexKey(dict)), min, max, 0, limit)) {
+                    terms.add(display(member));
+                }
+            }
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            redisRouter.onException(e);
+            return terms;
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+        if (cacheable) {
+            List<String> res = Collections.unmodifiableList(terms);
+            synchronized (cache) {
+                cache.put(cacheKey, new Cached(dict, normalized, res, System.currentTimeMillis() + cacheTtl));
+            }
+            return res;
+        }
+        return terms;
+    }
+
+    /**
+     * 本地缓存命中情况
+     * @return
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queries", queries.get());
+        stats.put("cacheHits", cacheHits.get());
+        synchronized (cache) {
+            stats.put("cacheSize", cache.size());
+        }
+        return stats;
+    }
+
+    /**
+     * 作废本地缓存中词条所有前缀的结果
+     * @param dict
+     * @param term 为null时作废整个词典
+     */
+    private void invalidate(String dict, String term) {
+        String normalized = term == null ? null : normalize(term);
+        synchronized (cache) {
+            cache.values().removeIf(cached -> cached.dict.equals(dict)
+                    && (normalized == null || normalized.startsWith(cached.prefix)));
+        }
+    }
+
+    private boolean writeBatch(String dict, List<Map.Entry<String, Double>> batch) {
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getResource(lexKey(dict));
+            if (scored) {
+                SCORE.load(jedis);
+            }
+            Pipeline pipeline = jedis.pipelined();
+            for (Map.Entry<String, Double> entry : batch) {
+                pipeline.zadd(bytes(lexKey(dict)), 0, lexMember(entry.getKey()));
+                if (scored) {
+                    SCORE.evalsha(pipeline, scoreKeys(dict, entry.getKey()), Arrays.asList(entry.getKey(),
+                            String.valueOf(entry.getValue()), "set", String.valueOf(topK)));
+                }
+            }
+            pipeline.sync();
+            return true;
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            redisRouter.onException(e);
+            return false;
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * 总热度zset及词条所有前缀对应的zset
+     */
+    private List<String> scoreKeys(String dict, String term) {
+        String normalized = normalize(term);
+        List<String> keys = new ArrayList<>();
+        keys.add("ac:{" + dict + "}:score");
+        int[] codePoints = normalized.codePoints().toArray();
+        for (int length = 1; length <= Math.min(maxPrefixLength, codePoints.length); length++) {
+            keys.add(prefixKey(dict, new String(codePoints, 0, length)));
+        }
+        return keys;
+    }
+
+    private static byte[] lexMember(String term) {
+        byte[] normalized = bytes(normalize(term));
+        byte[] display = bytes(term);
+        byte[] member = new byte[normalized.length + 1 + display.length];
+        System.arraycopy(normalized, 0, member, 0, normalized.length);
+        member[normalized.length] = SEPARATOR;
+        System.arraycopy(display, 0, member, normalized.length + 1, display.length);
+        return member;
+    }
+
+    private static String display(byte[] member) {
+        for (int i = 0; i < member.length; i++) {
+            if (member[i] == SEPARATOR) {
+                return new String(member, i + 1, member.length - i - 1, StandardCharsets.UTF_8);
+            }
+        }
+        return new String(member, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * ZRANGEBYLEX的范围:下界"[前缀",上界"[前缀\xff"
+     */
+    private static byte[] range(String normalized, boolean upper) {
+        byte[] prefix = bytes(normalized);
+        byte[] bound = new byte[prefix.length + (upper ? 2 : 1)];
+        bound[0] = '[';
+        System.arraycopy(prefix, 0, bound, 1, prefix.length);
+        if (upper) {
+            bound[bound.length - 1] = MAX_BYTE;
+        }
+        return bound;
+    }
+
+    private static String normalize(String term) {
+        return term.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String lexKey(String dict) {
+        return "ac:{" + dict + "}:lex";
+    }
+
+    private static String prefixKey(String dict, String prefix) {
+        return "ac:{" + dict + "}:p:" + prefix;
+    }
+
+    private static class Cached {
+        private final String dict;
+        private final String prefix;
+        private final List<String> terms;
+        private final long expireAt;
+
+        private Cached(String dict, String prefix, List<String> terms, long expireAt) {
+            this.dict = dict;
+            this.prefix = prefix;
+            this.terms = terms;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,449 @@
+package com.example.springbootredisdemo.service;
+
+import com.example.springbootredisdemo.utils.RedisRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 启动时缓存预热;应用启动完成后在后台线程中依次执行注册的预热任务和配置的预热文件
+ * 每个任务从数据源按块读取,在ForkJoinPool中并行转换成key/value或hash,
+ * 按key所在节点分组后通过pipeline写入(单机无过期时间用MSET,其余逐条SET/SETEX/HMSET),
+ * 读取、转换和写入重叠进行,同时在途的块数受load-threads限制;整体写入速率不超过max-keys-per-second
+ * 全部任务结束(成功或失败)且在途的块都写完之前isReady()为false,由/warmup/status作为就绪探针
+ * 逐条检查pipeline中每个命令的返回,出错的key计入failed而不是loaded;默认关闭,spring.redis.warmup.enabled开启
+ * @packname: com.example.springbootredisdemo.service
+ * @author: wzp
+ * @create: 2026-10-19 21:10
+ */
+@Service
+public class CacheWarmUp implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(CacheWarmUp.class);
+
+    @Autowired
+    private RedisRouter redisRouter;
+
+    @Value("${spring.redis.warmup.enabled:false}")
+    private boolean enabled;
+    @Value("${spring.redis.warmup.files:}")
+    private String[] files;
+    @Value("${spring.redis.warmup.file-expire:0}")
+    private int fileExpire;
+    @Value("${spring.redis.warmup.chunk-size:5000}")
+    private int chunkSize;
+    @Value("${spring.redis.warmup.parallelism:4}")
+    private int parallelism;
+    @Value("${spring.redis.warmup.load-threads:4}")
+    private int loadThreads;
+    @Value("${spring.redis.warmup.max-keys-per-second:0}")
+    private long maxKeysPerSecond;
+    @Value("${spring.redis.warmup.progress-interval:5000}")
+    private long progressInterval;
+
+    private final List<Task<?>> tasks = new CopyOnWriteArrayList<>();
+    private final Map<String, Progress> progress = Collections.synchronizedMap(new LinkedHashMap<>());
+    private volatile boolean ready;
+    private volatile ExecutorService runner;
+
+    /**
+     * 数据源,按块读取
+     */
+    public interface Source<T> {
+        /**
+         * 读取下一块
+         * @return 读完时返回null或空列表
+         * @throws Exception
+         */
+        List<T> next() throws Exception;
+
+        default void close() {
+        }
+
+        /**
+         * 按offset/limit分页查询,如MyBatis mapper;数据量大时offset越往后越慢,优先使用keyset
+         * @param query (offset, limit) -> 行
+         * @param chunkSize
+         */
+        static <T> Source<T> paged(BiFunction<Integer, Integer, List<T>> query, int chunkSize) {
+            int[] offset = {0};
+            return () -> {
+                List<T> rows = query.apply(offset[0], chunkSize);
+                offset[0] += chunkSize;
+                return rows;
+            };
+        }
+
+        /**
+         * 按主键游标分页查询(where id > ? order by id limit ?)
+         * @param query (上一块最后的主键, limit) -> 行,第一块传null
+         * @param idOf 从行取主键
+         * @param chunkSize
+         */
+        static <T, ID> Source<T> keyset(BiFunction<ID, Integer, List<T>> query, Function<T, ID> idOf, int chunkSize) {
+            List<ID> last = new ArrayList<>(Collections.singletonList(null));
+            return () -> {
+                List<T> rows = query.apply(last.get(0), chunkSize);
+                if (rows != null && !rows.isEmpty()) {
+                    last.set(0, idOf.apply(rows.get(rows.size() - 1)));
+                }
+                return rows;
+            };
+        }
+
+        /**
+         * Spring Data JPA分页查询,如repository::findAll
+         * @param query
+         * @param chunkSize
+         */
+        static <T> Source<T> jpa(Function<Pageable, Slice<T>> query, int chunkSize) {
+            Pageable[] page = {PageRequest.of(0, chunkSize)};
+            return () -> {
+                if (page[0] == null) {
+                    return null;
+                }
+                Slice<T> slice = query.apply(page[0]);
+                page[0] = slice.hasNext() ? slice.nextPageable() : null;
+                return slice.getContent();
+            };
+        }
+
+        /**
+         * 按行读取文本文件
+         * @param file
+         * @param chunkSize
+         */
+        static Source<String> lines(String file, int chunkSize) throws IOException {
+            BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8);
+            return new Source<String>() {
+                @Override
+                public List<String> next() throws IOException {
+                    List<String> lines = new ArrayList<>(chunkSize);
+                    String line;
+                    while (lines.size() < chunkSize && (line = reader.readLine()) != null) {
+                        lines.add(line);
+                    }
+                    return lines;
+                }
+
+                @Override
+                public void close() {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        log.error(e.getMessage());
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * 写入redis的一条数据,value和hash二选一
+     */
+    public static class Entry {
+        private final String key;
+        private final String value;
+        private final Map<String, String> hash;
+
+        private Entry(String key, String value, Map<String, String> hash) {
+            this.key = key;
+            this.value = value;
+            this.hash = hash;
+        }
+
+        public static Entry of(String key, String value) {
+            return new Entry(key, value, null);
+        }
+
+        public static Entry hash(String key, Map<String, String> hash) {
+            return new Entry(key, null, hash);
+        }
+    }
+
+    /**
+     * 注册预热任务,需在应用启动完成前注册(如在@PostConstruct中)
+     * @param name 任务名,用于进度展示
+     * @param source 数据源
+     * @param transform 行 -> 写入的数据,返回null时跳过该行;在ForkJoinPool中并行调用,需线程安全
+     * @param expire 过期时间(秒),0表示不过期
+     * @param indexdb 写入的库
+     */
+    public <T> void register(String name, Source<T> source, Function<T, Entry> transform, int expire, int indexdb) {
+        tasks.add(new Task<>(name, source, transform, expire, indexdb));
+    }
+
+    /**
+     * 预热是否已结束
+     * @return
+     */
+    public boolean isReady() {
+        return ready || !enabled;
+    }
+
+    /**
+     * 各任务的进度
+     * @return
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("ready", isReady());
+        Map<String, Object> detail = new LinkedHashMap<>();
+        synchronized (progress) {
+            for (Progress p : progress.values()) {
+                detail.put(p.name, p.toMap());
+            }
+        }
+        status.put("tasks", detail);
+        return status;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        if (!enabled) {
+            return;
+        }
+        for (String file : files) {
+            if (!file.trim().isEmpty()) {
+                // 文件每行为 key\tvalue
+                register(file, Source.lines(file.trim(), chunkSize), line -> {
+                    int tab = line.indexOf('\t');
+                    return tab <= 0 ? null : Entry.of(line.substring(0, tab), line.substring(tab + 1));
+                }, fileExpire, 0);
+            }
+        }
+        for (Task<?> task : tasks) {
+            progress.put(task.name, new Progress(task.name));
+        }
+        runner = Executors.newSingleThreadExecutor();
+        runner.execute(this::runAll);
+        runner.shutdown();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (runner != null) {
+            runner.shutdownNow();
+        }
+    }
+
+    private void runAll() {
+        ForkJoinPool forkJoinPool = new ForkJoinPool(parallelism);
+        ExecutorService loaders = Executors.newFixedThreadPool(loadThreads);
+        long start = System.currentTimeMillis();
+        try {
+            for (Task<?> task : tasks) {
+                runTask(task, progress.get(task.name), forkJoinPool, loaders);
+            }
+        } finally {
+            loaders.shutdown();
+            forkJoinPool.shutdown();
+            ready = true;
+            log.info("缓存预热结束,耗时" + (System.currentTimeMillis() - start) + "ms：" + getStatus());
+        }
+    }
+
+    private <T> void runTask(Task<T> task, Progress p, ForkJoinPool forkJoinPool, ExecutorService loaders) {
+        Semaphore inflight = new Semaphore(loadThreads * 2);
+        p.start = System.currentTimeMillis();
+        long nextReport = System.currentTimeMillis() + progressInterval;
+        try {
+            List<T> rows;
+            while (!Thread.currentThread().isInterrupted() && (rows = task.source.next()) != null && !rows.isEmpty()) {
+                p.read.addAndGet(rows.size());
+                List<T> chunk = rows;
+                inflight.acquire();
+                loaders.execute(() -> {
+                    try {
+                        List<Entry> entries = forkJoinPool.submit(() -> chunk.parallelStream().map(task.transform)
+                                .filter(Objects::nonNull).collect(Collectors.toList())).get();
+                        int loaded = load(entries, task.expire, task.indexdb);
+                        p.loaded.addAndGet(loaded);
+                        p.failed.addAndGet(entries.size() - loaded);
+                    } catch (Exception e) {
+                        p.failed.addAndGet(chunk.size());
+                        log.error("缓存预热" + task.name + "写入失败：" + e.getMessage());
+                    } finally {
+                        inflight.release();
+                    }
+                });
+                throttle(p);
+                if (System.currentTimeMillis() >= nextReport) {
+                    log.info("缓存预热进度：" + p.toMap());
+                    nextReport = System.currentTimeMillis() + progressInterval;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("缓存预热" + task.name + "读取失败：" + e.getMessage());
+        } finally {
+            // 读取失败或被中断时也要等在途的块写完,之后才能标记就绪
+            inflight.acquireUninterruptibly(loadThreads * 2);
+            task.source.close();
+            p.end = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 读取速度超过上限时等待,已读取的行数即将写入的行数
+     */
+    private void throttle(Progress p) throws InterruptedException {
+        if (maxKeysPerSecond <= 0) {
+            return;
+        }
+        long expected = p.read.get() * 1000 / maxKeysPerSecond;
+        long elapsed = System.currentTimeMillis() - p.start;
+        if (expected > elapsed) {
+            TimeUnit.MILLISECONDS.sleep(expected - elapsed);
+        }
+    }
+
+    /**
+     * 按节点分组写入,逐条检查命令结果
+     * @return 写入成功的条数
+     */
+    private int load(List<Entry> entries, int expire, int indexdb) {
+        Map<String, List<Entry>> groups = new LinkedHashMap<>();
+        for (Entry entry : entries) {
+            groups.computeIfAbsent(redisRouter.nodeOf(redisRouter.dbKey(entry.key, indexdb)),
+                    k -> new ArrayList<>()).add(entry);
+        }
+        int loaded = 0;
+        for (Map.Entry<String, List<Entry>> group : groups.entrySet()) {
+            Jedis jedis = null;
+            try {
+                jedis = redisRouter.getNodeResource(group.getKey(), indexdb);
+                Pipeline pipeline = jedis.pipelined();
+                // 每个单元的命令全部成功才算写入:hash及其EXPIRE为一个单元,MSET包含的所有key为一个单元
+                List<List<Response<?>>> units = new ArrayList<>();
+                List<Integer> sizes = new ArrayList<>();
+                List<String> keysvalues = new ArrayList<>();
+                for (Entry entry : group.getValue()) {
+                    String key = redisRouter.dbKey(entry.key, indexdb);
+                    List<Response<?>> unit = new ArrayList<>(2);
+                    if (entry.hash != null) {
+                        unit.add(pipeline.hmset(key, entry.hash));
+                        if (expire > 0) {
+                            unit.add(pipeline.expire(key, expire));
+                        }
+                    } else if (expire > 0) {
+                        unit.add(pipeline.setex(key, expire, entry.value));
+                    } else if (redisRouter.isCluster()) {
+                        // 同一节点的key可能分属不同槽位,不能合并为MSET
+                        unit.add(pipeline.set(key, entry.value));
+                    } else {
+                        keysvalues.add(key);
+                        keysvalues.add(entry.value);
+                        continue;
+                    }
+                    units.add(unit);
+                    sizes.add(1);
+                }
+                if (!keysvalues.isEmpty()) {
+                    units.add(Collections.singletonList(pipeline.mset(keysvalues.toArray(new String[0]))));
+                    sizes.add(keysvalues.size() / 2);
+                }
+                pipeline.sync();
+                JedisDataException error = null;
+                for (int i = 0; i < units.size(); i++) {
+                    try {
+                        for (Response<?> response : units.get(i)) {
+                            response.get();
+                        }
+                        loaded += sizes.get(i);
+                    } catch (JedisDataException e) {
+                        error = e;
+                    }
+                }
+                if (error != null) {
+                    redisRouter.onException(error);
+                    log.error("缓存预热部分key写入失败：" + error.getMessage());
+                }
+            } catch (Exception e) {
+                redisRouter.onException(e);
+                log.error("缓存预热写入节点" + group.getKey() + "失败：" + e.getMessage());
+            } finally {
+                redisRouter.returnNodeResource(jedis);
+            }
+        }
+        return loaded;
+    }
+
+    private static class Task<T> {
+        private final String name;
+        private final Source<T> source;
+        private final Function<T, Entry> transform;
+        private final int expire;
+        private final int indexdb;
+
+        private Task(String name, Source<T> source, Function<T, Entry> transform, int expire, int indexdb) {
+            this.name = name;
+            this.source = source;
+            this.transform = transform;
+            this.expire = expire;
+            this.indexdb = indexdb;
+        }
+    }
+
+    private static class Progress {
+        private final String name;
+        private final AtomicLong read = new AtomicLong();
+        private final AtomicLong loaded = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private volatile long start = System.currentTimeMillis();
+        private volatile long end;
+
+        private Progress(String name) {
+            this.name = name;
+        }
+
+        private Map<String, Object> toMap() {
+            long elapsed = (end == 0 ? System.currentTimeMillis() : end) - start;
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("name", name);
+            map.put("read", read.get());
+            map.put("loaded", loaded.get());
+            map.put("failed", failed.get());
+            map.put("elapsedMillis", elapsed);
+            map.put("keysPerSecond", elapsed == 0 ? 0 : loaded.get() * 1000 / elapsed);
+            map.put("finished", end != 0);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.example.springbootredisdemo.service;
+
+import com.example.springbootredisdemo.utils.RedisRouter;
+import com.example.springbootredisdemo.utils.RedisScript;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Tuple;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 延时任务调度;任务按到期时间分桶存入zset,每个队列拆成多个分片(key带{队列名:分片}保证集群下同槽位),
+ * 到期任务由lua脚本按批原子领取,领取后即从队列删除(至多一次);
+ * 各实例通过instance-index/instance-count轮询互不相交的分片,队列空闲时用BLPOP等待新任务的唤醒信号而不是忙轮询
+ * @packname: com.example.springbootredisdemo.service
+ * @author: wzp
+ * @create: 2026-10-19 15:00
+ */
+@Service
+public class DelayedJobScheduler {
+    private static final Logger log = LoggerFactory.getLogger(DelayedJobScheduler.class);
+
+    /**
+     * KEYS[1] 桶索引zset KEYS[2] 任务内容hash KEYS[3] 唤醒list
+     * ARGV[1] 任务id ARGV[2] 任务内容 ARGV[3] 到期时间 ARGV[4] 桶起始时间 ARGV[5] 桶key前缀
+     */
+    private static final RedisScript SCHEDULE = new RedisScript(
+            "redis.call('HSET', KEYS[2], ARGV[1], ARGV[2]) "
+                    + "redis.call('ZADD', ARGV[5] .. ARGV[4], ARGV[3], ARGV[1]) "
+                    + "redis.call('ZADD', KEYS[1], ARGV[4], ARGV[4]) "
+                    + "redis.call('LPUSH', KEYS[3], ARGV[3]) "
+                    + "redis.call('LTRIM', KEYS[3], 0, 0) "
+                    + "return 1");
+
+    /**
+     * KEYS[1] 桶索引zset KEYS[2] 任务内容hash
+     * ARGV[1] 当前时间 ARGV[2] 最多领取数量 ARGV[3] 桶key前缀
+     * 返回 {id1, 内容1, 到期时间1, id2, ...}
+     */
+    private static final RedisScript CLAIM = new RedisScript(
+            "local limit = tonumber(ARGV[2]) "
+                    + "local res = {} "
+                    + "local count = 0 "
+                    + "local buckets = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, 16) "
+                    + "for _, b in ipairs(buckets) do "
+                    + "  local bkey = ARGV[3] .. b "
+                    + "  local jobs = redis.call('ZRANGEBYSCORE', bkey, '-inf', ARGV[1], 'WITHSCORES', 'LIMIT', 0, limit - count) "
+                    + "  for i = 1, #jobs, 2 do "
+                    + "    redis.call('ZREM', bkey, jobs[i]) "
+                    + "    table.insert(res, jobs[i]) "
+                    + "    table.insert(res, redis.call('HGET', KEYS[2], jobs[i]) or '') "
+                    + "    table.insert(res, jobs[i + 1]) "
+                    + "    redis.call('HDEL', KEYS[2], jobs[i]) "
+                    + "    count = count + 1 "
+                    + "  end "
+                    + "  if redis.call('ZCARD', bkey) == 0 then redis.call('ZREM', KEYS[1], b) end "
+                    + "  if count >= limit then break end "
+                    + "end "
+                    + "return res");
+
+    /**
+     * KEYS[1] 桶索引zset; ARGV[1] 当前时间 ARGV[2] 桶key前缀; 返回已到期未领取的任务数
+     */
+    private static final RedisScript BACKLOG = new RedisScript(
+            "local total = 0 "
+                    + "for _, b in ipairs(redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1])) do "
+                    + "  total = total + redis.call('ZCOUNT', ARGV[2] .. b, '-inf', ARGV[1]) "
+                    + "end "
+                    + "return total");
+
+    @Autowired
+    private RedisRouter redisRouter;
+
+    @Value("${spring.redis.delay.shards:16}")
+    private int shards;
+    @Value("${spring.redis.delay.bucket-millis:60000}")
+    private long bucketMillis;
+    @Value("${spring.redis.delay.batch-size:100}")
+    private int batchSize;
+    @Value("${spring.redis.delay.max-idle:5000}")
+    private long maxIdle;
+    @Value("${spring.redis.delay.instance-index:0}")
+    private int instanceIndex;
+    @Value("${spring.redis.delay.instance-count:1}")
+    private int instanceCount;
+
+    private final List<Thread> pollers = new CopyOnWriteArrayList<>();
+    private volatile boolean running = true;
+
+    private final AtomicLong claimed = new AtomicLong();
+    private final LongAdder lagSum = new LongAdder();
+    private final AtomicLong maxLag = new AtomicLong();
+
+    /**
+     * 提交延时任务
+     * @param queue 队列名
+     * @param id 任务id,队列内唯一
+     * @param payload 任务内容
+     * @param dueAt 到期时间(毫秒时间戳)
+     * @return 成功true,失败false
+     */
+    public boolean schedule(String queue, String id, String payload, long dueAt) {
+        int shard = Math.floorMod(id.hashCode(), shards);
+        long bucket = dueAt - Math.floorMod(dueAt, bucketMillis);
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getResource(indexKey(queue, shard));
+            SCHEDULE.eval(jedis, Arrays.asList(indexKey(queue, shard), jobsKey(queue, shard), wakeKey(queue, shard)),
+                    Arrays.asList(id, payload, String.valueOf(dueAt), String.valueOf(bucket), bucketPrefix(queue, shard)));
+            return true;
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            return false;
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * 启动队列的轮询线程,每个归属本实例的分片一个线程
+     * @param queue 队列名
+     * @param handler 任务处理,在轮询线程中执行
+     */
+    public void start(String queue, Consumer<Job> handler) {
+        for (int shard = 0; shard < shards; shard++) {
+            if (shard % instanceCount != instanceIndex) {
+                continue;
+            }
+            final int s = shard;
+            Thread thread = new Thread(() -> poll(queue, s, handler), "delay-" + queue + "-" + shard);
+            thread.setDaemon(true);
+            pollers.add(thread);
+            thread.start();
+        }
+        log.info("延时队列" + queue + "开始轮询,实例" + instanceIndex + "/" + instanceCount);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        for (Thread thread : pollers) {
+            thread.interrupt();
+        }
+    }
+
+    private void poll(String queue, int shard, Consumer<Job> handler) {
+        while (running) {
+            try {
+                List<Job> jobs = claim(queue, shard);
+                for (Job job : jobs) {
+                    try {
+                        handler.accept(job);
+                    } catch (Exception e) {
+                        log.error("延时任务" + job.getId() + "处理失败：" + e.getMessage());
+                    }
+                }
+                if (jobs.size() < batchSize) {
+                    await(queue, shard);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("延时队列" + queue + "分片" + shard + "轮询失败：" + e.getMessage());
+                sleepQuietly(maxIdle);
+            }
+        }
+    }
+
+    /**
+     * 原子领取一批到期任务
+     * @param queue
+     * @param shard
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public List<Job> claim(String queue, int shard) {
+        long now = System.currentTimeMillis();
+        Jedis jedis = null;
+        List<Object> res;
+        try {
+            jedis = redisRouter.getResource(indexKey(queue, shard));
+            res = (List<Object>) CLAIM.eval(jedis, Arrays.asList(indexKey(queue, shard), jobsKey(queue, shard)),
+                    Arrays.asList(String.valueOf(now), String.valueOf(batchSize), bucketPrefix(queue, shard)));
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+        List<Job> jobs = new ArrayList<>(res.size() / 3);
+        long claimedAt = System.currentTimeMillis();
+        for (int i = 0; i + 2 < res.size(); i += 3) {
+            long dueAt = (long) Double.parseDouble(String.valueOf(res.get(i + 2)));
+            Job job = new Job(String.valueOf(res.get(i)), String.valueOf(res.get(i + 1)), dueAt, claimedAt);
+            long lag = Math.max(0, claimedAt - dueAt);
+            lagSum.add(lag);
+            maxLag.accumulateAndGet(lag, Math::max);
+            jobs.add(job);
+        }
+        claimed.addAndGet(jobs.size());
+        return jobs;
+    }
+
+    /**
+     * 没有到期任务时等待:最早的桶到期前或有新任务提交时返回,最长max-idle毫秒;
+     * BLPOP的超时只能精确到秒,不足一秒的等待用sleep
+     */
+    private void await(String queue, int shard) throws InterruptedException {
+        long wait = maxIdle;
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getResource(indexKey(queue, shard));
+            long now = System.currentTimeMillis();
+            for (String bucket : jedis.zrange(indexKey(queue, shard), 0, 0)) {
+                for (Tuple job : jedis.zrangeWithScores(bucketPrefix(queue, shard) + bucket, 0, 0)) {
+                    wait = Math.min(wait, Math.max(0, (long) job.getScore() - now));
+                }
+            }
+            if (wait <= 0) {
+                return;
+            }
+            if (wait < 1000) {
+                jedis.close();
+                jedis = null;
+                Thread.sleep(wait);
+                return;
+            }
+            jedis.blpop((int) (wait / 1000), wakeKey(queue, shard));
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * 队列积压:已到期但还未被领取的任务数
+     * @param queue
+     * @return
+     */
+    public long backlog(String queue) {
+        long total = 0;
+        String now = String.valueOf(System.currentTimeMillis());
+        for (int shard = 0; shard < shards; shard++) {
+            Jedis jedis = null;
+            try {
+                jedis = redisRouter.getReadResource(indexKey(queue, shard));
+                total += (Long) BACKLOG.eval(jedis, Collections.singletonList(indexKey(queue, shard)),
+                        Arrays.asList(now, bucketPrefix(queue, shard)));
+            } catch (Exception e) {
+                log.error(e.getMessage());
+            } finally {
+                if (jedis != null) {
+                    jedis.close();
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 调度指标:领取总数,平均/最大调度延迟(领取时间-到期时间,毫秒)
+     * @return
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long count = claimed.get();
+        stats.put("claimed", count);
+        stats.put("avgLagMillis", count == 0 ? 0 : lagSum.sum() / count);
+        stats.put("maxLagMillis", maxLag.get());
+        return stats;
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String indexKey(String queue, int shard) {
+        return "delay:{" + queue + ":" + shard + "}:buckets";
+    }
+
+    private static String jobsKey(String queue, int shard) {
+        return "delay:{" + queue + ":" + shard + "}:jobs";
+    }
+
+    private static String wakeKey(String queue, int shard) {
+        return "delay:{" + queue + ":" + shard + "}:wake";
+    }
+
+    private static String bucketPrefix(String queue, int shard) {
+        return "delay:{" + queue + ":" + shard + "}:b:";
+    }
+
+    /**
+     * 延时任务
+     */
+    public static class Job {
+        private final String id;
+        private final String payload;
+        private final long dueAt;
+        private final long claimedAt;
+
+        public Job(String id, String payload, long dueAt, long claimedAt) {
+            this.id = id;
+            this.payload = payload;
+            this.dueAt = dueAt;
+            this.claimedAt = claimedAt;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+
+        public long getDueAt() {
+            return dueAt;
+        }
+
+        public long getClaimedAt() {
+            return claimedAt;
+        }
+    }
+}
@@ -0,0 +1,535 @@
+package com.example.springbootredisdemo.service;
+
+import com.example.springbootredisdemo.utils.RedisRouter;
+import com.example.springbootredisdemo.utils.RedisScript;
+import com.example.springbootredisdemo.utils.RedisUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+import redis.clients.util.SafeEncoder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 实体持久化缓存;读优先走redis,未命中时从数据源(JPA repository、MyBatis mapper等)加载并回填
+ * 写入支持两种模式:
+ * WRITE_THROUGH 先写数据库再删除缓存(处于事务中时在提交之后删除),数据库失败时抛出异常,缓存不变
+ * WRITE_BEHIND 在一个MULTI中更新缓存、把最新值写入待写hash、版本号加1并把id追加到redis中的journal list,
+ * 由后台线程按journal顺序批量写入数据库;journal随redis持久化,进程崩溃后由任一实例继续写入
+ * 批量写入流程:持有租约的实例用lua把一批id从journal移到inflight list,在MULTI中读取这批id的待写值和版本号,
+ * 按顺序写入数据库(连续的保存/删除合并为一次批量调用),成功后只删除版本号未变的待写值并清空inflight;
+ * 写入数据库前崩溃时inflight中的id会在下次重新写入,因此数据源的saveAll/deleteAll需要幂等(按主键upsert)
+ * 未命中回填只在缓存key不存在、没有待写值且版本号与加载前一致时写入,避免用加载到的旧值覆盖并发写入的新值;
+ * WRITE_THROUGH模式每次删除缓存时版本号加1,版本hash在最后一次删除后version-expire秒过期
+ * 实体通过java序列化保存,需实现Serializable;同一实体类型的key带相同的hash tag,MULTI和lua可以访问所有相关key
+ * @packname: com.example.springbootredisdemo.service
+ * @author: wzp
+ * @create: 2026-10-19 20:20
+ */
+@Service
+public class EntityCache {
+    private static final Logger log = LoggerFactory.getLogger(EntityCache.class);
+    /**
+     * 待写hash中表示删除的值
+     */
+    private static final byte[] TOMBSTONE = new byte[0];
+
+    /**
+     * KEYS[1] journal KEYS[2] inflight; ARGV[1] 批量大小;inflight非空时说明上次写入没有完成,原样返回重新写入
+     */
+    private static final RedisScript CLAIM = new RedisScript(
+            "if redis.call('LLEN', KEYS[2]) > 0 then return redis.call('LRANGE', KEYS[2], 0, -1) end "
+                    + "local ids = redis.call('LRANGE', KEYS[1], 0, tonumber(ARGV[1]) - 1) "
+                    + "if #ids > 0 then "
+                    + "  redis.call('LTRIM', KEYS[1], #ids, -1) "
+                    + "  for i = 1, #ids, 1000 do redis.call('RPUSH', KEYS[2], unpack(ids, i, math.min(i + 999, #ids))) end "
+                    + "end "
+                    + "return ids");
+
+    /**
+     * KEYS[1] inflight KEYS[2] 待写hash KEYS[3] 版本hash; ARGV 依次为id、写入时读到的版本号
+     */
+    private static final RedisScript ACK = new RedisScript(
+            "for i = 1, #ARGV, 2 do "
+                    + "  if redis.call('HGET', KEYS[3], ARGV[i]) == ARGV[i + 1] then "
+                    + "    redis.call('HDEL', KEYS[2], ARGV[i]) "
+                    + "    redis.call('HDEL', KEYS[3], ARGV[i]) "
+                    + "  end "
+                    + "end "
+                    + "redis.call('DEL', KEYS[1]) "
+                    + "return 1");
+
+    /**
+     * KEYS[1] 实体key KEYS[2] 待写hash KEYS[3] 版本hash; ARGV[1] 序列化后的实体 ARGV[2] 过期时间
+     * ARGV[3] id ARGV[4] 加载前读到的版本号(不存在为空串)
+     */
+    private static final RedisScript FILL = new RedisScript(
+            "if redis.call('EXISTS', KEYS[1]) == 1 or redis.call('HEXISTS', KEYS[2], ARGV[3]) == 1 then return 0 end "
+                    + "if (redis.call('HGET', KEYS[3], ARGV[3]) or '') ~= ARGV[4] then return 0 end "
+                    + "redis.call('SET', KEYS[1], ARGV[1], 'EX', ARGV[2]) "
+                    + "return 1");
+
+    /**
+     * KEYS[1] 租约; ARGV[1] 持有者
+     */
+    private static final RedisScript RELEASE = new RedisScript(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end return 0");
+
+    @Autowired
+    private RedisRouter redisRouter;
+
+    @Value("${spring.redis.entity-cache.expire:3600}")
+    private int expire;
+    @Value("${spring.redis.entity-cache.flush-interval:1000}")
+    private long flushInterval;
+    @Value("${spring.redis.entity-cache.batch-size:500}")
+    private int batchSize;
+    @Value("${spring.redis.entity-cache.lease:30000}")
+    private long lease;
+    @Value("${spring.redis.entity-cache.version-expire:60}")
+    private int versionExpire;
+
+    private final String owner = UUID.randomUUID().toString();
+    private final Map<String, Repository<?, ?>> repositories = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * 写入模式
+     */
+    public enum Mode {
+        /**
+         * 同步写数据库后更新缓存
+         */
+        WRITE_THROUGH,
+        /**
+         * 写缓存和journal,后台批量写数据库
+         */
+        WRITE_BEHIND
+    }
+
+    /**
+     * 实体的数据源;WRITE_BEHIND模式下saveAll/deleteAll可能重复执行,需要幂等
+     */
+    public interface Source<T, ID> {
+        T load(ID id);
+
+        void saveAll(List<T> entities);
+
+        void deleteAll(List<ID> ids);
+
+        /**
+         * 以Spring Data JPA的repository作为数据源
+         */
+        static <T, ID> Source<T, ID> of(CrudRepository<T, ID> repository) {
+            return new Source<T, ID>() {
+                @Override
+                public T load(ID id) {
+                    return repository.findById(id).orElse(null);
+                }
+
+                @Override
+                public void saveAll(List<T> entities) {
+                    repository.saveAll(entities);
+                }
+
+                /**
+                 * 只删除仍存在的实体,重复执行时跳过已删除的id;一次查询取回整批实体
+                 */
+                @Override
+                public void deleteAll(List<ID> ids) {
+                    Iterable<T> entities = repository.findAllById(ids);
+                    if (entities.iterator().hasNext()) {
+                        repository.deleteAll(entities);
+                    }
+                }
+            };
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(this::flushAll, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(flushInterval * 10, TimeUnit.MILLISECONDS);
+        flushAll();
+    }
+
+    /**
+     * 注册一种实体
+     * @param name 实体类型名,作为key前缀
+     * @param source 数据源
+     * @param idOf 从实体取主键
+     * @param idParser 从字符串还原主键,WRITE_BEHIND模式写入删除时使用
+     * @param mode 写入模式
+     * @return 带缓存的仓库
+     */
+    public <T, ID> Repository<T, ID> register(String name, Source<T, ID> source, Function<T, ID> idOf,
+                                              Function<String, ID> idParser, Mode mode) {
+        Repository<T, ID> repository = new Repository<>(name, source, idOf, idParser, mode);
+        repositories.put(name, repository);
+        return repository;
+    }
+
+    /**
+     * 把所有WRITE_BEHIND实体的待写数据写入数据库
+     */
+    public void flushAll() {
+        for (Repository<?, ?> repository : repositories.values()) {
+            if (repository.mode == Mode.WRITE_BEHIND) {
+                try {
+                    while (repository.flush() >= batchSize) {
+                        // 积压较多时连续写入,直到不足一批
+                    }
+                } catch (Exception e) {
+                    log.error("实体" + repository.name + "写入数据库失败,稍后重试：" + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 带缓存的实体仓库
+     */
+    public class Repository<T, ID> {
+        private final String name;
+        private final Source<T, ID> source;
+        private final Function<T, ID> idOf;
+        private final Function<String, ID> idParser;
+        private final Mode mode;
+
+        private Repository(String name, Source<T, ID> source, Function<T, ID> idOf, Function<String, ID> idParser,
+                           Mode mode) {
+            this.name = name;
+            this.source = source;
+            this.idOf = idOf;
+            this.idParser = idParser;
+            this.mode = mode;
+        }
+
+        /**
+         * 按主键读取;缓存未命中时先查待写hash(缓存过期但尚未写入数据库),再查数据源并回填缓存
+         * @param id
+         * @return 不存在返回null
+         */
+        @SuppressWarnings("unchecked")
+        public T get(ID id) {
+            byte[] field = SafeEncoder.encode(String.valueOf(id));
+            byte[] version;
+            Jedis jedis = null;
+            try {
+                jedis = redisRouter.getPrimaryResource(key("journal"));
+                byte[] value = jedis.get(bytes(entityKey(id)));
+                if (value == null && mode == Mode.WRITE_BEHIND) {
+                    value = jedis.hget(bytes(key("pending")), field);
+                }
+                if (value != null) {
+                    return value.length == 0 ? null : (T) RedisUtils.unserialize(value);
+                }
+                version = jedis.hget(bytes(key("version")), field);
+            } catch (Exception e) {
+                log.error(e.getMessage());
+                redisRouter.onException(e);
+                return source.load(id);
+            } finally {
+                if (jedis != null) {
+                    jedis.close();
+                }
+            }
+            T entity = source.load(id);
+            if (entity != null) {
+                fill(id, entity, version);
+            }
+            return entity;
+        }
+
+        /**
+         * 保存实体
+         * @param entity
+         */
+        public void save(T entity) {
+            ID id = idOf.apply(entity);
+            if (mode == Mode.WRITE_THROUGH) {
+                source.saveAll(Collections.singletonList(entity));
+                evictAfterCommit(id);
+            } else {
+                journal(id, RedisUtils.ObjTOSerialize(entity));
+            }
+        }
+
+        /**
+         * 删除实体
+         * @param id
+         */
+        public void delete(ID id) {
+            if (mode == Mode.WRITE_THROUGH) {
+                source.deleteAll(Collections.singletonList(id));
+                evictAfterCommit(id);
+            } else {
+                journal(id, TOMBSTONE);
+            }
+        }
+
+        /**
+         * journal中尚未写入数据库的条数
+         * @return
+         */
+        public Long pending() {
+            Jedis jedis = null;
+            try {
+                jedis = redisRouter.getReadResource(key("journal"));
+                return jedis.llen(key("journal")) + jedis.llen(key("inflight"));
+            } catch (Exception e) {
+                log.error(e.getMessage());
+                return null;
+            } finally {
+                if (jedis != null) {
+                    jedis.close();
+                }
+            }
+        }
+
+        /**
+         * 未命中回填,只在期间没有并发写入时写入
+         * @param version 加载前读到的版本号
+         */
+        private void fill(ID id, T entity, byte[] version) {
+            Jedis jedis = null;
+            try {
+                jedis = redisRouter.getResource(key("journal"));
+                FILL.evalBinary(jedis, Arrays.asList(bytes(entityKey(id)), bytes(key("pending")), bytes(key("version"))),
+                        Arrays.asList(RedisUtils.ObjTOSerialize(entity), bytes(String.valueOf(expire)),
+                                bytes(String.valueOf(id)), version == null ? new byte[0] : version));
+            } catch (Exception e) {
+                log.error(e.getMessage());
+                redisRouter.onException(e);
+            } finally {
+                if (jedis != null) {
+                    jedis.close();
+                }
+            }
+        }
+
+        /**
+         * 删除缓存;处于事务中时推迟到提交之后,回滚时不删除
+         */
+        private void evictAfterCommit(ID id) {
+            if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                evict(id);
+                return;
+            }
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    evict(id);
+                }
+            });
+        }
+
+        /**
+         * 删除缓存并把版本号加1,使删除前开始的未命中加载不再回填
+         */
+        private void evict(ID id) {
+            Jedis jedis = null;
+            try {
+                jedis = redisRouter.getResource(key("journal"));
+                Transaction transaction = jedis.multi();
+                transaction.del(entityKey(id));
+                transaction.hincrBy(key("version"), String.valueOf(id), 1);
+                transaction.expire(key("version"), versionExpire);
+                transaction.exec();
+            } catch (Exception e) {
+                log.error("实体" + name + "缓存删除失败：" + e.getMessage());
+                redisRouter.onException(e);
+            } finally {
+                if (jedis != null) {
+                    jedis.close();
+                }
+            }
+        }
+
+        /**
+         * 在一个MULTI中更新缓存、待写值、版本号并追加journal;失败时抛出异常,调用方可以重试或改用同步写入
+         */
+        private void journal(ID id, byte[] value) {
+            byte[] field = SafeEncoder.encode(String.valueOf(id));
+            Jedis jedis = null;
+            try {
+                jedis = redisRouter.getResource(key("journal"));
+                Transaction transaction = jedis.multi();
+                if (value.length == 0) {
+                    transaction.del(bytes(entityKey(id)));
+                } else {
+                    transaction.setex(bytes(entityKey(id)), expire, value);
+                }
+                transaction.hset(bytes(key("pending")), field, value);
+                transaction.hincrBy(bytes(key("version")), field, 1);
+                transaction.rpush(bytes(key("journal")), field);
+                transaction.exec();
+            } catch (RuntimeException e) {
+                redisRouter.onException(e);
+                throw e;
+            } finally {
+                if (jedis != null) {
+                    jedis.close();
+                }
+            }
+        }
+
+        /**
+         * 写入一批待写数据
+         * @return 本批处理的journal条数,没有拿到租约时返回0
+         */
+        @SuppressWarnings("unchecked")
+        private int flush() {
+            Jedis jedis = null;
+            try {
+                jedis = redisRouter.getResource(key("journal"));
+                if (!"OK".equals(jedis.set(key("lease"), owner, "NX", "PX", lease))) {
+                    return 0;
+                }
+                try {
+                    List<String> ids = (List<String>) CLAIM.eval(jedis,
+                            Arrays.asList(key("journal"), key("inflight")), Collections.singletonList(String.valueOf(batchSize)));
+                    if (ids.isEmpty()) {
+                        return 0;
+                    }
+                    // 同一id只写入最后一次的值,位置取最后一次出现的位置
+                    LinkedHashMap<String, Boolean> ordered = new LinkedHashMap<>();
+                    for (String id : ids) {
+                        ordered.remove(id);
+                        ordered.put(id, Boolean.TRUE);
+                    }
+                    List<String> unique = new ArrayList<>(ordered.keySet());
+                    byte[][] fields = new byte[unique.size()][];
+                    for (int i = 0; i < fields.length; i++) {
+                        fields[i] = SafeEncoder.encode(unique.get(i));
+                    }
+                    Transaction transaction = jedis.multi();
+                    Response<List<byte[]>> values = transaction.hmget(bytes(key("pending")), fields);
+                    Response<List<String>> versions = transaction.hmget(key("version"), unique.toArray(new String[0]));
+                    transaction.exec();
+
+                    write(unique, values.get());
+
+                    List<String> args = new ArrayList<>(unique.size() * 2);
+                    for (int i = 0; i < unique.size(); i++) {
+                        if (versions.get().get(i) != null) {
+                            args.add(unique.get(i));
+                            args.add(versions.get().get(i));
+                        }
+                    }
+                    ACK.eval(jedis, Arrays.asList(key("inflight"), key("pending"), key("version")), args);
+                    return ids.size();
+                } finally {
+                    RELEASE.eval(jedis, Collections.singletonList(key("lease")), Collections.singletonList(owner));
+                }
+            } finally {
+                if (jedis != null) {
+                    jedis.close();
+                }
+            }
+        }
+
+        /**
+         * 按顺序写入数据库,连续的保存或删除合并为一次批量调用
+         */
+        @SuppressWarnings("unchecked")
+        private void write(List<String> ids, List<byte[]> values) {
+            List<T> saves = new ArrayList<>();
+            List<ID> deletes = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i++) {
+                byte[] value = values.get(i);
+                if (value == null) {
+                    // 已被之前的批次写入
+                    continue;
+                }
+                if (value.length == 0) {
+                    if (!saves.isEmpty()) {
+                        source.saveAll(saves);
+                        saves = new ArrayList<>();
+                    }
+                    deletes.add(idParser.apply(ids.get(i)));
+                } else {
+                    if (!deletes.isEmpty()) {
+                        source.deleteAll(deletes);
+                        deletes = new ArrayList<>();
+                    }
+                    saves.add((T) RedisUtils.unserialize(value));
+                }
+            }
+            if (!saves.isEmpty()) {
+                source.saveAll(saves);
+            }
+            if (!deletes.isEmpty()) {
+                source.deleteAll(deletes);
+            }
+        }
+
+        /**
+         * 实体的缓存key,用于注册缓存失效
+         * @param id
+         * @return
+         */
+        public String cacheKey(ID id) {
+            return entityKey(id);
+        }
+
+        /**
+         * 实体缓存key的公共前缀,用于注册refresh-ahead
+         * @return
+         */
+        public String cacheKeyPrefix() {
+            return key("e:");
+        }
+
+        /**
+         * 根据缓存key从数据源重新加载实体,用于refresh-ahead
+         * @param cacheKey
+         * @return 序列化后的实体,不存在返回null
+         */
+        public byte[] reload(String cacheKey) {
+            T entity = source.load(idParser.apply(cacheKey.substring(cacheKeyPrefix().length())));
+            return entity == null ? null : RedisUtils.ObjTOSerialize(entity);
+        }
+
+        private String entityKey(ID id) {
+            return key("e:" + id);
+        }
+
+        private String key(String suffix) {
+            return "ec:{" + name + "}:" + suffix;
+        }
+    }
+
+    private static byte[] bytes(String key) {
+        return SafeEncoder.encode(key);
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.springbootredisdemo.service;
+
+import com.example.springbootredisdemo.utils.RedisUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 基于bitmap的按用户功能开关;每个开关一个bitmap,用户id作为位偏移量,
+ * 批量开启/关闭和批量判断都通过pipeline一次发送
+ * @packname: com.example.springbootredisdemo.service
+ * @author: wzp
+ * @create: 2026-10-19 17:20
+ */
+@Service
+public class FeatureFlags {
+
+    @Autowired
+    private RedisUtils redisUtils;
+
+    /**
+     * 为一批用户开启功能
+     * @param flag 开关名
+     * @param userIds
+     * @return 成功true,失败false
+     */
+    public boolean enable(String flag, Collection<Long> userIds) {
+        return redisUtils.setbits(flagKey(flag), userIds, true);
+    }
+
+    /**
+     * 为一批用户关闭功能
+     * @param flag
+     * @param userIds
+     * @return
+     */
+    public boolean disable(String flag, Collection<Long> userIds) {
+        return redisUtils.setbits(flagKey(flag), userIds, false);
+    }
+
+    /**
+     * 用户是否开启了功能
+     * @param flag
+     * @param userId
+     * @return 异常时返回false,按未开启处理
+     */
+    public boolean isEnabled(String flag, long userId) {
+        return Boolean.TRUE.equals(redisUtils.getbit(flagKey(flag), userId));
+    }
+
+    /**
+     * 批量判断用户是否开启了功能
+     * @param flag
+     * @param userIds
+     * @return 与userIds顺序一致
+     */
+    public List<Boolean> areEnabled(String flag, List<Long> userIds) {
+        return redisUtils.getbits(flagKey(flag), userIds);
+    }
+
+    /**
+     * 开启了功能的用户数
+     * @param flag
+     * @return
+     */
+    public Long enabledCount(String flag) {
+        return redisUtils.bitcount(flagKey(flag));
+    }
+
+    private static String flagKey(String flag) {
+        return "ff:" + flag;
+    }
+}
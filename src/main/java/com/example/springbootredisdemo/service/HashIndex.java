@@ -0,0 +1,436 @@
+package com.example.springbootredisdemo.service;
+
+import com.example.springbootredisdemo.utils.RedisRouter;
+import com.example.springbootredisdemo.utils.RedisScript;
+import com.example.springbootredisdemo.utils.RedisUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ZParams;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: hash记录的二级索引;为声明的字段维护索引,写记录和改索引在同一个lua脚本中完成,不会出现记录与索引不一致
+ * 等值字段:每个取值一个set(idx:{type}:eq:字段:值),范围字段:一个zset(idx:{type}:rg:字段),分数为字段的数值
+ * 查询把等值/范围条件转成ZINTERSTORE,排序字段的zset权重为1、其余为0,交集的分数即排序字段的值,
+ * 再按范围分页取id,最后一条pipeline取回记录
+ * 同一类型的记录和索引带相同的hash tag,分片/集群模式下落在同一节点;lua脚本访问的key全部通过KEYS传入
+ * @packname: com.example.springbootredisdemo.service
+ * @author: wzp
+ * @create: 2026-10-19 17:40
+ */
+@Service
+public class HashIndex {
+    private static final Logger log = LoggerFactory.getLogger(HashIndex.class);
+
+    /**
+     * 脚本访问的key全部通过KEYS传入:KEYS[1] 记录 KEYS[2] 全部id的set KEYS[3..] 各范围索引及等值索引;
+     * ARGV[1] id ARGV[2] 范围字段数,之后为各范围字段(对应KEYS[3]起的范围索引);
+     * 再之后为等值字段数,每个等值字段四个参数:字段、旧索引在KEYS中的下标(0表示没有旧值)、读取到的旧值、新索引的下标(0表示没有新值);
+     * 最后为字段/值对(没有字段/值对表示删除)
+     * 等值索引key取决于字段的旧值,由客户端先HMGET读出;执行时旧值已被修改则不做任何写入,返回-1由客户端重读后重试
+     */
+    private static final RedisScript WRITE = new RedisScript(
+            "local id = ARGV[1] "
+                    + "local nr = tonumber(ARGV[2]) "
+                    + "local i = 3 + nr "
+                    + "local ne = tonumber(ARGV[i]) "
+                    + "i = i + 1 "
+                    + "local eq = {} "
+                    + "for j = 1, ne do "
+                    + "  local old = tonumber(ARGV[i + 1]) "
+                    + "  local cur = redis.call('HGET', KEYS[1], ARGV[i]) "
+                    + "  if (old == 0 and cur) or (old > 0 and cur ~= ARGV[i + 2]) then return -1 end "
+                    + "  eq[j] = {old, tonumber(ARGV[i + 3])} "
+                    + "  i = i + 4 "
+                    + "end "
+                    + "for _, e in ipairs(eq) do "
+                    + "  if e[1] > 0 then redis.call('SREM', KEYS[e[1]], id) end "
+                    + "end "
+                    + "if i > #ARGV then "
+                    + "  for j = 1, nr do redis.call('ZREM', KEYS[2 + j], id) end "
+                    + "  redis.call('DEL', KEYS[1]) "
+                    + "  redis.call('SREM', KEYS[2], id) "
+                    + "  return 0 "
+                    + "end "
+                    + "redis.call('HMSET', KEYS[1], unpack(ARGV, i)) "
+                    + "for _, e in ipairs(eq) do "
+                    + "  if e[2] > 0 then redis.call('SADD', KEYS[e[2]], id) end "
+                    + "end "
+                    + "for j = 1, nr do "
+                    + "  local v = tonumber(redis.call('HGET', KEYS[1], ARGV[2 + j])) "
+                    + "  if v then redis.call('ZADD', KEYS[2 + j], v, id) "
+                    + "  else redis.call('ZREM', KEYS[2 + j], id) end "
+                    + "end "
+                    + "redis.call('SADD', KEYS[2], id) "
+                    + "return 1");
+
+    /**
+     * 把zset中分数在范围内的成员存入临时set;KEYS[1] 范围索引 KEYS[2] 临时set; ARGV[1] min ARGV[2] max ARGV[3] 过期秒数
+     */
+    private static final RedisScript RANGE_STORE = new RedisScript(
+            "local ids = redis.call('ZRANGEBYSCORE', KEYS[1], ARGV[1], ARGV[2]) "
+                    + "for i = 1, #ids, 1000 do "
+                    + "  redis.call('SADD', KEYS[2], unpack(ids, i, math.min(i + 999, #ids))) "
+                    + "end "
+                    + "redis.call('EXPIRE', KEYS[2], ARGV[3]) "
+                    + "return #ids");
+
+    private static final int TEMP_EXPIRE = 60;
+    /**
+     * 等值字段的旧值被并发修改时的最多重试次数
+     */
+    private static final int WRITE_ATTEMPTS = 3;
+
+    @Autowired
+    private RedisRouter redisRouter;
+
+    /**
+     * 类型 -> 索引定义
+     */
+    private final Map<String, Definition> definitions = new ConcurrentHashMap<>();
+
+    /**
+     * 声明类型的索引字段;修改声明不会重建已有记录的索引
+     * @param type 记录类型
+     * @param equalityFields 等值查询字段
+     * @param rangeFields 范围查询/排序字段,值必须是数字
+     */
+    public void define(String type, Set<String> equalityFields, Set<String> rangeFields) {
+        definitions.put(type, new Definition(equalityFields, rangeFields));
+    }
+
+    /**
+     * 写入(合并)记录并同步更新索引,与hmset一样只覆盖传入的字段
+     * @param type
+     * @param id
+     * @param hash
+     * @param indexdb 选择redis库【0-15】
+     * @return 成功true,失败false
+     */
+    public boolean save(String type, String id, Map<String, String> hash, int indexdb) {
+        if (hash.isEmpty()) {
+            throw new IllegalArgumentException("记录字段不能为空");
+        }
+        return write(type, id, hash, indexdb);
+    }
+
+    /**
+     * 删除记录及其索引
+     * @param type
+     * @param id
+     * @param indexdb
+     * @return 成功true,失败false
+     */
+    public boolean delete(String type, String id, int indexdb) {
+        return write(type, id, null, indexdb);
+    }
+
+    /**
+     * 按条件分页查询
+     * @param query
+     * @param indexdb
+     * @return 异常返回null
+     */
+    public Page find(Query query, int indexdb) {
+        Definition definition = definition(query.type);
+        Range primary = null;
+        if (query.orderBy != null) {
+            primary = query.ranges.getOrDefault(query.orderBy, new Range(query.orderBy, "-inf", "+inf"));
+        } else if (!query.ranges.isEmpty()) {
+            primary = query.ranges.values().iterator().next();
+        }
+        String tmp = key(query.type, "tmp:" + UUID.randomUUID(), indexdb);
+        List<String> temps = new ArrayList<>();
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getResource(tmp);
+            select(jedis, indexdb);
+            List<String> inputs = new ArrayList<>();
+            List<Double> weights = new ArrayList<>();
+            if (primary != null) {
+                checkField(definition.rangeFields, primary.field);
+                inputs.add(key(query.type, "rg:" + primary.field, indexdb));
+                weights.add(1D);
+            }
+            for (Map.Entry<String, String> entry : query.equals.entrySet()) {
+                checkField(definition.equalityFields, entry.getKey());
+                inputs.add(key(query.type, "eq:" + entry.getKey() + ":" + entry.getValue(), indexdb));
+                weights.add(0D);
+            }
+            for (Range range : query.ranges.values()) {
+                if (range == primary) {
+                    continue;
+                }
+                checkField(definition.rangeFields, range.field);
+                String temp = tmp + ":" + temps.size();
+                temps.add(temp);
+                RANGE_STORE.eval(jedis, Arrays.asList(key(query.type, "rg:" + range.field, indexdb), temp),
+                        Arrays.asList(range.min, range.max, String.valueOf(TEMP_EXPIRE)));
+                inputs.add(temp);
+                weights.add(0D);
+            }
+            if (inputs.isEmpty()) {
+                inputs.add(key(query.type, "all", indexdb));
+                weights.add(0D);
+            }
+            double[] w = new double[weights.size()];
+            for (int i = 0; i < w.length; i++) {
+                w[i] = weights.get(i);
+            }
+            Pipeline pipeline = jedis.pipelined();
+            pipeline.zinterstore(tmp, new ZParams().weightsByDouble(w), inputs.toArray(new String[0]));
+            Response<Long> total;
+            Response<Set<String>> ids;
+            if (primary == null) {
+                total = pipeline.zcard(tmp);
+                ids = pipeline.zrange(tmp, query.offset, query.offset + query.limit - 1);
+            } else {
+                total = pipeline.zcount(tmp, primary.min, primary.max);
+                ids = query.desc
+                        ? pipeline.zrevrangeByScore(tmp, primary.max, primary.min, query.offset, query.limit)
+                        : pipeline.zrangeByScore(tmp, primary.min, primary.max, query.offset, query.limit);
+            }
+            temps.add(tmp);
+            pipeline.del(temps.toArray(new String[0]));
+            pipeline.sync();
+
+            Map<String, Response<Map<String, String>>> records = new LinkedHashMap<>();
+            pipeline = jedis.pipelined();
+            for (String id : ids.get()) {
+                records.put(id, pipeline.hgetAll(key(query.type, "r:" + id, indexdb)));
+            }
+            pipeline.sync();
+            Map<String, Map<String, String>> res = new LinkedHashMap<>();
+            for (Map.Entry<String, Response<Map<String, String>>> entry : records.entrySet()) {
+                res.put(entry.getKey(), entry.getValue().get());
+            }
+            return new Page(total.get(), res);
+        } catch (Exception e) {
+            handleException(e);
+            return null;
+        } finally {
+            RedisUtils.returnResource(null, jedis);
+        }
+    }
+
+    /**
+     * 先读出等值字段的旧值,再由脚本校验旧值并更新记录和索引;旧值被并发修改时重试
+     * @param hash 为null时删除记录
+     */
+    private boolean write(String type, String id, Map<String, String> hash, int indexdb) {
+        Definition definition = definition(type);
+        String recordKey = key(type, "r:" + id, indexdb);
+        List<String> eqFields = new ArrayList<>(definition.equalityFields);
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getResource(recordKey);
+            select(jedis, indexdb);
+            for (int attempt = 1; attempt <= WRITE_ATTEMPTS; attempt++) {
+                List<String> old = eqFields.isEmpty() ? Collections.emptyList()
+                        : jedis.hmget(recordKey, eqFields.toArray(new String[0]));
+                List<String> keys = new ArrayList<>();
+                List<String> args = new ArrayList<>();
+                keys.add(recordKey);
+                keys.add(key(type, "all", indexdb));
+                args.add(id);
+                args.add(String.valueOf(definition.rangeFields.size()));
+                for (String field : definition.rangeFields) {
+                    keys.add(key(type, "rg:" + field, indexdb));
+                    args.add(field);
+                }
+                args.add(String.valueOf(eqFields.size()));
+                for (int i = 0; i < eqFields.size(); i++) {
+                    String field = eqFields.get(i);
+                    String oldValue = old.get(i);
+                    String newValue = hash == null ? null : hash.getOrDefault(field, oldValue);
+                    args.add(field);
+                    args.add(String.valueOf(eqIndex(keys, type, field, oldValue, indexdb)));
+                    args.add(oldValue == null ? "" : oldValue);
+                    args.add(String.valueOf(eqIndex(keys, type, field, newValue, indexdb)));
+                }
+                if (hash != null) {
+                    for (Map.Entry<String, String> entry : hash.entrySet()) {
+                        args.add(entry.getKey());
+                        args.add(entry.getValue());
+                    }
+                }
+                if (((Long) WRITE.eval(jedis, keys, args)) >= 0) {
+                    return true;
+                }
+            }
+            log.error("记录" + recordKey + "的索引字段被并发修改,写入失败");
+            return false;
+        } catch (Exception e) {
+            handleException(e);
+            return false;
+        } finally {
+            RedisUtils.returnResource(null, jedis);
+        }
+    }
+
+    /**
+     * 把等值索引key加入KEYS
+     * @return 在KEYS中的下标(从1开始),value为null时返回0
+     */
+    private int eqIndex(List<String> keys, String type, String field, String value, int indexdb) {
+        if (value == null) {
+            return 0;
+        }
+        keys.add(key(type, "eq:" + field + ":" + value, indexdb));
+        return keys.size();
+    }
+
+    private void handleException(Exception e) {
+        log.error(e.getMessage());
+        redisRouter.onException(e);
+    }
+
+    private Definition definition(String type) {
+        Definition definition = definitions.get(type);
+        if (definition == null) {
+            throw new IllegalArgumentException("类型" + type + "未声明索引");
+        }
+        return definition;
+    }
+
+    private static void checkField(Set<String> fields, String field) {
+        if (!fields.contains(field)) {
+            throw new IllegalArgumentException("字段" + field + "未声明索引");
+        }
+    }
+
+    private void select(Jedis jedis, int indexdb) {
+        if (!redisRouter.isCluster()) {
+            jedis.select(indexdb);
+        }
+    }
+
+    private String key(String type, String suffix, int indexdb) {
+        return redisRouter.dbKey("idx:{" + type + "}:" + suffix, indexdb);
+    }
+
+    private static String bound(double value) {
+        if (value == Double.NEGATIVE_INFINITY) {
+            return "-inf";
+        }
+        if (value == Double.POSITIVE_INFINITY) {
+            return "+inf";
+        }
+        return String.valueOf(value);
+    }
+
+    private static class Definition {
+        private final Set<String> equalityFields;
+        private final Set<String> rangeFields;
+
+        private Definition(Set<String> equalityFields, Set<String> rangeFields) {
+            this.equalityFields = Collections.unmodifiableSet(new LinkedHashSet<>(equalityFields));
+            this.rangeFields = Collections.unmodifiableSet(new LinkedHashSet<>(rangeFields));
+        }
+    }
+
+    private static class Range {
+        private final String field;
+        private final String min;
+        private final String max;
+
+        private Range(String field, String min, String max) {
+            this.field = field;
+            this.min = min;
+            this.max = max;
+        }
+    }
+
+    /**
+     * 查询条件;多个条件之间为AND
+     */
+    public static class Query {
+        private final String type;
+        private final Map<String, String> equals = new LinkedHashMap<>();
+        private final Map<String, Range> ranges = new LinkedHashMap<>();
+        private String orderBy;
+        private boolean desc;
+        private int offset;
+        private int limit = 20;
+
+        private Query(String type) {
+            this.type = type;
+        }
+
+        public static Query of(String type) {
+            return new Query(type);
+        }
+
+        /**
+         * 字段等于value
+         */
+        public Query eq(String field, String value) {
+            equals.put(field, value);
+            return this;
+        }
+
+        /**
+         * 字段在[min, max]范围内,不限制一端时传入Double.NEGATIVE_INFINITY/Double.POSITIVE_INFINITY
+         */
+        public Query range(String field, double min, double max) {
+            ranges.put(field, new Range(field, bound(min), bound(max)));
+            return this;
+        }
+
+        /**
+         * 按范围字段排序;不指定时按第一个范围条件升序,没有范围条件时按id排序
+         */
+        public Query orderBy(String field, boolean desc) {
+            this.orderBy = field;
+            this.desc = desc;
+            return this;
+        }
+
+        public Query page(int offset, int limit) {
+            this.offset = offset;
+            this.limit = limit;
+            return this;
+        }
+    }
+
+    /**
+     * 分页结果
+     */
+    public static class Page {
+        private final long total;
+        private final Map<String, Map<String, String>> records;
+
+        private Page(long total, Map<String, Map<String, String>> records) {
+            this.total = total;
+            this.records = records;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        /**
+         * id -> 记录,按查询顺序排列
+         */
+        public Map<String, Map<String, String>> getRecords() {
+            return records;
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package com.example.springbootredisdemo.service;
+
+import com.example.springbootredisdemo.utils.RedisRouter;
+import com.example.springbootredisdemo.utils.RedisScript;
+import com.example.springbootredisdemo.utils.RedisUtils;
+import com.example.springbootredisdemo.utils.RedisWriteBehindBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Tuple;
+import redis.clients.jedis.ZParams;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 排行榜;每个榜单同时维护总榜、日榜、周榜三个zset(key带{榜单名}保证集群下在同一槽位),
+ * 分数批量更新走一次pipeline,排名加前后名次一次lua完成,前N名在本地缓存并随本实例的更新增量维护
+ * @packname: com.example.springbootredisdemo.service
+ * @author: wzp
+ * @create: 2026-10-19 14:20
+ */
+@Service
+public class Leaderboard {
+    private static final Logger log = LoggerFactory.getLogger(Leaderboard.class);
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    /**
+     * KEYS[1] 榜单key; ARGV[1] member; ARGV[2] 前后各取多少名
+     * 返回 {排名(从0开始), member1, score1, member2, score2 ...},member不在榜单中返回nil
+     */
+    private static final RedisScript AROUND = new RedisScript(
+            "local rank = redis.call('ZREVRANK', KEYS[1], ARGV[1]) "
+                    + "if not rank then return nil end "
+                    + "local n = tonumber(ARGV[2]) "
+                    + "local start = rank - n "
+                    + "if start < 0 then start = 0 end "
+                    + "local res = redis.call('ZREVRANGE', KEYS[1], start, rank + n, 'WITHSCORES') "
+                    + "table.insert(res, 1, tostring(start)) "
+                    + "table.insert(res, 1, tostring(rank)) "
+                    + "return res");
+
+    /**
+     * 与ZREVRANGE一致:分数降序,分数相同时member按字典序降序
+     */
+    private static final Comparator<Entry> ORDER = Comparator.comparingDouble((Entry e) -> e.score)
+            .thenComparing(e -> e.member).reversed();
+
+    @Autowired
+    private RedisRouter redisRouter;
+    @Autowired
+    private RedisUtils redisUtils;
+    @Autowired
+    private RedisWriteBehindBuffer redisWriteBehindBuffer;
+
+    @Value("${spring.redis.leaderboard.top-n:100}")
+    private int topN;
+    @Value("${spring.redis.leaderboard.cache-ttl:1000}")
+    private long cacheTtl;
+    @Value("${spring.redis.leaderboard.daily-expire:691200}")
+    private int dailyExpire;
+    @Value("${spring.redis.leaderboard.weekly-expire:3024000}")
+    private int weeklyExpire;
+
+    /**
+     * 榜单key -> 前N名缓存
+     */
+    private final Map<String, TopCache> topCaches = new ConcurrentHashMap<>();
+
+    /**
+     * 榜单周期
+     */
+    public enum Period {
+        ALL, DAILY, WEEKLY
+    }
+
+    /**
+     * 批量增加分数,总榜/日榜/周榜在一次pipeline中更新,并增量维护本地前N名缓存
+     * @param board 榜单名
+     * @param deltas member -> 分数增量
+     */
+    public void incrScores(String board, Map<String, Double> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        String all = key(board, Period.ALL, today);
+        String daily = key(board, Period.DAILY, today);
+        String weekly = key(board, Period.WEEKLY, today);
+        Map<String, Response<Double>> allScores = new LinkedHashMap<>();
+        Map<String, Response<Double>> dailyScores = new LinkedHashMap<>();
+        Map<String, Response<Double>> weeklyScores = new LinkedHashMap<>();
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getResource(all);
+            Pipeline pipeline = jedis.pipelined();
+            for (Map.Entry<String, Double> entry : deltas.entrySet()) {
+                allScores.put(entry.getKey(), pipeline.zincrby(all, entry.getValue(), entry.getKey()));
+                dailyScores.put(entry.getKey(), pipeline.zincrby(daily, entry.getValue(), entry.getKey()));
+                weeklyScores.put(entry.getKey(), pipeline.zincrby(weekly, entry.getValue(), entry.getKey()));
+            }
+            pipeline.expire(daily, dailyExpire);
+            pipeline.expire(weekly, weeklyExpire);
+            pipeline.sync();
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            topCaches.remove(all);
+            topCaches.remove(daily);
+            topCaches.remove(weekly);
+            return;
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+        applyToCache(all, deltas, allScores);
+        applyToCache(daily, deltas, dailyScores);
+        applyToCache(weekly, deltas, weeklyScores);
+    }
+
+    /**
+     * 异步增加分数,通过write-behind缓冲合并后写入;不更新本地前N名缓存,依靠缓存过期刷新
+     * @param board
+     * @param member
+     * @param delta
+     */
+    public void incrScoreAsync(String board, String member, double delta) {
+        LocalDate today = LocalDate.now();
+        redisWriteBehindBuffer.zincrby(key(board, Period.ALL, today), delta, member);
+        redisWriteBehindBuffer.zincrby(key(board, Period.DAILY, today), delta, member);
+        redisWriteBehindBuffer.zincrby(key(board, Period.WEEKLY, today), delta, member);
+    }
+
+    /**
+     * 分页查询榜单,前N名内的页直接读本地缓存
+     * @param board
+     * @param period
+     * @param page 从0开始
+     * @param size
+     * @return
+     */
+    public List<Entry> page(String board, Period period, int page, int size) {
+        String key = key(board, period, LocalDate.now());
+        long start = (long) page * size;
+        long end = start + size - 1;
+        if (end < topN) {
+            List<Entry> top = top(key);
+            if (top != null) {
+                if (start >= top.size()) {
+                    return Collections.emptyList();
+                }
+                return new ArrayList<>(top.subList((int) start, (int) Math.min(end + 1, top.size())));
+            }
+        }
+        return range(key, start, end);
+    }
+
+    /**
+     * 查询member的排名及前后各n名,一次往返
+     * @param board
+     * @param period
+     * @param member
+     * @param n
+     * @return member不在榜单中返回null
+     */
+    @SuppressWarnings("unchecked")
+    public RankView around(String board, Period period, String member, int n) {
+        String key = key(board, period, LocalDate.now());
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getReadResource(key);
+            List<Object> res = (List<Object>) AROUND.eval(jedis, Collections.singletonList(key),
+                    Arrays.asList(member, String.valueOf(n)));
+            if (res == null) {
+                return null;
+            }
+            long rank = Long.parseLong(asString(res.get(0)));
+            long start = Long.parseLong(asString(res.get(1)));
+            List<Entry> entries = new ArrayList<>();
+            for (int i = 2; i + 1 < res.size(); i += 2) {
+                entries.add(new Entry(asString(res.get(i)), Double.parseDouble(asString(res.get(i + 1))), start++));
+            }
+            return new RankView(rank, entries);
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            return null;
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * 查询member的排名(从0开始)
+     * @param board
+     * @param period
+     * @param member
+     * @return 不在榜单中返回null
+     */
+    public Long rank(String board, Period period, String member) {
+        return redisUtils.zrevrank(key(board, period, LocalDate.now()), member);
+    }
+
+    /**
+     * 榜单人数
+     * @param board
+     * @param period
+     * @return
+     */
+    public Long size(String board, Period period) {
+        return redisUtils.zcard(key(board, period, LocalDate.now()));
+    }
+
+    /**
+     * 合并一段时间的日榜,结果存入新的zset并设置过期时间
+     * @param board
+     * @param from 开始日期(含)
+     * @param to 结束日期(含)
+     * @param expire 结果的过期时间(秒)
+     * @return 合并结果的key
+     */
+    public String mergeDays(String board, LocalDate from, LocalDate to, int expire) {
+        List<String> keys = new ArrayList<>();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            keys.add(key(board, Period.DAILY, day));
+        }
+        String dstkey = "lb:{" + board + "}:r:" + DAY.format(from) + "-" + DAY.format(to);
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getResource(dstkey);
+            Pipeline pipeline = jedis.pipelined();
+            pipeline.zunionstore(dstkey, new ZParams().aggregate(ZParams.Aggregate.SUM), keys.toArray(new String[0]));
+            pipeline.expire(dstkey, expire);
+            pipeline.sync();
+            return dstkey;
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            return null;
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * 榜单key;同一榜单的各周期key使用相同的hash tag
+     * @param board
+     * @param period
+     * @param date
+     * @return
+     */
+    public static String key(String board, Period period, LocalDate date) {
+        switch (period) {
+            case DAILY:
+                return "lb:{" + board + "}:d:" + DAY.format(date);
+            case WEEKLY:
+                return "lb:{" + board + "}:w:" + date.get(IsoFields.WEEK_BASED_YEAR)
+                        + String.format("%02d", date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+            default:
+                return "lb:{" + board + "}";
+        }
+    }
+
+    private List<Entry> top(String key) {
+        TopCache cache = topCaches.get(key);
+        if (cache != null && System.currentTimeMillis() - cache.loadedAt < cacheTtl) {
+            return cache.entries;
+        }
+        List<Entry> entries = range(key, 0, topN - 1);
+        if (entries == null) {
+            return null;
+        }
+        topCaches.put(key, new TopCache(entries));
+        return entries;
+    }
+
+    private List<Entry> range(String key, long start, long end) {
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getReadResource(key);
+            Set<Tuple> tuples = jedis.zrevrangeWithScores(key, start, end);
+            List<Entry> entries = new ArrayList<>(tuples.size());
+            long rank = start;
+            for (Tuple tuple : tuples) {
+                entries.add(new Entry(tuple.getElement(), tuple.getScore(), rank++));
+            }
+            return entries;
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            return null;
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * 用pipeline返回的新分数增量更新前N名缓存;分数下降且缓存已满时无法确定补位的member,直接丢弃缓存
+     */
+    private void applyToCache(String key, Map<String, Double> deltas, Map<String, Response<Double>> scores) {
+        TopCache cache = topCaches.get(key);
+        if (cache == null) {
+            return;
+        }
+        List<Entry> entries = new ArrayList<>(cache.entries);
+        for (Map.Entry<String, Response<Double>> entry : scores.entrySet()) {
+            String member = entry.getKey();
+            double score = entry.getValue().get();
+            boolean removed = entries.removeIf(e -> e.member.equals(member));
+            if (removed && deltas.get(member) < 0 && cache.entries.size() >= topN) {
+                topCaches.remove(key);
+                return;
+            }
+            entries.add(new Entry(member, score, 0));
+        }
+        entries.sort(ORDER);
+        List<Entry> top = new ArrayList<>(Math.min(entries.size(), topN));
+        for (int i = 0; i < entries.size() && i < topN; i++) {
+            Entry e = entries.get(i);
+            top.add(new Entry(e.member, e.score, i));
+        }
+        topCaches.put(key, new TopCache(top, cache.loadedAt));
+    }
+
+    private static String asString(Object value) {
+        return value instanceof byte[] ? new String((byte[]) value, StandardCharsets.UTF_8) : String.valueOf(value);
+    }
+
+    private static class TopCache {
+        private final List<Entry> entries;
+        private final long loadedAt;
+
+        private TopCache(List<Entry> entries) {
+            this(entries, System.currentTimeMillis());
+        }
+
+        private TopCache(List<Entry> entries, long loadedAt) {
+            this.entries = Collections.unmodifiableList(entries);
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    /**
+     * 榜单条目
+     */
+    public static class Entry {
+        private final String member;
+        private final double score;
+        private final long rank;
+
+        public Entry(String member, double score, long rank) {
+            this.member = member;
+            this.score = score;
+            this.rank = rank;
+        }
+
+        public String getMember() {
+            return member;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public long getRank() {
+            return rank;
+        }
+    }
+
+    /**
+     * member的排名及前后名次
+     */
+    public static class RankView {
+        private final long rank;
+        private final List<Entry> neighbours;
+
+        public RankView(long rank, List<Entry> neighbours) {
+            this.rank = rank;
+            this.neighbours = neighbours;
+        }
+
+        public long getRank() {
+            return rank;
+        }
+
+        public List<Entry> getNeighbours() {
+            return neighbours;
+        }
+    }
+}
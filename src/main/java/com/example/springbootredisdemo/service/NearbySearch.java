@@ -0,0 +1,354 @@
+package com.example.springbootredisdemo.service;
+
+import com.example.springbootredisdemo.utils.GeoHash;
+import com.example.springbootredisdemo.utils.RedisUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.GeoCoordinate;
+import redis.clients.jedis.GeoRadiusResponse;
+import redis.clients.jedis.GeoUnit;
+import redis.clients.jedis.params.geo.GeoRadiusParam;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 附近地点查询;每个图层一个geo key,支持圆形和矩形范围查询
+ * 缓存按查询点所在的geohash格子组织:以格子中心为圆心、半径取"查询半径向上取整到2的幂 + 格子半对角线"查询一次候选,
+ * 格子内任意一点在该查询半径内的地点都包含在候选中,因此同一格子内的不同查询点可以共用候选,在本地精确过滤距离
+ * 当前客户端没有GEOSEARCH,矩形查询按外接圆取候选后在本地按经纬方向的距离过滤,候选被截断时结果标记为不完整
+ * GEORADIUS失败时查询返回null,与"附近没有地点"的空结果区分
+ * @packname: com.example.springbootredisdemo.service
+ * @author: wzp
+ * @create: 2026-10-19 19:20
+ */
+@Service
+public class NearbySearch {
+    private static final double MIN_BUCKET = 100;
+    /**
+     * 候选查询失败
+     */
+    private static final List<Place> FAILED = Collections.unmodifiableList(new ArrayList<>());
+
+    @Autowired
+    private RedisUtils redisUtils;
+
+    @Value("${spring.redis.geo.cell-precision:6}")
+    private int cellPrecision;
+    @Value("${spring.redis.geo.max-candidates:5000}")
+    private int maxCandidates;
+    @Value("${spring.redis.geo.batch-size:1000}")
+    private int batchSize;
+    @Value("${spring.redis.geo.cache-size:10000}")
+    private int cacheSize;
+    @Value("${spring.redis.geo.cache-ttl:30000}")
+    private long cacheTtl;
+
+    /**
+     * 图层:格子:半径档位 -> 候选地点,按访问顺序淘汰
+     */
+    private final Map<String, Cached> cache = new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            return size() > cacheSize;
+        }
+    };
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    /**
+     * 添加或移动地点
+     * @param layer 图层名,如门店
+     * @param member
+     * @param longitude
+     * @param latitude
+     * @return
+     */
+    public boolean add(String layer, String member, double longitude, double latitude) {
+        return load(layer, Collections.singletonMap(member, new GeoCoordinate(longitude, latitude)));
+    }
+
+    /**
+     * 批量导入地点,按batch-size拆分GEOADD通过pipeline发送;本实例的候选缓存随之清空
+     * @param layer
+     * @param places
+     * @return
+     */
+    public boolean load(String layer, Map<String, GeoCoordinate> places) {
+        boolean res = redisUtils.geoadd(layerKey(layer), places, batchSize);
+        synchronized (cache) {
+            cache.keySet().removeIf(key -> key.startsWith(layer + ":"));
+        }
+        return res;
+    }
+
+    /**
+     * 圆形范围查询
+     * @param layer
+     * @param longitude
+     * @param latitude
+     * @param radius 半径(米)
+     * @param limit 最多返回的条数
+     * @return 按距离升序,异常返回null
+     */
+    public List<Place> radius(String layer, double longitude, double latitude, double radius, int limit) {
+        List<Place> candidates = candidates(layer, longitude, latitude, radius);
+        if (candidates == FAILED) {
+            return null;
+        }
+        if (candidates == null) {
+            // 候选过多无法缓存,直接按精确半径查询
+            List<GeoRadiusResponse> responses = redisUtils.georadius(layerKey(layer), longitude, latitude, radius,
+                    GeoUnit.M, GeoRadiusParam.geoRadiusParam().withCoord().withDist().sortAscending().count(limit));
+            return responses == null ? null : places(responses);
+        }
+        List<Place> res = new ArrayList<>();
+        for (Place place : candidates) {
+            double distance = GeoHash.distance(latitude, longitude, place.latitude, place.longitude);
+            if (distance <= radius) {
+                res.add(new Place(place.member, place.longitude, place.latitude, distance));
+            }
+        }
+        return sortAndLimit(res, limit);
+    }
+
+    /**
+     * 矩形范围查询;矩形的判断见inBox,高纬度和跨180度经线时同样适用
+     * 候选按半径(宽+高)/2的圆取,矩形内任意一点到中心的距离不超过南北距离加东西距离,都在圆内
+     * 候选过多无法缓存时,先按内切圆(半径为宽高较小值的一半)取最近的limit个,全部在矩形内即为精确结果(高纬度时不一定全在);
+     * 否则再按外接圆取最近的max-candidates个过滤,候选被截断且结果不足limit条时,更远处可能还有矩形内的点,结果标记为不完整
+     * @param layer
+     * @param longitude 矩形中心经度
+     * @param latitude 矩形中心纬度
+     * @param width 东西方向宽度(米)
+     * @param height 南北方向高度(米)
+     * @param limit
+     * @return 按到中心的距离升序,异常返回null
+     */
+    public BoxResult box(String layer, double longitude, double latitude, double width, double height, int limit) {
+        double outer = (width + height) / 2;
+        List<Place> candidates = candidates(layer, longitude, latitude, outer);
+        if (candidates == FAILED) {
+            return null;
+        }
+        boolean truncated = false;
+        if (candidates == null) {
+            List<GeoRadiusResponse> inner = redisUtils.georadius(layerKey(layer), longitude, latitude,
+                    Math.min(width, height) / 2, GeoUnit.M,
+                    GeoRadiusParam.geoRadiusParam().withCoord().withDist().sortAscending().count(limit));
+            if (inner == null) {
+                return null;
+            }
+            if (inner.size() >= limit && allInBox(places(inner), longitude, latitude, width, height)) {
+                return new BoxResult(places(inner), false);
+            }
+            List<GeoRadiusResponse> responses = redisUtils.georadius(layerKey(layer), longitude, latitude, outer,
+                    GeoUnit.M, GeoRadiusParam.geoRadiusParam().withCoord().withDist().sortAscending().count(maxCandidates));
+            if (responses == null) {
+                return null;
+            }
+            candidates = places(responses);
+            truncated = candidates.size() >= maxCandidates;
+        }
+        List<Place> res = new ArrayList<>();
+        for (Place place : candidates) {
+            if (inBox(longitude, latitude, width, height, place.longitude, place.latitude)) {
+                double distance = GeoHash.distance(latitude, longitude, place.latitude, place.longitude);
+                res.add(new Place(place.member, place.longitude, place.latitude, distance));
+            }
+        }
+        // 候选按距离升序截断,截断距离以内的点都已包含,够limit条时结果仍然精确
+        return new BoxResult(sortAndLimit(res, limit), truncated && res.size() < limit);
+    }
+
+    /**
+     * 两个地点之间的距离(米)
+     * @param layer
+     * @param member1
+     * @param member2
+     * @return
+     */
+    public Double distance(String layer, String member1, String member2) {
+        return redisUtils.geodist(layerKey(layer), member1, member2, GeoUnit.M);
+    }
+
+    /**
+     * 缓存命中情况
+     * @return
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("cacheHits", cacheHits.get());
+        stats.put("cacheMisses", cacheMisses.get());
+        synchronized (cache) {
+            stats.put("cacheSize", cache.size());
+        }
+        return stats;
+    }
+
+    /**
+     * 地点是否在矩形内:南北方向按中心经线上的距离,东西方向按地点所在纬线上到中心经线的距离判断;
+     * 经度1度对应的距离随纬度变化,高纬度时不能只按中心纬度计算;距离按球面计算,经度差跨越180度经线时取较短的一侧
+     * @param longitude 矩形中心经度
+     * @param latitude 矩形中心纬度
+     * @param width 东西方向宽度(米)
+     * @param height 南北方向高度(米)
+     * @param placeLongitude
+     * @param placeLatitude
+     * @return
+     */
+    static boolean inBox(double longitude, double latitude, double width, double height,
+                         double placeLongitude, double placeLatitude) {
+        double dy = GeoHash.distance(latitude, longitude, placeLatitude, longitude);
+        double dx = GeoHash.distance(placeLatitude, longitude, placeLatitude, placeLongitude);
+        return dx <= width / 2 && dy <= height / 2;
+    }
+
+    private static boolean allInBox(List<Place> places, double longitude, double latitude, double width, double height) {
+        for (Place place : places) {
+            if (!inBox(longitude, latitude, width, height, place.longitude, place.latitude)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 取查询点所在格子的候选地点,优先读本地缓存
+     * @return 候选数量达到max-candidates(结果可能不完整)时返回null,GEORADIUS失败时返回FAILED
+     */
+    private List<Place> candidates(String layer, double longitude, double latitude, double radius) {
+        String cell = GeoHash.encode(latitude, longitude, cellPrecision);
+        double bucket = MIN_BUCKET;
+        while (bucket < radius) {
+            bucket *= 2;
+        }
+        String cacheKey = layer + ":" + cell + ":" + (long) bucket;
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            Cached cached = cache.get(cacheKey);
+            if (cached != null && cached.expireAt > now) {
+                cacheHits.incrementAndGet();
+                return cached.places;
+            }
+        }
+        cacheMisses.incrementAndGet();
+        double[] bounds = GeoHash.bounds(cell);
+        double centerLat = (bounds[0] + bounds[1]) / 2;
+        double centerLon = (bounds[2] + bounds[3]) / 2;
+        double cellRadius = GeoHash.distance(centerLat, centerLon, bounds[1], bounds[3]);
+        List<GeoRadiusResponse> responses = redisUtils.georadius(layerKey(layer), centerLon, centerLat,
+                bucket + cellRadius, GeoUnit.M, GeoRadiusParam.geoRadiusParam().withCoord().count(maxCandidates));
+        if (responses == null) {
+            return FAILED;
+        }
+        if (responses.size() >= maxCandidates) {
+            return null;
+        }
+        List<Place> places = Collections.unmodifiableList(places(responses));
+        synchronized (cache) {
+            cache.put(cacheKey, new Cached(places, now + cacheTtl));
+        }
+        return places;
+    }
+
+    private static List<Place> places(List<GeoRadiusResponse> responses) {
+        List<Place> places = new ArrayList<>();
+        for (GeoRadiusResponse response : responses) {
+            GeoCoordinate coordinate = response.getCoordinate();
+            places.add(new Place(response.getMemberByString(), coordinate.getLongitude(), coordinate.getLatitude(),
+                    response.getDistance()));
+        }
+        return places;
+    }
+
+    private static List<Place> sortAndLimit(List<Place> places, int limit) {
+        places.sort(Comparator.comparingDouble(Place::getDistance));
+        return places.size() > limit ? new ArrayList<>(places.subList(0, limit)) : places;
+    }
+
+    private static String layerKey(String layer) {
+        return "geo:" + layer;
+    }
+
+    private static class Cached {
+        private final List<Place> places;
+        private final long expireAt;
+
+        private Cached(List<Place> places, long expireAt) {
+            this.places = places;
+            this.expireAt = expireAt;
+        }
+    }
+
+    /**
+     * 查询结果
+     */
+    public static class Place {
+        private final String member;
+        private final double longitude;
+        private final double latitude;
+        private final double distance;
+
+        public Place(String member, double longitude, double latitude, double distance) {
+            this.member = member;
+            this.longitude = longitude;
+            this.latitude = latitude;
+            this.distance = distance;
+        }
+
+        public String getMember() {
+            return member;
+        }
+
+        public double getLongitude() {
+            return longitude;
+        }
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        /**
+         * 到查询中心的距离(米)
+         */
+        public double getDistance() {
+            return distance;
+        }
+    }
+
+    /**
+     * 矩形查询结果
+     */
+    public static class BoxResult {
+        private final List<Place> places;
+        private final boolean truncated;
+
+        public BoxResult(List<Place> places, boolean truncated) {
+            this.places = places;
+            this.truncated = truncated;
+        }
+
+        /**
+         * 按到中心的距离升序
+         */
+        public List<Place> getPlaces() {
+            return places;
+        }
+
+        /**
+         * 候选达到max-candidates且结果不足limit条,矩形内可能还有未返回的地点
+         */
+        public boolean isTruncated() {
+            return truncated;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.springbootredisdemo.service;
+
+import com.example.springbootredisdemo.utils.RedisRouter;
+import com.example.springbootredisdemo.utils.RedisScript;
+import com.example.springbootredisdemo.utils.RedisUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 优先级队列;基于zset,一次lua原子弹出N个最高(或最低)优先级的元素,多线程多实例并发消费不会重复投递
+ * 优先级老化:入队时把等待时间折算进分数,score = 优先级 ± aging-rate * 入队时间(秒),
+ * 等价于每等待一秒优先级提升aging-rate,不需要后台任务改写分数
+ * 阻塞弹出:队列为空时在唤醒list上BLPOP,入队时推入唤醒信号;弹出后队列仍非空则继续传递信号唤醒其他消费者
+ * @packname: com.example.springbootredisdemo.service
+ * @author: wzp
+ * @create: 2026-10-19 15:40
+ */
+@Service
+public class PriorityTaskQueue {
+    private static final Logger log = LoggerFactory.getLogger(PriorityTaskQueue.class);
+    /**
+     * 老化时间的起点,缩小分数的数值范围以保留double精度
+     */
+    private static final long AGING_EPOCH = 1577836800000L;
+
+    /**
+     * KEYS[1] 队列zset KEYS[2] 唤醒list; ARGV[1] 弹出数量 ARGV[2] min/max
+     */
+    private static final RedisScript POP = new RedisScript(
+            "local n = tonumber(ARGV[1]) "
+                    + "local items "
+                    + "if ARGV[2] == 'max' then items = redis.call('ZREVRANGE', KEYS[1], 0, n - 1) "
+                    + "else items = redis.call('ZRANGE', KEYS[1], 0, n - 1) end "
+                    + "for i = 1, #items do redis.call('ZREM', KEYS[1], items[i]) end "
+                    + "if #items > 0 and redis.call('ZCARD', KEYS[1]) > 0 then "
+                    + "  redis.call('LPUSH', KEYS[2], 1) "
+                    + "  redis.call('LTRIM', KEYS[2], 0, 0) "
+                    + "end "
+                    + "return items");
+
+    @Autowired
+    private RedisRouter redisRouter;
+    @Autowired
+    private RedisUtils redisUtils;
+
+    @Value("${spring.redis.priority-queue.aging-rate:0}")
+    private double agingRate;
+
+    /**
+     * 出队顺序
+     */
+    public enum Order {
+        /**
+         * 分数最低的先出队
+         */
+        MIN,
+        /**
+         * 分数最高的先出队
+         */
+        MAX
+    }
+
+    /**
+     * 入队
+     * @param queue 队列名
+     * @param item 元素,队列内唯一,重复入队只更新优先级
+     * @param priority 优先级
+     * @param order 该队列的出队顺序,决定老化的方向
+     * @return 成功true,失败false
+     */
+    public boolean push(String queue, String item, double priority, Order order) {
+        return pushAll(queue, Collections.singletonMap(item, priority), order);
+    }
+
+    /**
+     * 批量入队,一次pipeline
+     * @param queue
+     * @param items 元素 -> 优先级
+     * @param order
+     * @return
+     */
+    public boolean pushAll(String queue, Map<String, Double> items, Order order) {
+        if (items.isEmpty()) {
+            return true;
+        }
+        double aging = agingRate * (System.currentTimeMillis() - AGING_EPOCH) / 1000.0;
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getResource(queueKey(queue));
+            Pipeline pipeline = jedis.pipelined();
+            for (Map.Entry<String, Double> entry : items.entrySet()) {
+                double score = order == Order.MIN ? entry.getValue() + aging : entry.getValue() - aging;
+                pipeline.zadd(queueKey(queue), score, entry.getKey());
+            }
+            pipeline.lpush(wakeKey(queue), "1");
+            pipeline.ltrim(wakeKey(queue), 0, 0);
+            pipeline.sync();
+            return true;
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            return false;
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * 原子弹出最多n个元素
+     * @param queue
+     * @param n
+     * @param order
+     * @return 队列为空时返回空列表,异常返回null
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> pop(String queue, int n, Order order) {
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getResource(queueKey(queue));
+            return (List<String>) POP.eval(jedis, Arrays.asList(queueKey(queue), wakeKey(queue)),
+                    Arrays.asList(String.valueOf(n), order == Order.MAX ? "max" : "min"));
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            return null;
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * 阻塞弹出最多n个元素,队列为空时最长等待timeout毫秒
+     * @param queue
+     * @param n
+     * @param order
+     * @param timeout 毫秒
+     * @return 超时返回空列表
+     */
+    public List<String> blockingPop(String queue, int n, Order order, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (true) {
+            List<String> items = pop(queue, n, order);
+            if (items != null && !items.isEmpty()) {
+                return items;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return new ArrayList<>();
+            }
+            if (remaining < 1000 || items == null) {
+                // BLPOP的超时只能精确到秒;出错时短暂等待后重试
+                Thread.sleep(Math.min(remaining, 100));
+                continue;
+            }
+            Jedis jedis = null;
+            try {
+                jedis = redisRouter.getResource(wakeKey(queue));
+                jedis.blpop((int) (remaining / 1000), wakeKey(queue));
+            } catch (Exception e) {
+                log.error(e.getMessage());
+            } finally {
+                if (jedis != null) {
+                    jedis.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * 队列长度
+     * @param queue
+     * @return
+     */
+    public Long size(String queue) {
+        return redisUtils.zcard(queueKey(queue));
+    }
+
+    private static String queueKey(String queue) {
+        return "pq:{" + queue + "}";
+    }
+
+    private static String wakeKey(String queue) {
+        return "pq:{" + queue + "}:wake";
+    }
+}
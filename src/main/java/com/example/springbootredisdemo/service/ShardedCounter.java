@@ -0,0 +1,237 @@
+package com.example.springbootredisdemo.service;
+
+import com.example.springbootredisdemo.utils.RedisRouter;
+import com.example.springbootredisdemo.utils.RedisScript;
+import com.example.springbootredisdemo.utils.RedisUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.Jedis;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 分片计数器;一个计数器拆成N个子key(name:0 ~ name:N-1),每个线程固定写其中一个子key,
+ * 读时一次MGET把所有子key相加,避免单key热点
+ * 子key数量记录在name:meta中,可以在线调整;缩容时先切换写入范围再把多出的子key并入保留的子key,
+ * 读取始终覆盖历史上最大的子key范围,因此调整过程中不会丢计数
+ * 并入时优先选择同一节点(集群模式为同一槽位)上保留的子key,用脚本一次完成读取、清零和累加;
+ * 没有同节点的子key时只能跨节点搬运,先累加到目标再从原子key减去同样的值,中途失败只会多计不会少计
+ * @packname: com.example.springbootredisdemo.service
+ * @author: wzp
+ * @create: 2026-10-19 13:40
+ */
+@Service
+public class ShardedCounter {
+    private static final Logger log = LoggerFactory.getLogger(ShardedCounter.class);
+    /**
+     * 把KEYS[1]的值并入KEYS[2]并清零KEYS[1],返回并入的值
+     */
+    private static final RedisScript FOLD = new RedisScript(
+            "local v = tonumber(redis.call('GET', KEYS[1]) or '0') "
+                    + "if v ~= 0 then "
+                    + "  redis.call('INCRBY', KEYS[2], v) "
+                    + "  redis.call('DECRBY', KEYS[1], v) "
+                    + "end "
+                    + "return v");
+
+    @Autowired
+    private RedisUtils redisUtils;
+    @Autowired
+    private RedisRouter redisRouter;
+
+    @Value("${spring.redis.counter.shards:16}")
+    private int defaultShards;
+    @Value("${spring.redis.counter.max-staleness:1000}")
+    private long maxStaleness;
+
+    /**
+     * 计数器名 -> 子key数量,本地缓存max-staleness毫秒
+     */
+    private final Map<String, Meta> metas = new ConcurrentHashMap<>();
+    /**
+     * 计数器名 -> 近似值缓存
+     */
+    private final Map<String, long[]> approx = new ConcurrentHashMap<>();
+
+    /**
+     * 计数器加1
+     * @param name
+     * @return 所写子key加值后的结果,不是计数器总数
+     */
+    public Long incr(String name) {
+        return incrBy(name, 1L);
+    }
+
+    /**
+     * 计数器加上指定的值
+     * @param name
+     * @param delta
+     * @return 所写子key加值后的结果,不是计数器总数
+     */
+    public Long incrBy(String name, long delta) {
+        Meta meta = meta(name);
+        int shard = (int) (Thread.currentThread().getId() % meta.shards);
+        return redisUtils.incrBy(shardKey(name, shard), delta);
+    }
+
+    /**
+     * 精确读取计数器总数,一次MGET
+     * @param name
+     * @return 读取失败返回null,不写入近似值缓存
+     */
+    public Long get(String name) {
+        Meta meta = meta(name);
+        String[] keys = new String[meta.max];
+        for (int i = 0; i < meta.max; i++) {
+            keys[i] = shardKey(name, i);
+        }
+        List<String> values = redisUtils.mget(keys);
+        if (values == null) {
+            return null;
+        }
+        long sum = 0;
+        for (String value : values) {
+            if (value != null) {
+                sum += Long.parseLong(value);
+            }
+        }
+        approx.put(name, new long[]{sum, System.currentTimeMillis()});
+        return sum;
+    }
+
+    /**
+     * 近似读取计数器总数,结果最多落后max-staleness毫秒,适合看板类展示
+     * @param name
+     * @return 缓存过期且读取失败时返回null
+     */
+    public Long getApprox(String name) {
+        long[] cached = approx.get(name);
+        if (cached != null && System.currentTimeMillis() - cached[1] < maxStaleness) {
+            return cached[0];
+        }
+        return get(name);
+    }
+
+    /**
+     * 在线调整子key数量
+     * @param name
+     * @param shards 新的子key数量
+     */
+    public void resize(String name, int shards) {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("子key数量必须大于0");
+        }
+        Meta meta = load(name);
+        int max = Math.max(meta.max, shards);
+        redisUtils.hmset(metaKey(name), metaHash(shards, max), 0);
+        metas.put(name, new Meta(shards, max));
+        // 其他实例在本地缓存过期前仍可能写入多出的子key,读取覆盖max范围,这些写入不会丢失
+        for (int i = shards; i < meta.shards; i++) {
+            fold(shardKey(name, i), name, shards, i % shards);
+        }
+        log.info("计数器" + name + "子key数量调整为" + shards);
+    }
+
+    /**
+     * 把多出的子key并入保留的子key
+     * @param source 多出的子key
+     * @param name 计数器名
+     * @param shards 保留的子key数量
+     * @param fallback 没有同节点的子key时并入的子key序号
+     */
+    private void fold(String source, String name, int shards, int fallback) {
+        String target = colocated(source, name, shards);
+        if (target == null) {
+            String value = redisUtils.get(source, 0);
+            if (value != null && !"0".equals(value)) {
+                long delta = Long.parseLong(value);
+                if (redisUtils.incrBy(shardKey(name, fallback), delta) != null) {
+                    redisUtils.decrBy(source, delta);
+                }
+            }
+            return;
+        }
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getResource(source);
+            FOLD.eval(jedis, Arrays.asList(source, target), Collections.emptyList());
+        } catch (Exception e) {
+            log.error(e.getMessage());
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * 与source在同一节点(集群模式为同一槽位)上的保留子key
+     * @return 没有时返回null
+     */
+    private String colocated(String source, String name, int shards) {
+        for (int i = 0; i < shards; i++) {
+            String target = shardKey(name, i);
+            if (redisRouter.isCluster() ? redisRouter.isSameSlot(source, target)
+                    : !redisRouter.isSharded() || redisRouter.getNode(source).equals(redisRouter.getNode(target))) {
+                return target;
+            }
+        }
+        return null;
+    }
+
+    private Meta meta(String name) {
+        Meta meta = metas.get(name);
+        if (meta == null || System.currentTimeMillis() - meta.loadedAt > maxStaleness) {
+            meta = load(name);
+            metas.put(name, meta);
+        }
+        return meta;
+    }
+
+    private Meta load(String name) {
+        Map<String, String> hash = redisUtils.hgetall(metaKey(name), 0);
+        if (hash == null || hash.isEmpty()) {
+            redisUtils.hsetnx(metaKey(name), "shards", String.valueOf(defaultShards));
+            redisUtils.hsetnx(metaKey(name), "max", String.valueOf(defaultShards));
+            return new Meta(defaultShards, defaultShards);
+        }
+        int shards = Integer.parseInt(hash.get("shards"));
+        return new Meta(shards, Math.max(shards, Integer.parseInt(hash.getOrDefault("max", hash.get("shards")))));
+    }
+
+    private static Map<String, String> metaHash(int shards, int max) {
+        Map<String, String> hash = new HashMap<>();
+        hash.put("shards", String.valueOf(shards));
+        hash.put("max", String.valueOf(max));
+        return hash;
+    }
+
+    private static String metaKey(String name) {
+        return name + ":meta";
+    }
+
+    private static String shardKey(String name, int shard) {
+        return name + ":" + shard;
+    }
+
+    private static class Meta {
+        private final int shards;
+        private final int max;
+        private final long loadedAt = System.currentTimeMillis();
+
+        private Meta(int shards, int max) {
+            this.shards = shards;
+            this.max = max;
+        }
+    }
+}
@@ -0,0 +1,461 @@
+package com.example.springbootredisdemo.service;
+
+import com.example.springbootredisdemo.utils.RedisRouter;
+import com.example.springbootredisdemo.utils.RedisScript;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 标签倒排索引查询;每个标签一个set,查询由"全部包含/任一包含/不包含"三组标签组成
+ * 执行计划:先SCARD所有参与交集的set,有空集直接返回空结果,否则按从小到大的顺序求交集,
+ * 检查缓存和计算在同一个lua脚本中完成
+ * 中间结果(任一包含的并集)和最终结果用SUNIONSTORE/SINTERSTORE/SDIFFSTORE保存为带cache-ttl的key,
+ * 相同的查询(标签顺序无关)在过期前直接复用,不再在redis主线程上重复O(N)计算;标签变更最多在cache-ttl秒后可见
+ * 超大集合求交集可以走客户端并行:SSCAN流式读取最小的set,每批交给线程池,用pipeline SISMEMBER逐个过滤其余set,
+ * redis侧只有大量小命令,不会长时间阻塞
+ * 同一命名空间的所有key带相同的hash tag,分片/集群模式下落在同一节点
+ * @packname: com.example.springbootredisdemo.service
+ * @author: wzp
+ * @create: 2026-10-19 18:10
+ */
+@Service
+public class TagQueryEngine {
+    private static final Logger log = LoggerFactory.getLogger(TagQueryEngine.class);
+
+    /**
+     * resolve脚本的返回值:结果已缓存
+     */
+    private static final long CACHED = -1;
+    /**
+     * resolve脚本的返回值:参与交集的set不存在
+     */
+    private static final long MISSING = -2;
+    /**
+     * 检查缓存、按大小排序并求交集/差集在一个脚本中完成,避免检查与写入之间缓存key过期或标签被修改
+     * KEYS:结果key、任一包含的并集key、全部包含的标签、任一包含的标签、不包含的标签
+     * ARGV:cache-ttl、三组标签的数量
+     * 返回结果大小,或CACHED/MISSING
+     */
+    private static final RedisScript RESOLVE = new RedisScript(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then return -1 end "
+                    + "local ttl = ARGV[1] "
+                    + "local nall, nany, nnot = tonumber(ARGV[2]), tonumber(ARGV[3]), tonumber(ARGV[4]) "
+                    + "local inter, notk, anyk = {}, {}, {} "
+                    + "for i = 1, nall do inter[#inter + 1] = KEYS[2 + i] end "
+                    + "for i = 1, nany do anyk[#anyk + 1] = KEYS[2 + nall + i] end "
+                    + "for i = 1, nnot do notk[#notk + 1] = KEYS[2 + nall + nany + i] end "
+                    + "if nany > 0 then "
+                    + "  if redis.call('EXISTS', KEYS[2]) == 0 then "
+                    + "    redis.call('SUNIONSTORE', KEYS[2], unpack(anyk)) "
+                    + "    redis.call('EXPIRE', KEYS[2], ttl) "
+                    + "  end "
+                    + "  inter[#inter + 1] = KEYS[2] "
+                    + "end "
+                    + "local sizes = {} "
+                    + "for _, k in ipairs(inter) do "
+                    + "  local n = redis.call('SCARD', k) "
+                    + "  if n == 0 then return -2 end "
+                    + "  sizes[k] = n "
+                    + "end "
+                    + "table.sort(inter, function(a, b) return sizes[a] < sizes[b] end) "
+                    + "if #inter == 1 and #notk > 0 then "
+                    + "  redis.call('SDIFFSTORE', KEYS[1], inter[1], unpack(notk)) "
+                    + "else "
+                    + "  redis.call('SINTERSTORE', KEYS[1], unpack(inter)) "
+                    + "  if #notk > 0 then redis.call('SDIFFSTORE', KEYS[1], KEYS[1], unpack(notk)) end "
+                    + "end "
+                    + "redis.call('EXPIRE', KEYS[1], ttl) "
+                    + "return redis.call('SCARD', KEYS[1])");
+
+    @Autowired
+    private RedisRouter redisRouter;
+
+    @Value("${spring.redis.tags.cache-ttl:30}")
+    private int cacheTtl;
+    @Value("${spring.redis.tags.scan-count:1000}")
+    private int scanCount;
+    @Value("${spring.redis.tags.parallelism:4}")
+    private int parallelism;
+    @Value("${spring.redis.tags.client-side-threshold:0}")
+    private long clientSideThreshold;
+
+    /**
+     * 结果为空的查询key -> 本地缓存过期时间;空set在redis中无法保存,只能在本地记住
+     */
+    private final Map<String, Long> emptyUntil = new ConcurrentHashMap<>();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newFixedThreadPool(parallelism);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 给元素打标签
+     * @param namespace 命名空间
+     * @param item
+     * @param tags
+     * @return 成功true,失败false
+     */
+    public boolean tag(String namespace, String item, String... tags) {
+        return update(namespace, item, true, tags);
+    }
+
+    /**
+     * 移除元素的标签
+     * @param namespace
+     * @param item
+     * @param tags
+     * @return
+     */
+    public boolean untag(String namespace, String item, String... tags) {
+        return update(namespace, item, false, tags);
+    }
+
+    /**
+     * 查询满足条件的元素
+     * @param namespace
+     * @param query
+     * @return 异常返回null
+     */
+    public Set<String> query(String namespace, TagQuery query) {
+        if (useClientSide(namespace, query)) {
+            return intersectParallel(namespace, query.all.toArray(new String[0]));
+        }
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getResource(namespaceKey(namespace));
+            String key = resolve(jedis, namespace, query);
+            return key == null ? new HashSet<>() : jedis.smembers(key);
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            redisRouter.onException(e);
+            return null;
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * 统计满足条件的元素个数
+     * @param namespace
+     * @param query
+     * @return 异常返回null
+     */
+    public Long count(String namespace, TagQuery query) {
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getResource(namespaceKey(namespace));
+            String key = resolve(jedis, namespace, query);
+            return key == null ? 0L : jedis.scard(key);
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            redisRouter.onException(e);
+            return null;
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * 客户端并行求交集:SSCAN最小的set,每批在线程池中依次用其余set过滤
+     * @param namespace
+     * @param tags 没有传入标签时返回空集合
+     * @return 异常返回null
+     */
+    public Set<String> intersectParallel(String namespace, String... tags) {
+        if (tags.length == 0) {
+            return new HashSet<>();
+        }
+        List<String> keys = new ArrayList<>();
+        for (String tag : tags) {
+            keys.add(tagKey(namespace, tag));
+        }
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getReadResource(namespaceKey(namespace));
+            if (!sortBySize(jedis, keys)) {
+                return new HashSet<>();
+            }
+            List<String> others = keys.subList(1, keys.size());
+            List<Future<List<String>>> futures = new ArrayList<>();
+            ScanParams params = new ScanParams().count(scanCount);
+            String cursor = ScanParams.SCAN_POINTER_START;
+            do {
+                ScanResult<String> scan = jedis.sscan(keys.get(0), cursor, params);
+                List<String> batch = scan.getResult();
+                if (!batch.isEmpty()) {
+                    futures.add(executor.submit(() -> filter(namespace, batch, others)));
+                }
+                cursor = scan.getStringCursor();
+            } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+            // SSCAN在遍历期间集合被修改时可能返回重复元素,结果用set去重
+            Set<String> res = new HashSet<>();
+            for (Future<List<String>> future : futures) {
+                res.addAll(future.get());
+            }
+            return res;
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            redisRouter.onException(e);
+            return null;
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * 缓存命中情况
+     * @return
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("cacheHits", cacheHits.get());
+        stats.put("cacheMisses", cacheMisses.get());
+        return stats;
+    }
+
+    /**
+     * 计算查询结果并保存为缓存key,已有缓存时直接返回
+     * @return 结果key,结果为空时返回null
+     */
+    private String resolve(Jedis jedis, String namespace, TagQuery query) {
+        if (query.all.isEmpty() && query.any.isEmpty()) {
+            throw new IllegalArgumentException("查询至少需要一个包含条件");
+        }
+        String canonical = query.canonical();
+        String cacheKey = queryKey(namespace, canonical);
+        long now = System.currentTimeMillis();
+        Long empty = emptyUntil.get(cacheKey);
+        if (empty != null && empty > now) {
+            cacheHits.incrementAndGet();
+            return null;
+        }
+        List<String> keys = new ArrayList<>();
+        keys.add(cacheKey);
+        keys.add(queryKey(namespace, "any=" + String.join(",", query.any)));
+        for (String tag : query.all) {
+            keys.add(tagKey(namespace, tag));
+        }
+        for (String tag : query.any) {
+            keys.add(tagKey(namespace, tag));
+        }
+        for (String tag : query.not) {
+            keys.add(tagKey(namespace, tag));
+        }
+        long size = (Long) RESOLVE.eval(jedis, keys, Arrays.asList(String.valueOf(cacheTtl),
+                String.valueOf(query.all.size()), String.valueOf(query.any.size()), String.valueOf(query.not.size())));
+        if (size == CACHED) {
+            cacheHits.incrementAndGet();
+            return cacheKey;
+        }
+        cacheMisses.incrementAndGet();
+        if (size == MISSING) {
+            // 某个参与交集的标签不存在,可能正在写入,不在本地记住空结果
+            return null;
+        }
+        if (size == 0) {
+            markEmpty(cacheKey, now);
+            return null;
+        }
+        return cacheKey;
+    }
+
+    /**
+     * 一次pipeline取得各set的大小并按从小到大排序
+     * @return 存在空集时返回false
+     */
+    private boolean sortBySize(Jedis jedis, List<String> keys) {
+        Pipeline pipeline = jedis.pipelined();
+        Map<String, Response<Long>> sizes = new LinkedHashMap<>();
+        for (String key : keys) {
+            sizes.put(key, pipeline.scard(key));
+        }
+        pipeline.sync();
+        for (Response<Long> size : sizes.values()) {
+            if (size.get() == 0) {
+                return false;
+            }
+        }
+        keys.sort(Comparator.comparing(key -> sizes.get(key).get()));
+        return true;
+    }
+
+    private List<String> filter(String namespace, List<String> candidates, List<String> others) {
+        List<String> res = candidates;
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getReadResource(namespaceKey(namespace));
+            for (String other : others) {
+                if (res.isEmpty()) {
+                    break;
+                }
+                Pipeline pipeline = jedis.pipelined();
+                List<Response<Boolean>> hits = new ArrayList<>(res.size());
+                for (String candidate : res) {
+                    hits.add(pipeline.sismember(other, candidate));
+                }
+                pipeline.sync();
+                List<String> kept = new ArrayList<>();
+                for (int i = 0; i < res.size(); i++) {
+                    if (hits.get(i).get()) {
+                        kept.add(res.get(i));
+                    }
+                }
+                res = kept;
+            }
+            return res;
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    private boolean useClientSide(String namespace, TagQuery query) {
+        if (clientSideThreshold <= 0 || query.all.size() < 2 || !query.any.isEmpty() || !query.not.isEmpty()) {
+            return false;
+        }
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getReadResource(namespaceKey(namespace));
+            long smallest = Long.MAX_VALUE;
+            for (String tag : query.all) {
+                smallest = Math.min(smallest, jedis.scard(tagKey(namespace, tag)));
+            }
+            return smallest > clientSideThreshold;
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            return false;
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    private boolean update(String namespace, String item, boolean add, String... tags) {
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getResource(namespaceKey(namespace));
+            Pipeline pipeline = jedis.pipelined();
+            for (String tag : tags) {
+                if (add) {
+                    pipeline.sadd(tagKey(namespace, tag), item);
+                } else {
+                    pipeline.srem(tagKey(namespace, tag), item);
+                }
+            }
+            pipeline.sync();
+            return true;
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            redisRouter.onException(e);
+            return false;
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    private void markEmpty(String cacheKey, long now) {
+        if (emptyUntil.size() > 1000) {
+            emptyUntil.entrySet().removeIf(entry -> entry.getValue() <= now);
+        }
+        emptyUntil.put(cacheKey, now + cacheTtl * 1000L);
+    }
+
+    private static String namespaceKey(String namespace) {
+        return "tags:{" + namespace + "}";
+    }
+
+    private static String tagKey(String namespace, String tag) {
+        return "tags:{" + namespace + "}:t:" + tag;
+    }
+
+    private static String queryKey(String namespace, String canonical) {
+        return "tags:{" + namespace + "}:q:" + canonical;
+    }
+
+    /**
+     * 标签查询:all中的标签全部包含 且 any中的标签至少包含一个 且 not中的标签都不包含
+     */
+    public static class TagQuery {
+        private final Set<String> all = new TreeSet<>();
+        private final Set<String> any = new TreeSet<>();
+        private final Set<String> not = new TreeSet<>();
+
+        public static TagQuery create() {
+            return new TagQuery();
+        }
+
+        public TagQuery all(String... tags) {
+            all.addAll(Arrays.asList(tags));
+            return this;
+        }
+
+        public TagQuery any(String... tags) {
+            any.addAll(Arrays.asList(tags));
+            return this;
+        }
+
+        public TagQuery not(String... tags) {
+            not.addAll(Arrays.asList(tags));
+            return this;
+        }
+
+        /**
+         * 与标签顺序无关的查询标识,作为缓存key
+         */
+        private String canonical() {
+            return "all=" + String.join(",", all) + "|any=" + String.join(",", any)
+                    + "|not=" + String.join(",", not);
+        }
+
+        @Override
+        public String toString() {
+            return canonical();
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package com.example.springbootredisdemo.service;
+
+import com.example.springbootredisdemo.utils.RedisRouter;
+import com.example.springbootredisdemo.utils.RedisUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 时序数据存储;原始数据按小时分桶写入zset(score为时间戳),后台按1分钟/1小时/1天三级逐级汇总,
+ * 汇总点记录count/sum/min/max,可以继续向上合并
+ * 每一级有独立的保留时间:整桶过期依靠PEXPIREAT,跨越保留边界的桶用ZREMRANGEBYSCORE裁剪
+ * 查询时在保留时间覆盖查询起点、步长不超过查询区间、点数不超过预算的分辨率中选最粗的一级,读取的点数最少
+ * 同一指标的所有key带相同的hash tag,分片/集群模式下落在同一节点,可以用一条pipeline读写
+ * @packname: com.example.springbootredisdemo.service
+ * @author: wzp
+ * @create: 2026-10-19 16:10
+ */
+@Service
+public class TimeSeriesStore {
+    private static final Logger log = LoggerFactory.getLogger(TimeSeriesStore.class);
+    private static final String METRICS_KEY = "ts:metrics";
+
+    @Autowired
+    private RedisRouter redisRouter;
+    @Autowired
+    private RedisUtils redisUtils;
+
+    @Value("${spring.redis.timeseries.rollup-interval:10000}")
+    private long rollupInterval;
+    @Value("${spring.redis.timeseries.rollup-lag:5000}")
+    private long rollupLag;
+    @Value("${spring.redis.timeseries.rollup-batch:1440}")
+    private int rollupBatch;
+    @Value("${spring.redis.timeseries.raw-retention:86400000}")
+    private long rawRetention;
+    @Value("${spring.redis.timeseries.minute-retention:604800000}")
+    private long minuteRetention;
+    @Value("${spring.redis.timeseries.hour-retention:7776000000}")
+    private long hourRetention;
+    @Value("${spring.redis.timeseries.day-retention:157680000000}")
+    private long dayRetention;
+
+    /**
+     * 本实例已登记过的指标,避免每次写入都SADD
+     */
+    private final Set<String> registered = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * 分辨率
+     */
+    public enum Resolution {
+        /**
+         * 原始数据,按秒级上报估算点数,每小时一个桶
+         */
+        RAW(1000L, 3600000L),
+        /**
+         * 1分钟汇总,每天一个桶
+         */
+        MINUTE(60000L, 86400000L),
+        /**
+         * 1小时汇总,每30天一个桶
+         */
+        HOUR(3600000L, 30 * 86400000L),
+        /**
+         * 1天汇总,每365天一个桶
+         */
+        DAY(86400000L, 365 * 86400000L);
+
+        private final long step;
+        private final long span;
+
+        Resolution(long step, long span) {
+            this.step = step;
+            this.span = span;
+        }
+
+        public long getStep() {
+            return step;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(this::rollupAll, rollupInterval, rollupInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 写入一个原始数据点
+     * @param metric 指标名
+     * @param timestamp 毫秒时间戳
+     * @param value
+     * @return 成功true,失败false
+     */
+    public boolean add(String metric, long timestamp, double value) {
+        return addAll(metric, Collections.singletonMap(timestamp, value));
+    }
+
+    /**
+     * 批量写入原始数据点,一次pipeline
+     * 同一毫秒内值相同的点会合并为一个
+     * @param metric
+     * @param points 毫秒时间戳 -> 值
+     * @return
+     */
+    public boolean addAll(String metric, Map<Long, Double> points) {
+        if (points.isEmpty()) {
+            return true;
+        }
+        register(metric);
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getResource(metaKey(metric));
+            Pipeline pipeline = jedis.pipelined();
+            for (Map.Entry<Long, Double> point : points.entrySet()) {
+                long timestamp = point.getKey();
+                String key = bucketKey(metric, Resolution.RAW, timestamp);
+                pipeline.zadd(key, timestamp, timestamp + ":" + point.getValue());
+                pipeline.pexpireAt(key, expireAt(Resolution.RAW, timestamp));
+            }
+            pipeline.sync();
+            return true;
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            return false;
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * 按点数预算查询,自动选择分辨率
+     * @param metric
+     * @param from 起始毫秒时间戳(含)
+     * @param to 结束毫秒时间戳(含)
+     * @param maxPoints 最多返回的点数
+     * @return
+     */
+    public List<Point> query(String metric, long from, long to, int maxPoints) {
+        return query(metric, choose(from, to, maxPoints), from, to);
+    }
+
+    /**
+     * 按指定分辨率查询,每个桶一条ZRANGEBYSCORE,同一pipeline发送
+     * @param metric
+     * @param resolution
+     * @param from
+     * @param to
+     * @return 按时间升序,异常返回null
+     */
+    public List<Point> query(String metric, Resolution resolution, long from, long to) {
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getReadResource(metaKey(metric));
+            Pipeline pipeline = jedis.pipelined();
+            List<Response<Set<String>>> responses = new ArrayList<>();
+            for (long bucket = bucketStart(resolution, from); bucket <= to; bucket += resolution.span) {
+                responses.add(pipeline.zrangeByScore(bucketKey(metric, resolution, bucket), from, to));
+            }
+            pipeline.sync();
+            List<Point> points = new ArrayList<>();
+            for (Response<Set<String>> response : responses) {
+                for (String member : response.get()) {
+                    points.add(Point.parse(resolution, member));
+                }
+            }
+            return points;
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            return null;
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * 选择分辨率:保留时间覆盖查询起点、步长不超过查询区间且点数不超过预算的最粗一级,
+     * 查询区间短于1秒或点数预算过小时,分别退回最细或最粗一级
+     * 汇总级别要等rollup-lag和上一级汇总完成后才有最近的数据
+     * @param from
+     * @param to
+     * @param maxPoints
+     * @return
+     */
+    public Resolution choose(long from, long to, int maxPoints) {
+        long now = System.currentTimeMillis();
+        Resolution[] resolutions = Resolution.values();
+        for (int i = resolutions.length - 1; i >= 0; i--) {
+            Resolution resolution = resolutions[i];
+            if (from < now - retention(resolution) || to - from + 1 < resolution.step) {
+                continue;
+            }
+            if ((to - from) / resolution.step + 1 <= maxPoints) {
+                return resolution;
+            }
+        }
+        return to - from + 1 < Resolution.RAW.step ? Resolution.RAW : Resolution.DAY;
+    }
+
+    /**
+     * 对所有已登记的指标执行一轮汇总与保留裁剪
+     */
+    public void rollupAll() {
+        Set<String> metrics = redisUtils.smembers(METRICS_KEY);
+        if (metrics == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (String metric : metrics) {
+            for (Resolution target : Resolution.values()) {
+                if (target != Resolution.RAW) {
+                    rollup(metric, target, now);
+                }
+            }
+            trim(metric, now);
+        }
+    }
+
+    /**
+     * 把上一级已完结的区间汇总到target级
+     * 水位线记录在元数据hash中,只推进到上一级已完成的位置(原始数据为now减rollup-lag,汇总级别为其水位线),
+     * 写入全部成功后才推进,失败的区间下一轮重新汇总;汇总结果按时间戳先删后写,重复执行(包括多个实例同时执行)结果不变
+     * @param metric
+     * @param target
+     * @param now
+     */
+    private void rollup(String metric, Resolution target, long now) {
+        Resolution source = Resolution.values()[target.ordinal() - 1];
+        long step = target.step;
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getResource(metaKey(metric));
+            String watermark = jedis.hget(metaKey(metric), target.name());
+            long start = watermark != null ? Long.parseLong(watermark) : (now - retention(source)) / step * step;
+            long end = Math.min((now - rollupLag) / step * step, start + step * rollupBatch);
+            if (source != Resolution.RAW) {
+                String done = jedis.hget(metaKey(metric), source.name());
+                if (done == null) {
+                    return;
+                }
+                end = Math.min(end, Long.parseLong(done) / step * step);
+            }
+            if (start >= end) {
+                return;
+            }
+            TreeMap<Long, Point> rolled = new TreeMap<>();
+            List<Point> points = query(metric, source, start, end - 1);
+            if (points == null) {
+                return;
+            }
+            for (Point point : points) {
+                long timestamp = point.timestamp / step * step;
+                Point merged = rolled.get(timestamp);
+                rolled.put(timestamp, merged == null ? point.at(timestamp) : merged.merge(point));
+            }
+            Pipeline pipeline = jedis.pipelined();
+            List<Response<Long>> responses = new ArrayList<>();
+            for (Point point : rolled.values()) {
+                String key = bucketKey(metric, target, point.timestamp);
+                responses.add(pipeline.zremrangeByScore(key, point.timestamp, point.timestamp));
+                responses.add(pipeline.zadd(key, point.timestamp, point.toMember()));
+                responses.add(pipeline.pexpireAt(key, expireAt(target, point.timestamp)));
+            }
+            pipeline.sync();
+            for (Response<Long> response : responses) {
+                // 命令出错时get抛出异常,不推进水位线
+                response.get();
+            }
+            jedis.hset(metaKey(metric), target.name(), String.valueOf(end));
+        } catch (Exception e) {
+            log.error(e.getMessage());
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * 裁剪各级跨越保留边界的桶,更早的桶已经通过PEXPIREAT整体过期
+     * @param metric
+     * @param now
+     */
+    private void trim(String metric, long now) {
+        for (Resolution resolution : Resolution.values()) {
+            long cutoff = now - retention(resolution);
+            redisUtils.zremrangeByScore(bucketKey(metric, resolution, cutoff), 0, cutoff);
+        }
+    }
+
+    private void register(String metric) {
+        if (registered.add(metric) && redisUtils.sadd(METRICS_KEY, metric) == null) {
+            registered.remove(metric);
+        }
+    }
+
+    private long retention(Resolution resolution) {
+        switch (resolution) {
+            case RAW:
+                return rawRetention;
+            case MINUTE:
+                return minuteRetention;
+            case HOUR:
+                return hourRetention;
+            default:
+                return dayRetention;
+        }
+    }
+
+    private long expireAt(Resolution resolution, long timestamp) {
+        return bucketStart(resolution, timestamp) + resolution.span + retention(resolution);
+    }
+
+    private static long bucketStart(Resolution resolution, long timestamp) {
+        return timestamp / resolution.span * resolution.span;
+    }
+
+    private static String bucketKey(String metric, Resolution resolution, long timestamp) {
+        return "ts:{" + metric + "}:" + resolution.name().toLowerCase() + ":" + bucketStart(resolution, timestamp);
+    }
+
+    private static String metaKey(String metric) {
+        return "ts:{" + metric + "}:meta";
+    }
+
+    /**
+     * 数据点;原始数据的count为1,sum/min/max都等于原始值
+     */
+    public static class Point {
+        private final long timestamp;
+        private final long count;
+        private final double sum;
+        private final double min;
+        private final double max;
+
+        public Point(long timestamp, long count, double sum, double min, double max) {
+            this.timestamp = timestamp;
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+        }
+
+        private static Point parse(Resolution resolution, String member) {
+            String[] parts = member.split(":");
+            long timestamp = Long.parseLong(parts[0]);
+            if (resolution == Resolution.RAW) {
+                double value = Double.parseDouble(parts[1]);
+                return new Point(timestamp, 1, value, value, value);
+            }
+            return new Point(timestamp, Long.parseLong(parts[1]), Double.parseDouble(parts[2]),
+                    Double.parseDouble(parts[3]), Double.parseDouble(parts[4]));
+        }
+
+        private Point at(long timestamp) {
+            return new Point(timestamp, count, sum, min, max);
+        }
+
+        private Point merge(Point other) {
+            return new Point(timestamp, count + other.count, sum + other.sum,
+                    Math.min(min, other.min), Math.max(max, other.max));
+        }
+
+        private String toMember() {
+            return timestamp + ":" + count + ":" + sum + ":" + min + ":" + max;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getSum() {
+            return sum;
+        }
+
+        public double getMin() {
+            return min;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        public double getAvg() {
+            return count == 0 ? 0 : sum / count;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.springbootredisdemo.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 一类负载的隔离舱;限制同时占用redis连接的调用数,名额用尽时按策略排队或直接拒绝
+ * 排队按先来先得,等待时间不超过max-wait和请求deadline的剩余时间,排队数超过max-queue时直接拒绝
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-19 23:00
+ */
+public class Bulkhead {
+
+    /**
+     * 名额用尽时的处理
+     */
+    public enum Policy {
+        /**
+         * 排队等待
+         */
+        WAIT,
+        /**
+         * 直接拒绝
+         */
+        FAIL_FAST
+    }
+
+    private final String name;
+    private final int maxConcurrent;
+    private final long maxWait;
+    private final int maxQueue;
+    private final Policy policy;
+    private final Semaphore permits;
+
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waited = new LongAdder();
+    private final LongAdder waitTotalMicros = new LongAdder();
+    private final AtomicLong waitMaxMicros = new AtomicLong();
+
+    public Bulkhead(String name, int maxConcurrent, long maxWait, int maxQueue, Policy policy) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxWait = maxWait;
+        this.maxQueue = maxQueue;
+        this.policy = policy;
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获取名额
+     * @throws RedisRejectedException 名额用尽且不能排队,或排队超时
+     */
+    public void acquire() {
+        if (permits.tryAcquire()) {
+            acquired.increment();
+            return;
+        }
+        if (policy == Policy.FAIL_FAST || waiting.get() >= maxQueue) {
+            reject();
+        }
+        long timeout = Math.min(maxWait, Deadline.remaining());
+        long start = System.nanoTime();
+        waiting.incrementAndGet();
+        boolean ok = false;
+        try {
+            ok = timeout > 0 && permits.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            waiting.decrementAndGet();
+        }
+        long micros = (System.nanoTime() - start) / 1000;
+        waited.increment();
+        waitTotalMicros.add(micros);
+        waitMaxMicros.accumulateAndGet(micros, Math::max);
+        RedisTrace.onBulkheadWait(micros);
+        if (!ok) {
+            reject();
+        }
+        acquired.increment();
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    /**
+     * 名额使用情况、排队和拒绝次数
+     * @return
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("policy", policy);
+        stats.put("maxConcurrent", maxConcurrent);
+        stats.put("active", maxConcurrent - permits.availablePermits());
+        stats.put("waiting", waiting.get());
+        stats.put("acquired", acquired.sum());
+        stats.put("rejected", rejected.sum());
+        long count = waited.sum();
+        stats.put("waitAvgMicros", count == 0 ? 0 : waitTotalMicros.sum() / count);
+        stats.put("waitMaxMicros", waitMaxMicros.get());
+        return stats;
+    }
+
+    private void reject() {
+        rejected.increment();
+        throw new RedisRejectedException("redis隔离舱" + name + "已满");
+    }
+}
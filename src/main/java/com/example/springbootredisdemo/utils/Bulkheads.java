@@ -0,0 +1,165 @@
+package com.example.springbootredisdemo.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 按负载类型划分的redis隔离舱,默认interactive、batch、admin三类,各自配置名额、排队策略和命令
+ * RedisUtils的方法按方法名归类(spring.redis.bulkhead.<name>.commands),未配置的方法归入默认类型;
+ * 业务代码也可以用call/run指定隔离舱,期间调用的RedisUtils方法都计入该隔离舱,不再按方法名归类
+ * 同一线程嵌套调用只占用最外层的名额;call/run不能嵌套进入另一个隔离舱(持有一个名额等待另一个名额可能互相等待),
+ * 嵌套进入同一个隔离舱时直接执行;各隔离舱名额之和应不超过连接池的max-active,
+ * 这样慢的批量命令最多占用batch的名额,interactive始终有连接可用
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-19 23:00
+ */
+@Component
+public class Bulkheads {
+    private static final Logger log = LoggerFactory.getLogger(Bulkheads.class);
+    private static final ThreadLocal<Bulkhead> CURRENT = new ThreadLocal<>();
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${spring.redis.bulkhead.enabled:true}")
+    private boolean enabled;
+    @Value("${spring.redis.bulkhead.names:interactive,batch,admin}")
+    private String[] names;
+    @Value("${spring.redis.bulkhead.default:interactive}")
+    private String defaultName;
+
+    private final Map<String, Bulkhead> bulkheads = new LinkedHashMap<>();
+    private final Map<String, Bulkhead> commands = new HashMap<>();
+
+    /**
+     * 可能抛出任意异常的操作,供切面透传原方法的异常
+     */
+    public interface Action<T> {
+        T run() throws Throwable;
+    }
+
+    @PostConstruct
+    public void init() {
+        for (String name : names) {
+            name = name.trim();
+            String prefix = "spring.redis.bulkhead." + name + ".";
+            Bulkhead bulkhead = new Bulkhead(name,
+                    environment.getProperty(prefix + "max-concurrent", Integer.class, 64),
+                    environment.getProperty(prefix + "max-wait", Long.class, 100L),
+                    environment.getProperty(prefix + "max-queue", Integer.class, 1000),
+                    Bulkhead.Policy.valueOf(environment.getProperty(prefix + "policy", "WAIT").trim()));
+            bulkheads.put(name, bulkhead);
+            for (String command : StringUtils.commaDelimitedListToSet(environment.getProperty(prefix + "commands", ""))) {
+                if (!command.trim().isEmpty()) {
+                    commands.put(command.trim(), bulkhead);
+                }
+            }
+        }
+        if (!bulkheads.containsKey(defaultName)) {
+            throw new IllegalStateException("默认隔离舱不存在：" + defaultName);
+        }
+        log.info("redis隔离舱：" + bulkheads.keySet());
+    }
+
+    /**
+     * 在指定隔离舱中执行
+     * @param name 隔离舱名
+     * @param action
+     * @return
+     * @throws RedisRejectedException 隔离舱已满
+     * @throws IllegalStateException 当前线程已在另一个隔离舱中执行
+     */
+    public <T> T call(String name, Supplier<T> action) {
+        Bulkhead bulkhead = bulkheads.get(name);
+        if (bulkhead == null) {
+            throw new IllegalArgumentException("未知的隔离舱：" + name);
+        }
+        Bulkhead current = CURRENT.get();
+        if (enabled && current != null && current != bulkhead) {
+            throw new IllegalStateException("已在隔离舱" + current.getName() + "中执行,不能嵌套进入隔离舱" + name);
+        }
+        try {
+            return invoke(bulkhead, action::get);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void run(String name, Runnable action) {
+        call(name, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * 按RedisUtils方法名执行,由切面调用
+     * @param command 方法名
+     * @param action
+     * @return
+     * @throws Throwable
+     */
+    public <T> T invokeCommand(String command, Action<T> action) throws Throwable {
+        if (CURRENT.get() != null) {
+            return action.run();
+        }
+        return invoke(commands.getOrDefault(command, bulkheads.get(defaultName)), action);
+    }
+
+    /**
+     * 各隔离舱名额之和,连接池不小于该值时一个隔离舱占满名额也不会让其他隔离舱等不到连接;未启用时为0
+     * @return
+     */
+    public int getTotalQuota() {
+        if (!enabled) {
+            return 0;
+        }
+        int total = 0;
+        for (Bulkhead bulkhead : bulkheads.values()) {
+            total += bulkhead.getMaxConcurrent();
+        }
+        return total;
+    }
+
+    /**
+     * 各隔离舱指标
+     * @return
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Bulkhead bulkhead : bulkheads.values()) {
+            stats.put(bulkhead.getName(), bulkhead.getStats());
+        }
+        return stats;
+    }
+
+    private <T> T invoke(Bulkhead bulkhead, Action<T> action) throws Throwable {
+        if (!enabled || CURRENT.get() != null) {
+            return action.run();
+        }
+        bulkhead.acquire();
+        CURRENT.set(bulkhead);
+        try {
+            return action.run();
+        } finally {
+            CURRENT.remove();
+            bulkhead.release();
+        }
+    }
+}
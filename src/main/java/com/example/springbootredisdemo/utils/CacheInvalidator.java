@@ -0,0 +1,374 @@
+package com.example.springbootredisdemo.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.SafeEncoder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 实体变更驱动的缓存失效;JPA实体监听器和MyBatis拦截器把变更的实体交给这里,
+ * 按注册的解析函数换算成缓存key,在事务内只收集,事务提交后一次性失效,回滚则丢弃
+ * 失效按key所在节点分组,每个节点一条pipeline;集群模式下再按槽位分组,每组最多batch-size个key合并为一次lua UNLINK
+ * (当前客户端没有UNLINK方法),大value在redis后台线程释放;脚本在每个节点只加载一次,redis不支持UNLINK时退回DEL
+ * 连接通过RedisRouter.getResource获取,经过节点健康检查、熔断器和deadline
+ * refresh-ahead:key匹配注册的刷新前缀时不删除,而是在线程池中重新加载,用SET XX EX覆盖,
+ * 只刷新当前仍在缓存中的key,加载期间被删除的key不会被写回;刷新完成前读到的是旧值
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-19 20:50
+ */
+@Component
+public class CacheInvalidator {
+    private static final Logger log = LoggerFactory.getLogger(CacheInvalidator.class);
+    private static final RedisScript UNLINK = new RedisScript("return redis.call('UNLINK', unpack(KEYS))");
+    private static final byte[] XX = SafeEncoder.encode("XX");
+    private static final byte[] EX = SafeEncoder.encode("EX");
+
+    @Autowired
+    private RedisRouter redisRouter;
+
+    @Value("${spring.redis.invalidation.refresh-ahead:false}")
+    private boolean refreshAhead;
+    @Value("${spring.redis.invalidation.refresh-expire:3600}")
+    private int refreshExpire;
+    @Value("${spring.redis.invalidation.refresh-threads:2}")
+    private int refreshThreads;
+    @Value("${spring.redis.invalidation.batch-size:500}")
+    private int batchSize;
+
+    private final Map<Class<?>, Function<Object, Collection<String>>> resolvers = new ConcurrentHashMap<>();
+    /**
+     * MyBatis mapper全限定名 -> 主键到缓存key的换算
+     */
+    private final Map<String, Function<Object, Collection<String>>> idResolvers = new ConcurrentHashMap<>();
+    private final List<Refresher> refreshers = new CopyOnWriteArrayList<>();
+    private ExecutorService refreshExecutor;
+    /**
+     * 已加载UNLINK脚本的节点;节点重启或SCRIPT FLUSH后收到NOSCRIPT时移除,下次重新加载
+     */
+    private final Set<String> scriptLoaded = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder refreshed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder latencyTotal = new LongAdder();
+    private final AtomicLong latencyMax = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        refreshExecutor = Executors.newFixedThreadPool(refreshThreads);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        refreshExecutor.shutdown();
+    }
+
+    /**
+     * 注册实体类型到缓存key的换算,子类实体沿用父类的注册
+     * @param type
+     * @param resolver
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void register(Class<T> type, Function<T, Collection<String>> resolver) {
+        resolvers.put(type, entity -> resolver.apply((T) entity));
+    }
+
+    /**
+     * 注册MyBatis mapper的主键到缓存key的换算,用于deleteById(Long)这类参数只有主键、没有实体的语句;
+     * 未注册的mapper中这类语句不会触发失效
+     * @param mapper mapper接口
+     * @param resolver 语句的每个简单类型参数(Long、String等)都会传入,多参数语句中的非主键参数需自行忽略(返回空集合)
+     */
+    public void registerMapper(Class<?> mapper, Function<Object, Collection<String>> resolver) {
+        idResolvers.put(mapper.getName(), resolver);
+    }
+
+    /**
+     * 注册refresh-ahead加载函数,以prefix开头的key变更后重新加载而不是删除
+     * @param prefix
+     * @param loader 根据key加载新值(序列化后的字节),返回null时删除该key
+     */
+    public void registerRefresher(String prefix, Function<String, byte[]> loader) {
+        refreshers.add(new Refresher(prefix, loader));
+    }
+
+    /**
+     * MyBatis语句按主键修改或删除了实体
+     * @param statement 语句id,即mapper全限定名.方法名
+     * @param id
+     */
+    public void idChanged(String statement, Object id) {
+        if (id == null) {
+            return;
+        }
+        int dot = statement.lastIndexOf('.');
+        Function<Object, Collection<String>> resolver = dot > 0 ? idResolvers.get(statement.substring(0, dot)) : null;
+        if (resolver != null) {
+            invalidate(resolver.apply(id));
+        }
+    }
+
+    /**
+     * 实体发生了新增/修改/删除
+     * @param entity
+     */
+    public void entityChanged(Object entity) {
+        if (entity == null) {
+            return;
+        }
+        for (Class<?> type = entity.getClass(); type != null; type = type.getSuperclass()) {
+            Function<Object, Collection<String>> resolver = resolvers.get(type);
+            if (resolver != null) {
+                invalidate(resolver.apply(entity));
+                return;
+            }
+        }
+    }
+
+    /**
+     * 失效一批key;处于事务中时推迟到提交之后
+     * @param keys
+     */
+    @SuppressWarnings("unchecked")
+    public void invalidate(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evict(keys);
+            return;
+        }
+        Set<String> pending = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            Set<String> batch = new LinkedHashSet<>();
+            pending = batch;
+            TransactionSynchronizationManager.bindResource(this, batch);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(CacheInvalidator.this);
+                    if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                        evict(batch);
+                    }
+                }
+            });
+        }
+        pending.addAll(keys);
+    }
+
+    /**
+     * 失效指标;latencyAvgMillis/latencyMaxMillis为提交后发起失效到删除完成的时间
+     * @return
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("batches", batches.sum());
+        stats.put("evicted", evicted.sum());
+        stats.put("refreshed", refreshed.sum());
+        stats.put("failed", failed.sum());
+        long count = batches.sum();
+        stats.put("latencyAvgMillis", count == 0 ? 0 : latencyTotal.sum() / count);
+        stats.put("latencyMaxMillis", latencyMax.get());
+        return stats;
+    }
+
+    private void evict(Collection<String> keys) {
+        long start = System.currentTimeMillis();
+        Map<String, Map<Integer, List<String>>> groups = new LinkedHashMap<>();
+        boolean cluster = redisRouter.isCluster();
+        for (String key : keys) {
+            Refresher refresher = refreshAhead ? refresher(key) : null;
+            if (refresher != null) {
+                refreshExecutor.execute(() -> refresh(refresher, key));
+            } else {
+                groups.computeIfAbsent(redisRouter.nodeOf(key), k -> new LinkedHashMap<>())
+                        .computeIfAbsent(cluster ? JedisClusterCRC16.getSlot(key) : 0, k -> new ArrayList<>())
+                        .add(key);
+            }
+        }
+        for (Map.Entry<String, Map<Integer, List<String>>> entry : groups.entrySet()) {
+            unlink(entry.getKey(), batches(entry.getValue().values()));
+        }
+        long latency = System.currentTimeMillis() - start;
+        batches.increment();
+        latencyTotal.add(latency);
+        latencyMax.accumulateAndGet(latency, Math::max);
+    }
+
+    /**
+     * 同一槽位的key按batch-size切分,每批一次UNLINK/DEL
+     */
+    private List<List<String>> batches(Collection<List<String>> slots) {
+        List<List<String>> batches = new ArrayList<>();
+        for (List<String> keys : slots) {
+            for (int i = 0; i < keys.size(); i += batchSize) {
+                batches.add(keys.subList(i, Math.min(i + batchSize, keys.size())));
+            }
+        }
+        return batches;
+    }
+
+    private void unlink(String node, List<List<String>> batches) {
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getResource(batches.get(0).get(0));
+            if (!scriptLoaded.contains(node)) {
+                UNLINK.load(jedis);
+                scriptLoaded.add(node);
+            }
+            Pipeline pipeline = jedis.pipelined();
+            List<Response<Object>> responses = new ArrayList<>(batches.size());
+            for (List<String> batch : batches) {
+                responses.add(UNLINK.evalsha(pipeline, batch, Collections.emptyList()));
+            }
+            pipeline.sync();
+            // pipeline.sync不抛出单条命令的错误(如redis版本不支持UNLINK、脚本缓存被清空),逐条检查后对失败的批次改用DEL
+            List<List<String>> retry = new ArrayList<>();
+            int done = 0;
+            for (int i = 0; i < batches.size(); i++) {
+                try {
+                    responses.get(i).get();
+                    done += batches.get(i).size();
+                } catch (JedisDataException e) {
+                    if (e.getMessage() != null && e.getMessage().startsWith("NOSCRIPT")) {
+                        scriptLoaded.remove(node);
+                    }
+                    retry.add(batches.get(i));
+                }
+            }
+            evicted.add(done);
+            if (!retry.isEmpty()) {
+                log.error("UNLINK失败" + retry.size() + "批key,改用DEL");
+                RedisUtils.returnResource(null, jedis);
+                jedis = null;
+                del(retry);
+            }
+        } catch (Exception e) {
+            log.error("UNLINK失败,改用DEL：" + e.getMessage());
+            redisRouter.onException(e);
+            RedisUtils.returnResource(null, jedis);
+            jedis = null;
+            del(batches);
+        } finally {
+            RedisUtils.returnResource(null, jedis);
+        }
+    }
+
+    /**
+     * 每批一条DEL,批内的key属于同一节点的同一槽位
+     */
+    private void del(List<List<String>> batches) {
+        Jedis jedis = null;
+        int total = 0;
+        for (List<String> batch : batches) {
+            total += batch.size();
+        }
+        try {
+            jedis = redisRouter.getResource(batches.get(0).get(0));
+            Pipeline pipeline = jedis.pipelined();
+            List<Response<Long>> responses = new ArrayList<>(batches.size());
+            for (List<String> batch : batches) {
+                responses.add(pipeline.del(batch.toArray(new String[0])));
+            }
+            pipeline.sync();
+            int errors = 0;
+            for (int i = 0; i < batches.size(); i++) {
+                try {
+                    responses.get(i).get();
+                } catch (JedisDataException e) {
+                    errors += batches.get(i).size();
+                    log.error("缓存失效失败：" + batches.get(i) + "," + e.getMessage());
+                    redisRouter.onException(e);
+                }
+            }
+            evicted.add(total - errors);
+            failed.add(errors);
+        } catch (Exception e) {
+            failed.add(total);
+            log.error("缓存失效失败：" + e.getMessage());
+            redisRouter.onException(e);
+        } finally {
+            RedisUtils.returnResource(null, jedis);
+        }
+    }
+
+    /**
+     * 重新加载并覆盖;SET XX保证加载期间被删除或过期的key不会被写回
+     */
+    private void refresh(Refresher refresher, String key) {
+        byte[] raw = SafeEncoder.encode(key);
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getResource(key);
+            if (!jedis.exists(raw)) {
+                return;
+            }
+            byte[] value = refresher.loader.apply(key);
+            if (value == null) {
+                jedis.del(raw);
+            } else {
+                jedis.set(raw, value, XX, EX, refreshExpire);
+            }
+            refreshed.increment();
+        } catch (Exception e) {
+            log.error("缓存刷新失败,删除该key：" + e.getMessage());
+            redisRouter.onException(e);
+            RedisUtils.returnResource(null, jedis);
+            jedis = null;
+            del(Collections.singletonList(Collections.singletonList(key)));
+        } finally {
+            RedisUtils.returnResource(null, jedis);
+        }
+    }
+
+    private Refresher refresher(String key) {
+        for (Refresher refresher : refreshers) {
+            if (key.startsWith(refresher.prefix)) {
+                return refresher;
+            }
+        }
+        return null;
+    }
+
+    private static class Refresher {
+        private final String prefix;
+        private final Function<String, byte[]> loader;
+
+        private Refresher(String prefix, Function<String, byte[]> loader) {
+            this.prefix = prefix;
+            this.loader = loader;
+        }
+    }
+}
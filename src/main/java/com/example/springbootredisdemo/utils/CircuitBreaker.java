@@ -0,0 +1,203 @@
+package com.example.springbootredisdemo.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 连接池熔断器;按秒分桶统计最近window秒的调用数、失败数和慢调用数,
+ * 调用数达到min-calls且失败率或慢调用率超过阈值时打开,打开期间借连接直接失败;
+ * 打开open-millis后半开,放行half-open-calls次试探调用,全部成功(或半开持续open-millis没有失败)后关闭,试探中有失败则重新打开
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-19 22:20
+ */
+public class CircuitBreaker {
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int minCalls;
+    private final double failureRate;
+    private final double slowRate;
+    private final long slowMillis;
+    private final long openMillis;
+    private final int halfOpenCalls;
+
+    private final long[] seconds;
+    private final long[] calls;
+    private final long[] failures;
+    private final long[] slow;
+
+    private State state = State.CLOSED;
+    private long changedAt = System.currentTimeMillis();
+    private int trialCalls;
+    private int trialSuccesses;
+    private long rejected;
+    private final Map<State, Long> transitions = new EnumMap<>(State.class);
+
+    public CircuitBreaker(String name, int windowSeconds, int minCalls, double failureRate, double slowRate,
+                          long slowMillis, long openMillis, int halfOpenCalls) {
+        this.name = name;
+        this.minCalls = minCalls;
+        this.failureRate = failureRate;
+        this.slowRate = slowRate;
+        this.slowMillis = slowMillis;
+        this.openMillis = openMillis;
+        this.halfOpenCalls = halfOpenCalls;
+        this.seconds = new long[windowSeconds];
+        this.calls = new long[windowSeconds];
+        this.failures = new long[windowSeconds];
+        this.slow = new long[windowSeconds];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 借连接前调用
+     * @throws RedisRejectedException 熔断器打开或半开的试探名额已用完
+     */
+    public synchronized void acquire() {
+        long now = System.currentTimeMillis();
+        if (state == State.OPEN) {
+            if (now - changedAt < openMillis) {
+                reject();
+            }
+            transition(State.HALF_OPEN, now);
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialCalls >= halfOpenCalls) {
+                if (now - changedAt < openMillis) {
+                    reject();
+                }
+                transition(State.CLOSED, now);
+            } else {
+                trialCalls++;
+            }
+        }
+        calls[bucket(now)]++;
+    }
+
+    /**
+     * 调用成功
+     * @param millis 借出到归还的耗时
+     */
+    public synchronized void onSuccess(long millis) {
+        long now = System.currentTimeMillis();
+        if (state == State.HALF_OPEN) {
+            if (++trialSuccesses >= halfOpenCalls) {
+                transition(State.CLOSED, now);
+            }
+            return;
+        }
+        if (millis >= slowMillis) {
+            slow[bucket(now)]++;
+            evaluate(now);
+        }
+    }
+
+    /**
+     * 调用发生连接异常或超时
+     */
+    public synchronized void onFailure() {
+        long now = System.currentTimeMillis();
+        if (state == State.HALF_OPEN) {
+            transition(State.OPEN, now);
+            return;
+        }
+        failures[bucket(now)]++;
+        evaluate(now);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * 当前状态、窗口内的统计和各状态的切换次数
+     * @return
+     */
+    public synchronized Map<String, Object> getStats() {
+        long now = System.currentTimeMillis();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", state);
+        stats.put("sinceMillis", now - changedAt);
+        stats.put("calls", sum(calls, now));
+        stats.put("failures", sum(failures, now));
+        stats.put("slow", sum(slow, now));
+        stats.put("rejected", rejected);
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (State target : State.values()) {
+            counts.put(target.name(), transitions.getOrDefault(target, 0L));
+        }
+        stats.put("transitions", counts);
+        return stats;
+    }
+
+    private void evaluate(long now) {
+        if (state != State.CLOSED) {
+            return;
+        }
+        long total = sum(calls, now);
+        if (total < minCalls) {
+            return;
+        }
+        if (sum(failures, now) >= total * failureRate || sum(slow, now) >= total * slowRate) {
+            transition(State.OPEN, now);
+        }
+    }
+
+    private void reject() {
+        rejected++;
+        throw new RedisRejectedException("redis熔断器" + name + "已打开");
+    }
+
+    private void transition(State target, long now) {
+        log.warn("redis熔断器" + name + "：" + state + " -> " + target);
+        state = target;
+        changedAt = now;
+        trialCalls = 0;
+        trialSuccesses = 0;
+        transitions.merge(target, 1L, Long::sum);
+        if (target == State.CLOSED) {
+            Arrays.fill(seconds, 0);
+        }
+    }
+
+    /**
+     * 当前秒对应的桶,桶中是window秒之前的数据时先清零
+     */
+    private int bucket(long now) {
+        long second = now / 1000;
+        int index = (int) (second % seconds.length);
+        if (seconds[index] != second) {
+            seconds[index] = second;
+            calls[index] = 0;
+            failures[index] = 0;
+            slow[index] = 0;
+        }
+        return index;
+    }
+
+    private long sum(long[] counters, long now) {
+        long second = now / 1000;
+        long total = 0;
+        for (int i = 0; i < seconds.length; i++) {
+            if (second - seconds[i] < seconds.length) {
+                total += counters[i];
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.springbootredisdemo.utils;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 当前线程最近一次命令收到的集群重定向(MOVED/ASK);RedisRouter.onException记录,
+ * RedirectRetryAspect在RedisUtils方法返回后取出并重试一次;ASK重试期间该槽位的连接改为目标节点并先发送ASKING
+ * 收到重定向的命令没有在服务端执行,重试不会重复写入
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-20 10:30
+ */
+public final class ClusterRedirect {
+    private static final ThreadLocal<ClusterRedirect> PENDING = new ThreadLocal<>();
+    private static final ThreadLocal<ClusterRedirect> ASKING = new ThreadLocal<>();
+
+    private final int slot;
+    private final String node;
+    private final boolean ask;
+    /**
+     * 同一次方法调用中收到的重定向次数,多于一次时不重试
+     */
+    private int count = 1;
+
+    private ClusterRedirect(int slot, String node, boolean ask) {
+        this.slot = slot;
+        this.node = node;
+        this.ask = ask;
+    }
+
+    static void record(int slot, String node, boolean ask) {
+        ClusterRedirect pending = PENDING.get();
+        if (pending == null) {
+            PENDING.set(new ClusterRedirect(slot, node, ask));
+        } else {
+            pending.count++;
+        }
+    }
+
+    /**
+     * 清除未取出的重定向,在方法调用前执行
+     */
+    public static void clear() {
+        PENDING.remove();
+    }
+
+    /**
+     * 取出本次调用收到的重定向
+     * @return 没有重定向或收到多次重定向时返回null
+     */
+    public static ClusterRedirect take() {
+        ClusterRedirect pending = PENDING.get();
+        PENDING.remove();
+        return pending == null || pending.count > 1 ? null : pending;
+    }
+
+    /**
+     * 在ASK重试期间执行
+     * @param action
+     * @return
+     * @throws Throwable
+     */
+    public Object asking(Bulkheads.Action<Object> action) throws Throwable {
+        ASKING.set(this);
+        try {
+            return action.run();
+        } finally {
+            ASKING.remove();
+        }
+    }
+
+    /**
+     * 当前线程正在进行的ASK重试
+     * @return
+     */
+    static ClusterRedirect currentAsking() {
+        return ASKING.get();
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    public boolean isAsk() {
+        return ask;
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.springbootredisdemo.utils;
+
+import redis.clients.util.Hashing;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 一致性哈希环,每个真实节点映射为多个虚拟节点;
+ * key中包含{tag}时只对tag部分取hash,保证同一tag的key落在同一个节点上
+ * 非线程安全,修改时先copy再整体替换
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-19 09:12
+ */
+public class ConsistentHash<T> {
+    private final Hashing hashing = Hashing.MURMUR_HASH;
+    private final int virtualNodes;
+    private final TreeMap<Long, T> ring = new TreeMap<>();
+    private final Set<T> nodes = new LinkedHashSet<>();
+
+    public ConsistentHash(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+    }
+
+    public ConsistentHash(int virtualNodes, Collection<T> nodes) {
+        this(virtualNodes);
+        for (T node : nodes) {
+            add(node);
+        }
+    }
+
+    /**
+     * 添加节点
+     * @param node
+     */
+    public void add(T node) {
+        if (!nodes.add(node)) {
+            return;
+        }
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.put(hashing.hash("SHARD-" + node + "-NODE-" + i), node);
+        }
+    }
+
+    /**
+     * 移除节点
+     * @param node
+     */
+    public void remove(T node) {
+        if (!nodes.remove(node)) {
+            return;
+        }
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.remove(hashing.hash("SHARD-" + node + "-NODE-" + i));
+        }
+    }
+
+    /**
+     * 获取key所在的节点
+     * @param key
+     * @return 环为空时返回null
+     */
+    public T get(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        SortedMap<Long, T> tail = ring.tailMap(hashing.hash(hashTag(key)));
+        if (tail.isEmpty()) {
+            return ring.firstEntry().getValue();
+        }
+        return tail.get(tail.firstKey());
+    }
+
+    public Set<T> getNodes() {
+        return new LinkedHashSet<>(nodes);
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    /**
+     * 复制一份哈希环,用于扩容时计算新的分布
+     * @return
+     */
+    public ConsistentHash<T> copy() {
+        ConsistentHash<T> copy = new ConsistentHash<>(virtualNodes);
+        copy.nodes.addAll(nodes);
+        for (Map.Entry<Long, T> entry : ring.entrySet()) {
+            copy.ring.put(entry.getKey(), entry.getValue());
+        }
+        return copy;
+    }
+
+    /**
+     * 取key中{}包裹的部分,没有或为空时返回key本身
+     * @param key
+     * @return
+     */
+    public static String hashTag(String key) {
+        int start = key.indexOf('{');
+        if (start >= 0) {
+            int end = key.indexOf('}', start + 1);
+            if (end > start + 1) {
+                return key.substring(start + 1, end);
+            }
+        }
+        return key;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.springbootredisdemo.utils;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 当前线程的deadline;http请求开始时设置,之后的redis命令用剩余时间作为socket超时,
+ * 已超过deadline的命令直接拒绝;没有设置时不限制
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-19 22:20
+ */
+public final class Deadline {
+    private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<>();
+
+    private Deadline() {
+    }
+
+    /**
+     * 设置deadline
+     * @param budgetMillis 从现在起的可用时间(毫秒)
+     */
+    public static void begin(long budgetMillis) {
+        DEADLINE.set(System.currentTimeMillis() + budgetMillis);
+    }
+
+    public static void end() {
+        DEADLINE.remove();
+    }
+
+    /**
+     * 剩余时间(毫秒)
+     * @return 没有设置deadline时返回Long.MAX_VALUE
+     */
+    public static long remaining() {
+        Long deadline = DEADLINE.get();
+        return deadline == null ? Long.MAX_VALUE : deadline - System.currentTimeMillis();
+    }
+
+    /**
+     * 已超过deadline时抛出异常
+     */
+    public static void check() {
+        if (remaining() <= 0) {
+            throw new RedisRejectedException("已超过请求deadline");
+        }
+    }
+}
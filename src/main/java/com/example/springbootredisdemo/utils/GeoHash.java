@@ -0,0 +1,93 @@
+package com.example.springbootredisdemo.utils;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: geohash编码及距离计算;距离采用与redis相同的地球半径,结果与GEODIST一致
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-19 19:10
+ */
+public final class GeoHash {
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+    private static final double EARTH_RADIUS = 6372797.560856;
+
+    private GeoHash() {
+    }
+
+    /**
+     * 计算坐标所在格子的geohash
+     * @param latitude
+     * @param longitude
+     * @param precision 字符数,6位约1.2km x 0.6km
+     * @return
+     */
+    public static String encode(double latitude, double longitude, int precision) {
+        double[] lat = {-90, 90};
+        double[] lon = {-180, 180};
+        StringBuilder sb = new StringBuilder(precision);
+        boolean even = true;
+        int bit = 0;
+        int ch = 0;
+        while (sb.length() < precision) {
+            double[] range = even ? lon : lat;
+            double value = even ? longitude : latitude;
+            double mid = (range[0] + range[1]) / 2;
+            ch <<= 1;
+            if (value >= mid) {
+                ch |= 1;
+                range[0] = mid;
+            } else {
+                range[1] = mid;
+            }
+            even = !even;
+            if (++bit == 5) {
+                sb.append(BASE32.charAt(ch));
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 解码geohash格子的范围
+     * @param hash
+     * @return {最小纬度, 最大纬度, 最小经度, 最大经度}
+     */
+    public static double[] bounds(String hash) {
+        double[] lat = {-90, 90};
+        double[] lon = {-180, 180};
+        boolean even = true;
+        for (int i = 0; i < hash.length(); i++) {
+            int ch = BASE32.indexOf(hash.charAt(i));
+            for (int mask = 16; mask > 0; mask >>= 1) {
+                double[] range = even ? lon : lat;
+                double mid = (range[0] + range[1]) / 2;
+                if ((ch & mask) != 0) {
+                    range[0] = mid;
+                } else {
+                    range[1] = mid;
+                }
+                even = !even;
+            }
+        }
+        return new double[]{lat[0], lat[1], lon[0], lon[1]};
+    }
+
+    /**
+     * 两个坐标之间的球面距离(米)
+     * @param lat1
+     * @param lon1
+     * @param lat2
+     * @param lon2
+     * @return
+     */
+    public static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.sqrt(a));
+    }
+}
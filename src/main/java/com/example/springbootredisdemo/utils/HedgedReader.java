@@ -0,0 +1,252 @@
+package com.example.springbootredisdemo.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 对冲读;开启从库读路由时,读命令在调用线程中发往主库,超过最近读耗时的p95仍未返回时由后台线程向从库发送一次同样的读,
+ * 从库先返回时关闭主库连接的输入端让调用线程立即返回从库的结果,该主库连接不再归还连接池;主库先返回时取消尚未发出的对冲读
+ * 主库连接在调用线程中借出,熔断器和调用追踪照常统计;对冲读在后台线程中借从库连接,读己之写按调用线程的最后写入时间判断
+ * 只用于幂等的读命令;没有可用从库或未开启时直接在调用线程中执行
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-19 22:40
+ */
+@Component
+public class HedgedReader {
+    private static final Logger log = LoggerFactory.getLogger(HedgedReader.class);
+    private static final int SAMPLES = 1024;
+    private static final int RUNNING = 0;
+    private static final int PRIMARY_DONE = 1;
+    private static final int HEDGE_WON = 2;
+
+    @Autowired
+    private RedisRouter redisRouter;
+    @Autowired
+    private ReplicaRouter replicaRouter;
+
+    @Value("${spring.redis.hedge.enabled:false}")
+    private boolean enabled;
+    @Value("${spring.redis.hedge.min-delay:2}")
+    private long minDelay;
+    @Value("${spring.redis.hedge.threads:16}")
+    private int threads;
+
+    private ScheduledExecutorService scheduler;
+    /**
+     * 最近的读耗时(微秒)环形缓冲,p95每满一轮重新计算
+     */
+    private final long[] samples = new long[SAMPLES];
+    private int sampleIndex;
+    private volatile long p95Micros = -1;
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        if (enabled) {
+            scheduler = Executors.newScheduledThreadPool(threads);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 执行读命令
+     * @param key 用于选择连接
+     * @param indexdb
+     * @param action 读命令
+     * @return
+     */
+    public <T> T read(String key, int indexdb, Function<Jedis, T> action) throws Exception {
+        if (!enabled || !replicaRouter.isEnabled() || redisRouter.isSharded() || redisRouter.isCluster()) {
+            return execute(redisRouter.getReadResource(key), indexdb, action);
+        }
+        reads.increment();
+        long start = System.nanoTime();
+        Jedis primary = redisRouter.getPrimaryResource(key);
+        Hedge<T> hedge = null;
+        if (p95Micros >= 0) {
+            hedge = new Hedge<>(primary, indexdb, action, ReadYourWrites.lastWrite(), Deadline.remaining());
+            hedge.scheduled = scheduler.schedule(hedge, Math.max(minDelay * 1000, p95Micros), TimeUnit.MICROSECONDS);
+        }
+        T res;
+        try {
+            primary.select(indexdb);
+            res = action.apply(primary);
+        } catch (RuntimeException e) {
+            if (hedge != null && !hedge.primaryDone()) {
+                // 连接被对冲读关闭,不计入熔断器
+                RedisCall.clear();
+                RedisUtils.returnResource(null, primary);
+                record((System.nanoTime() - start) / 1000);
+                return hedge.value;
+            }
+            if (e instanceof JedisConnectionException) {
+                RedisCall.failed();
+            }
+            RedisUtils.returnResource(null, primary);
+            throw e;
+        }
+        if (hedge != null && !hedge.primaryDone()) {
+            // 主库已返回,但对冲读同时完成并关闭了连接的输入端,让连接标记为损坏后由连接池销毁
+            RedisCall.clear();
+            discard(primary);
+        }
+        RedisUtils.returnResource(null, primary);
+        record((System.nanoTime() - start) / 1000);
+        return res;
+    }
+
+    /**
+     * 对冲次数及对冲读先返回的次数
+     * @return
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("reads", reads.sum());
+        stats.put("hedged", hedged.sum());
+        stats.put("hedgeWins", hedgeWins.sum());
+        stats.put("p95Micros", p95Micros);
+        return stats;
+    }
+
+    /**
+     * 在当前线程中执行并归还连接;连接异常在归还前计入熔断器
+     */
+    private <T> T execute(Jedis jedis, int indexdb, Function<Jedis, T> action) {
+        try {
+            if (!redisRouter.isCluster()) {
+                jedis.select(indexdb);
+            }
+            return action.apply(jedis);
+        } catch (JedisConnectionException e) {
+            RedisCall.failed();
+            throw e;
+        } finally {
+            RedisUtils.returnResource(null, jedis);
+        }
+    }
+
+    private static void discard(Jedis jedis) {
+        try {
+            jedis.getClient().getOne();
+        } catch (JedisConnectionException e) {
+            // 预期的结果:读到输入端关闭,连接被标记为损坏
+        }
+    }
+
+    /**
+     * deadline是线程变量,在线程池中执行前按调用线程的剩余时间重新设置
+     */
+    private static <T> T withDeadline(long remaining, Supplier<T> supplier) {
+        if (remaining != Long.MAX_VALUE) {
+            Deadline.begin(remaining);
+        }
+        try {
+            return supplier.get();
+        } finally {
+            Deadline.end();
+        }
+    }
+
+    private synchronized void record(long micros) {
+        samples[sampleIndex++] = micros;
+        if (sampleIndex == SAMPLES) {
+            long[] sorted = samples.clone();
+            Arrays.sort(sorted);
+            p95Micros = sorted[SAMPLES * 95 / 100];
+            sampleIndex = 0;
+        }
+    }
+
+    /**
+     * 延迟执行的从库读;主库和对冲读谁先把state从RUNNING改掉谁的结果生效
+     */
+    private final class Hedge<T> implements Runnable {
+        private final Jedis primary;
+        private final int indexdb;
+        private final Function<Jedis, T> action;
+        private final Long lastWrite;
+        private final long remaining;
+        private final AtomicInteger state = new AtomicInteger(RUNNING);
+        private volatile ScheduledFuture<?> scheduled;
+        private volatile T value;
+
+        private Hedge(Jedis primary, int indexdb, Function<Jedis, T> action, Long lastWrite, long remaining) {
+            this.primary = primary;
+            this.indexdb = indexdb;
+            this.action = action;
+            this.lastWrite = lastWrite;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public void run() {
+            if (state.get() != RUNNING) {
+                return;
+            }
+            try {
+                value = withDeadline(remaining, () -> {
+                    Jedis replica = redisRouter.getReplicaResource(lastWrite);
+                    if (replica == null) {
+                        throw new RedisRejectedException("没有可用的从库");
+                    }
+                    hedged.increment();
+                    return execute(replica, indexdb, action);
+                });
+            } catch (Exception e) {
+                return;
+            }
+            if (state.compareAndSet(RUNNING, HEDGE_WON)) {
+                hedgeWins.increment();
+                try {
+                    primary.getClient().getSocket().shutdownInput();
+                } catch (IOException | RuntimeException e) {
+                    log.error("关闭主库连接失败：" + e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * 主库读结束(成功或失败)
+         * @return 对冲读还没有生效;返回false时value为对冲读的结果
+         */
+        private boolean primaryDone() {
+            if (state.compareAndSet(RUNNING, PRIMARY_DONE)) {
+                scheduled.cancel(false);
+                return true;
+            }
+            return false;
+        }
+    }
+}
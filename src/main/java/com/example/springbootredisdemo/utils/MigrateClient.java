@@ -0,0 +1,72 @@
+package com.example.springbootredisdemo.utils;
+
+import org.springframework.util.StringUtils;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Protocol;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 执行MIGRATE的独立连接;Jedis 2.9的migrate不支持COPY、REPLACE和AUTH选项,这里直接发送原始命令
+ * 需要redis 4.0.7及以上(AUTH选项)
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-19 10:05
+ */
+class MigrateClient extends Client {
+    private final String password;
+    private int db = -1;
+
+    MigrateClient(String node, String password, int timeout) {
+        super(node.substring(0, node.lastIndexOf(':')), Integer.parseInt(node.substring(node.lastIndexOf(':') + 1)));
+        this.password = password;
+        setConnectionTimeout(timeout);
+        setSoTimeout(timeout);
+        if (!StringUtils.isEmpty(password)) {
+            auth(password);
+            getStatusCodeReply();
+        }
+    }
+
+    /**
+     * MIGRATE host port key db timeout [COPY] [REPLACE] [AUTH password]
+     * 不带REPLACE时目标已有同名key会抛出BUSYKEY错误,目标上的值保持不变
+     * @param host 目标节点
+     * @param port
+     * @param key
+     * @param db 源库和目标库
+     * @param timeout 毫秒
+     * @param copy 为true时保留源节点上的key
+     * @param replace 为true时覆盖目标上的同名key
+     * @return OK或NOKEY(key已不存在)
+     */
+    String migrate(String host, int port, String key, int db, int timeout, boolean copy, boolean replace) {
+        if (this.db != db) {
+            select(db);
+            getStatusCodeReply();
+            this.db = db;
+        }
+        List<byte[]> args = new ArrayList<>();
+        args.add(SafeEncoder.encode(host));
+        args.add(Protocol.toByteArray(port));
+        args.add(SafeEncoder.encode(key));
+        args.add(Protocol.toByteArray(db));
+        args.add(Protocol.toByteArray(timeout));
+        if (copy) {
+            args.add(SafeEncoder.encode("COPY"));
+        }
+        if (replace) {
+            args.add(SafeEncoder.encode("REPLACE"));
+        }
+        if (!StringUtils.isEmpty(password)) {
+            args.add(SafeEncoder.encode("AUTH"));
+            args.add(SafeEncoder.encode(password));
+        }
+        sendCommand(Protocol.Command.MIGRATE, args.toArray(new byte[0][]));
+        return getStatusCodeReply();
+    }
+}
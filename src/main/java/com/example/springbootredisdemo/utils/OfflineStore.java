@@ -0,0 +1,740 @@
+package com.example.springbootredisdemo.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: redis不可用时的本地降级存储
+ * 读缓存:固定数量、固定大小的槽位组成的内存映射文件,保存最近写入的字符串key(开启cache-reads时也保存读到的值及其剩余过期时间),
+ * 槽位用尽时淘汰最久未访问的key,重启后从文件重建索引(访问顺序不保留);超过槽位大小的value不缓存
+ * 缓存的更新和失效先进入有界队列,由后台线程写入映射文件,不占用调用线程;队列满时整个缓存作废,降级读取前先处理完队列
+ * 写日志:降级期间的SET/SETEX/DEL追加到journal文件,每条记录带长度和CRC32,启动时截掉写到一半的末尾记录,节点恢复后由RedisHealth的恢复回调按顺序回放写入该节点的记录,回放完成才切回redis,其他节点的记录留在journal中;
+ * 回放以本实例的写入为准,会覆盖降级期间其他实例直接写入redis的同名key;逐条检查回放结果,
+ * 出错的记录(集群重定向、OOM等)在该key没有更新的成功写入时留在journal中,并保持降级,下次恢复时重试
+ * 默认关闭;开启时需把spring.redis.offline.dir配置为绝对路径,避免随工作目录写到不可预期的位置
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-19 22:00
+ */
+@Component
+public class OfflineStore {
+    private static final Logger log = LoggerFactory.getLogger(OfflineStore.class);
+    /**
+     * 槽位头部:使用标记(byte) 库(int) key长度(int) 过期时间点(long) value长度(int)
+     */
+    private static final int SLOT_HEADER = 1 + 4 + 4 + 8 + 4;
+    /**
+     * journal记录头部:内容长度(int) 内容的CRC32(int)
+     */
+    private static final int RECORD_HEADER = 4 + 4;
+    static final byte OP_SET = 1;
+    static final byte OP_DEL = 2;
+
+    @Autowired
+    private RedisRouter redisRouter;
+    @Autowired
+    private RedisHealth redisHealth;
+
+    @Value("${spring.redis.offline.enabled:false}")
+    private boolean enabled;
+    @Value("${spring.redis.offline.dir:}")
+    private String dir;
+    @Value("${spring.redis.offline.slots:65536}")
+    private int slots;
+    @Value("${spring.redis.offline.slot-size:1024}")
+    private int slotSize;
+    @Value("${spring.redis.offline.max-journal-size:268435456}")
+    private long maxJournalSize;
+    @Value("${spring.redis.offline.replay-batch-size:500}")
+    private int replayBatchSize;
+    @Value("${spring.redis.offline.cache-reads:false}")
+    private boolean cacheReads;
+    @Value("${spring.redis.offline.update-queue-size:10000}")
+    private int updateQueueSize;
+
+    private FileChannel cacheChannel;
+    private MappedByteBuffer cache;
+    /**
+     * 库:key -> 槽位,按访问顺序排列
+     */
+    private final LinkedHashMap<String, Integer> index = new LinkedHashMap<>(16, 0.75f, true);
+    private final Deque<Integer> free = new ArrayDeque<>();
+    private FileChannel journal;
+    private final Object journalLock = new Object();
+    private BlockingQueue<Update> updates;
+    private Thread updater;
+    /**
+     * 作废整个缓存时加一,之前入队的更新不再写入
+     */
+    private final AtomicLong generation = new AtomicLong();
+    private long appliedGeneration;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong journaled = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        if (dir == null || dir.trim().isEmpty() || !Paths.get(dir.trim()).isAbsolute()) {
+            throw new IllegalStateException("开启redis降级存储时spring.redis.offline.dir需配置为绝对路径：" + dir);
+        }
+        dir = dir.trim();
+        Path path = Paths.get(dir);
+        Files.createDirectories(path);
+        cacheChannel = FileChannel.open(path.resolve("cache.dat"), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        cache = cacheChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) slots * slotSize);
+        load();
+        journal = FileChannel.open(path.resolve("journal.log"), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long valid = validLength(journal.map(FileChannel.MapMode.READ_ONLY, 0, journal.size()));
+        if (valid < journal.size()) {
+            log.error("降级写入journal末尾有" + (journal.size() - valid) + "字节不完整的记录(写入时进程退出),已截掉");
+            journal.truncate(valid);
+        }
+        journal.position(valid);
+        redisHealth.onRecover(this::replay);
+        updates = new ArrayBlockingQueue<>(updateQueueSize);
+        updater = new Thread(this::drainLoop, "redis-offline-cache");
+        updater.setDaemon(true);
+        updater.start();
+        log.info("redis降级存储已加载,缓存key数：" + index.size() + ",待回放写入：" + journal.size() + "字节");
+    }
+
+    @PreDestroy
+    public void destroy() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        updater.interrupt();
+        synchronized (this) {
+            flush();
+            cache.force();
+            cacheChannel.close();
+        }
+        synchronized (journalLock) {
+            journal.force(true);
+            journal.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 是否缓存读到的值,默认只缓存写入的值
+     */
+    public boolean isCacheReads() {
+        return enabled && cacheReads;
+    }
+
+    /**
+     * 读取本地缓存的值
+     * @param indexdb
+     * @param key
+     * @return 不存在或已过期返回null
+     */
+    public synchronized String get(int indexdb, String key) {
+        flush();
+        Integer slot = index.get(indexKey(indexdb, key));
+        if (slot == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        Slot entry = readSlot(slotBuffer(slot));
+        if (entry == null || entry.expired(System.currentTimeMillis())) {
+            release(indexKey(indexdb, key));
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return new String(entry.value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 记录写入redis的值,value为null时删除;异步写入本地缓存
+     * @param indexdb
+     * @param key
+     * @param value
+     * @param seconds 过期时间(秒),0表示不过期
+     */
+    public void put(int indexdb, String key, String value, int seconds) {
+        if (!enabled || key == null) {
+            return;
+        }
+        enqueue(new Update(indexdb, key, value, seconds > 0 ? System.currentTimeMillis() + seconds * 1000L : -1,
+                generation.get()));
+    }
+
+    /**
+     * 记录从redis读到的值,未开启cache-reads时忽略
+     * @param indexdb
+     * @param key
+     * @param value
+     * @param pttl 同时读到的PTTL(毫秒),-1表示不过期,-2表示key不存在
+     */
+    public void cacheRead(int indexdb, String key, String value, long pttl) {
+        if (!isCacheReads() || key == null) {
+            return;
+        }
+        enqueue(new Update(indexdb, key, pttl == -2 ? null : value,
+                pttl >= 0 ? System.currentTimeMillis() + pttl : -1, generation.get()));
+    }
+
+    /**
+     * 删除本地缓存的值;RedisUtils修改key的方法执行后都会调用
+     * @param indexdb
+     * @param key
+     */
+    public void remove(int indexdb, String key) {
+        if (!enabled || key == null) {
+            return;
+        }
+        enqueue(new Update(indexdb, key, null, -1, generation.get()));
+    }
+
+    /**
+     * 作废整个本地缓存,用于FLUSHDB等无法逐个失效的修改
+     */
+    public void removeAll() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * 降级期间的写入:更新本地缓存并记入journal
+     * @param indexdb
+     * @param key
+     * @param value
+     * @param seconds 过期时间(秒),0表示不过期
+     * @return 已记入journal返回true;redis已恢复或journal已满返回false,调用方应直接写redis
+     */
+    public boolean set(int indexdb, String key, String value, int seconds) {
+        if (!enabled) {
+            return false;
+        }
+        long expireAt = seconds > 0 ? System.currentTimeMillis() + seconds * 1000L : -1;
+        boolean res = append(new JournalRecord(OP_SET, indexdb, key, expireAt, value));
+        if (res) {
+            synchronized (this) {
+                flush();
+                store(indexdb, key, value, expireAt);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * 降级期间的删除
+     * @param indexdb
+     * @param key
+     * @return 同set
+     */
+    public boolean del(int indexdb, String key) {
+        if (!enabled) {
+            return false;
+        }
+        boolean res = append(new JournalRecord(OP_DEL, indexdb, key, -1, ""));
+        if (res) {
+            synchronized (this) {
+                flush();
+                release(indexKey(indexdb, key));
+            }
+        }
+        return res;
+    }
+
+    /**
+     * 降级存储指标
+     * @return
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        synchronized (this) {
+            stats.put("cachedKeys", index.size());
+        }
+        stats.put("pendingUpdates", updates == null ? 0 : updates.size());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("journaled", journaled.get());
+        stats.put("replayed", replayed.get());
+        return stats;
+    }
+
+    private boolean append(JournalRecord journalRecord) {
+        String key = journalRecord.key;
+        ByteBuffer record = encode(journalRecord);
+        boolean[] res = {false};
+        // 在RedisHealth中该节点的锁内写入,回放完成切回redis之后不会再有该节点的写入进入journal
+        redisHealth.whileDown(node(journalRecord), () -> {
+            synchronized (journalLock) {
+                try {
+                    if (journal.size() + record.remaining() > maxJournalSize) {
+                        log.error("降级写入journal已满,丢弃写入：" + key);
+                        return;
+                    }
+                    while (record.hasRemaining()) {
+                        journal.write(record);
+                    }
+                    journaled.incrementAndGet();
+                    res[0] = true;
+                } catch (IOException e) {
+                    log.error("降级写入journal失败：" + e.getMessage());
+                }
+            }
+        });
+        return res[0];
+    }
+
+    /**
+     * 按顺序把journal中写入该节点的记录回放到redis,其他节点的记录写入新journal后替换原文件;
+     * 回放出错的记录留在新journal中;连接失败或有记录出错时抛出异常,保持降级
+     * @param node 恢复的节点
+     */
+    private void replay(String node) {
+        synchronized (journalLock) {
+            try {
+                long size = journal.size();
+                if (size == 0) {
+                    return;
+                }
+                MappedByteBuffer buffer = journal.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                List<JournalRecord> batch = new ArrayList<>();
+                List<JournalRecord> failed = new ArrayList<>();
+                // key -> 该节点journal中这个key的最后一条记录;只有它出错时才需要保留,之前的写入都会被它覆盖
+                Map<String, JournalRecord> latest = new HashMap<>();
+                Path path = Paths.get(dir);
+                Path rest = path.resolve("journal.log.tmp");
+                long replayedBytes = 0;
+                try (FileChannel kept = FileChannel.open(rest, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    int start = buffer.position();
+                    JournalRecord record;
+                    while ((record = decode(buffer)) != null) {
+                        if (!node.equals(node(record))) {
+                            ByteBuffer bytes = buffer.duplicate();
+                            bytes.position(start);
+                            bytes.limit(buffer.position());
+                            while (bytes.hasRemaining()) {
+                                kept.write(bytes);
+                            }
+                        } else {
+                            replayedBytes += buffer.position() - start;
+                            batch.add(record);
+                            latest.put(record.indexdb + ":" + record.key, record);
+                            if (batch.size() >= replayBatchSize) {
+                                failed.addAll(apply(batch));
+                                batch.clear();
+                            }
+                        }
+                        start = buffer.position();
+                    }
+                    failed.addAll(apply(batch));
+                    failed.removeIf(f -> latest.get(f.indexdb + ":" + f.key) != f);
+                    for (JournalRecord f : failed) {
+                        ByteBuffer bytes = encode(f);
+                        while (bytes.hasRemaining()) {
+                            kept.write(bytes);
+                        }
+                    }
+                    kept.force(true);
+                }
+                if (replayedBytes == 0) {
+                    Files.delete(rest);
+                    return;
+                }
+                journal.close();
+                Files.move(rest, path.resolve("journal.log"), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                journal = FileChannel.open(path.resolve("journal.log"), StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+                journal.position(journal.size());
+                if (!failed.isEmpty()) {
+                    throw new IllegalStateException("降级期间写入" + node + "的数据有" + failed.size()
+                            + "条回放失败,已留在journal中,保持降级");
+                }
+                log.info("降级期间写入" + node + "的数据已回放到redis：" + replayedBytes + "字节,剩余" + journal.size() + "字节");
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * 记录的key所在节点在RedisHealth中的名字
+     */
+    private String node(JournalRecord record) {
+        return redisRouter.healthNode(redisRouter.dbKey(record.key, record.indexdb));
+    }
+
+    /**
+     * 按节点分组通过pipeline回放,同一key总在同一节点,各key的写入顺序不变
+     * pipeline.sync不抛出单条命令的错误,逐条检查;连接失败时抛出异常
+     * @return 出错的记录
+     */
+    private List<JournalRecord> apply(List<JournalRecord> records) {
+        List<JournalRecord> failed = new ArrayList<>();
+        Map<String, List<JournalRecord>> groups = new LinkedHashMap<>();
+        for (JournalRecord record : records) {
+            String key = redisRouter.dbKey(record.key, record.indexdb);
+            groups.computeIfAbsent(redisRouter.nodeOf(key), k -> new ArrayList<>()).add(record);
+        }
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, List<JournalRecord>> entry : groups.entrySet()) {
+            Jedis jedis = null;
+            try {
+                // 回放在节点切回可用之前进行,不检查节点健康
+                jedis = redisRouter.getRecoveringNodeResource(entry.getKey(), 0);
+                Pipeline pipeline = jedis.pipelined();
+                List<Response<?>> responses = new ArrayList<>(entry.getValue().size());
+                for (JournalRecord record : entry.getValue()) {
+                    if (!redisRouter.isCluster()) {
+                        pipeline.select(record.indexdb);
+                    }
+                    String key = redisRouter.dbKey(record.key, record.indexdb);
+                    if (record.op == OP_DEL || (record.expireAt >= 0 && record.expireAt <= now)) {
+                        responses.add(pipeline.del(key));
+                    } else if (record.expireAt < 0) {
+                        responses.add(pipeline.set(key, record.value));
+                    } else {
+                        responses.add(pipeline.psetex(key, record.expireAt - now, record.value));
+                    }
+                }
+                pipeline.sync();
+                JedisDataException error = null;
+                for (int i = 0; i < responses.size(); i++) {
+                    try {
+                        responses.get(i).get();
+                        replayed.incrementAndGet();
+                    } catch (JedisDataException e) {
+                        error = e;
+                        failed.add(entry.getValue().get(i));
+                    }
+                }
+                if (error != null) {
+                    redisRouter.onException(error);
+                    log.error("降级写入回放失败" + failed.size() + "条：" + error.getMessage());
+                }
+            } catch (RuntimeException e) {
+                redisRouter.onException(e);
+                throw e;
+            } finally {
+                redisRouter.returnNodeResource(jedis);
+            }
+        }
+        return failed;
+    }
+
+    private void enqueue(Update update) {
+        if (!updates.offer(update)) {
+            // 丢弃的可能是失效,之前缓存的值都不再可信
+            removeAll();
+        }
+    }
+
+    private void drainLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Update update = updates.take();
+                synchronized (this) {
+                    applyUpdate(update);
+                    flush();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("更新降级缓存失败：" + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 处理队列中的全部更新,调用方持有this的锁
+     */
+    private void flush() {
+        Update update;
+        while ((update = updates.poll()) != null) {
+            applyUpdate(update);
+        }
+        if (appliedGeneration != generation.get()) {
+            applyUpdate(null);
+        }
+    }
+
+    private void applyUpdate(Update update) {
+        long current = generation.get();
+        if (appliedGeneration != current) {
+            for (Integer slot : index.values()) {
+                cache.put(slot * slotSize, (byte) 0);
+                free.push(slot);
+            }
+            index.clear();
+            appliedGeneration = current;
+        }
+        if (update == null || update.generation != current) {
+            return;
+        }
+        if (update.value == null) {
+            release(indexKey(update.indexdb, update.key));
+        } else {
+            store(update.indexdb, update.key, update.value, update.expireAt);
+        }
+    }
+
+    private void store(int indexdb, String key, String value, long expireAt) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        String indexKey = indexKey(indexdb, key);
+        if (SLOT_HEADER + keyBytes.length + valueBytes.length > slotSize
+                || (expireAt >= 0 && expireAt <= System.currentTimeMillis())) {
+            release(indexKey);
+            return;
+        }
+        Integer slot = index.get(indexKey);
+        if (slot == null) {
+            slot = allocate();
+        }
+        writeSlot(slotBuffer(slot), indexdb, keyBytes, expireAt, valueBytes);
+        index.put(indexKey, slot);
+    }
+
+    /**
+     * 从文件重建索引
+     */
+    private void load() {
+        long now = System.currentTimeMillis();
+        for (int slot = 0; slot < slots; slot++) {
+            Slot entry = readSlot(slotBuffer(slot));
+            if (entry == null || entry.expired(now)) {
+                cache.put(slot * slotSize, (byte) 0);
+                free.push(slot);
+                continue;
+            }
+            index.put(indexKey(entry.indexdb, new String(entry.key, StandardCharsets.UTF_8)), slot);
+        }
+    }
+
+    private int allocate() {
+        if (!free.isEmpty()) {
+            return free.pop();
+        }
+        Iterator<Map.Entry<String, Integer>> eldest = index.entrySet().iterator();
+        int slot = eldest.next().getValue();
+        eldest.remove();
+        return slot;
+    }
+
+    private void release(String indexKey) {
+        Integer slot = index.remove(indexKey);
+        if (slot != null) {
+            cache.put(slot * slotSize, (byte) 0);
+            free.push(slot);
+        }
+    }
+
+    private ByteBuffer slotBuffer(int slot) {
+        ByteBuffer buffer = cache.duplicate();
+        buffer.position(slot * slotSize);
+        buffer.limit(slot * slotSize + slotSize);
+        return buffer;
+    }
+
+    private static String indexKey(int indexdb, String key) {
+        return indexdb + ":" + key;
+    }
+
+    /**
+     * 写入槽位;数据写完后再标记为使用中,写到一半崩溃时重启后忽略该槽位
+     * @param buffer 槽位,position为槽位起点,limit为槽位终点
+     */
+    static void writeSlot(ByteBuffer buffer, int indexdb, byte[] key, long expireAt, byte[] value) {
+        int start = buffer.position();
+        buffer.put((byte) 0).putInt(indexdb).putInt(key.length).putLong(expireAt).putInt(value.length)
+                .put(key).put(value);
+        buffer.put(start, (byte) 1);
+    }
+
+    /**
+     * 读取槽位
+     * @param buffer 同writeSlot
+     * @return 未使用或长度不合法时返回null
+     */
+    static Slot readSlot(ByteBuffer buffer) {
+        if (buffer.remaining() < SLOT_HEADER || buffer.get() != 1) {
+            return null;
+        }
+        int indexdb = buffer.getInt();
+        int keyLength = buffer.getInt();
+        long expireAt = buffer.getLong();
+        int valueLength = buffer.getInt();
+        if (keyLength < 0 || valueLength < 0 || keyLength + valueLength > buffer.remaining()) {
+            return null;
+        }
+        byte[] key = new byte[keyLength];
+        buffer.get(key);
+        byte[] value = new byte[valueLength];
+        buffer.get(value);
+        return new Slot(indexdb, key, expireAt, value);
+    }
+
+    /**
+     * 编码一条journal记录:长度、CRC32、内容(操作 库 key长度 key 过期时间点 value长度 value)
+     */
+    static ByteBuffer encode(JournalRecord record) {
+        byte[] key = record.key.getBytes(StandardCharsets.UTF_8);
+        byte[] value = record.value.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + 4 + 4 + key.length + 8 + 4 + value.length;
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER + length);
+        buffer.putInt(length).putInt(0).put(record.op).putInt(record.indexdb).putInt(key.length).put(key)
+                .putLong(record.expireAt).putInt(value.length).put(value);
+        buffer.putInt(4, crc(buffer, RECORD_HEADER, length));
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 从当前位置解码一条journal记录
+     * @param buffer
+     * @return 剩余数据不足一条或校验失败时返回null,position不变
+     */
+    static JournalRecord decode(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() < RECORD_HEADER) {
+            return null;
+        }
+        int length = buffer.getInt(start);
+        if (length < 1 + 4 + 4 + 8 + 4 || length > buffer.remaining() - RECORD_HEADER
+                || crc(buffer, start + RECORD_HEADER, length) != buffer.getInt(start + 4)) {
+            return null;
+        }
+        ByteBuffer body = buffer.duplicate();
+        body.position(start + RECORD_HEADER);
+        body.limit(start + RECORD_HEADER + length);
+        byte op = body.get();
+        int indexdb = body.getInt();
+        int keyLength = body.getInt();
+        if (keyLength < 0 || keyLength > body.remaining() - 8 - 4) {
+            return null;
+        }
+        byte[] key = new byte[keyLength];
+        body.get(key);
+        long expireAt = body.getLong();
+        int valueLength = body.getInt();
+        if (valueLength != body.remaining()) {
+            return null;
+        }
+        byte[] value = new byte[valueLength];
+        body.get(value);
+        buffer.position(start + RECORD_HEADER + length);
+        return new JournalRecord(op, indexdb, new String(key, StandardCharsets.UTF_8), expireAt,
+                new String(value, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 从头开始完整且校验通过的记录的总长度
+     */
+    static long validLength(ByteBuffer buffer) {
+        ByteBuffer copy = buffer.duplicate();
+        while (decode(copy) != null) {
+            // 逐条跳过
+        }
+        return copy.position() - buffer.position();
+    }
+
+    private static int crc(ByteBuffer buffer, int offset, int length) {
+        CRC32 crc = new CRC32();
+        for (int i = offset; i < offset + length; i++) {
+            crc.update(buffer.get(i));
+        }
+        return (int) crc.getValue();
+    }
+
+    static class Slot {
+        final int indexdb;
+        final byte[] key;
+        final long expireAt;
+        final byte[] value;
+
+        Slot(int indexdb, byte[] key, long expireAt, byte[] value) {
+            this.indexdb = indexdb;
+            this.key = key;
+            this.expireAt = expireAt;
+            this.value = value;
+        }
+
+        boolean expired(long now) {
+            return expireAt >= 0 && expireAt <= now;
+        }
+    }
+
+    private static class Update {
+        private final int indexdb;
+        private final String key;
+        private final String value;
+        private final long expireAt;
+        private final long generation;
+
+        private Update(int indexdb, String key, String value, long expireAt, long generation) {
+            this.indexdb = indexdb;
+            this.key = key;
+            this.value = value;
+            this.expireAt = expireAt;
+            this.generation = generation;
+        }
+    }
+
+    static class JournalRecord {
+        final byte op;
+        final int indexdb;
+        final String key;
+        final long expireAt;
+        final String value;
+
+        JournalRecord(byte op, int indexdb, String key, long expireAt, String value) {
+            this.op = op;
+            this.indexdb = indexdb;
+            this.key = key;
+            this.expireAt = expireAt;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.springbootredisdemo.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.JedisPool;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 连接池预热和自适应大小;启动时为各连接池预先建立warm-up-size个连接,启动后的第一波请求不再承担建连和认证的耗时
+ * min-idle/max-idle小于warm-up-size时调高到warm-up-size,否则预热的连接会在归还时或被空闲检查销毁
+ * 开启自适应后每interval毫秒检查一次:有线程排队、平均借连接耗时超过grow-wait-micros或使用率超过high-utilization时按grow-factor扩大,
+ * 连续shrink-after次使用率低于low-utilization时缩小到3/4,大小始终在[min-total, max-total]之间;
+ * min-total小于各隔离舱名额之和时以名额之和为下限,缩小后仍能保证一个隔离舱占满名额时其他隔离舱有连接可用
+ * 只调整RedisRouter管理的主库和节点连接池
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-19 23:20
+ */
+@Component
+public class PoolSizer {
+    private static final Logger log = LoggerFactory.getLogger(PoolSizer.class);
+
+    @Autowired
+    private RedisRouter redisRouter;
+    @Autowired
+    private Bulkheads bulkheads;
+
+    @Value("${spring.redis.jedis.pool.warm-up-size:32}")
+    private int warmUpSize;
+    @Value("${spring.redis.jedis.pool.adaptive.enabled:false}")
+    private boolean adaptive;
+    @Value("${spring.redis.jedis.pool.adaptive.interval:5000}")
+    private long interval;
+    @Value("${spring.redis.jedis.pool.adaptive.min-total:64}")
+    private int minTotal;
+    @Value("${spring.redis.jedis.pool.adaptive.max-total:1024}")
+    private int maxTotal;
+    @Value("${spring.redis.jedis.pool.adaptive.grow-wait-micros:500}")
+    private long growWaitMicros;
+    @Value("${spring.redis.jedis.pool.adaptive.grow-factor:1.5}")
+    private double growFactor;
+    @Value("${spring.redis.jedis.pool.adaptive.high-utilization:0.8}")
+    private double highUtilization;
+    @Value("${spring.redis.jedis.pool.adaptive.low-utilization:0.3}")
+    private double lowUtilization;
+    @Value("${spring.redis.jedis.pool.adaptive.shrink-after:6}")
+    private int shrinkAfter;
+
+    /**
+     * 连接池 -> 上次检查时的{借连接次数, 借连接耗时, 连续低使用率次数, 调整次数},只在调整线程中修改
+     */
+    private final Map<JedisPool, long[]> windows = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        for (Map.Entry<String, JedisPool> entry : redisRouter.getPools().entrySet()) {
+            warmUp(entry.getKey(), entry.getValue());
+        }
+        if (adaptive) {
+            int quota = bulkheads.getTotalQuota();
+            if (minTotal < quota) {
+                log.warn("自适应连接池的min-total(" + minTotal + ")小于隔离舱名额之和,调整为" + quota);
+                minTotal = quota;
+            }
+            if (maxTotal < minTotal) {
+                log.warn("自适应连接池的max-total(" + maxTotal + ")小于下限,调整为" + minTotal);
+                maxTotal = minTotal;
+            }
+            scheduler = Executors.newSingleThreadScheduledExecutor();
+            scheduler.scheduleWithFixedDelay(this::adjust, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 各连接池的大小、借连接耗时分布和调整次数
+     * @return 节点名 -> 指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Map.Entry<String, JedisPool> entry : redisRouter.getPools().entrySet()) {
+            if (!(entry.getValue() instanceof ResizableJedisPool)) {
+                continue;
+            }
+            Map<String, Object> pool = ((ResizableJedisPool) entry.getValue()).getStats();
+            long[] window = windows.get(entry.getValue());
+            pool.put("resizes", window == null ? 0 : window[3]);
+            stats.put(entry.getKey(), pool);
+        }
+        return stats;
+    }
+
+    private void warmUp(String name, JedisPool pool) {
+        int target = warmUpSize;
+        if (pool instanceof ResizableJedisPool) {
+            ResizableJedisPool resizable = (ResizableJedisPool) pool;
+            target = Math.min(target, resizable.getMaxTotal());
+            if (resizable.getMaxIdle() >= 0 && resizable.getMaxIdle() < target) {
+                log.warn("连接池" + name + "的max-idle(" + resizable.getMaxIdle() + ")小于预热连接数,调整为" + target);
+                resizable.setMaxIdle(target);
+            }
+            if (resizable.getMinIdle() < target) {
+                log.warn("连接池" + name + "的min-idle(" + resizable.getMinIdle() + ")小于预热连接数,调整为" + target);
+                resizable.setMinIdle(target);
+            }
+        }
+        int count = target - pool.getNumIdle() - pool.getNumActive();
+        if (count <= 0) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            pool.addObjects(count);
+            log.info("连接池" + name + "预热" + count + "个连接,耗时" + (System.currentTimeMillis() - start) + "ms");
+        } catch (Exception e) {
+            log.error("连接池" + name + "预热失败：" + e.getMessage());
+        }
+    }
+
+    private void adjust() {
+        for (Map.Entry<String, JedisPool> entry : redisRouter.getPools().entrySet()) {
+            if (entry.getValue() instanceof ResizableJedisPool) {
+                try {
+                    adjust(entry.getKey(), (ResizableJedisPool) entry.getValue());
+                } catch (Exception e) {
+                    log.error(e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void adjust(String name, ResizableJedisPool pool) {
+        long[] window = windows.computeIfAbsent(pool, k -> new long[4]);
+        long borrows = pool.getBorrows();
+        long micros = pool.getBorrowMicros();
+        long count = borrows - window[0];
+        long avgWait = count == 0 ? 0 : (micros - window[1]) / count;
+        window[0] = borrows;
+        window[1] = micros;
+
+        int current = pool.getMaxTotal();
+        if (current < minTotal) {
+            pool.setMaxTotal(minTotal);
+            window[3]++;
+            log.info("连接池" + name + "大小调整：" + current + " -> " + minTotal + ",不低于自适应下限");
+            return;
+        }
+        double utilization = (double) pool.getNumActive() / current;
+        int target = current;
+        if (pool.getNumWaiters() > 0 || avgWait >= growWaitMicros || utilization >= highUtilization) {
+            window[2] = 0;
+            target = Math.min(maxTotal, Math.max(current + 1, (int) Math.ceil(current * growFactor)));
+        } else if (utilization < lowUtilization && ++window[2] >= shrinkAfter) {
+            window[2] = 0;
+            target = Math.max(minTotal, current * 3 / 4);
+        }
+        if (target != current) {
+            pool.setMaxTotal(target);
+            window[3]++;
+            log.info("连接池" + name + "大小调整：" + current + " -> " + target + ",使用率" + String.format("%.2f", utilization)
+                    + ",平均借连接耗时" + avgWait + "us");
+        }
+    }
+}
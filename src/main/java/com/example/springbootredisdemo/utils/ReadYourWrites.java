@@ -0,0 +1,77 @@
+package com.example.springbootredisdemo.utils;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 读己之写;在begin/end之间,当前线程写过主库后,只有已同步到该写入的从库才会被用来读,
+ * 否则回到主库读;begin/end之外不做限制
+ * 写入时间在命令返回后(归还连接或下一次选择从库时)才记录,保证之后开始的复制进度探测一定包含这次写入
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-19 11:20
+ */
+public final class ReadYourWrites {
+    private static final ThreadLocal<Boolean> ENABLED = new ThreadLocal<>();
+    /**
+     * 当前线程最后一次写主库的时间(System.nanoTime)
+     */
+    private static final ThreadLocal<Long> LAST_WRITE = new ThreadLocal<>();
+    /**
+     * 已借出写连接、写入时间还未记录
+     */
+    private static final ThreadLocal<Boolean> PENDING = new ThreadLocal<>();
+
+    private ReadYourWrites() {
+    }
+
+    /**
+     * 开启当前线程的读己之写保证,一般在请求开始时调用
+     */
+    public static void begin() {
+        ENABLED.set(Boolean.TRUE);
+        LAST_WRITE.remove();
+        PENDING.remove();
+    }
+
+    /**
+     * 结束当前线程的读己之写保证,一般在请求结束时调用
+     */
+    public static void end() {
+        ENABLED.remove();
+        LAST_WRITE.remove();
+        PENDING.remove();
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED.get() != null;
+    }
+
+    /**
+     * 借出写连接时调用,写入时间等命令返回后再记录
+     */
+    static void pendingWrite() {
+        if (isEnabled()) {
+            PENDING.set(Boolean.TRUE);
+        }
+    }
+
+    /**
+     * 写命令已返回,记录写入时间
+     */
+    static void markWrite() {
+        if (PENDING.get() != null) {
+            PENDING.remove();
+            LAST_WRITE.set(System.nanoTime());
+        }
+    }
+
+    /**
+     * 当前线程最后一次写主库的时间,没有写过返回null;
+     * 直接关闭连接没有经过markWrite的写入在这里记录,此时同一线程的写命令已经返回
+     * @return
+     */
+    static Long lastWrite() {
+        markWrite();
+        return LAST_WRITE.get();
+    }
+}
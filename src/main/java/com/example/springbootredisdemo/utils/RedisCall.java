@@ -0,0 +1,65 @@
+package com.example.springbootredisdemo.utils;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 当前线程最近一次从RedisRouter借出的连接;借出时开始,RedisUtils归还连接时结束,
+ * 期间的连接异常记为一次失败,结束时把耗时交给熔断器判断慢调用
+ * 直接调用jedis.close()归还的连接不会结束,下次借出时被覆盖,只统计失败不统计耗时
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-19 22:20
+ */
+public final class RedisCall {
+    private static final ThreadLocal<RedisCall> CURRENT = new ThreadLocal<>();
+
+    private final CircuitBreaker breaker;
+    private final long start = System.nanoTime();
+    private boolean failed;
+
+    private RedisCall(CircuitBreaker breaker) {
+        this.breaker = breaker;
+    }
+
+    static void begin(CircuitBreaker breaker) {
+        CURRENT.set(new RedisCall(breaker));
+    }
+
+    static void clear() {
+        CURRENT.remove();
+    }
+
+    /**
+     * 当前调用所在的节点,即熔断器名
+     * @return 没有进行中的调用时返回null
+     */
+    public static String currentNode() {
+        RedisCall call = CURRENT.get();
+        return call == null ? null : call.breaker.getName();
+    }
+
+    /**
+     * 当前调用发生连接异常
+     */
+    public static void failed() {
+        RedisCall call = CURRENT.get();
+        if (call != null && !call.failed) {
+            call.failed = true;
+            call.breaker.onFailure();
+        }
+    }
+
+    /**
+     * 当前调用结束
+     */
+    public static void released() {
+        RedisCall call = CURRENT.get();
+        if (call == null) {
+            return;
+        }
+        CURRENT.remove();
+        if (!call.failed) {
+            call.breaker.onSuccess((System.nanoTime() - call.start) / 1000000);
+        }
+    }
+}
@@ -0,0 +1,680 @@
+package com.example.springbootredisdemo.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 基于redis pub/sub的事件总线
+ * 发布:事件先进入本地发件队列,发布线程每次最多取publish-batch-size条,用一条pipeline批量PUBLISH
+ * 订阅:使用一条独立于连接池的专用连接,订阅线程只负责读取消息并放入各监听器自己的有界队列,
+ * 监听器在dispatch-threads线程池中串行消费自己的队列,慢监听器不会拖慢其他监听器;
+ * 队列满时按监听器的策略处理:BLOCK由单独的转交线程等待最多block-timeout毫秒,订阅线程不会被阻塞,
+ * DROP_NEWEST丢弃新消息,DROP_OLDEST丢弃最旧的消息
+ * 频道声明为timestamped时,总线发布的消息带有发布时间前缀,用于统计发布到监听器执行的扇出延迟,
+ * 该频道的其他订阅方需要能识别此前缀;未声明的频道原样发布和投递,可与其他客户端互通
+ * 连接断开后自动重连并重新订阅所有频道和模式,断开期间的消息会丢失(pub/sub不持久化)
+ * 发布和订阅都在控制频道所在的节点上:单机模式为主库,分片模式为哈希环上控制频道对应的节点,
+ * 集群模式为控制频道所在槽位的主节点(集群内PUBLISH会广播到所有节点);节点变化后订阅连接断开重连到新节点
+ * 订阅连接上的SUBSCRIBE/UNSUBSCRIBE由调用方线程和订阅线程发出,写入时加锁,避免并发写入打乱RESP协议流
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-19 19:50
+ */
+@Component
+public class RedisEventBus {
+    private static final Logger log = LoggerFactory.getLogger(RedisEventBus.class);
+    /**
+     * 订阅线程启动时先订阅的控制频道,之后在其上动态增加订阅
+     */
+    private static final String CONTROL_CHANNEL = "eventbus:control";
+    private static final char ENVELOPE = '\u001e';
+
+    @Autowired
+    private RedisRouter redisRouter;
+
+    @Value("${spring.redis.host}")
+    private String host;
+    @Value("${spring.redis.port}")
+    private int port;
+    @Value("${spring.redis.timeout}")
+    private int timeout;
+    @Value("${spring.redis.password}")
+    private String password;
+
+    @Value("${spring.redis.eventbus.publish-batch-size:500}")
+    private int publishBatchSize;
+    @Value("${spring.redis.eventbus.publish-queue-capacity:100000}")
+    private int publishQueueCapacity;
+    @Value("${spring.redis.eventbus.dispatch-threads:4}")
+    private int dispatchThreads;
+    @Value("${spring.redis.eventbus.listener-queue-capacity:10000}")
+    private int listenerQueueCapacity;
+    @Value("${spring.redis.eventbus.block-timeout:100}")
+    private long blockTimeout;
+    @Value("${spring.redis.eventbus.reconnect-delay:1000}")
+    private long reconnectDelay;
+
+    /**
+     * 队列满时的处理策略
+     */
+    public enum Overflow {
+        /**
+         * 由转交线程等待空位,超过block-timeout仍无空位则丢弃;订阅线程不等待,转交队列也满时直接丢弃
+         * 所有BLOCK监听器共用一个转交线程,一个监听器等待时会推迟其他BLOCK监听器的消息
+         */
+        BLOCK,
+        /**
+         * 丢弃新到达的消息
+         */
+        DROP_NEWEST,
+        /**
+         * 丢弃队列中最旧的消息
+         */
+        DROP_OLDEST
+    }
+
+    private final Map<String, List<Listener<?>>> channelListeners = new ConcurrentHashMap<>();
+    private final Map<String, List<Listener<?>>> patternListeners = new ConcurrentHashMap<>();
+    private BlockingQueue<String[]> outbox;
+    /**
+     * BLOCK监听器的待转交消息,由转交线程等待监听器队列的空位
+     */
+    private BlockingQueue<Object[]> handoff;
+    private ExecutorService dispatcher;
+    private Thread publisher;
+    private Thread handoffThread;
+    private Thread subscriber;
+    private volatile JedisPubSub pubSub;
+    /**
+     * 订阅连接所在的节点,主库为master
+     */
+    private volatile String subscribedNode;
+    /**
+     * 订阅连接的写锁
+     */
+    private final Object subscribeLock = new Object();
+    private volatile boolean running = true;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder publishBatches = new LongAdder();
+    private final LongAdder publishDropped = new LongAdder();
+    private final LongAdder publishFailed = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder latencyCount = new LongAdder();
+    private final LongAdder latencyTotal = new LongAdder();
+    private final AtomicLong latencyMax = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        outbox = new LinkedBlockingQueue<>(publishQueueCapacity);
+        dispatcher = Executors.newFixedThreadPool(dispatchThreads);
+        publisher = new Thread(this::publishLoop, "redis-eventbus-publisher");
+        publisher.setDaemon(true);
+        publisher.start();
+        handoff = new LinkedBlockingQueue<>(listenerQueueCapacity);
+        handoffThread = new Thread(this::handoffLoop, "redis-eventbus-handoff");
+        handoffThread.setDaemon(true);
+        handoffThread.start();
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        running = false;
+        disconnect();
+        publisher.join(reconnectDelay);
+        handoffThread.interrupt();
+        dispatcher.shutdown();
+        dispatcher.awaitTermination(reconnectDelay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 异步发布,由发布线程批量发送
+     * @param channel
+     * @param event
+     * @return 发件队列已满时返回false
+     */
+    public <T> boolean publish(Channel<T> channel, T event) {
+        if (!outbox.offer(new String[]{channel.name, channel.encode(event)})) {
+            publishDropped.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 同步发布一批事件,一条pipeline
+     * @param channel
+     * @param events
+     * @return 成功true,失败false
+     */
+    public <T> boolean publishNow(Channel<T> channel, List<T> events) {
+        List<String[]> batch = new ArrayList<>(events.size());
+        for (T event : events) {
+            batch.add(new String[]{channel.name, channel.encode(event)});
+        }
+        return send(batch);
+    }
+
+    /**
+     * 订阅频道
+     * @param channel
+     * @param listener
+     * @param overflow 监听器队列满时的策略
+     * @return 用于取消订阅
+     */
+    public <T> Subscription subscribe(Channel<T> channel, Consumer<T> listener, Overflow overflow) {
+        Listener<T> l = new Listener<>(channel.decoder, (name, event) -> listener.accept(event), overflow,
+                channel.timestamped);
+        return register(channelListeners, channel.name, l, false);
+    }
+
+    /**
+     * 按模式订阅,如 order.*,消息原样投递
+     * @param pattern
+     * @param decoder
+     * @param listener 参数为实际频道名和事件
+     * @param overflow
+     * @return 用于取消订阅
+     */
+    public <T> Subscription psubscribe(String pattern, Function<String, T> decoder, BiConsumer<String, T> listener,
+                                       Overflow overflow) {
+        return psubscribe(pattern, decoder, listener, overflow, false);
+    }
+
+    /**
+     * 按模式订阅
+     * @param pattern
+     * @param decoder
+     * @param listener
+     * @param overflow
+     * @param timestamped 匹配的频道是否都声明为timestamped,是则去掉发布时间前缀并统计延迟
+     * @return 用于取消订阅
+     */
+    public <T> Subscription psubscribe(String pattern, Function<String, T> decoder, BiConsumer<String, T> listener,
+                                       Overflow overflow, boolean timestamped) {
+        return register(patternListeners, pattern, new Listener<>(decoder, listener, overflow, timestamped), true);
+    }
+
+    /**
+     * 运行指标;latencyAvgMillis/latencyMaxMillis为timestamped频道的消息从发布到监听器开始执行的时间
+     * @return
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("published", published.sum());
+        stats.put("publishBatches", publishBatches.sum());
+        stats.put("publishDropped", publishDropped.sum());
+        stats.put("publishFailed", publishFailed.sum());
+        stats.put("publishPending", outbox.size());
+        stats.put("received", received.sum());
+        stats.put("delivered", delivered.sum());
+        long dropped = 0;
+        long pending = 0;
+        for (Map<String, List<Listener<?>>> listeners : Arrays.asList(channelListeners, patternListeners)) {
+            for (List<Listener<?>> list : listeners.values()) {
+                for (Listener<?> listener : list) {
+                    dropped += listener.dropped.sum();
+                    pending += listener.queue.size();
+                }
+            }
+        }
+        stats.put("listenerDropped", dropped);
+        stats.put("listenerPending", pending);
+        long count = latencyCount.sum();
+        stats.put("latencyAvgMillis", count == 0 ? 0 : latencyTotal.sum() / count);
+        stats.put("latencyMaxMillis", latencyMax.get());
+        return stats;
+    }
+
+    private Subscription register(Map<String, List<Listener<?>>> registry, String name, Listener<?> listener,
+                                  boolean pattern) {
+        List<Listener<?>> list = registry.computeIfAbsent(name, k -> new CopyOnWriteArrayList<>());
+        boolean first = list.isEmpty();
+        list.add(listener);
+        ensureSubscriber();
+        if (first) {
+            // 订阅连接尚未就绪时由订阅线程在控制频道订阅成功后统一订阅
+            command(pubSub, current -> {
+                if (pattern) {
+                    current.psubscribe(name);
+                } else {
+                    current.subscribe(name);
+                }
+            });
+        }
+        return () -> {
+            list.remove(listener);
+            if (list.isEmpty()) {
+                command(pubSub, active -> {
+                    if (pattern) {
+                        active.punsubscribe(name);
+                    } else {
+                        active.unsubscribe(name);
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * 在订阅连接上发送命令;调用方线程和订阅线程都会写入同一连接,加锁串行化
+     * 连接断开时只记录日志,重连后由订阅线程重新订阅所有频道和模式
+     * @param current
+     * @param action
+     */
+    private void command(JedisPubSub current, Consumer<JedisPubSub> action) {
+        synchronized (subscribeLock) {
+            if (current == null || !current.isSubscribed()) {
+                return;
+            }
+            try {
+                action.accept(current);
+            } catch (Exception e) {
+                log.error("事件总线订阅命令发送失败,等待重连后重新订阅：" + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 退订所有频道和模式,订阅线程的subscribe随之返回
+     */
+    private void disconnect() {
+        command(pubSub, current -> {
+            current.unsubscribe();
+            if (!patternListeners.isEmpty()) {
+                current.punsubscribe();
+            }
+        });
+    }
+
+    /**
+     * 事件总线使用的节点,见类注释
+     * @return host:port,主库为master
+     */
+    private String busNode() {
+        return redisRouter.nodeOf(CONTROL_CHANNEL);
+    }
+
+    private synchronized void ensureSubscriber() {
+        if (subscriber == null) {
+            subscriber = new Thread(this::subscribeLoop, "redis-eventbus-subscriber");
+            subscriber.setDaemon(true);
+            subscriber.start();
+        }
+    }
+
+    private void subscribeLoop() {
+        while (running) {
+            Jedis jedis = null;
+            try {
+                // 订阅连接不设读超时,也不从连接池获取,避免长期占用连接池
+                String node = busNode();
+                if (RedisHealth.MASTER.equals(node)) {
+                    jedis = new Jedis(host, port, timeout, 0);
+                } else {
+                    HostAndPort hostAndPort = HostAndPort.parseString(node);
+                    jedis = new Jedis(hostAndPort.getHost(), hostAndPort.getPort(), timeout, 0);
+                }
+                if (!StringUtils.isEmpty(password)) {
+                    jedis.auth(password);
+                }
+                JedisPubSub current = new JedisPubSub() {
+                    @Override
+                    public void onMessage(String channel, String message) {
+                        dispatch(channelListeners.get(channel), channel, message);
+                    }
+
+                    @Override
+                    public void onPMessage(String pattern, String channel, String message) {
+                        dispatch(patternListeners.get(pattern), channel, message);
+                    }
+
+                    @Override
+                    public void onSubscribe(String channel, int subscribedChannels) {
+                        if (CONTROL_CHANNEL.equals(channel)) {
+                            resubscribe(this);
+                        }
+                    }
+                };
+                pubSub = current;
+                subscribedNode = node;
+                jedis.subscribe(current, CONTROL_CHANNEL);
+            } catch (Exception e) {
+                if (running) {
+                    log.error("事件总线订阅连接断开,稍后重连：" + e.getMessage());
+                    sleep(reconnectDelay);
+                }
+            } finally {
+                if (jedis != null) {
+                    jedis.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * 由订阅线程在控制频道订阅成功后调用,与调用方线程的订阅命令共用写锁
+     */
+    private void resubscribe(JedisPubSub current) {
+        synchronized (subscribeLock) {
+            List<String> channels = new ArrayList<>();
+            channelListeners.forEach((name, list) -> {
+                if (!list.isEmpty()) {
+                    channels.add(name);
+                }
+            });
+            List<String> patterns = new ArrayList<>();
+            patternListeners.forEach((name, list) -> {
+                if (!list.isEmpty()) {
+                    patterns.add(name);
+                }
+            });
+            if (!channels.isEmpty()) {
+                current.subscribe(channels.toArray(new String[0]));
+            }
+            if (!patterns.isEmpty()) {
+                current.psubscribe(patterns.toArray(new String[0]));
+            }
+        }
+    }
+
+    private void dispatch(List<Listener<?>> listeners, String channel, String message) {
+        received.increment();
+        if (listeners == null || listeners.isEmpty()) {
+            return;
+        }
+        long publishedAt = 0;
+        String payload = message;
+        if (!message.isEmpty() && message.charAt(0) == ENVELOPE) {
+            int end = message.indexOf(ENVELOPE, 1);
+            if (end > 0) {
+                try {
+                    publishedAt = Long.parseLong(message.substring(1, end));
+                    payload = message.substring(end + 1);
+                } catch (NumberFormatException e) {
+                    publishedAt = 0;
+                }
+            }
+        }
+        for (Listener<?> listener : listeners) {
+            if (listener.timestamped) {
+                listener.offer(channel, payload, publishedAt);
+            } else {
+                listener.offer(channel, message, 0);
+            }
+        }
+    }
+
+    private void handoffLoop() {
+        while (running || !handoff.isEmpty()) {
+            try {
+                Object[] entry = handoff.poll(100, TimeUnit.MILLISECONDS);
+                if (entry != null) {
+                    ((Listener<?>) entry[0]).put((Object[]) entry[1]);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void publishLoop() {
+        List<String[]> batch = new ArrayList<>(publishBatchSize);
+        while (running || !outbox.isEmpty()) {
+            try {
+                String[] first = outbox.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                outbox.drainTo(batch, publishBatchSize - 1);
+                send(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private boolean send(List<String[]> batch) {
+        Jedis jedis = null;
+        try {
+            String node = busNode();
+            if (!node.equals(subscribedNode)) {
+                // 节点变化(如分片扩容切换哈希环、集群槽位迁移),断开订阅连接,订阅线程重连到新节点
+                disconnect();
+            }
+            jedis = redisRouter.getNodeResource(node);
+            Pipeline pipeline = jedis.pipelined();
+            for (String[] event : batch) {
+                pipeline.publish(event[0], event[1]);
+            }
+            pipeline.sync();
+            published.add(batch.size());
+            publishBatches.increment();
+            return true;
+        } catch (Exception e) {
+            redisRouter.onException(e);
+            log.error("事件发布失败：" + e.getMessage());
+            publishFailed.add(batch.size());
+            return false;
+        } finally {
+            redisRouter.returnNodeResource(jedis);
+        }
+    }
+
+    private void recordLatency(long publishedAt) {
+        if (publishedAt > 0) {
+            long latency = Math.max(0, System.currentTimeMillis() - publishedAt);
+            latencyCount.increment();
+            latencyTotal.add(latency);
+            latencyMax.accumulateAndGet(latency, Math::max);
+        }
+    }
+
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 取消订阅
+     */
+    public interface Subscription {
+        void cancel();
+    }
+
+    /**
+     * 带类型的频道,指定事件与消息字符串之间的转换
+     */
+    public static final class Channel<T> {
+        private final String name;
+        private final Function<T, String> encoder;
+        private final Function<String, T> decoder;
+        private final boolean timestamped;
+
+        private Channel(String name, Function<T, String> encoder, Function<String, T> decoder, boolean timestamped) {
+            this.name = name;
+            this.encoder = encoder;
+            this.decoder = decoder;
+            this.timestamped = timestamped;
+        }
+
+        public static <T> Channel<T> of(String name, Function<T, String> encoder, Function<String, T> decoder) {
+            return new Channel<>(name, encoder, decoder, false);
+        }
+
+        public static Channel<String> ofString(String name) {
+            return new Channel<>(name, Function.identity(), Function.identity(), false);
+        }
+
+        /**
+         * 发布的消息带发布时间前缀,用于统计扇出延迟;只用于所有订阅方都通过本总线订阅的频道
+         * @return
+         */
+        public Channel<T> timestamped() {
+            return new Channel<>(name, encoder, decoder, true);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isTimestamped() {
+            return timestamped;
+        }
+
+        private String encode(T event) {
+            String payload = encoder.apply(event);
+            return timestamped ? ENVELOPE + String.valueOf(System.currentTimeMillis()) + ENVELOPE + payload : payload;
+        }
+    }
+
+    /**
+     * 监听器及其有界队列;同一监听器同一时刻只在一个线程中执行,保证消息顺序
+     */
+    private class Listener<T> {
+        private final Function<String, T> decoder;
+        private final BiConsumer<String, T> handler;
+        private final Overflow overflow;
+        private final boolean timestamped;
+        private final BlockingQueue<Object[]> queue = new ArrayBlockingQueue<>(listenerQueueCapacity);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final LongAdder dropped = new LongAdder();
+        /**
+         * 转交队列中属于本监听器的消息数,不为0时新消息也要进入转交队列,避免越过前面的消息
+         */
+        private final AtomicLong pendingCount = new AtomicLong();
+
+        private Listener(Function<String, T> decoder, BiConsumer<String, T> handler, Overflow overflow,
+                         boolean timestamped) {
+            this.decoder = decoder;
+            this.handler = handler;
+            this.overflow = overflow;
+            this.timestamped = timestamped;
+        }
+
+        /**
+         * 由订阅线程调用,不阻塞
+         */
+        private void offer(String channel, String payload, long publishedAt) {
+            Object[] item = {channel, payload, publishedAt};
+            switch (overflow) {
+                case BLOCK:
+                    // 队列有空位时直接放入;否则交给转交线程等待,同一监听器的消息都经过转交队列以保持顺序
+                    if ((pendingCount.get() == 0 && queue.offer(item)) || handoff(item)) {
+                        break;
+                    }
+                    dropped.increment();
+                    return;
+                case DROP_OLDEST:
+                    while (!queue.offer(item)) {
+                        if (queue.poll() != null) {
+                            dropped.increment();
+                        }
+                    }
+                    break;
+                default:
+                    if (!queue.offer(item)) {
+                        dropped.increment();
+                    }
+            }
+            schedule();
+        }
+
+        private boolean handoff(Object[] item) {
+            pendingCount.incrementAndGet();
+            if (handoff.offer(new Object[]{this, item})) {
+                return true;
+            }
+            pendingCount.decrementAndGet();
+            return false;
+        }
+
+        /**
+         * 由转交线程调用,最多等待block-timeout毫秒
+         */
+        private void put(Object[] item) throws InterruptedException {
+            try {
+                if (!queue.offer(item, blockTimeout, TimeUnit.MILLISECONDS)) {
+                    dropped.increment();
+                }
+            } finally {
+                pendingCount.decrementAndGet();
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    dispatcher.execute(this::drain);
+                } catch (Exception e) {
+                    scheduled.set(false);
+                    log.error("事件分发线程池拒绝任务：" + e.getMessage());
+                }
+            }
+        }
+
+        private void drain() {
+            // 每次最多处理一批后让出线程,避免单个繁忙的监听器长期占用分发线程
+            for (int i = 0; i < 256; i++) {
+                Object[] item = queue.poll();
+                if (item == null) {
+                    break;
+                }
+                recordLatency((Long) item[2]);
+                try {
+                    handler.accept((String) item[0], decoder.apply((String) item[1]));
+                    delivered.increment();
+                } catch (Exception e) {
+                    log.error("事件监听器执行失败：" + e.getMessage());
+                }
+            }
+            scheduled.set(false);
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
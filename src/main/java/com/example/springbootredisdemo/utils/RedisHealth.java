@@ -0,0 +1,322 @@
+package com.example.springbootredisdemo.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.SocketTimeoutException;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: redis健康状态,按节点分别判定:单机模式只有主库(master),分片/集群模式为RedisRouter中持有数据的各主节点(host:port)
+ * 两种方式判定节点不可用:业务命令在该节点连续抛出fail-after次连接异常(两次PING成功之间)时切换,
+ * 单次连接异常(如连接池中的一条失效连接broken pipe)只触发一次立即PING,PING失败才切换;
+ * 以及后台线程对每个节点用独立连接按probe-interval发送PING,超时或失败时切换
+ * 不可用期间RedisRouter获取该节点的连接直接失败,不再等待连接池或连接超时,其他节点不受影响;
+ * 节点的PING连续成功recover-after次后依次执行恢复回调(如回放降级期间写入该节点的数据),全部成功才切回可用
+ * 连接池耗尽和读超时不代表redis不可用,只由PING判定
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-19 21:50
+ */
+@Component
+public class RedisHealth {
+    private static final Logger log = LoggerFactory.getLogger(RedisHealth.class);
+    /**
+     * 单机模式的节点名,与熔断器和RedisRouter.getPools()一致
+     */
+    public static final String MASTER = "master";
+
+    @Autowired
+    private RedisRouter redisRouter;
+
+    @Value("${spring.redis.host}")
+    private String host;
+    @Value("${spring.redis.port}")
+    private int port;
+    @Value("${spring.redis.password}")
+    private String password;
+
+    @Value("${spring.redis.health.probe-interval:100}")
+    private long probeInterval;
+    @Value("${spring.redis.health.probe-timeout:200}")
+    private int probeTimeout;
+    @Value("${spring.redis.health.recover-after:3}")
+    private int recoverAfter;
+    @Value("${spring.redis.health.fail-after:3}")
+    private int failAfter;
+
+    private final Map<String, Node> nodes = new ConcurrentHashMap<>();
+    /**
+     * 不可用的节点数,全部可用时的判断不用遍历节点
+     */
+    private final AtomicInteger down = new AtomicInteger();
+    private final List<Consumer<String>> recoveryHooks = new CopyOnWriteArrayList<>();
+    private final AtomicLong outages = new AtomicLong();
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(this::probe, probeInterval, probeInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+        for (Node node : nodes.values()) {
+            node.closeProbe();
+        }
+    }
+
+    /**
+     * 全部节点是否可用
+     * @return
+     */
+    public boolean isUp() {
+        return down.get() == 0;
+    }
+
+    /**
+     * 节点是否可用,未探测过的节点视为可用
+     * @param node RedisRouter.healthNode返回的节点名
+     * @return
+     */
+    public boolean isUp(String node) {
+        if (down.get() == 0) {
+            return true;
+        }
+        Node state = nodes.get(node);
+        return state == null || state.up.get();
+    }
+
+    /**
+     * 节点不可用时抛出连接异常,在获取连接前调用
+     * @param node
+     */
+    public void check(String node) {
+        if (!isUp(node)) {
+            throw new JedisConnectionException("redis节点不可用,已切换到降级模式：" + node);
+        }
+    }
+
+    /**
+     * 注册恢复回调,在节点切回可用之前执行,参数为节点名;回调抛出异常时保持不可用,下次探测成功后重试
+     * @param hook
+     */
+    public void onRecover(Consumer<String> hook) {
+        recoveryHooks.add(hook);
+    }
+
+    /**
+     * 仅在节点不可用时执行,执行期间该节点不会切回可用
+     * @param node
+     * @param action
+     * @return 是否执行
+     */
+    public boolean whileDown(String node, Runnable action) {
+        Node state = nodes.get(node);
+        if (state == null) {
+            return false;
+        }
+        synchronized (state) {
+            if (state.up.get()) {
+                return false;
+            }
+            action.run();
+            return true;
+        }
+    }
+
+    /**
+     * 业务命令异常回调;连接被拒绝或断开时立即PING出错的节点,PING失败或连续出错fail-after次时切换为不可用
+     * @param e
+     * @param node 出错连接所在的节点,未知时为null;单机模式下视为主库
+     */
+    public void onException(Throwable e, String node) {
+        if (!(e instanceof JedisConnectionException)) {
+            return;
+        }
+        Throwable cause = e.getCause();
+        if (cause instanceof NoSuchElementException || cause instanceof SocketTimeoutException) {
+            return;
+        }
+        if (node == null) {
+            if (redisRouter.isSharded() || redisRouter.isCluster()) {
+                return;
+            }
+            node = MASTER;
+        }
+        Node state = nodes.computeIfAbsent(node, Node::new);
+        if (state.failures.incrementAndGet() >= failAfter) {
+            markDown(state, e.getMessage());
+        } else if (state.probeRequested.compareAndSet(false, true)) {
+            // 探测连接只在探测线程中使用
+            try {
+                scheduler.execute(() -> probe(state));
+            } catch (Exception rejected) {
+                state.probeRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * 健康状态;nodes中sinceMillis为节点距上次切换的时间
+     * @return
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("up", isUp());
+        stats.put("outages", outages.get());
+        Map<String, Object> nodeStats = new TreeMap<>();
+        for (Node node : nodes.values()) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("up", node.up.get());
+            map.put("sinceMillis", System.currentTimeMillis() - node.changedAt);
+            map.put("outages", node.outages);
+            nodeStats.put(node.name, map);
+        }
+        stats.put("nodes", nodeStats);
+        return stats;
+    }
+
+    /**
+     * 不加锁,恢复回调执行期间业务线程也能立即切换
+     */
+    private void markDown(Node node, String reason) {
+        if (!node.up.compareAndSet(true, false)) {
+            return;
+        }
+        node.changedAt = System.currentTimeMillis();
+        node.outages++;
+        down.incrementAndGet();
+        outages.incrementAndGet();
+        log.error("redis节点不可用,切换到降级模式：" + node.name + "," + reason);
+    }
+
+    /**
+     * 探测当前持有数据的节点,以及仍不可用的旧节点(等待其降级写入回放)
+     */
+    private void probe() {
+        Set<String> current = new LinkedHashSet<>(redisRouter.getMasterNodes());
+        if (current.isEmpty()) {
+            current.add(MASTER);
+        }
+        for (String name : current) {
+            nodes.computeIfAbsent(name, Node::new);
+        }
+        for (Node node : nodes.values()) {
+            if (current.contains(node.name) || !node.up.get()) {
+                probe(node);
+            } else {
+                node.closeProbe();
+                nodes.remove(node.name);
+            }
+        }
+    }
+
+    private void probe(Node node) {
+        node.probeRequested.set(false);
+        try {
+            if (node.probe == null) {
+                if (MASTER.equals(node.name)) {
+                    node.probe = new Jedis(host, port, probeTimeout);
+                } else {
+                    HostAndPort hostAndPort = HostAndPort.parseString(node.name);
+                    node.probe = new Jedis(hostAndPort.getHost(), hostAndPort.getPort(), probeTimeout);
+                }
+                if (!StringUtils.isEmpty(password)) {
+                    node.probe.auth(password);
+                }
+            }
+            node.probe.ping();
+            node.failures.set(0);
+        } catch (Exception e) {
+            node.closeProbe();
+            node.successes = 0;
+            markDown(node, e.getMessage());
+            return;
+        }
+        if (node.up.get()) {
+            node.successes = 0;
+        } else if (++node.successes >= recoverAfter) {
+            recover(node);
+        }
+    }
+
+    private void recover(Node node) {
+        synchronized (node) {
+            try {
+                for (Consumer<String> hook : recoveryHooks) {
+                    hook.accept(node.name);
+                }
+            } catch (Exception e) {
+                node.successes = 0;
+                log.error("redis节点恢复回调失败,保持降级模式：" + node.name + "," + e.getMessage());
+                return;
+            }
+            if (node.up.compareAndSet(false, true)) {
+                node.changedAt = System.currentTimeMillis();
+                down.decrementAndGet();
+            }
+            log.info("redis节点已恢复,退出降级模式：" + node.name);
+        }
+    }
+
+    private static class Node {
+        private final String name;
+        private final AtomicBoolean up = new AtomicBoolean(true);
+        private volatile long changedAt = System.currentTimeMillis();
+        private volatile long outages;
+        /**
+         * 降级期间PING连续成功的次数,只在探测线程中访问
+         */
+        private int successes;
+        private Jedis probe;
+        /**
+         * 上次PING成功之后业务命令的连接异常次数
+         */
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicBoolean probeRequested = new AtomicBoolean();
+
+        private Node(String name) {
+            this.name = name;
+        }
+
+        private void closeProbe() {
+            if (probe != null) {
+                try {
+                    probe.close();
+                } catch (Exception e) {
+                    log.error(e.getMessage());
+                }
+                probe = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.springbootredisdemo.utils;
+
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 命令在发出之前被拒绝,如熔断器打开、请求deadline已过;不计入熔断统计,也不触发降级
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-19 22:20
+ */
+public class RedisRejectedException extends JedisException {
+
+    public RedisRejectedException(String message) {
+        super(message);
+    }
+}
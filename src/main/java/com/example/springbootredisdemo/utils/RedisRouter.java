@@ -0,0 +1,865 @@
+package com.example.springbootredisdemo.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisClusterException;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.SafeEncoder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: redis连接路由;单机模式下所有请求都走主库连接池,
+ * 分片模式下按key的一致性哈希选择节点,多key操作按节点分组后并行执行;
+ * 集群模式下缓存槽位表按key所在槽位选择节点,MOVED时直接更新对应槽位,多key操作按槽位分组后按节点并行pipeline执行
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-19 09:30
+ */
+@Component
+public class RedisRouter {
+    private static final Logger log = LoggerFactory.getLogger(RedisRouter.class);
+
+    @Autowired
+    private JedisPool jedisPool;
+    @Autowired
+    private JedisPoolConfig jedisPoolConfig;
+    @Autowired
+    private ReplicaRouter replicaRouter;
+    @Autowired
+    private RedisHealth redisHealth;
+
+    @Value("${spring.redis.timeout}")
+    private int timeout;
+    @Value("${spring.redis.password}")
+    private String password;
+
+    @Value("${spring.redis.shard.enabled:false}")
+    private boolean shardEnabled;
+    @Value("${spring.redis.shard.nodes:}")
+    private String shardNodes;
+    @Value("${spring.redis.shard.virtual-nodes:160}")
+    private int virtualNodes;
+    @Value("${spring.redis.shard.parallelism:8}")
+    private int parallelism;
+
+    @Value("${spring.redis.cluster.enabled:false}")
+    private boolean clusterEnabled;
+    @Value("${spring.redis.cluster.nodes:}")
+    private String clusterNodes;
+    @Value("${spring.redis.cluster.max-redirects:5}")
+    private int maxRedirects;
+
+    @Value("${spring.redis.breaker.window:10}")
+    private int breakerWindow;
+    @Value("${spring.redis.breaker.min-calls:20}")
+    private int breakerMinCalls;
+    @Value("${spring.redis.breaker.failure-rate:0.5}")
+    private double breakerFailureRate;
+    @Value("${spring.redis.breaker.slow-rate:0.8}")
+    private double breakerSlowRate;
+    @Value("${spring.redis.breaker.slow-millis:500}")
+    private long breakerSlowMillis;
+    @Value("${spring.redis.breaker.open-millis:5000}")
+    private long breakerOpenMillis;
+    @Value("${spring.redis.breaker.half-open-calls:5}")
+    private int breakerHalfOpenCalls;
+
+    private static final int SLOT_COUNT = 16384;
+    private static final long SLOT_REFRESH_INTERVAL = 1000;
+
+    /**
+     * 节点名(host:port) -> 连接池
+     */
+    private final Map<String, JedisPool> nodePools = new ConcurrentHashMap<>();
+    private volatile ConsistentHash<String> ring;
+    /**
+     * 槽位 -> 主节点名,集群模式下使用
+     */
+    private volatile String[] slotOwners;
+    private volatile long slotsRefreshedAt;
+    /**
+     * 连接池 -> 熔断器;同一节点重建连接池后沿用原熔断器
+     */
+    private final Map<JedisPool, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final Map<String, CircuitBreaker> breakerNames = new ConcurrentHashMap<>();
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        ConsistentHash<String> hash = new ConsistentHash<>(virtualNodes);
+        if (clusterEnabled) {
+            for (String node : StringUtils.commaDelimitedListToSet(clusterNodes)) {
+                node = node.trim();
+                if (!node.isEmpty()) {
+                    registerNode(node);
+                }
+            }
+            refreshSlots();
+            executor = Executors.newFixedThreadPool(parallelism);
+            log.info("redis集群模式开启,节点：" + nodePools.keySet());
+        } else if (shardEnabled) {
+            for (String node : StringUtils.commaDelimitedListToSet(shardNodes)) {
+                node = node.trim();
+                if (node.isEmpty()) {
+                    continue;
+                }
+                registerNode(node);
+                hash.add(node);
+            }
+            executor = Executors.newFixedThreadPool(parallelism);
+            log.info("redis分片模式开启,节点：" + hash.getNodes());
+        }
+        ring = hash;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        for (JedisPool pool : nodePools.values()) {
+            pool.close();
+        }
+    }
+
+    /**
+     * 是否为分片模式
+     * @return
+     */
+    public boolean isSharded() {
+        return shardEnabled && !clusterEnabled && !ring.isEmpty();
+    }
+
+    /**
+     * 是否为集群模式
+     * @return
+     */
+    public boolean isCluster() {
+        return clusterEnabled && slotOwners != null;
+    }
+
+    /**
+     * 集群模式没有SELECT,redis库映射为key前缀;0号库不加前缀
+     * @param key
+     * @param indexdb
+     * @return
+     */
+    public String dbKey(String key, int indexdb) {
+        if (key == null || indexdb == 0 || !isCluster()) {
+            return key;
+        }
+        return indexdb + ":" + key;
+    }
+
+    public byte[] dbKey(byte[] key, int indexdb) {
+        if (key == null || indexdb == 0 || !isCluster()) {
+            return key;
+        }
+        return SafeEncoder.encode(dbKey(SafeEncoder.encode(key), indexdb));
+    }
+
+    /**
+     * 根据key获取写连接;key为null或非分片模式时返回主库连接;redis不可用时直接抛出连接异常
+     * 命令返回后计为读己之写的一次写入,只读命令使用getReadResource或getPrimaryResource
+     * @param key
+     * @return
+     */
+    public Jedis getResource(String key) {
+        RedisCall.clear();
+        redisHealth.check(healthNode(key));
+        Jedis jedis = borrow(key);
+        ReadYourWrites.pendingWrite();
+        return jedis;
+    }
+
+    /**
+     * 获取主库连接用于读,不标记读己之写;对冲读在从库读慢时改读主库使用
+     * @param key
+     * @return
+     */
+    public Jedis getPrimaryResource(String key) {
+        RedisCall.clear();
+        redisHealth.check(healthNode(key));
+        return borrow(key);
+    }
+
+    /**
+     * 获取只读连接;单机模式下开启从库读路由时优先返回从库连接,没有可用从库时回到主库
+     * @param key
+     * @return
+     */
+    public Jedis getReadResource(String key) {
+        RedisCall.clear();
+        redisHealth.check(healthNode(key));
+        if (key != null && replicaRouter.isEnabled() && !isSharded() && !isCluster()) {
+            Deadline.check();
+            Jedis jedis = replicaRouter.getResource();
+            if (jedis != null) {
+                applyTimeout(jedis);
+                return jedis;
+            }
+        }
+        return borrow(key);
+    }
+
+    /**
+     * 获取从库连接,供对冲读在其他线程中借连接
+     * @param lastWrite 发起读的线程的ReadYourWrites.lastWrite()
+     * @return 没有可用从库时返回null
+     */
+    Jedis getReplicaResource(Long lastWrite) {
+        Deadline.check();
+        Jedis jedis = replicaRouter.getResource(lastWrite);
+        if (jedis != null) {
+            applyTimeout(jedis);
+        }
+        return jedis;
+    }
+
+    /**
+     * 各连接池的熔断器状态
+     * @return 节点名 -> 熔断器指标
+     */
+    public Map<String, Object> getBreakerStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Map.Entry<String, CircuitBreaker> entry : breakerNames.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * 借key所在节点的连接;ASK重试期间被重定向槽位的key借目标节点的连接并先发送ASKING
+     */
+    private Jedis borrow(String key) {
+        ClusterRedirect ask = ClusterRedirect.currentAsking();
+        if (ask == null || key == null || JedisClusterCRC16.getSlot(key) != ask.getSlot()) {
+            return borrow(getPool(key));
+        }
+        registerNode(ask.getNode());
+        Jedis jedis = borrow(nodePools.get(ask.getNode()));
+        try {
+            jedis.asking();
+        } catch (RuntimeException e) {
+            jedis.close();
+            throw e;
+        }
+        return jedis;
+    }
+
+    /**
+     * 借连接:检查deadline和熔断器,再按剩余时间设置socket超时
+     */
+    private Jedis borrow(JedisPool pool) {
+        Deadline.check();
+        CircuitBreaker breaker = breaker(pool);
+        breaker.acquire();
+        RedisCall.begin(breaker);
+        Jedis jedis = pool.getResource();
+        try {
+            applyTimeout(jedis);
+        } catch (RuntimeException e) {
+            jedis.close();
+            throw e;
+        }
+        return jedis;
+    }
+
+    /**
+     * socket超时取spring.redis.timeout和deadline剩余时间中较小的一个,每次借出都重新设置,
+     * 上一次借出时按deadline缩短的超时不会留在连接池中
+     */
+    private void applyTimeout(Jedis jedis) {
+        long remaining = Deadline.remaining();
+        int soTimeout = timeout;
+        if (remaining != Long.MAX_VALUE && (timeout <= 0 || remaining < timeout)) {
+            soTimeout = (int) Math.max(1, remaining);
+        }
+        Client client = jedis.getClient();
+        if (client.getSoTimeout() != soTimeout) {
+            client.setSoTimeout(soTimeout);
+            client.rollbackTimeout();
+        }
+    }
+
+    private CircuitBreaker breaker(JedisPool pool) {
+        CircuitBreaker breaker = breakers.get(pool);
+        if (breaker != null) {
+            return breaker;
+        }
+        String name = "master";
+        for (Map.Entry<String, JedisPool> entry : nodePools.entrySet()) {
+            if (entry.getValue() == pool) {
+                name = entry.getKey();
+            }
+        }
+        String breakerName = name;
+        return breakers.computeIfAbsent(pool, k -> breakerNames.computeIfAbsent(breakerName,
+                n -> new CircuitBreaker(n, breakerWindow, breakerMinCalls, breakerFailureRate, breakerSlowRate,
+                        breakerSlowMillis, breakerOpenMillis, breakerHalfOpenCalls)));
+    }
+
+    /**
+     * 根据key获取所在节点的连接池
+     * @param key
+     * @return
+     */
+    public JedisPool getPool(String key) {
+        if (key == null) {
+            return jedisPool;
+        }
+        if (isCluster()) {
+            return nodePools.get(requireSlotOwner(JedisClusterCRC16.getSlot(key)));
+        }
+        if (!isSharded()) {
+            return jedisPool;
+        }
+        return nodePools.get(ring.get(key));
+    }
+
+    /**
+     * 获取key所在的节点名
+     * @param key
+     * @return
+     */
+    public String getNode(String key) {
+        if (isCluster()) {
+            return getSlotOwner(JedisClusterCRC16.getSlot(key));
+        }
+        return ring.get(key);
+    }
+
+    /**
+     * key所在节点名,与getNodeResource的参数对应;key为null或单机模式时为主库(master)
+     * @param key
+     * @return
+     */
+    public String nodeOf(String key) {
+        if (key == null || (!isSharded() && !isCluster())) {
+            return RedisHealth.MASTER;
+        }
+        if (isCluster()) {
+            return requireSlotOwner(JedisClusterCRC16.getSlot(key));
+        }
+        return ring.get(key);
+    }
+
+    /**
+     * key所在节点在RedisHealth中的名字;key为null或单机模式时为主库(master)
+     * @param key
+     * @return
+     */
+    public String healthNode(String key) {
+        if (key == null || (!isSharded() && !isCluster())) {
+            return RedisHealth.MASTER;
+        }
+        String node = getNode(key);
+        return node == null ? RedisHealth.MASTER : node;
+    }
+
+    /**
+     * 获取槽位所在的主节点名
+     * @param slot
+     * @return
+     */
+    public String getSlotOwner(int slot) {
+        String[] owners = slotOwners;
+        return owners == null ? null : owners[slot];
+    }
+
+    /**
+     * 获取槽位所在的主节点名;槽位表中没有时重新加载一次(每秒最多一次)
+     * @param slot
+     * @return
+     * @throws JedisClusterException 重新加载后仍没有该槽位的主节点
+     */
+    private String requireSlotOwner(int slot) {
+        String owner = getSlotOwner(slot);
+        if (owner == null) {
+            long now = System.currentTimeMillis();
+            if (now - slotsRefreshedAt >= SLOT_REFRESH_INTERVAL) {
+                slotsRefreshedAt = now;
+                refreshSlots();
+            }
+            owner = getSlotOwner(slot);
+            if (owner == null) {
+                throw new JedisClusterException("槽位" + slot + "没有已知的主节点,集群槽位未完全分配或节点不可达");
+            }
+        }
+        return owner;
+    }
+
+    /**
+     * 通过CLUSTER SLOTS重新加载槽位表,依次尝试已知节点直到成功
+     */
+    @SuppressWarnings("unchecked")
+    public void refreshSlots() {
+        for (String seed : nodePools.keySet()) {
+            Jedis jedis = null;
+            try {
+                jedis = getNodeResource(seed);
+                String[] owners = new String[SLOT_COUNT];
+                for (Object slotInfo : jedis.clusterSlots()) {
+                    List<Object> info = (List<Object>) slotInfo;
+                    int start = ((Long) info.get(0)).intValue();
+                    int end = ((Long) info.get(1)).intValue();
+                    List<Object> master = (List<Object>) info.get(2);
+                    String host = SafeEncoder.encode((byte[]) master.get(0));
+                    if (host.isEmpty()) {
+                        host = HostAndPort.parseString(seed).getHost();
+                    }
+                    String node = host + ":" + master.get(1);
+                    registerNode(node);
+                    Arrays.fill(owners, start, end + 1, node);
+                }
+                slotOwners = owners;
+                return;
+            } catch (Exception e) {
+                log.error("从节点" + seed + "加载槽位表失败：" + e.getMessage());
+            } finally {
+                if (jedis != null) {
+                    jedis.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * redis操作异常回调;集群模式下收到MOVED时直接把槽位指向新节点,不额外请求CLUSTER SLOTS,
+     * ASK只是迁移中的临时重定向,不更新槽位表;两者都记录到ClusterRedirect,由RedirectRetryAspect重试当前命令
+     * 连接异常交给RedisHealth判断出错的节点是否切换到降级模式,并计入熔断器
+     * @param e
+     */
+    public void onException(Throwable e) {
+        redisHealth.onException(e, RedisCall.currentNode());
+        if (e instanceof JedisConnectionException) {
+            RedisCall.failed();
+        }
+        if (isCluster() && e instanceof JedisRedirectionException) {
+            JedisRedirectionException redirection = (JedisRedirectionException) e;
+            updateSlot(redirection);
+            ClusterRedirect.record(redirection.getSlot(), redirection.getTargetNode().toString(),
+                    e instanceof JedisAskDataException);
+        }
+    }
+
+    private void updateSlot(JedisRedirectionException redirection) {
+        String node = redirection.getTargetNode().toString();
+        registerNode(node);
+        String[] owners = slotOwners;
+        if (redirection instanceof JedisMovedDataException && owners != null) {
+            owners[redirection.getSlot()] = node;
+        }
+    }
+
+    /**
+     * 集群模式下判断多个key是否在同一个槽位
+     * @param keys
+     * @return
+     */
+    public boolean isSameSlot(String... keys) {
+        int slot = -1;
+        for (String key : keys) {
+            int keySlot = JedisClusterCRC16.getSlot(key);
+            if (slot != -1 && slot != keySlot) {
+                return false;
+            }
+            slot = keySlot;
+        }
+        return true;
+    }
+
+    /**
+     * 分片模式下判断多个key是否在同一个节点;非分片模式总是返回true
+     * @param keys
+     * @return
+     */
+    public boolean isSameNode(String... keys) {
+        if (!isSharded()) {
+            return true;
+        }
+        String node = null;
+        for (String key : keys) {
+            String keyNode = ring.get(key);
+            if (node != null && !node.equals(keyNode)) {
+                return false;
+            }
+            node = keyNode;
+        }
+        return true;
+    }
+
+    /**
+     * 将多个key按槽位分组(相同hash tag的key在同一槽位),组内保持原有顺序
+     * @param keys
+     * @return 槽位 -> key列表
+     */
+    public Map<Integer, List<String>> groupBySlot(String... keys) {
+        Map<Integer, List<String>> groups = new LinkedHashMap<>();
+        for (String key : keys) {
+            groups.computeIfAbsent(JedisClusterCRC16.getSlot(key), k -> new ArrayList<>()).add(key);
+        }
+        return groups;
+    }
+
+    /**
+     * 将key,value交替的数组按key所在槽位分组,组内仍为key,value交替
+     * @param keysvalues
+     * @return 槽位 -> key,value列表
+     */
+    public Map<Integer, List<String>> groupPairsBySlot(String... keysvalues) {
+        Map<Integer, List<String>> groups = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < keysvalues.length; i += 2) {
+            List<String> group = groups.computeIfAbsent(JedisClusterCRC16.getSlot(keysvalues[i]), k -> new ArrayList<>());
+            group.add(keysvalues[i]);
+            group.add(keysvalues[i + 1]);
+        }
+        return groups;
+    }
+
+    /**
+     * 获取指定节点0号库的连接,见getNodeResource(String, int)
+     * @param node host:port,主库为master
+     * @return
+     */
+    public Jedis getNodeResource(String node) {
+        return getNodeResource(node, 0);
+    }
+
+    /**
+     * 获取指定节点的连接;和getResource一样检查节点健康、deadline和熔断器,并切换到indexdb库(集群模式没有SELECT)
+     * 用returnNodeResource归还,出错时调用onException
+     * @param node host:port,主库为master
+     * @param indexdb
+     * @return
+     */
+    public Jedis getNodeResource(String node, int indexdb) {
+        RedisCall.clear();
+        redisHealth.check(node);
+        return borrowNode(node, indexdb);
+    }
+
+    /**
+     * 获取正在恢复的节点的连接,供RedisHealth的恢复回调在节点切回可用之前使用;除节点健康外其余检查同getNodeResource
+     * @param node
+     * @param indexdb
+     * @return
+     */
+    Jedis getRecoveringNodeResource(String node, int indexdb) {
+        RedisCall.clear();
+        return borrowNode(node, indexdb);
+    }
+
+    private Jedis borrowNode(String node, int indexdb) {
+        JedisPool pool = RedisHealth.MASTER.equals(node) ? jedisPool : nodePools.get(node);
+        if (pool == null) {
+            throw new IllegalArgumentException("未知的redis节点：" + node);
+        }
+        Jedis jedis = borrow(pool);
+        if (!isCluster() && jedis.getDB() != indexdb) {
+            try {
+                jedis.select(indexdb);
+            } catch (RuntimeException e) {
+                onException(e);
+                jedis.close();
+                throw e;
+            }
+        }
+        return jedis;
+    }
+
+    /**
+     * 归还getNodeResource借出的连接,并把本次调用的耗时计入熔断器
+     * @param jedis
+     */
+    public void returnNodeResource(Jedis jedis) {
+        if (jedis != null) {
+            jedis.close();
+            RedisCall.released();
+        }
+    }
+
+    /**
+     * 主库连接池及各节点连接池
+     * @return 节点名(主库为master) -> 连接池
+     */
+    public Map<String, JedisPool> getPools() {
+        Map<String, JedisPool> pools = new LinkedHashMap<>();
+        pools.put("master", jedisPool);
+        pools.putAll(nodePools);
+        return pools;
+    }
+
+    /**
+     * 当前哈希环上的节点
+     * @return
+     */
+    public Set<String> getNodes() {
+        return ring.getNodes();
+    }
+
+    /**
+     * 持有数据的全部主节点:集群模式为槽位表中的主节点,分片模式为哈希环上的节点,单机模式为空
+     * @return
+     */
+    public Set<String> getMasterNodes() {
+        String[] owners = slotOwners;
+        if (isCluster() && owners != null) {
+            Set<String> nodes = new TreeSet<>();
+            for (String owner : owners) {
+                if (owner != null) {
+                    nodes.add(owner);
+                }
+            }
+            return nodes;
+        }
+        return isSharded() ? new TreeSet<>(ring.getNodes()) : Collections.emptySet();
+    }
+
+    /**
+     * 当前哈希环的副本
+     * @return
+     */
+    public ConsistentHash<String> getRing() {
+        return ring.copy();
+    }
+
+    /**
+     * 为节点创建连接池,此时节点还未加入哈希环,不参与路由
+     * @param node host:port
+     */
+    public void registerNode(String node) {
+        if (nodePools.containsKey(node)) {
+            return;
+        }
+        HostAndPort hostAndPort = HostAndPort.parseString(node);
+        nodePools.put(node, new ResizableJedisPool(jedisPoolConfig, hostAndPort.getHost(), hostAndPort.getPort(),
+                timeout, StringUtils.isEmpty(password) ? null : password));
+    }
+
+    /**
+     * 整体替换哈希环,用于扩容迁移完成后切换路由
+     * @param newRing
+     */
+    public void switchRing(ConsistentHash<String> newRing) {
+        for (String node : newRing.getNodes()) {
+            registerNode(node);
+        }
+        ring = newRing.copy();
+        log.info("redis分片路由已切换,节点：" + ring.getNodes());
+    }
+
+    /**
+     * 将多个key按所在节点分组,组内保持原有顺序
+     * @param keys
+     * @return 节点名 -> key列表
+     */
+    public Map<String, List<String>> groupByNode(String... keys) {
+        Map<String, List<String>> groups = new LinkedHashMap<>();
+        for (String key : keys) {
+            groups.computeIfAbsent(ring.get(key), k -> new ArrayList<>()).add(key);
+        }
+        return groups;
+    }
+
+    /**
+     * 将key,value交替的数组按key所在节点分组,组内仍为key,value交替
+     * @param keysvalues
+     * @return 节点名 -> key,value列表
+     */
+    public Map<String, List<String>> groupPairsByNode(String... keysvalues) {
+        Map<String, List<String>> groups = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < keysvalues.length; i += 2) {
+            List<String> group = groups.computeIfAbsent(ring.get(keysvalues[i]), k -> new ArrayList<>());
+            group.add(keysvalues[i]);
+            group.add(keysvalues[i + 1]);
+        }
+        return groups;
+    }
+
+    /**
+     * 按节点分组并行执行,只有一个分组时在当前线程执行
+     * @param groups 节点名 -> 参数列表
+     * @param action 在节点连接上执行的操作
+     * @return 节点名 -> 执行结果
+     */
+    public <T> Map<String, T> executeOnNodes(Map<String, List<String>> groups,
+                                             BiFunction<Jedis, List<String>, T> action) {
+        Map<String, T> results = new LinkedHashMap<>();
+        if (groups.size() == 1) {
+            Map.Entry<String, List<String>> entry = groups.entrySet().iterator().next();
+            results.put(entry.getKey(), executeOnNode(entry.getKey(), entry.getValue(), action));
+            return results;
+        }
+        Map<String, Future<T>> futures = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> entry : groups.entrySet()) {
+            futures.put(entry.getKey(), executor.submit(inheritDeadline(() -> executeOnNode(entry.getKey(), entry.getValue(), action))));
+        }
+        try {
+            for (Map.Entry<String, Future<T>> entry : futures.entrySet()) {
+                results.put(entry.getKey(), entry.getValue().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("redis分片执行失败：" + e.getCause().getMessage(), e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * 集群模式下按槽位分组执行:同一节点上的各槽位命令合并为一个pipeline,各节点并行;
+     * 个别槽位返回MOVED/ASK时只对该槽位重定向重试
+     * @param slotGroups 槽位 -> 参数列表
+     * @param action 向pipeline中追加一条命令
+     * @return 槽位 -> 执行结果
+     */
+    public <T> Map<Integer, T> executeOnSlots(Map<Integer, List<String>> slotGroups,
+                                              BiFunction<Pipeline, List<String>, Response<T>> action) {
+        Map<String, Map<Integer, List<String>>> nodeGroups = new LinkedHashMap<>();
+        for (Map.Entry<Integer, List<String>> entry : slotGroups.entrySet()) {
+            nodeGroups.computeIfAbsent(requireSlotOwner(entry.getKey()), k -> new LinkedHashMap<>())
+                    .put(entry.getKey(), entry.getValue());
+        }
+        Map<String, Future<Map<Integer, T>>> futures = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<Integer, List<String>>> entry : nodeGroups.entrySet()) {
+            futures.put(entry.getKey(), executor.submit(inheritDeadline(() -> pipelineOnNode(entry.getKey(), entry.getValue(), action))));
+        }
+        Map<Integer, T> results = new LinkedHashMap<>();
+        try {
+            for (Future<Map<Integer, T>> future : futures.values()) {
+                results.putAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("redis集群执行失败：" + e.getCause().getMessage(), e.getCause());
+        }
+        return results;
+    }
+
+    private <T> Map<Integer, T> pipelineOnNode(String node, Map<Integer, List<String>> groups,
+                                               BiFunction<Pipeline, List<String>, Response<T>> action) {
+        Map<Integer, Response<T>> responses = new LinkedHashMap<>();
+        Jedis jedis = null;
+        try {
+            jedis = getNodeResource(node);
+            Pipeline pipeline = jedis.pipelined();
+            for (Map.Entry<Integer, List<String>> entry : groups.entrySet()) {
+                responses.put(entry.getKey(), action.apply(pipeline, entry.getValue()));
+            }
+            pipeline.sync();
+        } catch (RuntimeException e) {
+            onException(e);
+            throw e;
+        } finally {
+            returnNodeResource(jedis);
+        }
+        Map<Integer, T> results = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Response<T>> entry : responses.entrySet()) {
+            try {
+                results.put(entry.getKey(), entry.getValue().get());
+            } catch (JedisRedirectionException e) {
+                results.put(entry.getKey(), redirect(e, groups.get(entry.getKey()), action));
+            }
+        }
+        return results;
+    }
+
+    private <T> T redirect(JedisRedirectionException redirection, List<String> args,
+                           BiFunction<Pipeline, List<String>, Response<T>> action) {
+        for (int attempt = 1; ; attempt++) {
+            updateSlot(redirection);
+            String node = redirection.getTargetNode().toString();
+            Jedis jedis = null;
+            try {
+                jedis = getNodeResource(node);
+                if (redirection instanceof JedisAskDataException) {
+                    jedis.asking();
+                }
+                Pipeline pipeline = jedis.pipelined();
+                Response<T> response = action.apply(pipeline, args);
+                pipeline.sync();
+                return response.get();
+            } catch (JedisRedirectionException e) {
+                if (attempt >= maxRedirects) {
+                    throw e;
+                }
+                redirection = e;
+            } catch (RuntimeException e) {
+                onException(e);
+                throw e;
+            } finally {
+                returnNodeResource(jedis);
+            }
+        }
+    }
+
+    private <T> T executeOnNode(String node, List<String> args, BiFunction<Jedis, List<String>, T> action) {
+        Jedis jedis = null;
+        try {
+            jedis = getNodeResource(node);
+            return action.apply(jedis, args);
+        } catch (RuntimeException e) {
+            onException(e);
+            throw e;
+        } finally {
+            returnNodeResource(jedis);
+        }
+    }
+
+    /**
+     * 并行执行的任务沿用提交线程的deadline
+     */
+    private static <T> Callable<T> inheritDeadline(Callable<T> task) {
+        long remaining = Deadline.remaining();
+        if (remaining == Long.MAX_VALUE) {
+            return task;
+        }
+        long deadline = System.currentTimeMillis() + remaining;
+        return () -> {
+            Deadline.begin(deadline - System.currentTimeMillis());
+            try {
+                return task.call();
+            } finally {
+                Deadline.end();
+            }
+        };
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.springbootredisdemo.utils;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: lua脚本;本地计算sha1,优先EVALSHA,服务端没有缓存该脚本(NOSCRIPT)时退回EVAL
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-19 14:05
+ */
+public class RedisScript {
+    private final String script;
+    private final String sha1;
+
+    public RedisScript(String script) {
+        this.script = script;
+        this.sha1 = sha1(script);
+    }
+
+    /**
+     * 执行脚本
+     * @param jedis
+     * @param keys
+     * @param args
+     * @return
+     */
+    public Object eval(Jedis jedis, List<String> keys, List<String> args) {
+        try {
+            return jedis.evalsha(sha1, keys, args);
+        } catch (JedisDataException e) {
+            if (e.getMessage() == null || !e.getMessage().startsWith("NOSCRIPT")) {
+                throw e;
+            }
+            return jedis.eval(script, keys, args);
+        }
+    }
+
+    /**
+     * 执行脚本,key和参数为二进制,如序列化后的对象
+     * @param jedis
+     * @param keys
+     * @param args
+     * @return
+     */
+    public Object evalBinary(Jedis jedis, List<byte[]> keys, List<byte[]> args) {
+        try {
+            return jedis.evalsha(SafeEncoder.encode(sha1), keys, args);
+        } catch (JedisDataException e) {
+            if (e.getMessage() == null || !e.getMessage().startsWith("NOSCRIPT")) {
+                throw e;
+            }
+            return jedis.eval(SafeEncoder.encode(script), keys, args);
+        }
+    }
+
+    /**
+     * 在pipeline中执行脚本,调用前需保证脚本已通过load加载到对应节点
+     * 使用二进制重载,字符串类型的返回值为byte[];脚本出错时错误保存在Response中,get()时抛出
+     * @param pipeline
+     * @param keys
+     * @param args
+     * @return
+     */
+    public Response<Object> evalsha(Pipeline pipeline, List<String> keys, List<String> args) {
+        return pipeline.evalsha(SafeEncoder.encode(sha1), encode(keys), encode(args));
+    }
+
+    /**
+     * 把脚本加载到连接所在节点的脚本缓存
+     * @param jedis
+     */
+    public void load(Jedis jedis) {
+        jedis.scriptLoad(script);
+    }
+
+    public String getSha1() {
+        return sha1;
+    }
+
+    public String getScript() {
+        return script;
+    }
+
+    private static List<byte[]> encode(List<String> values) {
+        List<byte[]> encoded = new ArrayList<>(values.size());
+        for (String value : values) {
+            encoded.add(SafeEncoder.encode(value));
+        }
+        return encoded;
+    }
+
+    private static String sha1(String script) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest(script.getBytes(StandardCharsets.UTF_8))) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.springbootredisdemo.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 当前http请求的redis调用记录;请求开始时设置,RedisUtils/RedisUtil的每次调用累加总耗时,
+ * 被采样的请求额外保留每次调用的明细(最多max-spans条)
+ * 借连接和隔离舱排队的耗时由连接池和隔离舱回调累加到当前调用上
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-19 23:40
+ */
+public final class RedisTrace {
+    private static final ThreadLocal<RedisTrace> CURRENT = new ThreadLocal<>();
+
+    private final String id;
+    private final String uri;
+    private final boolean sampled;
+    private final int maxSpans;
+    private final long startedAt = System.currentTimeMillis();
+    private final List<Span> spans = new ArrayList<>();
+
+    private int calls;
+    private int dropped;
+    private long totalMicros;
+    private long poolWaitMicros;
+    private long bulkheadWaitMicros;
+    /**
+     * 正在执行的调用层数,嵌套调用只记录最外层
+     */
+    private int depth;
+    private long pendingPoolWait;
+    private long pendingBulkheadWait;
+
+    private RedisTrace(String id, String uri, boolean sampled, int maxSpans) {
+        this.id = id;
+        this.uri = uri;
+        this.sampled = sampled;
+        this.maxSpans = maxSpans;
+    }
+
+    static RedisTrace begin(String id, String uri, boolean sampled, int maxSpans) {
+        RedisTrace trace = new RedisTrace(id, uri, sampled, maxSpans);
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    static RedisTrace end() {
+        RedisTrace trace = CURRENT.get();
+        CURRENT.remove();
+        return trace;
+    }
+
+    /**
+     * 当前线程的记录
+     * @return 不在http请求中时返回null
+     */
+    public static RedisTrace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 借连接耗时,由连接池回调
+     * @param micros
+     */
+    public static void onPoolWait(long micros) {
+        RedisTrace trace = CURRENT.get();
+        if (trace != null && trace.depth > 0) {
+            trace.pendingPoolWait += micros;
+        }
+    }
+
+    /**
+     * 隔离舱排队耗时,由隔离舱回调
+     * @param micros
+     */
+    public static void onBulkheadWait(long micros) {
+        RedisTrace trace = CURRENT.get();
+        if (trace != null && trace.depth > 0) {
+            trace.pendingBulkheadWait += micros;
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    /**
+     * 进入一次调用
+     * @return 是否为最外层调用
+     */
+    boolean enter() {
+        if (depth++ > 0) {
+            return false;
+        }
+        pendingPoolWait = 0;
+        pendingBulkheadWait = 0;
+        return true;
+    }
+
+    void exit() {
+        depth--;
+    }
+
+    long getPendingPoolWait() {
+        return pendingPoolWait;
+    }
+
+    long getPendingBulkheadWait() {
+        return pendingBulkheadWait;
+    }
+
+    void record(long micros, Span span) {
+        calls++;
+        totalMicros += micros;
+        poolWaitMicros += pendingPoolWait;
+        bulkheadWaitMicros += pendingBulkheadWait;
+        if (span == null) {
+            return;
+        }
+        if (spans.size() < maxSpans) {
+            spans.add(span);
+        } else {
+            dropped++;
+        }
+    }
+
+    /**
+     * 响应头中的汇总:调用次数、总耗时、借连接耗时、隔离舱排队耗时、调用耗时(毫秒)
+     * @return
+     */
+    public String summary() {
+        return "calls=" + calls + ";total=" + millis(totalMicros) + ";pool-wait=" + millis(poolWaitMicros)
+                + ";bulkhead-wait=" + millis(bulkheadWaitMicros) + ";call=" + millis(totalMicros - poolWaitMicros - bulkheadWaitMicros);
+    }
+
+    /**
+     * 汇总及每次调用的明细
+     * @return
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("id", id);
+        map.put("uri", uri);
+        map.put("startedAt", startedAt);
+        map.put("calls", calls);
+        map.put("totalMicros", totalMicros);
+        map.put("poolWaitMicros", poolWaitMicros);
+        map.put("bulkheadWaitMicros", bulkheadWaitMicros);
+        map.put("callMicros", totalMicros - poolWaitMicros - bulkheadWaitMicros);
+        if (sampled) {
+            List<Map<String, Object>> list = new ArrayList<>(spans.size());
+            for (Span span : spans) {
+                list.add(span.toMap());
+            }
+            map.put("spans", list);
+            map.put("droppedSpans", dropped);
+        }
+        return map;
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.3f", micros / 1000.0);
+    }
+
+    /**
+     * 一次redis调用;poolWaitMicros为-1表示调用不在http请求中,没有统计借连接耗时
+     * callMicros为总耗时减去借连接和隔离舱排队耗时,包含网络往返和客户端编解码,不是redis服务端执行耗时
+     */
+    public static final class Span {
+        private final String uri;
+        private final String command;
+        private final String keyPattern;
+        private final int db;
+        private final long requestBytes;
+        private final long responseBytes;
+        private final long poolWaitMicros;
+        private final long bulkheadWaitMicros;
+        private final long totalMicros;
+        private final boolean failed;
+        private final long startedAt;
+
+        Span(String uri, String command, String keyPattern, int db, long requestBytes, long responseBytes,
+             long poolWaitMicros, long bulkheadWaitMicros, long totalMicros, boolean failed) {
+            this.uri = uri;
+            this.command = command;
+            this.keyPattern = keyPattern;
+            this.db = db;
+            this.requestBytes = requestBytes;
+            this.responseBytes = responseBytes;
+            this.poolWaitMicros = poolWaitMicros;
+            this.bulkheadWaitMicros = bulkheadWaitMicros;
+            this.totalMicros = totalMicros;
+            this.failed = failed;
+            this.startedAt = System.currentTimeMillis() - totalMicros / 1000;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("startedAt", startedAt);
+            if (uri != null) {
+                map.put("uri", uri);
+            }
+            map.put("command", command);
+            map.put("key", keyPattern);
+            map.put("db", db);
+            map.put("requestBytes", requestBytes);
+            map.put("responseBytes", responseBytes);
+            map.put("poolWaitMicros", poolWaitMicros);
+            map.put("bulkheadWaitMicros", bulkheadWaitMicros);
+            map.put("callMicros", poolWaitMicros < 0 ? totalMicros : totalMicros - poolWaitMicros - bulkheadWaitMicros);
+            map.put("totalMicros", totalMicros);
+            map.put("failed", failed);
+            return map;
+        }
+    }
+}
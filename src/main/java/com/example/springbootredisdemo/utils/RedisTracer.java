@@ -0,0 +1,256 @@
+package com.example.springbootredisdemo.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: redis调用追踪;每个http请求按sample-rate采样,被采样的请求记录每次调用的命令、脱敏后的key、库、
+ * 请求和响应大小、借连接耗时和服务端耗时,可通过/redis/trace/{id}查看;未采样的调用只计时,
+ * 超过slow-millis的调用(不论是否采样、是否在http请求中)进入最近slow-log-size条的慢调用日志
+ * key中的数字替换为{n},16位以上的十六进制串和uuid替换为{id},不记录value
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-19 23:40
+ */
+@Component
+public class RedisTracer {
+    private static final Pattern ID = Pattern.compile(
+            "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}|[0-9a-fA-F]{16,}");
+    private static final Pattern NUMBER = Pattern.compile("\\d+");
+    private static final int MAX_KEY_LENGTH = 100;
+
+    @Value("${spring.redis.trace.enabled:true}")
+    private boolean enabled;
+    @Value("${spring.redis.trace.sample-rate:0.01}")
+    private double sampleRate;
+    @Value("${spring.redis.trace.max-spans:200}")
+    private int maxSpans;
+    @Value("${spring.redis.trace.recent-size:100}")
+    private int recentSize;
+    @Value("${spring.redis.trace.slow-millis:20}")
+    private long slowMillis;
+    @Value("${spring.redis.trace.slow-log-size:200}")
+    private int slowLogSize;
+
+    private final Deque<RedisTrace.Span> slowLog = new ArrayDeque<>();
+    private final Map<String, RedisTrace> recent = new LinkedHashMap<String, RedisTrace>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, RedisTrace> eldest) {
+            return size() > recentSize;
+        }
+    };
+
+    /**
+     * 可能抛出任意异常的调用,供切面透传原方法的异常
+     */
+    public interface Action {
+        Object run() throws Throwable;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * http请求开始
+     * @param uri
+     * @param force 请求要求强制采样
+     * @return 当前请求的记录,未开启时返回null
+     */
+    public RedisTrace start(String uri, boolean force) {
+        if (!enabled) {
+            return null;
+        }
+        boolean sampled = force || (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate);
+        return RedisTrace.begin(UUID.randomUUID().toString().replace("-", ""), uri, sampled, maxSpans);
+    }
+
+    /**
+     * http请求结束,被采样的请求保留到最近记录中
+     */
+    public void finish() {
+        RedisTrace trace = RedisTrace.end();
+        if (trace != null && trace.isSampled()) {
+            synchronized (recent) {
+                recent.put(trace.getId(), trace);
+            }
+        }
+    }
+
+    /**
+     * 执行并记录一次调用
+     * @param command 方法名
+     * @param names 参数名,用于找出库参数(indexdb/database)
+     * @param args 参数,第一个字符串参数视为key
+     * @param action
+     * @return
+     * @throws Throwable
+     */
+    public Object invoke(String command, String[] names, Object[] args, Action action) throws Throwable {
+        if (!enabled) {
+            return action.run();
+        }
+        RedisTrace trace = RedisTrace.current();
+        if (trace != null && !trace.enter()) {
+            try {
+                return action.run();
+            } finally {
+                trace.exit();
+            }
+        }
+        long start = System.nanoTime();
+        Object result = null;
+        boolean failed = false;
+        try {
+            result = action.run();
+            return result;
+        } catch (Throwable e) {
+            failed = true;
+            throw e;
+        } finally {
+            long micros = (System.nanoTime() - start) / 1000;
+            boolean slow = micros >= slowMillis * 1000;
+            RedisTrace.Span span = null;
+            if (slow || (trace != null && trace.isSampled())) {
+                span = new RedisTrace.Span(trace == null ? null : trace.getUri(), command,
+                        keyPattern(args), db(names, args), sizeOf(args), sizeOf(result),
+                        trace == null ? -1 : trace.getPendingPoolWait(), trace == null ? -1 : trace.getPendingBulkheadWait(),
+                        micros, failed);
+            }
+            if (trace != null) {
+                trace.record(micros, trace.isSampled() ? span : null);
+                trace.exit();
+            }
+            if (slow) {
+                synchronized (slowLog) {
+                    slowLog.addFirst(span);
+                    if (slowLog.size() > slowLogSize) {
+                        slowLog.removeLast();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 指定请求的调用明细
+     * @param id 响应头X-Redis-Trace-Id
+     * @return 不存在或已被淘汰时返回null
+     */
+    public Map<String, Object> getTrace(String id) {
+        synchronized (recent) {
+            RedisTrace trace = recent.get(id);
+            return trace == null ? null : trace.toMap();
+        }
+    }
+
+    /**
+     * 最近被采样的请求汇总,新的在前
+     * @return
+     */
+    public List<Map<String, Object>> getRecent() {
+        List<Map<String, Object>> list = new ArrayList<>();
+        synchronized (recent) {
+            for (RedisTrace trace : recent.values()) {
+                Map<String, Object> map = trace.toMap();
+                map.remove("spans");
+                list.add(0, map);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 慢调用日志,新的在前
+     * @return
+     */
+    public List<Map<String, Object>> getSlowLog() {
+        List<Map<String, Object>> list = new ArrayList<>();
+        synchronized (slowLog) {
+            for (RedisTrace.Span span : slowLog) {
+                list.add(span.toMap());
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 脱敏后的key
+     */
+    static String keyPattern(Object[] args) {
+        for (Object arg : args) {
+            String key = null;
+            if (arg instanceof String) {
+                key = (String) arg;
+            } else if (arg instanceof byte[]) {
+                key = new String((byte[]) arg, StandardCharsets.UTF_8);
+            } else if (arg instanceof String[] && ((String[]) arg).length > 0) {
+                key = ((String[]) arg)[0];
+            }
+            if (key != null) {
+                key = NUMBER.matcher(ID.matcher(key).replaceAll("{id}")).replaceAll("{n}");
+                return key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) + "..." : key;
+            }
+        }
+        return null;
+    }
+
+    private static int db(String[] names, Object[] args) {
+        if (names == null) {
+            return -1;
+        }
+        for (int i = 0; i < names.length && i < args.length; i++) {
+            if (("indexdb".equals(names[i]) || "database".equals(names[i])) && args[i] instanceof Integer) {
+                return (Integer) args[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 估算的数据大小(字节),字符串按字符数计
+     */
+    private static long sizeOf(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return ((String) value).length();
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return 8;
+        }
+        long size = 0;
+        if (value instanceof Object[]) {
+            for (Object item : (Object[]) value) {
+                size += sizeOf(item);
+            }
+        } else if (value instanceof Collection) {
+            for (Object item : (Collection<?>) value) {
+                size += sizeOf(item);
+            }
+        } else if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += sizeOf(entry.getKey()) + sizeOf(entry.getValue());
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,594 @@
+package com.example.springbootredisdemo.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 批量导出/导入工具;导出在每个主节点上SCAN,按批通过pipeline取DUMP和PTTL,
+ * 以二进制格式经内存映射写入文件;导入顺序读取文件,按批交给多个线程,按节点分组通过pipeline RESTORE
+ * 文件格式:头部 魔数(int) 版本(int) 创建时间(long);每条记录 标记(byte 1) key长度(int) key 过期时间点(long,-1不过期) 值长度(int) DUMP值
+ * 过期时间保存为绝对时间点,导入时换算剩余时间,已过期的key跳过;集群模式下key中的库前缀在导出时去掉,导入时按目标库重新加上
+ * 导出和导入都定期把进度写入 文件名.checkpoint,中断后传resume=true从检查点继续,完成后删除检查点
+ * 导入的检查点位置为最早一个未成功的批次,有key写入失败的批次一直保留为未完成,导入结束时保留检查点,
+ * 从检查点继续时重新导入;检查点中的计数只包含检查点位置之前的批次,继续时以此为基数,不会重复计数
+ * 当前客户端的RESTORE只接受int毫秒且不支持REPLACE,RESTORE通过lua执行
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-19 21:30
+ */
+@Component
+public class RedisTransfer {
+    private static final Logger log = LoggerFactory.getLogger(RedisTransfer.class);
+    private static final int MAGIC = 0x52445850;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final byte RECORD = 1;
+
+    /**
+     * KEYS[1] key; ARGV[1] 剩余毫秒,0表示不过期 ARGV[2] DUMP值 ARGV[3] 是否覆盖已有key
+     */
+    private static final RedisScript RESTORE = new RedisScript(
+            "if ARGV[3] == '1' then return redis.call('RESTORE', KEYS[1], ARGV[1], ARGV[2], 'REPLACE') end "
+                    + "return redis.call('RESTORE', KEYS[1], ARGV[1], ARGV[2])");
+
+    @Autowired
+    private RedisRouter redisRouter;
+
+    @Value("${spring.redis.transfer.scan-count:1000}")
+    private int scanCount;
+    @Value("${spring.redis.transfer.batch-size:1000}")
+    private int batchSize;
+    @Value("${spring.redis.transfer.import-threads:4}")
+    private int importThreads;
+    @Value("${spring.redis.transfer.region-size:67108864}")
+    private int regionSize;
+    @Value("${spring.redis.transfer.checkpoint-interval:5000}")
+    private long checkpointInterval;
+
+    /**
+     * 导出一个库中匹配的key
+     * @param file 导出文件
+     * @param indexdb 库
+     * @param pattern key匹配模式,null表示全部
+     * @param resume 是否从检查点继续
+     * @return 导出统计,失败时包含error,可从检查点继续
+     */
+    public Map<String, Object> export(String file, int indexdb, String pattern, boolean resume) {
+        Stats stats = new Stats();
+        Path checkpointPath = Paths.get(file + ".checkpoint");
+        List<String> nodes = new ArrayList<>(redisRouter.getMasterNodes());
+        if (nodes.isEmpty()) {
+            nodes.add("");
+        }
+        int nodeIndex = 0;
+        String cursor = ScanParams.SCAN_POINTER_START;
+        long position = 0;
+        try {
+            Properties checkpoint = resume ? loadCheckpoint(checkpointPath) : null;
+            if (checkpoint != null) {
+                nodeIndex = nodes.indexOf(checkpoint.getProperty("node"));
+                if (nodeIndex < 0) {
+                    throw new IllegalStateException("检查点中的节点已不存在：" + checkpoint.getProperty("node"));
+                }
+                cursor = checkpoint.getProperty("cursor");
+                position = Long.parseLong(checkpoint.getProperty("position"));
+                stats.restore(checkpoint);
+            }
+            byte[] match = SafeEncoder.encode(redisRouter.dbKey(pattern == null ? "*" : pattern, indexdb));
+            byte[] prefix = SafeEncoder.encode(redisRouter.dbKey("", indexdb));
+            try (MappedWriter writer = new MappedWriter(Paths.get(file), position, regionSize)) {
+                if (position == 0) {
+                    writer.header();
+                }
+                long nextCheckpoint = System.currentTimeMillis() + checkpointInterval;
+                for (; nodeIndex < nodes.size(); nodeIndex++) {
+                    String node = nodes.get(nodeIndex);
+                    Jedis jedis = null;
+                    try {
+                        jedis = redisRouter.getNodeResource(node.isEmpty() ? RedisHealth.MASTER : node, indexdb);
+                        ScanParams params = new ScanParams().match(match).count(scanCount);
+                        do {
+                            ScanResult<byte[]> result = jedis.scan(SafeEncoder.encode(cursor), params);
+                            dump(jedis, result.getResult(), prefix, writer, stats);
+                            cursor = result.getStringCursor();
+                            if (System.currentTimeMillis() >= nextCheckpoint) {
+                                writer.force();
+                                saveCheckpoint(checkpointPath, node, cursor, writer.position(), stats);
+                                nextCheckpoint = System.currentTimeMillis() + checkpointInterval;
+                            }
+                        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+                    } finally {
+                        // 整个节点扫描期间一直占用连接,不计入熔断器的慢调用
+                        if (jedis != null) {
+                            jedis.close();
+                            RedisCall.clear();
+                        }
+                    }
+                    if (nodeIndex + 1 < nodes.size()) {
+                        writer.force();
+                        saveCheckpoint(checkpointPath, nodes.get(nodeIndex + 1), ScanParams.SCAN_POINTER_START,
+                                writer.position(), stats);
+                    }
+                }
+                writer.finish();
+            }
+            Files.deleteIfExists(checkpointPath);
+        } catch (Exception e) {
+            log.error("导出失败：" + e.getMessage());
+            redisRouter.onException(e);
+            stats.error = e.getMessage();
+        }
+        Map<String, Object> res = stats.toMap();
+        log.info("导出" + file + "：" + res);
+        return res;
+    }
+
+    /**
+     * 导入文件到指定库
+     * @param file 导出的文件
+     * @param indexdb 目标库
+     * @param replace 是否覆盖已存在的key,不覆盖时已存在的key计入skipped
+     * @param resume 是否从检查点继续
+     * @return 导入统计,失败时包含error,可从检查点继续
+     */
+    public Map<String, Object> importFile(String file, int indexdb, boolean replace, boolean resume) {
+        Stats stats = new Stats();
+        Path checkpointPath = Paths.get(file + ".checkpoint");
+        ExecutorService workers = Executors.newFixedThreadPool(importThreads);
+        int permits = importThreads * 2;
+        Semaphore inflight = new Semaphore(permits);
+        // 已提交但还没成功的批次起始位置,失败的批次留在其中
+        ConcurrentSkipListSet<Long> pending = new ConcurrentSkipListSet<>();
+        // 已成功但还没计入检查点的批次
+        ConcurrentSkipListMap<Long, Stats> done = new ConcurrentSkipListMap<>();
+        // 检查点位置之前所有批次的计数
+        Stats committed = new Stats();
+        try {
+            Properties checkpoint = resume ? loadCheckpoint(checkpointPath) : null;
+            long position = HEADER_SIZE;
+            if (checkpoint != null) {
+                position = Long.parseLong(checkpoint.getProperty("position"));
+                committed.restore(checkpoint);
+                stats.add(committed);
+            }
+            try (MappedReader reader = new MappedReader(Paths.get(file), regionSize)) {
+                reader.header();
+                reader.seek(position);
+                long nextCheckpoint = System.currentTimeMillis() + checkpointInterval;
+                long submitted = position;
+                List<Record> batch = new ArrayList<>(batchSize);
+                Record record;
+                while (true) {
+                    record = reader.next();
+                    if (record != null) {
+                        batch.add(record);
+                    }
+                    if (!batch.isEmpty() && (record == null || batch.size() >= batchSize)) {
+                        List<Record> chunk = batch;
+                        long start = chunk.get(0).offset;
+                        inflight.acquire();
+                        pending.add(start);
+                        workers.execute(() -> {
+                            try {
+                                Stats result = new Stats();
+                                restore(chunk, indexdb, replace, result);
+                                stats.add(result);
+                                if (result.failed.get() == 0) {
+                                    // 先记录结果再移出pending,保存检查点时不会漏掉该批次的计数
+                                    done.put(start, result);
+                                    pending.remove(start);
+                                }
+                            } finally {
+                                inflight.release();
+                            }
+                        });
+                        submitted = reader.position();
+                        batch = new ArrayList<>(batchSize);
+                    }
+                    if (record == null) {
+                        break;
+                    }
+                    if (System.currentTimeMillis() >= nextCheckpoint) {
+                        checkpoint(checkpointPath, pending, done, committed, submitted);
+                        nextCheckpoint = System.currentTimeMillis() + checkpointInterval;
+                    }
+                }
+                inflight.acquire(permits);
+                inflight.release(permits);
+                if (!pending.isEmpty()) {
+                    checkpoint(checkpointPath, pending, done, committed, submitted);
+                    stats.error = pending.size() + "批导入失败,可从检查点继续";
+                }
+            }
+            if (pending.isEmpty()) {
+                Files.deleteIfExists(checkpointPath);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stats.error = "interrupted";
+        } catch (Exception e) {
+            log.error("导入失败：" + e.getMessage());
+            stats.error = e.getMessage();
+        } finally {
+            workers.shutdown();
+        }
+        Map<String, Object> res = stats.toMap();
+        log.info("导入" + file + "：" + res);
+        return res;
+    }
+
+    /**
+     * 检查点位置为最早一个未成功的批次;之前已成功的批次计数并入committed后一起保存
+     */
+    private static void checkpoint(Path path, ConcurrentSkipListSet<Long> pending, ConcurrentSkipListMap<Long, Stats> done,
+                                   Stats committed, long submitted) throws IOException {
+        Long first = pending.isEmpty() ? null : pending.first();
+        long position = first == null ? submitted : first;
+        Map<Long, Stats> before = done.headMap(position);
+        for (Stats result : before.values()) {
+            committed.add(result);
+        }
+        before.clear();
+        saveCheckpoint(path, "", "", position, committed);
+    }
+
+    private void dump(Jedis jedis, List<byte[]> keys, byte[] prefix, MappedWriter writer, Stats stats) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        Pipeline pipeline = jedis.pipelined();
+        List<Response<byte[]>> dumps = new ArrayList<>(keys.size());
+        List<Response<Long>> ttls = new ArrayList<>(keys.size());
+        for (byte[] key : keys) {
+            dumps.add(pipeline.dump(key));
+            ttls.add(pipeline.pttl(key));
+        }
+        pipeline.sync();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] value = dumps.get(i).get();
+            Long ttl = ttls.get(i).get();
+            if (value == null || ttl == null || ttl == -2) {
+                // SCAN之后被删除或过期
+                continue;
+            }
+            byte[] key = keys.get(i);
+            if (prefix.length > 0) {
+                key = Arrays.copyOfRange(key, prefix.length, key.length);
+            }
+            writer.write(key, ttl < 0 ? -1 : now + ttl, value);
+            stats.keys.incrementAndGet();
+            stats.bytes.addAndGet(key.length + value.length);
+        }
+    }
+
+    private void restore(List<Record> records, int indexdb, boolean replace, Stats stats) {
+        Map<String, List<Record>> groups = new LinkedHashMap<>();
+        for (Record record : records) {
+            record.key = redisRouter.dbKey(record.key, indexdb);
+            groups.computeIfAbsent(redisRouter.nodeOf(SafeEncoder.encode(record.key)), k -> new ArrayList<>())
+                    .add(record);
+        }
+        byte[] sha1 = SafeEncoder.encode(RESTORE.getSha1());
+        byte[] replaceArg = SafeEncoder.encode(replace ? "1" : "0");
+        for (Map.Entry<String, List<Record>> entry : groups.entrySet()) {
+            Jedis jedis = null;
+            try {
+                jedis = redisRouter.getNodeResource(entry.getKey(), indexdb);
+                RESTORE.load(jedis);
+                Pipeline pipeline = jedis.pipelined();
+                List<Response<Object>> responses = new ArrayList<>();
+                List<Record> sent = new ArrayList<>();
+                long now = System.currentTimeMillis();
+                for (Record record : entry.getValue()) {
+                    long ttl = record.expireAt < 0 ? 0 : record.expireAt - now;
+                    if (record.expireAt >= 0 && ttl <= 0) {
+                        stats.expired.incrementAndGet();
+                        continue;
+                    }
+                    responses.add(pipeline.evalsha(sha1, Collections.singletonList(record.key),
+                            Arrays.asList(SafeEncoder.encode(Long.toString(ttl)), record.value, replaceArg)));
+                    sent.add(record);
+                }
+                pipeline.sync();
+                for (int i = 0; i < responses.size(); i++) {
+                    try {
+                        responses.get(i).get();
+                        stats.keys.incrementAndGet();
+                        stats.bytes.addAndGet(sent.get(i).key.length + sent.get(i).value.length);
+                    } catch (JedisDataException e) {
+                        if (e.getMessage() != null && e.getMessage().contains("BUSYKEY")) {
+                            stats.skipped.incrementAndGet();
+                        } else {
+                            stats.failed.incrementAndGet();
+                            log.error("RESTORE失败：" + SafeEncoder.encode(sent.get(i).key) + "," + e.getMessage());
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                stats.failed.addAndGet(entry.getValue().size());
+                log.error("导入失败：" + e.getMessage());
+                redisRouter.onException(e);
+            } finally {
+                redisRouter.returnNodeResource(jedis);
+            }
+        }
+    }
+
+    private static Properties loadCheckpoint(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    /**
+     * 先写临时文件再替换,中途崩溃不会留下不完整的检查点
+     */
+    private static void saveCheckpoint(Path path, String node, String cursor, long position, Stats counts)
+            throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("node", node);
+        properties.setProperty("cursor", cursor);
+        properties.setProperty("position", Long.toString(position));
+        properties.setProperty("keys", Long.toString(counts.keys.get()));
+        properties.setProperty("bytes", Long.toString(counts.bytes.get()));
+        properties.setProperty("skipped", Long.toString(counts.skipped.get()));
+        properties.setProperty("expired", Long.toString(counts.expired.get()));
+        Path tmp = Paths.get(path + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            properties.store(out, null);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static class Record {
+        final long offset;
+        byte[] key;
+        final long expireAt;
+        final byte[] value;
+
+        private Record(long offset, byte[] key, long expireAt, byte[] value) {
+            this.offset = offset;
+            this.key = key;
+            this.expireAt = expireAt;
+            this.value = value;
+        }
+    }
+
+    /**
+     * 按区域映射文件顺序写入,区域写满后从当前位置重新映射
+     */
+    static class MappedWriter implements Closeable {
+        private final FileChannel channel;
+        private final int regionSize;
+        private MappedByteBuffer buffer;
+        private long base;
+
+        MappedWriter(Path path, long position, int regionSize) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            this.regionSize = regionSize;
+            map(position, 0);
+        }
+
+        void header() {
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis());
+        }
+
+        void write(byte[] key, long expireAt, byte[] value) {
+            ensure(1 + 4 + key.length + 8 + 4 + value.length);
+            buffer.put(RECORD).putInt(key.length).put(key).putLong(expireAt).putInt(value.length).put(value);
+        }
+
+        private long position() {
+            return base + buffer.position();
+        }
+
+        private void force() {
+            buffer.force();
+        }
+
+        /**
+         * 截掉最后一个区域中未使用的部分
+         */
+        void finish() throws IOException {
+            long end = position();
+            buffer.force();
+            buffer = null;
+            channel.truncate(end);
+        }
+
+        private void ensure(int size) {
+            if (buffer.remaining() < size) {
+                try {
+                    buffer.force();
+                    map(position(), size);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        private void map(long position, int min) throws IOException {
+            base = position;
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(regionSize, min));
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * 按区域映射文件顺序读取,剩余字节不足一条记录时从当前位置重新映射
+     */
+    static class MappedReader implements Closeable {
+        private final FileChannel channel;
+        private final int regionSize;
+        private final long size;
+        private MappedByteBuffer buffer;
+        private long base;
+
+        MappedReader(Path path, int regionSize) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            this.regionSize = regionSize;
+            this.size = channel.size();
+            seek(0);
+        }
+
+        void header() {
+            if (!ensure(HEADER_SIZE) || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IllegalStateException("不是有效的导出文件");
+            }
+            buffer.getLong();
+        }
+
+        void seek(long position) {
+            map(position, 0);
+        }
+
+        private long position() {
+            return base + buffer.position();
+        }
+
+        /**
+         * @return 读到文件末尾、未完成的导出留下的空白区或不完整的记录时返回null
+         */
+        Record next() {
+            if (!ensure(1 + 4)) {
+                return null;
+            }
+            long offset = position();
+            if (buffer.get() != RECORD) {
+                return null;
+            }
+            int keyLength = buffer.getInt();
+            if (!ensure(keyLength + 8 + 4)) {
+                return null;
+            }
+            byte[] key = new byte[keyLength];
+            buffer.get(key);
+            long expireAt = buffer.getLong();
+            int valueLength = buffer.getInt();
+            if (!ensure(valueLength)) {
+                return null;
+            }
+            byte[] value = new byte[valueLength];
+            buffer.get(value);
+            return new Record(offset, key, expireAt, value);
+        }
+
+        private boolean ensure(int length) {
+            if (buffer.remaining() >= length) {
+                return true;
+            }
+            if (size - position() < length) {
+                return false;
+            }
+            map(position(), length);
+            return true;
+        }
+
+        private void map(long position, int min) {
+            try {
+                base = position;
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(size - position, Math.max(regionSize, min)));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static class Stats {
+        private final long start = System.currentTimeMillis();
+        private final AtomicLong keys = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong expired = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private volatile String error;
+
+        private void add(Stats other) {
+            keys.addAndGet(other.keys.get());
+            bytes.addAndGet(other.bytes.get());
+            skipped.addAndGet(other.skipped.get());
+            expired.addAndGet(other.expired.get());
+            failed.addAndGet(other.failed.get());
+        }
+
+        /**
+         * 从检查点恢复计数,旧版本检查点只有keys
+         */
+        private void restore(Properties checkpoint) {
+            keys.set(Long.parseLong(checkpoint.getProperty("keys", "0")));
+            bytes.set(Long.parseLong(checkpoint.getProperty("bytes", "0")));
+            skipped.set(Long.parseLong(checkpoint.getProperty("skipped", "0")));
+            expired.set(Long.parseLong(checkpoint.getProperty("expired", "0")));
+        }
+
+        private Map<String, Object> toMap() {
+            long elapsed = System.currentTimeMillis() - start;
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("keys", keys.get());
+            map.put("bytes", bytes.get());
+            map.put("skipped", skipped.get());
+            map.put("expired", expired.get());
+            map.put("failed", failed.get());
+            map.put("elapsedMillis", elapsed);
+            map.put("keysPerSecond", elapsed == 0 ? 0 : keys.get() * 1000 / elapsed);
+            if (error != null) {
+                map.put("error", error);
+            }
+            return map;
+        }
+    }
+}
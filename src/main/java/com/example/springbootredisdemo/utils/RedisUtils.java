@@ -6,14 +6,29 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import redis.clients.jedis.BinaryClient;
+import redis.clients.jedis.BitOP;
+import redis.clients.jedis.GeoCoordinate;
+import redis.clients.jedis.GeoRadiusResponse;
+import redis.clients.jedis.GeoUnit;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
 import redis.clients.jedis.SortingParams;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.params.geo.GeoRadiusParam;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.SafeEncoder;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -32,25 +47,49 @@ public class RedisUtils {
     private static final Logger log = LoggerFactory.getLogger(RedisUtils.class);
     @Autowired
     private JedisPool jedisPool;
+    @Autowired
+    private RedisRouter redisRouter;
+    @Autowired
+    private RedisHealth redisHealth;
+    @Autowired
+    private OfflineStore offlineStore;
+    @Autowired
+    private HedgedReader hedgedReader;
 
     /**
      * 通过key获取储存在redis中的value 并释放连接
      *
      * @param key
      * @param indexdb 选择redis库
-     * @return 如果成功返回value 失败则为null
+     * @return 如果成功返回value 失败则为null;redis不可用时返回降级存储中最近写入(开启cache-reads时也包括读到)的值
      */
     public String get(String key,int indexdb){
+        if (isOffline(key, indexdb)) {
+            return offlineStore.get(indexdb, key);
+        }
         Jedis jedis = null;
         String value = null;
         try {
-            jedis = jedisPool.getResource();
-            jedis.select(indexdb);
-            value = jedis.get(key);
+            if (offlineStore.isCacheReads()) {
+                // 同一往返中读出剩余过期时间,降级缓存中的值与redis同时过期
+                List<Object> res = hedgedReader.read(dbKey(key, indexdb), indexdb, reader -> {
+                    Pipeline pipeline = reader.pipelined();
+                    pipeline.get(dbKey(key, indexdb));
+                    pipeline.pttl(dbKey(key, indexdb));
+                    return pipeline.syncAndReturnAll();
+                });
+                value = (String) res.get(0);
+                offlineStore.cacheRead(indexdb, key, value, (Long) res.get(1));
+            } else {
+                value = hedgedReader.read(dbKey(key, indexdb), indexdb, reader -> reader.get(dbKey(key, indexdb)));
+            }
             log.info(value);
         }catch (Exception e){
-            log.error(e.getMessage());
+            handleException(e);
             e.printStackTrace();
+            if (isOffline(key, indexdb)) {
+                value = offlineStore.get(indexdb, key);
+            }
         }finally {
             returnResource(jedisPool,jedis);
         }
@@ -62,17 +101,22 @@ public class RedisUtils {
      * @param key
      * @param value
      * @param indexdb 选择redis库 0-15
-     * @return 成功返回ok，失败为0
+     * @return 成功返回ok，失败为0;redis不可用时写入降级存储,恢复后回放
      */
     public String set(String key,String value,int indexdb){
+        if (isOffline(key, indexdb) && offlineStore.set(indexdb, key, value, 0)) {
+            return "OK";
+        }
         Jedis jedis = null;
         try{
-            jedis = jedisPool.getResource();
-            jedis.select(indexdb);
-            return jedis.set(key,value);
+            jedis = getResource(dbKey(key, indexdb));
+            select(jedis, indexdb);
+            String res = jedis.set(dbKey(key, indexdb),value);
+            offlineStore.put(indexdb, key, value, 0);
+            return res;
         }catch (Exception e){
-            log.error(e.getMessage());
-            return "0";
+            handleException(e);
+            return isOffline(key, indexdb) && offlineStore.set(indexdb, key, value, 0) ? "OK" : "0";
         }finally {
             returnResource(jedisPool,jedis);
         }
@@ -89,11 +133,11 @@ public class RedisUtils {
         Jedis jedis = null;
         byte[] value = null;
         try{
-            jedis = jedisPool.getResource();
-            jedis.select(indexdb);
-            value = jedis.get(key);
+            jedis = getReadResource(dbKey(key, indexdb));
+            select(jedis, indexdb);
+            value = jedis.get(dbKey(key, indexdb));
         }catch (Exception e){
-            log.error(e.getMessage());
+            handleException(e);
         }finally {
             returnResource(jedisPool,jedis);
         }
@@ -112,11 +156,11 @@ public class RedisUtils {
     public String set(byte[] key, byte[] value,int indexdb){
         Jedis jedis = null;
         try{
-            jedis = jedisPool.getResource();
-            jedis.select(indexdb);
-            return jedis.set(key,value);
+            jedis = getResource(dbKey(key, indexdb));
+            select(jedis, indexdb);
+            return jedis.set(dbKey(key, indexdb),value);
         }catch (Exception e){
-            log.error(e.getMessage());
+            handleException(e);
             return "0";
         }finally {
             returnResource(jedisPool,jedis);
@@ -126,15 +170,64 @@ public class RedisUtils {
     /**
      * 删除指定key；当然这里也可以是key数组
      * @param keys 这里可以是一个key，也可以是key数组
-     * @return 返回删除成功的个数
+     * @return 返回删除成功的个数;所在节点不可用的key记入降级存储,计入记录的个数
      */
     public Long del(String... keys){
+        if (redisHealth.isUp() || !offlineStore.isEnabled()) {
+            return delOnline(keys);
+        }
+        long count = 0;
+        List<String> online = new ArrayList<>();
+        for (String key : keys) {
+            if (!isOffline(key, 0)) {
+                online.add(key);
+            } else if (offlineStore.del(0, key)) {
+                count++;
+            }
+        }
+        if (!online.isEmpty()) {
+            Long res = delOnline(online.toArray(new String[0]));
+            count += res == null ? 0 : res;
+        }
+        return count;
+    }
+
+    private Long delOnline(String... keys){
+        for (String key : keys) {
+            offlineStore.remove(0, key);
+        }
+        if (redisRouter.isCluster()) {
+            try {
+                long count = 0;
+                for (Long res : redisRouter.executeOnSlots(redisRouter.groupBySlot(keys),
+                        (pipeline, slotKeys) -> pipeline.del(slotKeys.toArray(new String[0]))).values()) {
+                    count += res;
+                }
+                return count;
+            } catch (Exception e) {
+                handleException(e);
+                return 0L;
+            }
+        }
+        if (redisRouter.isSharded()) {
+            try {
+                long count = 0;
+                for (Long res : redisRouter.executeOnNodes(redisRouter.groupByNode(keys),
+                        (jedis, nodeKeys) -> jedis.del(nodeKeys.toArray(new String[0]))).values()) {
+                    count += res;
+                }
+                return count;
+            } catch (Exception e) {
+                handleException(e);
+                return 0L;
+            }
+        }
         Jedis jedis = null;
          try {
-             jedis = jedisPool.getResource();
+             jedis = getResource(keys[0]);
              return jedis.del(keys);
          }catch (Exception e){
-             log.error(e.getMessage());
+             handleException(e);
              return 0L;
          }finally {
              returnResource(jedisPool,jedis);
@@ -147,13 +240,32 @@ public class RedisUtils {
      * @return 返回成功的个数
      */
     public Long del(int indexdb,byte[]...keys){
+        if (redisRouter.isSharded()) {
+            String[] names = new String[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                names[i] = SafeEncoder.encode(keys[i]);
+            }
+            try {
+                long count = 0;
+                for (Long res : redisRouter.executeOnNodes(redisRouter.groupByNode(names), (jedis, nodeKeys) -> {
+                    jedis.select(indexdb);
+                    return jedis.del(nodeKeys.toArray(new String[0]));
+                }).values()) {
+                    count += res;
+                }
+                return count;
+            } catch (Exception e) {
+                handleException(e);
+                return 0L;
+            }
+        }
         Jedis jedis = null;
         try{
-            jedis = jedisPool.getResource();
-            jedis.select(indexdb);
-            return jedis.del(keys);
+            jedis = getResource(dbKey(keys[0], indexdb));
+            select(jedis, indexdb);
+            return jedis.del(dbKeys(indexdb, keys));
         }catch (Exception e){
-            log.error(e.getMessage());
+            handleException(e);
             return 0L;
         }finally {
             returnResource(jedisPool,jedis);
@@ -170,10 +282,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res =null;
         try{
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             res = jedis.append(key,str);
         }catch (Exception e){
-            log.error(e.getMessage());
+            handleException(e);
             return 0L;
         }finally {
             returnResource(jedisPool,jedis);
@@ -189,10 +301,10 @@ public class RedisUtils {
     public Boolean exists(String key){
         Jedis jedis = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             return jedis.exists(key);
         }catch (Exception e){
-            log.error(e.getMessage());
+            handleException(e);
             return false;
         }finally {
             returnResource(jedisPool, jedis);
@@ -209,7 +321,7 @@ public class RedisUtils {
             jedis = jedisPool.getResource();
             return jedis.flushDB();
         }catch (Exception e){
-            log.error(e.getMessage());
+            handleException(e);
         }finally {
             returnResource(jedisPool,jedis);
         }
@@ -226,11 +338,11 @@ public class RedisUtils {
     public Long expire(String key,int value,int indexdb){
         Jedis jedis = null;
         try{
-            jedis = jedisPool.getResource();
-            jedis.select(indexdb);
-            return jedis.expire(key,value);
+            jedis = getResource(dbKey(key, indexdb));
+            select(jedis, indexdb);
+            return jedis.expire(dbKey(key, indexdb),value);
         }catch (Exception e){
-            log.error(e.getMessage());
+            handleException(e);
             return 0L;
         }finally {
             returnResource(jedisPool,jedis);
@@ -246,11 +358,11 @@ public class RedisUtils {
     public Long ttl(String key,int indexdb){
         Jedis jedis = null;
         try {
-            jedis = jedisPool.getResource();
-            jedis.select(indexdb);
-            return jedis.ttl(key);
+            jedis = getReadResource(dbKey(key, indexdb));
+            select(jedis, indexdb);
+            return jedis.ttl(dbKey(key, indexdb));
         }catch (Exception e){
-            log.error(e.getMessage());
+            handleException(e);
             return 0L;
         }finally {
             returnResource(jedisPool,jedis);
@@ -265,10 +377,10 @@ public class RedisUtils {
     public Long persist(String key){
         Jedis jedis = null;
         try{
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             return jedis.persist(key);
         }catch (Exception e){
-            log.error(e.getMessage());
+            handleException(e);
             return -1L;
         }finally {
             returnResource(jedisPool,jedis);
@@ -283,16 +395,7 @@ public class RedisUtils {
      * @return 如果成功返回OK，当seconds参数不合法时，返回一个错误。
      */
     public String setex(String key,int seconds, String value){
-        Jedis jedis = null;
-        try{
-            jedis = jedisPool.getResource();
-            return jedis.setex(key,seconds,value);
-        }catch (Exception e){
-            log.error(e.getMessage());
-        }finally {
-            returnResource(jedisPool,jedis);
-        }
-        return null;
+        return setex(key, value, seconds);
     }
 
     /**
@@ -300,16 +403,23 @@ public class RedisUtils {
      * @param key
      * @param value
      * @param seconds 单位为秒
-     * @return 成功返回ok；失败、异常返回null
+     * @return 成功返回ok；失败、异常返回null;redis不可用时写入降级存储,恢复后回放
      */
     public String setex(String key,String value, int seconds){
+        if (isOffline(key, 0) && offlineStore.set(0, key, value, seconds)) {
+            return "OK";
+        }
         Jedis jedis = null;
         String res = null;
         try{
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             res = jedis.setex(key,seconds,value);
+            offlineStore.put(0, key, value, seconds);
         }catch (Exception e){
-            log.error(e.getMessage());
+            handleException(e);
+            if (isOffline(key, 0) && offlineStore.set(0, key, value, seconds)) {
+                res = "OK";
+            }
         }finally {
             returnResource(jedisPool,jedis);
         }
@@ -324,10 +434,10 @@ public class RedisUtils {
     public Long setnx(String key, String value){
         Jedis jedis = null;
         try{
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             return jedis.setnx(key,value);
         }catch (Exception e){
-            log.error(e.getMessage());
+            handleException(e);
             return 0L;
         }finally {
             returnResource(jedisPool,jedis);
@@ -344,10 +454,10 @@ public class RedisUtils {
     public String getSet(String key, String value){
         Jedis jedis = null;
         try{
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             return jedis.getSet(key,value);
         }catch (Exception e){
-            log.error(e.getMessage());
+            handleException(e);
         }finally {
             returnResource(jedisPool,jedis);
         }
@@ -366,10 +476,10 @@ public class RedisUtils {
     public Long setrange(String key, int offset, String str){
         Jedis jedis = null;
         try{
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             return  jedis.setrange(key, offset, str);
         }catch (Exception e){
-            log.error(e.getMessage());
+            handleException(e);
             return 0L;
         }finally {
             returnResource(jedisPool,jedis);
@@ -382,13 +492,56 @@ public class RedisUtils {
      * @return success: values ;false:null集合;execption:null
      */
     public List<String> mget(String... keys){
+        if (redisRouter.isCluster()) {
+            try {
+                // 同一槽位的key合并为一条MGET,同一节点上的多条MGET通过pipeline一次发送
+                Map<Integer, List<String>> groups = redisRouter.groupBySlot(keys);
+                Map<String, String> merged = new HashMap<>(keys.length * 2);
+                for (Map.Entry<Integer, List<String>> entry : redisRouter.executeOnSlots(groups,
+                        (pipeline, slotKeys) -> pipeline.mget(slotKeys.toArray(new String[0]))).entrySet()) {
+                    List<String> slotKeys = groups.get(entry.getKey());
+                    for (int i = 0; i < slotKeys.size(); i++) {
+                        merged.put(slotKeys.get(i), entry.getValue().get(i));
+                    }
+                }
+                List<String> values = new ArrayList<>(keys.length);
+                for (String key : keys) {
+                    values.add(merged.get(key));
+                }
+                return values;
+            } catch (Exception e) {
+                handleException(e);
+                return null;
+            }
+        }
+        if (redisRouter.isSharded()) {
+            try {
+                Map<String, List<String>> groups = redisRouter.groupByNode(keys);
+                Map<String, String> merged = new HashMap<>(keys.length * 2);
+                for (Map.Entry<String, List<String>> entry : redisRouter.executeOnNodes(groups,
+                        (jedis, nodeKeys) -> jedis.mget(nodeKeys.toArray(new String[0]))).entrySet()) {
+                    List<String> nodeKeys = groups.get(entry.getKey());
+                    for (int i = 0; i < nodeKeys.size(); i++) {
+                        merged.put(nodeKeys.get(i), entry.getValue().get(i));
+                    }
+                }
+                List<String> values = new ArrayList<>(keys.length);
+                for (String key : keys) {
+                    values.add(merged.get(key));
+                }
+                return values;
+            } catch (Exception e) {
+                handleException(e);
+                return null;
+            }
+        }
         Jedis jedis = null;
         List<String> values = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(keys[0]);
             values = jedis.mget(keys);
         }catch (Exception e){
-            log.error(e.getMessage());
+            handleException(e);
         }finally {
             returnResource(jedisPool,jedis);
         }
@@ -402,13 +555,41 @@ public class RedisUtils {
      * @return success:ok;false&execption:null
      */
     public String mset(String ... keysvalues){
+        if (redisRouter.isCluster()) {
+            try {
+                for (String res : redisRouter.executeOnSlots(redisRouter.groupPairsBySlot(keysvalues),
+                        (pipeline, slotKeysvalues) -> pipeline.mset(slotKeysvalues.toArray(new String[0]))).values()) {
+                    if (!"OK".equals(res)) {
+                        return null;
+                    }
+                }
+                return "OK";
+            } catch (Exception e) {
+                handleException(e);
+                return null;
+            }
+        }
+        if (redisRouter.isSharded()) {
+            try {
+                for (String res : redisRouter.executeOnNodes(redisRouter.groupPairsByNode(keysvalues),
+                        (jedis, nodeKeysvalues) -> jedis.mset(nodeKeysvalues.toArray(new String[0]))).values()) {
+                    if (!"OK".equals(res)) {
+                        return null;
+                    }
+                }
+                return "OK";
+            } catch (Exception e) {
+                handleException(e);
+                return null;
+            }
+        }
         Jedis  jedis = null;
         String res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(keysvalues[0]);
             res = jedis.mset(keysvalues);
         }catch (Exception e){
-            log.error(e.getMessage());
+            handleException(e);
         }finally {
             returnResource(jedisPool,jedis);
         }
@@ -418,19 +599,23 @@ public class RedisUtils {
     /**
      * 批量的设置key和value,可以是一个；
      * 如果key已经存在则会失败，操作回滚；
+     * 分片模式下所有key必须位于同一节点(可以用hash tag保证),跨节点无法保证原子性,直接抛出IllegalArgumentException
      * @param keysvalues
      * example: obj.msetnx(new String[]{"keys2","value1","keys2","value2"})
      * @return success
      */
     public Long msetnx(String... keysvalues) {
+        if (redisRouter.isSharded() && redisRouter.groupPairsByNode(keysvalues).size() > 1) {
+            throw new IllegalArgumentException("分片模式下msetnx的key必须位于同一节点");
+        }
         Jedis jedis = null;
         Long res = 0L;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(keysvalues[0]);
             res = jedis.msetnx(keysvalues);
         } catch (Exception e) {
 
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -447,7 +632,7 @@ public class RedisUtils {
         Jedis jedis =null;
         String res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             res = jedis.getSet(key,value);
         }catch (Exception e){
             log.info(e.getMessage());
@@ -467,10 +652,10 @@ public class RedisUtils {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             res = jedis.getrange(key, startOffset, endOffset);
         }catch (Exception e){
-            log.error(e.getMessage());
+            handleException(e);
         }finally {
             returnResource(jedisPool,jedis);
         }
@@ -488,11 +673,11 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             res = jedis.incr(key);
         } catch (Exception e) {
 
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -509,11 +694,11 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             res = jedis.incrBy(key, integer);
         } catch (Exception e) {
 
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -528,11 +713,11 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             res = jedis.decr(key);
         } catch (Exception e) {
 
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -549,11 +734,11 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             res = jedis.decrBy(key, integer);
         } catch (Exception e) {
 
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -569,11 +754,11 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             res = jedis.strlen(key);
         } catch (Exception e) {
 
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -591,11 +776,11 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             res = jedis.hset(key, field, value);
         } catch (Exception e) {
 
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -613,10 +798,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             res = jedis.hsetnx(key,field,value);
         }catch (Exception e){
-            log.error(e.getMessage());
+            handleException(e);
         }finally {
             returnResource(jedisPool,jedis);
         }
@@ -634,11 +819,11 @@ public class RedisUtils {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = jedisPool.getResource();
-            jedis.select(indexdb);
-            res = jedis.hmset(key,hash);
+            jedis = getResource(dbKey(key, indexdb));
+            select(jedis, indexdb);
+            res = jedis.hmset(dbKey(key, indexdb),hash);
         }catch (Exception e){
-            log.error(e.getMessage());
+            handleException(e);
         }finally {
             returnResource(jedisPool,jedis);
         }
@@ -655,11 +840,11 @@ public class RedisUtils {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             res = jedis.hget(key, field);
         } catch (Exception e) {
 
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -677,11 +862,11 @@ public class RedisUtils {
         Jedis jedis = null;
         List<String> res = null;
         try {
-            jedis = jedisPool.getResource();
-            jedis.select(indexdb);
-            res = jedis.hmget(key, fields);
+            jedis = getReadResource(dbKey(key, indexdb));
+            select(jedis, indexdb);
+            res = jedis.hmget(dbKey(key, indexdb), fields);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -699,10 +884,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             res = jedis.hincrBy(key, field, value);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -719,10 +904,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Boolean res = false;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             res = jedis.hexists(key, field);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -738,10 +923,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             res = jedis.hlen(key);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -759,10 +944,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             res = jedis.hdel(key, fields);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -778,10 +963,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Set<String> res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             res = jedis.hkeys(key);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -797,10 +982,10 @@ public class RedisUtils {
         Jedis jedis = null;
         List<String> res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             res = jedis.hvals(key);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -817,11 +1002,11 @@ public class RedisUtils {
         Jedis jedis = null;
         Map<String, String> res = null;
         try {
-            jedis = jedisPool.getResource();
-            jedis.select(indexdb);
-            res = jedis.hgetAll(key);
+            jedis = getReadResource(dbKey(key, indexdb));
+            select(jedis, indexdb);
+            res = jedis.hgetAll(dbKey(key, indexdb));
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -840,11 +1025,11 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
-            jedis.select(indexdb);
-            res = jedis.lpush(key, strs);
+            jedis = getResource(dbKey(key, indexdb));
+            select(jedis, indexdb);
+            res = jedis.lpush(dbKey(key, indexdb), strs);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -862,10 +1047,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             res = jedis.rpush(key, strs);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -884,10 +1069,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             res = jedis.linsert(key, where, pivot, value);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -904,10 +1089,10 @@ public class RedisUtils {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             res = jedis.lset(key, index, value);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -924,10 +1109,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             res = jedis.lrem(key, count, value);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -944,11 +1129,11 @@ public class RedisUtils {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             res = jedis.ltrim(key, start, end);
         } catch (Exception e) {
 
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -963,10 +1148,10 @@ public class RedisUtils {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             res = jedis.lpop(key);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -983,11 +1168,11 @@ public class RedisUtils {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = jedisPool.getResource();
-            jedis.select(indexdb);
-            res = jedis.rpop(key);
+            jedis = getResource(dbKey(key, indexdb));
+            select(jedis, indexdb);
+            res = jedis.rpop(dbKey(key, indexdb));
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1003,14 +1188,17 @@ public class RedisUtils {
      * @return
      */
     public String rpoplpush(String srckey, String dstkey, int indexdb) {
+        if (redisRouter.isCluster() && !redisRouter.isSameSlot(dbKey(srckey, indexdb), dbKey(dstkey, indexdb))) {
+            return clusterRpoplpush(dbKey(srckey, indexdb), dbKey(dstkey, indexdb));
+        }
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = jedisPool.getResource();
-            jedis.select(indexdb);
-            res = jedis.rpoplpush(srckey, dstkey);
+            jedis = getResource(dbKey(srckey, indexdb));
+            select(jedis, indexdb);
+            res = jedis.rpoplpush(dbKey(srckey, indexdb), dbKey(dstkey, indexdb));
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1028,10 +1216,10 @@ public class RedisUtils {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             res = jedis.lindex(key, index);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1047,10 +1235,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             res = jedis.llen(key);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1070,11 +1258,11 @@ public class RedisUtils {
         Jedis jedis = null;
         List<String> res = null;
         try {
-            jedis = jedisPool.getResource();
-            jedis.select(indexdb);
-            res = jedis.lrange(key, start, end);
+            jedis = getReadResource(dbKey(key, indexdb));
+            select(jedis, indexdb);
+            res = jedis.lrange(dbKey(key, indexdb), start, end);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1091,10 +1279,10 @@ public class RedisUtils {
     public String lset(String key, long index, String value) {
         Jedis jedis = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             return jedis.lset(key, index, value);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1110,10 +1298,10 @@ public class RedisUtils {
     public List<String> sort(String key, SortingParams sortingParameters) {
         Jedis jedis = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             return jedis.sort(key, sortingParameters);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1128,10 +1316,10 @@ public class RedisUtils {
     public List<String> sort(String key) {
         Jedis jedis = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             return jedis.sort(key);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1148,10 +1336,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             res = jedis.sadd(key, members);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1168,10 +1356,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             res = jedis.srem(key, members);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1187,10 +1375,10 @@ public class RedisUtils {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             res = jedis.spop(key);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1207,10 +1395,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Set<String> res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(keys);
             res = jedis.sdiff(keys);
         }catch (Exception e){
-            log.error(e.getMessage());
+            handleException(e);
         }finally {
             returnResource(jedisPool,jedis);
         }
@@ -1220,6 +1408,7 @@ public class RedisUtils {
     /**
      *通过key获取set中的差集并存入到另一个key中.
      * 以第一个set为标准
+     * 分片模式下key跨节点时在客户端合并各节点的结果后写入目标key
      * @param dstkey
      * 差集存入的key
      * @param keys
@@ -1227,13 +1416,19 @@ public class RedisUtils {
      * @return
      */
     public Long sdiffstore(String dstkey, String... keys) {
+        if (redisRouter.isCluster() && !(redisRouter.isSameSlot(keys) && redisRouter.isSameSlot(dstkey, keys[0]))) {
+            return clusterSdiffstore(dstkey, keys);
+        }
+        if (!redisRouter.isSameNode(keys) || !redisRouter.isSameNode(dstkey, keys[0])) {
+            return shardedSdiffstore(dstkey, keys);
+        }
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(dstkey);
             res = jedis.sdiffstore(dstkey, keys);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1247,13 +1442,31 @@ public class RedisUtils {
      * @return
      */
     public Set<String> sinter(String... keys) {
+        if (redisRouter.isSharded()) {
+            try {
+                // 同一节点上的key先在服务端求交集,再在客户端合并各节点的结果
+                Set<String> res = null;
+                for (Set<String> nodeRes : redisRouter.executeOnNodes(redisRouter.groupByNode(keys),
+                        (jedis, nodeKeys) -> jedis.sinter(nodeKeys.toArray(new String[0]))).values()) {
+                    if (res == null) {
+                        res = new HashSet<>(nodeRes);
+                    } else {
+                        res.retainAll(nodeRes);
+                    }
+                }
+                return res;
+            } catch (Exception e) {
+                handleException(e);
+                return null;
+            }
+        }
         Jedis jedis = null;
         Set<String> res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(keys[0]);
             res = jedis.sinter(keys);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1262,19 +1475,23 @@ public class RedisUtils {
 
     /**
      * 通过key获取指定set中的交集,并将结果存入到新的set中.
+     * 分片模式下key跨节点时在客户端合并各节点的结果后写入目标key
      * @param dstkey
      * @param keys
      * 可以是一个String,也可以是一个String数组
      * @return
      */
     public Long sinterstore(String dstkey, String... keys) {
+        if (!redisRouter.isSameNode(keys) || !redisRouter.isSameNode(dstkey, keys[0])) {
+            return storeSet(dstkey, sinter(keys));
+        }
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(dstkey);
             res = jedis.sinterstore(dstkey, keys);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1287,13 +1504,26 @@ public class RedisUtils {
      * @return
      */
     public Set<String> sunion(String... keys) {
+        if (redisRouter.isSharded()) {
+            try {
+                Set<String> res = new HashSet<>();
+                for (Set<String> nodeRes : redisRouter.executeOnNodes(redisRouter.groupByNode(keys),
+                        (jedis, nodeKeys) -> jedis.sunion(nodeKeys.toArray(new String[0]))).values()) {
+                    res.addAll(nodeRes);
+                }
+                return res;
+            } catch (Exception e) {
+                handleException(e);
+                return null;
+            }
+        }
         Jedis jedis = null;
         Set<String> res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(keys[0]);
             res = jedis.sunion(keys);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1302,18 +1532,22 @@ public class RedisUtils {
 
     /**
      * 通过key返回所有set的并集,并存入到新的set中
+     * 分片模式下key跨节点时在客户端合并各节点的结果后写入目标key
      * @param dstkey
      * @param keys
      * @return
      */
     public Long sunionstore(String dstkey, String... keys) {
+        if (!redisRouter.isSameNode(keys) || !redisRouter.isSameNode(dstkey, keys[0])) {
+            return storeSet(dstkey, sunion(keys));
+        }
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(dstkey);
             res = jedis.sunionstore(dstkey, keys);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1331,10 +1565,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(srckey);
             res = jedis.smove(srckey, dstkey, member);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1350,10 +1584,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             res = jedis.scard(key);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1370,10 +1604,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Boolean res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             res = jedis.sismember(key, member);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1389,10 +1623,10 @@ public class RedisUtils {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             res = jedis.srandmember(key);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1408,10 +1642,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Set<String> res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             res = jedis.smembers(key);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1430,10 +1664,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             res = jedis.zadd(key, score, member);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1450,10 +1684,10 @@ public class RedisUtils {
     public Set<String> zrange(String key, long min, long max) {
         Jedis jedis = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             return jedis.zrange(key, min, max);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1470,10 +1704,10 @@ public class RedisUtils {
     public Long zcount(String key, double min, double max) {
         Jedis jedis = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             return jedis.zcount(key, min, max);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
             return 0L;
         } finally {
             returnResource(jedisPool, jedis);
@@ -1497,10 +1731,10 @@ public class RedisUtils {
     public Long hincrBy(String key, String value, long increment) {
         Jedis jedis = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             return jedis.hincrBy(key, value, increment);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
             return 0L;
         } finally {
             returnResource(jedisPool, jedis);
@@ -1517,10 +1751,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             res = jedis.zrem(key, members);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1538,10 +1772,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Double res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             res = jedis.zincrby(key, score, member);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1559,10 +1793,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             res = jedis.zrank(key, member);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1580,10 +1814,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             res = jedis.zrevrank(key, member);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1602,10 +1836,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Set<String> res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             res = jedis.zrevrange(key, start, end);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1623,10 +1857,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Set<String> res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             res = jedis.zrevrangeByScore(key, max, min);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1644,10 +1878,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Set<String> res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             res = jedis.zrevrangeByScore(key, max, min);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1665,10 +1899,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             res = jedis.zcount(key, min, max);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1684,10 +1918,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             res = jedis.zcard(key);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1704,10 +1938,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Double res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             res = jedis.zscore(key, member);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1725,10 +1959,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             res = jedis.zremrangeByRank(key, start, end);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1746,10 +1980,10 @@ public class RedisUtils {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getResource(key);
             res = jedis.zremrangeByScore(key, start, end);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1768,7 +2002,7 @@ public class RedisUtils {
             jedis = jedisPool.getResource();
             res = jedis.keys(pattern);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1786,10 +2020,10 @@ public class RedisUtils {
         Set<String> res = null;
         try {
             jedis = jedisPool.getResource();
-            jedis.select(database);
-            res = jedis.keys(pattern);
+            select(jedis, database);
+            res = jedis.keys(dbKey(pattern, database));
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
@@ -1805,16 +2039,638 @@ public class RedisUtils {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = jedisPool.getResource();
+            jedis = getReadResource(key);
             res = jedis.type(key);
         } catch (Exception e) {
-            log.error(e.getMessage());
+            handleException(e);
+        } finally {
+            returnResource(jedisPool, jedis);
+        }
+        return res;
+    }
+
+    /**
+     * 向HyperLogLog中添加元素
+     * 每个key固定占用约12KB,基数估算的标准误差为0.81%
+     * @param key
+     * @param elements
+     * @return 估算基数发生变化返回1,否则返回0
+     */
+    public Long pfadd(String key, String... elements) {
+        Jedis jedis = null;
+        Long res = null;
+        try {
+            jedis = getResource(key);
+            res = jedis.pfadd(key, elements);
+        } catch (Exception e) {
+            handleException(e);
+        } finally {
+            returnResource(jedisPool, jedis);
+        }
+        return res;
+    }
+
+    /**
+     * 批量向HyperLogLog中添加元素,每batchSize个元素一条PFADD,通过pipeline一次发送
+     * @param key
+     * @param elements
+     * @param batchSize
+     * @return 成功true,失败false
+     */
+    public boolean pfadd(String key, Collection<String> elements, int batchSize) {
+        return pfaddAll(Collections.singletonMap(key, elements), batchSize);
+    }
+
+    /**
+     * 批量向多个HyperLogLog中添加元素;按key所在节点分组,每个节点一条pipeline
+     * @param elements key -> 元素
+     * @param batchSize 每条PFADD携带的元素个数
+     * @return 全部成功true,任一节点失败false
+     */
+    public boolean pfaddAll(Map<String, ? extends Collection<String>> elements, int batchSize) {
+        Map<String, List<String>> groups = new LinkedHashMap<>();
+        for (String key : elements.keySet()) {
+            groups.computeIfAbsent(redisRouter.nodeOf(key), k -> new ArrayList<>()).add(key);
+        }
+        boolean success = true;
+        for (Map.Entry<String, List<String>> entry : groups.entrySet()) {
+            Jedis jedis = null;
+            try {
+                jedis = redisRouter.getNodeResource(entry.getKey());
+                ReadYourWrites.pendingWrite();
+                Pipeline pipeline = jedis.pipelined();
+                for (String key : entry.getValue()) {
+                    List<String> list = new ArrayList<>(elements.get(key));
+                    for (int i = 0; i < list.size(); i += batchSize) {
+                        pipeline.pfadd(key, list.subList(i, Math.min(i + batchSize, list.size())).toArray(new String[0]));
+                    }
+                }
+                pipeline.sync();
+            } catch (Exception e) {
+                handleException(e);
+                success = false;
+            } finally {
+                returnResource(jedisPool, jedis);
+            }
+        }
+        return success;
+    }
+
+    /**
+     * 估算HyperLogLog的基数;传入多个key时返回并集的基数,
+     * 分片/集群模式下多个key必须位于同一节点/槽位(可以用hash tag保证)
+     * @param keys
+     * @return
+     */
+    public Long pfcount(String... keys) {
+        Jedis jedis = null;
+        Long res = null;
+        try {
+            jedis = getReadResource(keys[0]);
+            res = keys.length == 1 ? jedis.pfcount(keys[0]) : jedis.pfcount(keys);
+        } catch (Exception e) {
+            handleException(e);
         } finally {
             returnResource(jedisPool, jedis);
         }
         return res;
     }
 
+    /**
+     * 把多个HyperLogLog合并到destkey;分片/集群模式下所有key必须位于同一节点/槽位
+     * @param destkey
+     * @param sourcekeys
+     * @return 成功返回OK
+     */
+    public String pfmerge(String destkey, String... sourcekeys) {
+        Jedis jedis = null;
+        String res = null;
+        try {
+            jedis = getResource(destkey);
+            res = jedis.pfmerge(destkey, sourcekeys);
+        } catch (Exception e) {
+            handleException(e);
+        } finally {
+            returnResource(jedisPool, jedis);
+        }
+        return res;
+    }
+
+    /**
+     * 设置bitmap指定偏移量的位
+     * @param key
+     * @param offset 位偏移量,从0开始
+     * @param value
+     * @return 该位原来的值
+     */
+    public Boolean setbit(String key, long offset, boolean value) {
+        Jedis jedis = null;
+        Boolean res = null;
+        try {
+            jedis = getResource(key);
+            res = jedis.setbit(key, offset, value);
+        } catch (Exception e) {
+            handleException(e);
+        } finally {
+            returnResource(jedisPool, jedis);
+        }
+        return res;
+    }
+
+    /**
+     * 获取bitmap指定偏移量的位
+     * @param key
+     * @param offset
+     * @return
+     */
+    public Boolean getbit(String key, long offset) {
+        Jedis jedis = null;
+        Boolean res = null;
+        try {
+            jedis = getReadResource(key);
+            res = jedis.getbit(key, offset);
+        } catch (Exception e) {
+            handleException(e);
+        } finally {
+            returnResource(jedisPool, jedis);
+        }
+        return res;
+    }
+
+    /**
+     * 通过pipeline批量设置bitmap的多个位
+     * @param key
+     * @param offsets
+     * @param value
+     * @return 成功true,失败false
+     */
+    public boolean setbits(String key, Collection<Long> offsets, boolean value) {
+        Jedis jedis = null;
+        try {
+            jedis = getResource(key);
+            Pipeline pipeline = jedis.pipelined();
+            for (Long offset : offsets) {
+                pipeline.setbit(key, offset, value);
+            }
+            pipeline.sync();
+            return true;
+        } catch (Exception e) {
+            handleException(e);
+            return false;
+        } finally {
+            returnResource(jedisPool, jedis);
+        }
+    }
+
+    /**
+     * 通过pipeline批量获取bitmap的多个位
+     * @param key
+     * @param offsets
+     * @return 与offsets顺序一致,异常返回null
+     */
+    public List<Boolean> getbits(String key, List<Long> offsets) {
+        Jedis jedis = null;
+        try {
+            jedis = getReadResource(key);
+            Pipeline pipeline = jedis.pipelined();
+            for (Long offset : offsets) {
+                pipeline.getbit(key, offset);
+            }
+            List<Boolean> res = new ArrayList<>(offsets.size());
+            for (Object value : pipeline.syncAndReturnAll()) {
+                res.add((Boolean) value);
+            }
+            return res;
+        } catch (Exception e) {
+            handleException(e);
+            return null;
+        } finally {
+            returnResource(jedisPool, jedis);
+        }
+    }
+
+    /**
+     * 统计bitmap中值为1的位数
+     * @param key
+     * @return
+     */
+    public Long bitcount(String key) {
+        Jedis jedis = null;
+        Long res = null;
+        try {
+            jedis = getReadResource(key);
+            res = jedis.bitcount(key);
+        } catch (Exception e) {
+            handleException(e);
+        } finally {
+            returnResource(jedisPool, jedis);
+        }
+        return res;
+    }
+
+    /**
+     * 统计bitmap指定字节范围内值为1的位数
+     * @param key
+     * @param start 起始字节,负数表示从末尾开始
+     * @param end 结束字节(含)
+     * @return
+     */
+    public Long bitcount(String key, long start, long end) {
+        Jedis jedis = null;
+        Long res = null;
+        try {
+            jedis = getReadResource(key);
+            res = jedis.bitcount(key, start, end);
+        } catch (Exception e) {
+            handleException(e);
+        } finally {
+            returnResource(jedisPool, jedis);
+        }
+        return res;
+    }
+
+    /**
+     * 对多个bitmap做位运算(AND/OR/XOR/NOT)并把结果写入destKey;
+     * 分片/集群模式下所有key必须位于同一节点/槽位
+     * @param op
+     * @param destKey
+     * @param srcKeys
+     * @return 结果bitmap的字节长度
+     */
+    public Long bitop(BitOP op, String destKey, String... srcKeys) {
+        Jedis jedis = null;
+        Long res = null;
+        try {
+            jedis = getResource(destKey);
+            res = jedis.bitop(op, destKey, srcKeys);
+        } catch (Exception e) {
+            handleException(e);
+        } finally {
+            returnResource(jedisPool, jedis);
+        }
+        return res;
+    }
+
+    /**
+     * 把bitmap当作任意位宽整数数组读写,参数同BITFIELD命令,如 "INCRBY", "u8", "#3", "1"
+     * @param key
+     * @param arguments
+     * @return 每个子命令的结果
+     */
+    public List<Long> bitfield(String key, String... arguments) {
+        Jedis jedis = null;
+        List<Long> res = null;
+        try {
+            jedis = getResource(key);
+            res = jedis.bitfield(key, arguments);
+        } catch (Exception e) {
+            handleException(e);
+        } finally {
+            returnResource(jedisPool, jedis);
+        }
+        return res;
+    }
+
+    /**
+     * 按字节范围读取原始值,用于分段读取大bitmap
+     * @param key
+     * @param startOffset 起始字节
+     * @param endOffset 结束字节(含)
+     * @return
+     */
+    public byte[] getrange(byte[] key, long startOffset, long endOffset) {
+        Jedis jedis = null;
+        byte[] res = null;
+        try {
+            jedis = getReadResource(key);
+            res = jedis.getrange(key, startOffset, endOffset);
+        } catch (Exception e) {
+            handleException(e);
+        } finally {
+            returnResource(jedisPool, jedis);
+        }
+        return res;
+    }
+
+    /**
+     * 添加地理位置
+     * @param key
+     * @param longitude 经度
+     * @param latitude 纬度
+     * @param member
+     * @return 新增的成员数
+     */
+    public Long geoadd(String key, double longitude, double latitude, String member) {
+        Jedis jedis = null;
+        Long res = null;
+        try {
+            jedis = getResource(key);
+            res = jedis.geoadd(key, longitude, latitude, member);
+        } catch (Exception e) {
+            handleException(e);
+        } finally {
+            returnResource(jedisPool, jedis);
+        }
+        return res;
+    }
+
+    /**
+     * 批量添加地理位置,每batchSize个成员一条GEOADD,通过pipeline一次发送
+     * @param key
+     * @param members 成员 -> 坐标
+     * @param batchSize
+     * @return 成功true,失败false
+     */
+    public boolean geoadd(String key, Map<String, GeoCoordinate> members, int batchSize) {
+        Jedis jedis = null;
+        try {
+            jedis = getResource(key);
+            Pipeline pipeline = jedis.pipelined();
+            Map<String, GeoCoordinate> batch = new HashMap<>();
+            for (Map.Entry<String, GeoCoordinate> entry : members.entrySet()) {
+                batch.put(entry.getKey(), entry.getValue());
+                if (batch.size() >= batchSize) {
+                    pipeline.geoadd(key, batch);
+                    batch = new HashMap<>();
+                }
+            }
+            if (!batch.isEmpty()) {
+                pipeline.geoadd(key, batch);
+            }
+            pipeline.sync();
+            return true;
+        } catch (Exception e) {
+            handleException(e);
+            return false;
+        } finally {
+            returnResource(jedisPool, jedis);
+        }
+    }
+
+    /**
+     * 两个成员之间的距离
+     * @param key
+     * @param member1
+     * @param member2
+     * @param unit 距离单位
+     * @return 任一成员不存在时返回null
+     */
+    public Double geodist(String key, String member1, String member2, GeoUnit unit) {
+        Jedis jedis = null;
+        Double res = null;
+        try {
+            jedis = getReadResource(key);
+            res = jedis.geodist(key, member1, member2, unit);
+        } catch (Exception e) {
+            handleException(e);
+        } finally {
+            returnResource(jedisPool, jedis);
+        }
+        return res;
+    }
+
+    /**
+     * 获取成员的坐标
+     * @param key
+     * @param members
+     * @return 与members顺序一致,不存在的成员为null
+     */
+    public List<GeoCoordinate> geopos(String key, String... members) {
+        Jedis jedis = null;
+        List<GeoCoordinate> res = null;
+        try {
+            jedis = getReadResource(key);
+            res = jedis.geopos(key, members);
+        } catch (Exception e) {
+            handleException(e);
+        } finally {
+            returnResource(jedisPool, jedis);
+        }
+        return res;
+    }
+
+    /**
+     * 查询以指定坐标为中心、指定半径内的成员;
+     * redis 6.2的GEOSEARCH(含矩形查询)在当前客户端版本中不可用,矩形查询可先按外接圆查询再在客户端过滤
+     * @param key
+     * @param longitude
+     * @param latitude
+     * @param radius
+     * @param unit
+     * @param param 如GeoRadiusParam.geoRadiusParam().withCoord().withDist().sortAscending().count(n)
+     * @return
+     */
+    public List<GeoRadiusResponse> georadius(String key, double longitude, double latitude, double radius,
+                                             GeoUnit unit, GeoRadiusParam param) {
+        Jedis jedis = null;
+        List<GeoRadiusResponse> res = null;
+        try {
+            jedis = getReadResource(key);
+            res = jedis.georadius(key, longitude, latitude, radius, unit, param);
+        } catch (Exception e) {
+            handleException(e);
+        } finally {
+            returnResource(jedisPool, jedis);
+        }
+        return res;
+    }
+
+    /**
+     * 根据key获取连接,分片模式下返回key所在节点的连接
+     * @param key
+     * @return
+     */
+    private Jedis getResource(String key) {
+        return redisRouter.getResource(key);
+    }
+
+    private Jedis getResource(byte[] key) {
+        return redisRouter.getResource(key == null ? null : SafeEncoder.encode(key));
+    }
+
+    /**
+     * 集群模式下源list和目标list不在同一槽位时,先从源list尾部弹出再压入目标list头部;
+     * 压入失败时把元素放回源list尾部,两步之间不是原子的
+     * @param srckey
+     * @param dstkey
+     * @return
+     */
+    private String clusterRpoplpush(String srckey, String dstkey) {
+        String res = null;
+        Jedis jedis = null;
+        try {
+            jedis = getResource(srckey);
+            res = jedis.rpop(srckey);
+        } catch (Exception e) {
+            handleException(e);
+            return null;
+        } finally {
+            returnResource(jedisPool, jedis);
+        }
+        if (res == null) {
+            return null;
+        }
+        jedis = null;
+        try {
+            jedis = getResource(dstkey);
+            jedis.lpush(dstkey, res);
+        } catch (Exception e) {
+            handleException(e);
+            rpush(srckey, res);
+            return null;
+        } finally {
+            returnResource(jedisPool, jedis);
+        }
+        return res;
+    }
+
+    /**
+     * 集群模式下参与差集的key跨槽位时:同槽位的key在服务端预先求差集/并集,
+     * 各节点并行pipeline执行,客户端合并后整体写入目标key
+     * @param dstkey
+     * @param keys 以第一个key为基准
+     * @return 目标set的元素个数
+     */
+    private Long clusterSdiffstore(String dstkey, String... keys) {
+        String base = keys[0];
+        Set<String> res = null;
+        Set<String> others = new HashSet<>();
+        try {
+            for (Map.Entry<Integer, Set<String>> entry : redisRouter.executeOnSlots(redisRouter.groupBySlot(keys),
+                    (pipeline, slotKeys) -> base.equals(slotKeys.get(0))
+                            ? pipeline.sdiff(slotKeys.toArray(new String[0]))
+                            : pipeline.sunion(slotKeys.toArray(new String[0]))).entrySet()) {
+                if (entry.getKey() == JedisClusterCRC16.getSlot(base)) {
+                    res = entry.getValue();
+                } else {
+                    others.addAll(entry.getValue());
+                }
+            }
+        } catch (Exception e) {
+            handleException(e);
+            return null;
+        }
+        res.removeAll(others);
+        return storeSet(dstkey, res);
+    }
+
+    /**
+     * 分片模式下参与差集的key跨节点时:同节点的key在服务端预先求差集/并集,客户端合并后整体写入目标key
+     * @param dstkey
+     * @param keys 以第一个key为基准
+     * @return 目标set的元素个数
+     */
+    private Long shardedSdiffstore(String dstkey, String... keys) {
+        String base = keys[0];
+        Set<String> res = null;
+        Set<String> others = new HashSet<>();
+        try {
+            for (Set<String> nodeRes : redisRouter.executeOnNodes(redisRouter.groupByNode(keys),
+                    (jedis, nodeKeys) -> base.equals(nodeKeys.get(0))
+                            ? jedis.sdiff(nodeKeys.toArray(new String[0]))
+                            : jedis.sunion(nodeKeys.toArray(new String[0]))).values()) {
+                if (res == null) {
+                    res = nodeRes;
+                } else {
+                    others.addAll(nodeRes);
+                }
+            }
+        } catch (Exception e) {
+            handleException(e);
+            return null;
+        }
+        res.removeAll(others);
+        return storeSet(dstkey, res);
+    }
+
+    /**
+     * 在客户端算出的集合结果整体写入目标key(先删除再写入,同一事务内执行)
+     * @param dstkey
+     * @param res 为null时表示计算失败,直接返回null
+     * @return 目标set的元素个数
+     */
+    private Long storeSet(String dstkey, Set<String> res) {
+        if (res == null) {
+            return null;
+        }
+        Jedis jedis = null;
+        try {
+            jedis = getResource(dstkey);
+            Transaction transaction = jedis.multi();
+            transaction.del(dstkey);
+            if (!res.isEmpty()) {
+                transaction.sadd(dstkey, res.toArray(new String[0]));
+            }
+            transaction.exec();
+            return (long) res.size();
+        } catch (Exception e) {
+            handleException(e);
+            return null;
+        } finally {
+            returnResource(jedisPool, jedis);
+        }
+    }
+
+    /**
+     * 获取只读连接,开启从库读路由时优先读从库
+     * @param key
+     * @return
+     */
+    private Jedis getReadResource(String key) {
+        return redisRouter.getReadResource(key);
+    }
+
+    private Jedis getReadResource(byte[] key) {
+        return redisRouter.getReadResource(key == null ? null : SafeEncoder.encode(key));
+    }
+
+    /**
+     * 选择redis库;集群模式没有SELECT,改为通过dbKey给key加前缀
+     * @param jedis
+     * @param indexdb
+     */
+    private void select(Jedis jedis, int indexdb) {
+        if (!redisRouter.isCluster()) {
+            jedis.select(indexdb);
+        }
+    }
+
+    private String dbKey(String key, int indexdb) {
+        return redisRouter.dbKey(key, indexdb);
+    }
+
+    private byte[] dbKey(byte[] key, int indexdb) {
+        return redisRouter.dbKey(key, indexdb);
+    }
+
+    private byte[][] dbKeys(int indexdb, byte[]... keys) {
+        byte[][] res = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            res[i] = dbKey(keys[i], indexdb);
+        }
+        return res;
+    }
+
+    /**
+     * key所在节点不可用且开启了降级存储
+     * @param key
+     * @param indexdb
+     * @return
+     */
+    private boolean isOffline(String key, int indexdb) {
+        return !redisHealth.isUp() && offlineStore.isEnabled()
+                && !redisHealth.isUp(redisRouter.healthNode(dbKey(key, indexdb)));
+    }
+
+    /**
+     * 统一处理redis操作异常;集群模式下由路由根据MOVED更新槽位表
+     * @param e
+     */
+    private void handleException(Exception e) {
+        log.error(e.getMessage());
+        redisRouter.onException(e);
+    }
+
     /**
      * 序列化对象
      * 对象需实现serializable接口
@@ -1861,7 +2717,10 @@ public class RedisUtils {
      */
     public static void returnResource(JedisPool jedisPool, Jedis jedis) {
         if (jedis != null) {
-            jedisPool.returnResource(jedis);
+            // 分片模式下连接可能来自其他节点的连接池,由连接自身归还到所属的连接池
+            jedis.close();
+            RedisCall.released();
+            ReadYourWrites.markWrite();
         }
     }
     // public static RedisUtil getRu() {
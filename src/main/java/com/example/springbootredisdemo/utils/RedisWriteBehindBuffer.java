@@ -0,0 +1,316 @@
+package com.example.springbootredisdemo.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 计数类写操作的合并缓冲(write-behind);incr/incrBy/hincrby/zincrby先累加到本地的LongAdder/DoubleAdder,
+ * 按时间间隔或待写入次数触发,把合并后的增量按节点分组一次pipeline写入redis;应用关闭时写完剩余增量
+ * 正常时进程崩溃最多丢失 flush-interval + 单次flush耗时 内的增量;flush失败的增量会放回缓冲,下次重试,
+ * redis不可用期间增量一直留在缓冲中,可能丢失的范围即最早一笔未写入增量的时长,见getStats的lossWindowMillis
+ * 写入成功后已归零的adder从缓冲中移除,key不断变化(如按时间分桶)时缓冲不会无限增长
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-19 13:10
+ */
+@Component
+public class RedisWriteBehindBuffer {
+    private static final Logger log = LoggerFactory.getLogger(RedisWriteBehindBuffer.class);
+
+    @Autowired
+    private RedisRouter redisRouter;
+
+    @Value("${spring.redis.write-behind.flush-interval:100}")
+    private long flushInterval;
+    @Value("${spring.redis.write-behind.max-pending:10000}")
+    private long maxPending;
+
+    /**
+     * key -> 增量
+     */
+    private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    /**
+     * key -> field -> 增量
+     */
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, LongAdder>> hashCounters = new ConcurrentHashMap<>();
+    /**
+     * key -> member -> 分数增量
+     */
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, DoubleAdder>> zsetScores = new ConcurrentHashMap<>();
+
+    private final AtomicLong pending = new AtomicLong();
+    /**
+     * 最早一笔未写入的增量加入缓冲的时间,缓冲为空时为0
+     */
+    private final AtomicLong pendingSince = new AtomicLong();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushedCommands = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private volatile long lastFlushMillis;
+    private volatile long maxFlushMillis;
+    private volatile long lastFlushTime;
+
+    @PostConstruct
+    public void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(flushInterval * 10, TimeUnit.MILLISECONDS);
+        flush();
+    }
+
+    /**
+     * 对key的value加1,延迟写入
+     * @param key
+     */
+    public void incr(String key) {
+        incrBy(key, 1L);
+    }
+
+    /**
+     * 对key的value加上指定的值,延迟写入
+     * @param key
+     * @param integer
+     */
+    public void incrBy(String key, long integer) {
+        // 在map的锁内累加,flush移除归零的adder时不会丢失并发的累加
+        counters.compute(key, (k, adder) -> {
+            if (adder == null) {
+                adder = new LongAdder();
+            }
+            adder.add(integer);
+            return adder;
+        });
+        afterWrite();
+    }
+
+    /**
+     * 对hash中field的值加上指定的值,延迟写入
+     * @param key
+     * @param field
+     * @param value
+     */
+    public void hincrby(String key, String field, long value) {
+        hashCounters.compute(key, (k, fields) -> {
+            if (fields == null) {
+                fields = new ConcurrentHashMap<>();
+            }
+            fields.computeIfAbsent(field, f -> new LongAdder()).add(value);
+            return fields;
+        });
+        afterWrite();
+    }
+
+    /**
+     * 对zset中member的分数加上指定的值,延迟写入
+     * @param key
+     * @param score
+     * @param member
+     */
+    public void zincrby(String key, double score, String member) {
+        zsetScores.compute(key, (k, members) -> {
+            if (members == null) {
+                members = new ConcurrentHashMap<>();
+            }
+            members.computeIfAbsent(member, m -> new DoubleAdder()).add(score);
+            return members;
+        });
+        afterWrite();
+    }
+
+    private void afterWrite() {
+        if (pendingSince.get() == 0) {
+            pendingSince.compareAndSet(0, System.currentTimeMillis());
+        }
+        if (pending.incrementAndGet() >= maxPending && flushScheduled.compareAndSet(false, true)) {
+            scheduler.execute(this::flush);
+        }
+    }
+
+    /**
+     * 把缓冲中的增量写入redis;只在调度线程或关闭时调用,不会并发执行
+     * 读取增量后从adder中减去已读取的值,读取期间新加入的增量留到下次写入;写入后移除已归零的adder
+     */
+    public synchronized void flush() {
+        flushScheduled.set(false);
+        pending.set(0);
+        long since = pendingSince.getAndSet(0);
+        long start = System.currentTimeMillis();
+        Map<String, List<Op>> groups = new LinkedHashMap<>();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            long delta = entry.getValue().sum();
+            if (delta != 0) {
+                entry.getValue().add(-delta);
+                group(groups, new Op(entry.getKey(), null, delta, 0, entry.getValue(), null));
+            }
+        }
+        for (Map.Entry<String, ConcurrentHashMap<String, LongAdder>> hash : hashCounters.entrySet()) {
+            for (Map.Entry<String, LongAdder> entry : hash.getValue().entrySet()) {
+                long delta = entry.getValue().sum();
+                if (delta != 0) {
+                    entry.getValue().add(-delta);
+                    group(groups, new Op(hash.getKey(), entry.getKey(), delta, 0, entry.getValue(), null));
+                }
+            }
+        }
+        for (Map.Entry<String, ConcurrentHashMap<String, DoubleAdder>> zset : zsetScores.entrySet()) {
+            for (Map.Entry<String, DoubleAdder> entry : zset.getValue().entrySet()) {
+                double delta = entry.getValue().sum();
+                if (delta != 0) {
+                    entry.getValue().add(-delta);
+                    group(groups, new Op(zset.getKey(), entry.getKey(), 0, delta, null, entry.getValue()));
+                }
+            }
+        }
+        if (groups.isEmpty()) {
+            evictZeroed();
+            return;
+        }
+        long commands = 0;
+        boolean failed = false;
+        for (Map.Entry<String, List<Op>> entry : groups.entrySet()) {
+            if (flushGroup(entry.getKey(), entry.getValue())) {
+                commands += entry.getValue().size();
+            } else {
+                failed = true;
+            }
+        }
+        if (failed) {
+            // 放回缓冲的增量仍按最早加入的时间计算
+            pendingSince.accumulateAndGet(since, (current, old) -> current == 0 ? old : Math.min(current, old));
+        }
+        evictZeroed();
+        long cost = System.currentTimeMillis() - start;
+        lastFlushMillis = cost;
+        maxFlushMillis = Math.max(maxFlushMillis, cost);
+        lastFlushTime = start;
+        flushCount.incrementAndGet();
+        flushedCommands.addAndGet(commands);
+    }
+
+    private void group(Map<String, List<Op>> groups, Op op) {
+        groups.computeIfAbsent(redisRouter.nodeOf(op.key), k -> new ArrayList<>()).add(op);
+    }
+
+    private boolean flushGroup(String node, List<Op> ops) {
+        Jedis jedis = null;
+        try {
+            jedis = redisRouter.getNodeResource(node);
+            Pipeline pipeline = jedis.pipelined();
+            for (Op op : ops) {
+                if (op.doubleAdder != null) {
+                    pipeline.zincrby(op.key, op.doubleDelta, op.field);
+                } else if (op.field != null) {
+                    pipeline.hincrBy(op.key, op.field, op.longDelta);
+                } else {
+                    pipeline.incrBy(op.key, op.longDelta);
+                }
+            }
+            pipeline.sync();
+            return true;
+        } catch (Exception e) {
+            // 放回缓冲,下次重试;连接在sync中途断开时可能重复写入部分增量
+            redisRouter.onException(e);
+            log.error("write-behind写入失败,增量放回缓冲：" + e.getMessage());
+            failedFlushes.incrementAndGet();
+            for (Op op : ops) {
+                if (op.doubleAdder != null) {
+                    op.doubleAdder.add(op.doubleDelta);
+                } else {
+                    op.longAdder.add(op.longDelta);
+                }
+            }
+            return false;
+        } finally {
+            redisRouter.returnNodeResource(jedis);
+        }
+    }
+
+    /**
+     * 移除已归零的adder;与写入在同一把map锁内判断,归零之后新到的累加会重新创建adder
+     */
+    private void evictZeroed() {
+        for (String key : counters.keySet()) {
+            counters.computeIfPresent(key, (k, adder) -> adder.sum() == 0 ? null : adder);
+        }
+        for (String key : hashCounters.keySet()) {
+            hashCounters.computeIfPresent(key, (k, fields) -> {
+                fields.values().removeIf(adder -> adder.sum() == 0);
+                return fields.isEmpty() ? null : fields;
+            });
+        }
+        for (String key : zsetScores.keySet()) {
+            zsetScores.computeIfPresent(key, (k, members) -> {
+                members.values().removeIf(adder -> adder.sum() == 0);
+                return members.isEmpty() ? null : members;
+            });
+        }
+    }
+
+    /**
+     * 缓冲运行指标
+     * lossWindowMillis:进程崩溃时可能丢失的增量的时间范围,即最早一笔未写入增量的时长;缓冲为空时为0
+     * @return
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("flushCount", flushCount.get());
+        stats.put("flushedCommands", flushedCommands.get());
+        stats.put("failedFlushes", failedFlushes.get());
+        stats.put("pending", pending.get());
+        stats.put("lastFlushMillis", lastFlushMillis);
+        stats.put("maxFlushMillis", maxFlushMillis);
+        stats.put("lastFlushTime", lastFlushTime);
+        long since = pendingSince.get();
+        stats.put("keys", counters.size() + hashCounters.size() + zsetScores.size());
+        stats.put("lossWindowMillis", since == 0 ? 0 : System.currentTimeMillis() - since);
+        return stats;
+    }
+
+    private static class Op {
+        private final String key;
+        private final String field;
+        private final long longDelta;
+        private final double doubleDelta;
+        private final LongAdder longAdder;
+        private final DoubleAdder doubleAdder;
+
+        private Op(String key, String field, long longDelta, double doubleDelta, LongAdder longAdder, DoubleAdder doubleAdder) {
+            this.key = key;
+            this.field = field;
+            this.longDelta = longDelta;
+            this.doubleDelta = doubleDelta;
+            this.longAdder = longAdder;
+            this.doubleAdder = doubleAdder;
+        }
+    }
+}
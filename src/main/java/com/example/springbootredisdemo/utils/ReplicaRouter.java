@@ -0,0 +1,266 @@
+package com.example.springbootredisdemo.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 从库读路由;后台定时探测各从库的延迟(PING)和复制进度(主库INFO replication),
+ * 读请求在满足延迟和复制进度要求的从库中按"二选一取延迟低者"选择,没有可用从库时返回null由调用方回到主库
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-19 11:35
+ */
+@Component
+public class ReplicaRouter {
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRouter.class);
+    /**
+     * 保留的主库复制偏移量历史条数
+     */
+    private static final int OFFSET_HISTORY = 64;
+
+    @Autowired
+    private JedisPool jedisPool;
+    @Autowired
+    private JedisPoolConfig jedisPoolConfig;
+
+    @Value("${spring.redis.timeout}")
+    private int timeout;
+    @Value("${spring.redis.password}")
+    private String password;
+
+    @Value("${spring.redis.replica.enabled:false}")
+    private boolean enabled;
+    @Value("${spring.redis.replica.nodes:}")
+    private String nodes;
+    @Value("${spring.redis.replica.probe-interval:100}")
+    private long probeInterval;
+    @Value("${spring.redis.replica.max-lag:5}")
+    private long maxLag;
+
+    private final List<Replica> replicas = new CopyOnWriteArrayList<>();
+    /**
+     * {探测开始时间, 主库复制偏移量},只在探测线程中访问
+     */
+    private final Deque<long[]> offsetHistory = new ArrayDeque<>();
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        for (String node : StringUtils.commaDelimitedListToSet(nodes)) {
+            node = node.trim();
+            if (node.isEmpty()) {
+                continue;
+            }
+            HostAndPort hostAndPort = HostAndPort.parseString(node);
+            replicas.add(new Replica(node, new JedisPool(jedisPoolConfig, hostAndPort.getHost(), hostAndPort.getPort(),
+                    timeout, StringUtils.isEmpty(password) ? null : password)));
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(this::probe, 0, probeInterval, TimeUnit.MILLISECONDS);
+        log.info("redis从库读路由开启,从库：" + nodes);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        for (Replica replica : replicas) {
+            replica.pool.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled && !replicas.isEmpty();
+    }
+
+    /**
+     * 获取从库只读连接
+     * @return 没有满足条件的从库或获取连接失败时返回null
+     */
+    public Jedis getResource() {
+        return getResource(ReadYourWrites.lastWrite());
+    }
+
+    /**
+     * 获取从库只读连接,读己之写按指定的写入时间判断,供在其他线程中执行的读使用
+     * @param lastWrite 发起读的线程的ReadYourWrites.lastWrite()
+     * @return 同getResource()
+     */
+    public Jedis getResource(Long lastWrite) {
+        Replica replica = choose(lastWrite);
+        if (replica == null) {
+            return null;
+        }
+        try {
+            return replica.pool.getResource();
+        } catch (Exception e) {
+            replica.healthy = false;
+            log.error("从库" + replica.node + "获取连接失败：" + e.getMessage());
+            return null;
+        }
+    }
+
+    private Replica choose(Long lastWrite) {
+        List<Replica> candidates = new ArrayList<>(replicas.size());
+        for (Replica replica : replicas) {
+            if (replica.healthy && replica.lag <= maxLag
+                    && (lastWrite == null || replica.consistentSince >= lastWrite)) {
+                candidates.add(replica);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Replica a = candidates.get(random.nextInt(candidates.size()));
+        Replica b = candidates.get(random.nextInt(candidates.size()));
+        return a.latency <= b.latency ? a : b;
+    }
+
+    /**
+     * 探测一轮:先从主库取复制偏移量和各从库确认的偏移量,再PING各从库测延迟
+     * 从库确认的偏移量达到某次探测时主库的偏移量,说明该次探测开始前的写入都已同步到从库
+     */
+    void probe() {
+        long start = System.nanoTime();
+        Map<String, long[]> replicaOffsets = new HashMap<>();
+        Jedis jedis = null;
+        try {
+            jedis = jedisPool.getResource();
+            long masterOffset = parseReplication(jedis.info("replication"), replicaOffsets);
+            if (masterOffset >= 0) {
+                offsetHistory.addLast(new long[]{start, masterOffset});
+                if (offsetHistory.size() > OFFSET_HISTORY) {
+                    offsetHistory.removeFirst();
+                }
+            }
+        } catch (Exception e) {
+            log.error("主库复制信息获取失败：" + e.getMessage());
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+        for (Replica replica : replicas) {
+            ping(replica);
+            long[] offset = replicaOffsets.get(replica.node);
+            if (offset == null) {
+                continue;
+            }
+            replica.lag = offset[1];
+            Iterator<long[]> it = offsetHistory.descendingIterator();
+            while (it.hasNext()) {
+                long[] entry = it.next();
+                if (entry[1] <= offset[0]) {
+                    replica.consistentSince = Math.max(replica.consistentSince, entry[0]);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void ping(Replica replica) {
+        long start = System.nanoTime();
+        Jedis jedis = null;
+        try {
+            jedis = replica.pool.getResource();
+            jedis.ping();
+            double micros = (System.nanoTime() - start) / 1000.0;
+            replica.latency = replica.latency < 0 ? micros : replica.latency * 0.8 + micros * 0.2;
+            replica.healthy = true;
+        } catch (Exception e) {
+            if (replica.healthy) {
+                log.error("从库" + replica.node + "探测失败：" + e.getMessage());
+            }
+            replica.healthy = false;
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * 解析INFO replication
+     * @param info
+     * @param replicaOffsets 输出:从库ip:port -> {确认的偏移量, 延迟秒数}
+     * @return 主库复制偏移量,没有时返回-1
+     */
+    private static long parseReplication(String info, Map<String, long[]> replicaOffsets) {
+        long masterOffset = -1;
+        for (String line : info.split("\r\n")) {
+            if (line.startsWith("master_repl_offset:")) {
+                masterOffset = Long.parseLong(line.substring("master_repl_offset:".length()).trim());
+            } else if (line.startsWith("slave") && line.indexOf(':') > 0) {
+                Map<String, String> fields = new HashMap<>();
+                for (String field : line.substring(line.indexOf(':') + 1).split(",")) {
+                    int eq = field.indexOf('=');
+                    if (eq > 0) {
+                        fields.put(field.substring(0, eq), field.substring(eq + 1));
+                    }
+                }
+                if (fields.containsKey("ip") && fields.containsKey("port") && fields.containsKey("offset")) {
+                    replicaOffsets.put(fields.get("ip") + ":" + fields.get("port"), new long[]{
+                            Long.parseLong(fields.get("offset")),
+                            fields.containsKey("lag") ? Long.parseLong(fields.get("lag")) : 0});
+                }
+            }
+        }
+        return masterOffset;
+    }
+
+    private static class Replica {
+        private final String node;
+        private final JedisPool pool;
+        private volatile boolean healthy;
+        /**
+         * PING延迟的指数移动平均,微秒
+         */
+        private volatile double latency = -1;
+        /**
+         * 主库上报的复制延迟,秒
+         */
+        private volatile long lag;
+        /**
+         * 该时间点(System.nanoTime)之前的写入已同步到此从库
+         */
+        private volatile long consistentSince = Long.MIN_VALUE;
+
+        private Replica(String node, JedisPool pool) {
+            this.node = node;
+            this.pool = pool;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.springbootredisdemo.utils;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 可在运行期调整大小的连接池,并统计借连接耗时;
+ * 耗时按2的幂分桶(微秒),分位数取所在桶的上界,用于对比预热和调整前后的借连接延迟
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-19 23:20
+ */
+public class ResizableJedisPool extends JedisPool {
+    private static final int BUCKETS = 32;
+
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder borrowMicros = new LongAdder();
+    private final AtomicLong borrowMaxMicros = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    public ResizableJedisPool(JedisPoolConfig poolConfig, String host, int port, int timeout, String password) {
+        super(poolConfig, host, port, timeout, password);
+    }
+
+    @Override
+    public Jedis getResource() {
+        long start = System.nanoTime();
+        try {
+            return super.getResource();
+        } finally {
+            long micros = (System.nanoTime() - start) / 1000;
+            borrows.increment();
+            borrowMicros.add(micros);
+            borrowMaxMicros.accumulateAndGet(micros, Math::max);
+            RedisTrace.onPoolWait(micros);
+            histogram.incrementAndGet(bucket(micros));
+        }
+    }
+
+    public int getMaxTotal() {
+        return internalPool.getMaxTotal();
+    }
+
+    /**
+     * 调整最大连接数,最大和最小空闲数保持各自的配置;
+     * 调小时已借出的连接不受影响,归还后超出部分被销毁
+     * @param maxTotal
+     */
+    public void setMaxTotal(int maxTotal) {
+        internalPool.setMaxTotal(maxTotal);
+    }
+
+    public int getMaxIdle() {
+        return internalPool.getMaxIdle();
+    }
+
+    public void setMaxIdle(int maxIdle) {
+        internalPool.setMaxIdle(maxIdle);
+    }
+
+    public int getMinIdle() {
+        return internalPool.getMinIdle();
+    }
+
+    public void setMinIdle(int minIdle) {
+        internalPool.setMinIdle(minIdle);
+    }
+
+    /**
+     * 累计借连接次数
+     * @return
+     */
+    public long getBorrows() {
+        return borrows.sum();
+    }
+
+    /**
+     * 累计借连接耗时(微秒)
+     * @return
+     */
+    public long getBorrowMicros() {
+        return borrowMicros.sum();
+    }
+
+    /**
+     * 连接数和借连接耗时分布
+     * @return
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxTotal", getMaxTotal());
+        stats.put("maxIdle", internalPool.getMaxIdle());
+        stats.put("minIdle", internalPool.getMinIdle());
+        stats.put("active", getNumActive());
+        stats.put("idle", getNumIdle());
+        stats.put("waiters", getNumWaiters());
+        long count = borrows.sum();
+        stats.put("borrows", count);
+        stats.put("borrowAvgMicros", count == 0 ? 0 : borrowMicros.sum() / count);
+        stats.put("borrowP50Micros", percentile(0.5));
+        stats.put("borrowP99Micros", percentile(0.99));
+        stats.put("borrowMaxMicros", borrowMaxMicros.get());
+        return stats;
+    }
+
+    private long percentile(double p) {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = histogram.get(i);
+        }
+        return percentile(counts, p);
+    }
+
+    /**
+     * 耗时所在的桶:[2^i, 2^(i+1))微秒,0和1微秒计入第0个桶
+     */
+    static int bucket(long micros) {
+        return Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(Math.max(1, micros)));
+    }
+
+    /**
+     * 分位数所在桶的上界
+     * @param counts 各桶的次数
+     * @param p
+     * @return 没有记录时返回0
+     */
+    static long percentile(long[] counts, double p) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        long rank = (long) Math.ceil(total * p);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return 1L << (i + 1);
+            }
+        }
+        return 0;
+    }
+}
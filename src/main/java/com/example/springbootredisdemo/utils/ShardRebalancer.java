@@ -0,0 +1,152 @@
+package com.example.springbootredisdemo.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @version 0.0.1
+ * @program: springbootredisdemo
+ * @description: 分片扩容工具;新增节点时扫描现有节点,把归属发生变化的key迁移到新节点
+ * 迁移分两轮:第一轮用MIGRATE ... COPY REPLACE把key复制到新节点,旧节点保留原值,切换路由前读写仍走旧节点不会读不到;
+ * 切换路由后第二轮用不带REPLACE的MIGRATE迁移剩下的key,新节点已有同名key(第一轮复制的或切换后客户端写入的)时以新节点为准,
+ * 只删除旧节点上的副本,绝不覆盖新节点上的值;
+ * 第一轮复制之后、切换路由之前对已复制key的修改不会带到新节点,扩容期间应暂停对迁移key的写入或缩短该窗口
+ * @packname: com.example.springbootredisdemo.utils
+ * @author: wzp
+ * @create: 2026-10-19 10:05
+ */
+@Component
+public class ShardRebalancer {
+    private static final Logger log = LoggerFactory.getLogger(ShardRebalancer.class);
+
+    @Autowired
+    private RedisRouter redisRouter;
+
+    @Value("${spring.redis.shard.rebalance.batch-size:1000}")
+    private int batchSize;
+    @Value("${spring.redis.timeout}")
+    private int timeout;
+    @Value("${spring.redis.password}")
+    private String password;
+
+    /**
+     * 统计新增节点后各节点需要迁出的key数量,不做实际迁移
+     * @param newNode host:port
+     * @param dbs 需要扫描的库
+     * @return 节点名 -> 需要迁出的key数量
+     */
+    public Map<String, Long> plan(String newNode, int... dbs) {
+        ConsistentHash<String> target = redisRouter.getRing();
+        target.add(newNode);
+        return scan(redisRouter.getNodes(), target, null, dbs);
+    }
+
+    /**
+     * 新增节点并迁移key
+     * @param newNode host:port
+     * @param dbs 需要扫描的库
+     * @return 节点名 -> 迁出的key数量
+     */
+    public Map<String, Long> addNode(String newNode, int... dbs) {
+        Set<String> sources = redisRouter.getNodes();
+        ConsistentHash<String> target = redisRouter.getRing();
+        target.add(newNode);
+        redisRouter.registerNode(newNode);
+        Map<String, Long> moved = scan(sources, target, Boolean.TRUE, dbs);
+        redisRouter.switchRing(target);
+        for (Map.Entry<String, Long> entry : scan(sources, target, Boolean.FALSE, dbs).entrySet()) {
+            moved.merge(entry.getKey(), entry.getValue(), Long::sum);
+        }
+        log.info("redis分片扩容完成,新节点：" + newNode + ",迁移统计：" + moved);
+        return moved;
+    }
+
+    /**
+     * @param copy null时只统计不迁移;true时复制并覆盖(切换路由前);false时迁移且不覆盖新节点上已有的key(切换路由后)
+     */
+    private Map<String, Long> scan(Set<String> sources, ConsistentHash<String> target, Boolean copy, int... dbs) {
+        Map<String, Long> moved = new LinkedHashMap<>();
+        for (String node : sources) {
+            long count = 0;
+            Jedis jedis = null;
+            MigrateClient client = null;
+            try {
+                jedis = redisRouter.getNodeResource(node);
+                if (copy != null) {
+                    client = new MigrateClient(node, password, timeout);
+                }
+                for (int db : dbs) {
+                    jedis.select(db);
+                    count += scanDb(jedis, client, copy != null && copy, node, db, target);
+                }
+            } catch (Exception e) {
+                redisRouter.onException(e);
+                log.error("节点" + node + "扫描失败：" + e.getMessage());
+            } finally {
+                // 整个节点扫描期间一直占用连接,不计入熔断器的慢调用
+                if (jedis != null) {
+                    jedis.close();
+                    RedisCall.clear();
+                }
+                if (client != null) {
+                    client.close();
+                }
+            }
+            moved.put(node, count);
+        }
+        return moved;
+    }
+
+    /**
+     * 扫描一个库
+     * @param client 为null时只统计不迁移
+     * @param copy true时复制并覆盖;false时迁移,目标已有同名key则删除源节点上的旧副本
+     */
+    private long scanDb(Jedis jedis, MigrateClient client, boolean copy, String node, int db, ConsistentHash<String> target) {
+        long count = 0;
+        ScanParams params = new ScanParams().count(batchSize);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> result = jedis.scan(cursor, params);
+            for (String key : result.getResult()) {
+                String owner = target.get(key);
+                if (node.equals(owner)) {
+                    continue;
+                }
+                if (client == null) {
+                    count++;
+                    continue;
+                }
+                try {
+                    HostAndPort hostAndPort = HostAndPort.parseString(owner);
+                    if ("OK".equals(client.migrate(hostAndPort.getHost(), hostAndPort.getPort(), key, db, timeout, copy, copy))) {
+                        count++;
+                    }
+                } catch (JedisDataException e) {
+                    if (!copy && e.getMessage() != null && e.getMessage().startsWith("BUSYKEY")) {
+                        // 新节点上的值更新,旧节点上的副本已不会再被读到
+                        jedis.del(key);
+                    } else {
+                        log.error("key迁移失败：" + key + " -> " + owner + "," + e.getMessage());
+                    }
+                } catch (Exception e) {
+                    log.error("key迁移失败：" + key + " -> " + owner + "," + e.getMessage());
+                }
+            }
+            cursor = result.getStringCursor();
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+        return count;
+    }
+}
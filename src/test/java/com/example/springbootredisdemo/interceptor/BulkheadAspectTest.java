@@ -0,0 +1,46 @@
+package com.example.springbootredisdemo.interceptor;
+
+import com.example.springbootredisdemo.utils.RedisUtils;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BulkheadAspectTest {
+
+    @Test
+    public void failureValuesMatchRedisUtilsMethods() {
+        Map<String, Method> methods = new HashMap<>();
+        for (Method method : RedisUtils.class.getMethods()) {
+            if (!Modifier.isStatic(method.getModifiers())) {
+                methods.put(BulkheadAspect.signature(method), method);
+            }
+        }
+        for (Map.Entry<String, Object> entry : BulkheadAspect.FAILURE_VALUES.entrySet()) {
+            Method method = methods.get(entry.getKey());
+            assertTrue(entry.getKey(), method != null);
+            assertTrue(entry.getKey(), method.getReturnType().isInstance(entry.getValue()));
+        }
+    }
+
+    @Test
+    public void failureValues() throws Exception {
+        assertEquals("0", failureValue("set", String.class, String.class, int.class));
+        assertEquals(0L, failureValue("del", String[].class));
+        assertEquals(-1L, failureValue("persist", String.class));
+        assertEquals(false, failureValue("exists", String.class));
+        assertNull(failureValue("get", String.class, int.class));
+        assertNull(failureValue("zcount", String.class, String.class, String.class));
+        assertEquals(false, failureValue("setbits", String.class, java.util.Collection.class, boolean.class));
+    }
+
+    private static Object failureValue(String name, Class<?>... types) throws Exception {
+        return BulkheadAspect.failureValue(RedisUtils.class.getMethod(name, types));
+    }
+}
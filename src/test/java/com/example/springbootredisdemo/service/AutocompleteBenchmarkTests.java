@@ -0,0 +1,106 @@
+package com.example.springbootredisdemo.service;
+
+import com.example.springbootredisdemo.utils.RedisUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 前缀补全查询延迟基准,默认跳过;-Dbenchmark=true开启,-Dbenchmark.autocomplete.terms指定词条数量(默认100万)
+ * 关闭热度排序和本地缓存,测的是ZRANGEBYLEX路径,要求p99不超过-Dbenchmark.autocomplete.max-micros(默认1000微秒)
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"spring.redis.autocomplete.scored=false", "spring.redis.autocomplete.cache-prefix-length=0"})
+public class AutocompleteBenchmarkTests {
+    private static final Logger log = LoggerFactory.getLogger(AutocompleteBenchmarkTests.class);
+    private static final int TERMS = Integer.getInteger("benchmark.autocomplete.terms", 1000000);
+    private static final long MAX_MICROS = Long.getLong("benchmark.autocomplete.max-micros", 1000L);
+    private static final int QUERIES = 10000;
+
+    @Autowired
+    private Autocomplete autocomplete;
+    @Autowired
+    private RedisUtils redisUtils;
+
+    @Test
+    public void millionTermQueryLatency() {
+        assumeTrue(Boolean.getBoolean("benchmark"));
+        String dict = "bench-" + UUID.randomUUID();
+        try {
+            assertTrue(autocomplete.build(dict, terms(new Random(1), TERMS)));
+            Random random = new Random(2);
+            List<String> prefixes = new ArrayList<>();
+            for (int i = 0; i < QUERIES + 1000; i++) {
+                String term = word(random);
+                prefixes.add(term.substring(0, 2 + random.nextInt(3)));
+            }
+            for (String prefix : prefixes.subList(0, 1000)) {
+                autocomplete.suggest(dict, prefix, 10);
+            }
+            long[] micros = new long[QUERIES];
+            int empty = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                long start = System.nanoTime();
+                List<String> res = autocomplete.suggest(dict, prefixes.get(1000 + i), 10);
+                micros[i] = (System.nanoTime() - start) / 1000;
+                if (res.isEmpty()) {
+                    empty++;
+                }
+            }
+            Arrays.sort(micros);
+            long p50 = micros[QUERIES / 2];
+            long p99 = micros[QUERIES * 99 / 100];
+            log.info("前缀补全基准：terms=" + TERMS + ",p50Micros=" + p50 + ",p99Micros=" + p99
+                    + ",maxMicros=" + micros[QUERIES - 1] + ",emptyResults=" + empty);
+            assertFalse(empty == QUERIES);
+            assertTrue("p99 " + p99 + "微秒", p99 <= MAX_MICROS);
+        } finally {
+            redisUtils.del("ac:{" + dict + "}:lex");
+        }
+    }
+
+    private static Iterator<Map.Entry<String, Double>> terms(Random random, int count) {
+        return new Iterator<Map.Entry<String, Double>>() {
+            private int produced;
+
+            @Override
+            public boolean hasNext() {
+                return produced < count;
+            }
+
+            @Override
+            public Map.Entry<String, Double> next() {
+                produced++;
+                return new AbstractMap.SimpleEntry<>(word(random) + produced, 0D);
+            }
+        };
+    }
+
+    /**
+     * 6~12个小写字母,前缀分布接近真实词典
+     */
+    private static String word(Random random) {
+        char[] chars = new char[6 + random.nextInt(7)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+}
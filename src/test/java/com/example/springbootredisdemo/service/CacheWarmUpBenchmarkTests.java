@@ -0,0 +1,67 @@
+package com.example.springbootredisdemo.service;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 预热吞吐基准,默认跳过;-Dbenchmark=true开启,-Dbenchmark.warmup.keys指定key数量(默认1000万)
+ * 启动前生成key\tvalue文件交给spring.redis.warmup.files,key在10分钟后过期
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"spring.redis.warmup.enabled=true", "spring.redis.warmup.files=${benchmark.warmup.file:}", "spring.redis.warmup.file-expire=600"})
+public class CacheWarmUpBenchmarkTests {
+    private static final Logger log = LoggerFactory.getLogger(CacheWarmUpBenchmarkTests.class);
+    private static final boolean ENABLED = Boolean.getBoolean("benchmark");
+    private static final long KEYS = Long.getLong("benchmark.warmup.keys", 10000000L);
+
+    static {
+        if (ENABLED) {
+            try {
+                File file = File.createTempFile("warmup-benchmark", ".tsv");
+                file.deleteOnExit();
+                try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                    for (long i = 0; i < KEYS; i++) {
+                        writer.write("bench:warmup:" + i + "\t" + "value-" + i);
+                        writer.newLine();
+                    }
+                }
+                System.setProperty("benchmark.warmup.file", file.getAbsolutePath());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Autowired
+    private CacheWarmUp cacheWarmUp;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void warmUpThroughput() throws InterruptedException {
+        assumeTrue(ENABLED);
+        while (!cacheWarmUp.isReady()) {
+            Thread.sleep(500);
+        }
+        Map<String, Object> tasks = (Map<String, Object>) cacheWarmUp.getStatus().get("tasks");
+        Map<String, Object> task = (Map<String, Object>) tasks.get(System.getProperty("benchmark.warmup.file"));
+        log.info("预热基准：" + task);
+        assertEquals(0L, ((Number) task.get("failed")).longValue());
+        assertEquals(KEYS, ((Number) task.get("loaded")).longValue());
+    }
+}
@@ -0,0 +1,482 @@
+package com.example.springbootredisdemo.service;
+
+import com.example.springbootredisdemo.utils.RedisRouter;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.repository.CrudRepository;
+import redis.clients.jedis.Builder;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EntityCacheTest {
+    private FakeJedis jedis;
+    private AtomicInteger exceptions;
+    private EntityCache cache;
+    private RecordingSource source;
+    private EntityCache.Repository<Item, Long> items;
+
+    @Before
+    public void setUp() throws Exception {
+        jedis = new FakeJedis();
+        exceptions = new AtomicInteger();
+        cache = new EntityCache();
+        set(cache, "redisRouter", new RedisRouter() {
+            @Override
+            public Jedis getResource(String key) {
+                return jedis;
+            }
+
+            @Override
+            public Jedis getPrimaryResource(String key) {
+                return jedis;
+            }
+
+            @Override
+            public Jedis getReadResource(String key) {
+                return jedis;
+            }
+
+            @Override
+            public void onException(Throwable e) {
+                exceptions.incrementAndGet();
+            }
+        });
+        set(cache, "expire", 3600);
+        set(cache, "batchSize", 500);
+        set(cache, "lease", 30000L);
+        set(cache, "versionExpire", 60);
+        source = new RecordingSource();
+        items = cache.register("item", source, item -> item.id, Long::valueOf, EntityCache.Mode.WRITE_BEHIND);
+    }
+
+    @Test
+    public void flushKeepsJournalOrderAndCoalescesRepeatedIds() {
+        items.save(new Item(1, "a"));
+        items.save(new Item(2, "b"));
+        items.delete(3L);
+        items.save(new Item(4, "d"));
+        items.delete(1L);
+        items.save(new Item(2, "b2"));
+        assertEquals(6L, items.pending().longValue());
+
+        cache.flushAll();
+
+        // 每个id只写最后一次的值,位置取最后一次出现的位置;连续的同类操作合并为一次批量调用
+        assertEquals(Arrays.asList("delete:[3]", "save:[4]", "delete:[1]", "save:[2]"), source.calls);
+        assertEquals(0L, items.pending().longValue());
+        assertTrue(jedis.hash("ec:{item}:pending").isEmpty());
+        assertTrue(jedis.hash("ec:{item}:version").isEmpty());
+        assertEquals("b2", source.db.get(2L).name);
+        assertNull(source.db.get(1L));
+    }
+
+    @Test
+    public void readsComeFromCacheThenPendingBeforeFlush() {
+        items.save(new Item(1, "a"));
+        assertEquals("a", items.get(1L).name);
+        // 缓存过期但还没写入数据库
+        jedis.strings.remove("ec:{item}:e:1");
+        assertEquals("a", items.get(1L).name);
+        items.delete(1L);
+        assertNull(items.get(1L));
+        assertEquals(0, source.loads.get());
+    }
+
+    @Test
+    public void writeDuringFlushIsNotAcknowledged() {
+        items.save(new Item(1, "a"));
+        source.onSave = () -> {
+            source.onSave = null;
+            items.save(new Item(1, "newer"));
+        };
+
+        cache.flushAll();
+
+        assertEquals("a", source.db.get(1L).name);
+        // 写入期间版本号变化,ACK不删除新的待写值,journal中留有新的一条
+        assertEquals(1L, items.pending().longValue());
+        cache.flushAll();
+        assertEquals("newer", source.db.get(1L).name);
+        assertEquals(0L, items.pending().longValue());
+        assertEquals(Arrays.asList("save:[1]", "save:[1]"), source.calls);
+    }
+
+    @Test
+    public void failedBatchStaysInflightAndIsRetried() {
+        items.save(new Item(1, "a"));
+        items.save(new Item(2, "b"));
+        source.failures = 1;
+
+        cache.flushAll();
+
+        assertEquals(Collections.singletonList("save:[1, 2]"), source.calls);
+        assertTrue(source.db.isEmpty());
+        assertEquals(Arrays.asList("1", "2"), jedis.list("ec:{item}:inflight"));
+        items.save(new Item(3, "c"));
+        assertEquals(3L, items.pending().longValue());
+
+        // 先重写上次未完成的inflight,之后的journal在下一次flush写入
+        cache.flushAll();
+        assertEquals(1L, items.pending().longValue());
+        cache.flushAll();
+
+        assertEquals(Arrays.asList("save:[1, 2]", "save:[1, 2]", "save:[3]"), source.calls);
+        assertEquals(3, source.db.size());
+        assertEquals(0L, items.pending().longValue());
+    }
+
+    @Test
+    public void flushSkipsWhileAnotherInstanceHoldsTheLease() {
+        items.save(new Item(1, "a"));
+        jedis.strings.put("ec:{item}:lease", SafeEncoder.encode("other"));
+
+        cache.flushAll();
+
+        assertTrue(source.calls.isEmpty());
+        assertEquals(1L, items.pending().longValue());
+        jedis.strings.remove("ec:{item}:lease");
+        cache.flushAll();
+        assertEquals(Collections.singletonList("save:[1]"), source.calls);
+    }
+
+    @Test
+    public void journalFailureIsReportedAndRethrown() {
+        jedis.down = true;
+        try {
+            items.save(new Item(1, "a"));
+            fail();
+        } catch (JedisConnectionException e) {
+            assertEquals(1, exceptions.get());
+        }
+    }
+
+    @Test
+    public void crudRepositoryDeleteAllLoadsTheBatchOnce() {
+        List<String> calls = new ArrayList<>();
+        Map<Long, Item> rows = new HashMap<>();
+        rows.put(1L, new Item(1, "a"));
+        @SuppressWarnings("unchecked")
+        CrudRepository<Item, Long> repository = (CrudRepository<Item, Long>) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{CrudRepository.class}, (proxy, method, args) -> {
+                    calls.add(method.getName());
+                    if ("findAllById".equals(method.getName())) {
+                        List<Item> found = new ArrayList<>();
+                        for (Object id : (Iterable<?>) args[0]) {
+                            if (rows.containsKey(id)) {
+                                found.add(rows.get(id));
+                            }
+                        }
+                        return found;
+                    }
+                    return null;
+                });
+        EntityCache.Source<Item, Long> of = EntityCache.Source.of(repository);
+
+        of.deleteAll(Arrays.asList(1L, 2L));
+        assertEquals(Arrays.asList("findAllById", "deleteAll"), calls);
+
+        calls.clear();
+        of.deleteAll(Collections.singletonList(2L));
+        assertEquals(Collections.singletonList("findAllById"), calls);
+    }
+
+    private static void set(Object target, String name, Object value) throws Exception {
+        Field field = EntityCache.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    static class Item implements Serializable {
+        private final long id;
+        private final String name;
+
+        Item(long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    /**
+     * 内存中的数据源,记录每次批量调用
+     */
+    static class RecordingSource implements EntityCache.Source<Item, Long> {
+        private final Map<Long, Item> db = new LinkedHashMap<>();
+        private final List<String> calls = new ArrayList<>();
+        private final AtomicInteger loads = new AtomicInteger();
+        private Runnable onSave;
+        private int failures;
+
+        @Override
+        public Item load(Long id) {
+            loads.incrementAndGet();
+            return db.get(id);
+        }
+
+        @Override
+        public void saveAll(List<Item> entities) {
+            List<Long> ids = new ArrayList<>();
+            for (Item entity : entities) {
+                ids.add(entity.id);
+            }
+            calls.add("save:" + ids);
+            if (failures > 0) {
+                failures--;
+                throw new IllegalStateException("数据库不可用");
+            }
+            if (onSave != null) {
+                onSave.run();
+            }
+            for (Item entity : entities) {
+                db.put(entity.id, entity);
+            }
+        }
+
+        @Override
+        public void deleteAll(List<Long> ids) {
+            calls.add("delete:" + ids);
+            for (Long id : ids) {
+                db.remove(id);
+            }
+        }
+    }
+
+    /**
+     * 只实现EntityCache用到的命令;MULTI中的命令立即执行,lua脚本按内容在java中模拟
+     */
+    static class FakeJedis extends Jedis {
+        private final Map<String, byte[]> strings = new HashMap<>();
+        private final Map<String, Map<String, byte[]>> hashes = new HashMap<>();
+        private final Map<String, List<String>> lists = new HashMap<>();
+        private boolean down;
+
+        private Map<String, byte[]> hash(String key) {
+            return hashes.computeIfAbsent(key, k -> new LinkedHashMap<>());
+        }
+
+        private List<String> list(String key) {
+            return lists.computeIfAbsent(key, k -> new ArrayList<>());
+        }
+
+        private void check() {
+            if (down) {
+                throw new JedisConnectionException("connection refused");
+            }
+        }
+
+        @Override
+        public byte[] get(byte[] key) {
+            check();
+            return strings.get(SafeEncoder.encode(key));
+        }
+
+        @Override
+        public byte[] hget(byte[] key, byte[] field) {
+            check();
+            return hash(SafeEncoder.encode(key)).get(SafeEncoder.encode(field));
+        }
+
+        @Override
+        public Long llen(String key) {
+            check();
+            return (long) list(key).size();
+        }
+
+        @Override
+        public String set(String key, String value, String nxxx, String expx, long time) {
+            check();
+            if ("NX".equals(nxxx) && strings.containsKey(key)) {
+                return null;
+            }
+            strings.put(key, SafeEncoder.encode(value));
+            return "OK";
+        }
+
+        @Override
+        public Object evalsha(String sha1, List<String> keys, List<String> args) {
+            check();
+            throw new JedisDataException("NOSCRIPT No matching script");
+        }
+
+        @Override
+        public Object evalsha(byte[] sha1, List<byte[]> keys, List<byte[]> args) {
+            check();
+            throw new JedisDataException("NOSCRIPT No matching script");
+        }
+
+        @Override
+        public Object eval(String script, List<String> keys, List<String> args) {
+            check();
+            if (script.contains("LTRIM")) {
+                List<String> inflight = list(keys.get(1));
+                if (!inflight.isEmpty()) {
+                    return new ArrayList<>(inflight);
+                }
+                List<String> journal = list(keys.get(0));
+                List<String> ids = new ArrayList<>(journal.subList(0, Math.min(Integer.parseInt(args.get(0)), journal.size())));
+                journal.subList(0, ids.size()).clear();
+                inflight.addAll(ids);
+                return ids;
+            }
+            if (script.contains("HDEL")) {
+                for (int i = 0; i < args.size(); i += 2) {
+                    byte[] version = hash(keys.get(2)).get(args.get(i));
+                    if (version != null && SafeEncoder.encode(version).equals(args.get(i + 1))) {
+                        hash(keys.get(1)).remove(args.get(i));
+                        hash(keys.get(2)).remove(args.get(i));
+                    }
+                }
+                lists.remove(keys.get(0));
+                return 1L;
+            }
+            byte[] holder = strings.get(keys.get(0));
+            if (holder != null && SafeEncoder.encode(holder).equals(args.get(0))) {
+                strings.remove(keys.get(0));
+                return 1L;
+            }
+            return 0L;
+        }
+
+        @Override
+        public Object eval(byte[] script, List<byte[]> keys, List<byte[]> args) {
+            check();
+            String key = SafeEncoder.encode(keys.get(0));
+            String id = SafeEncoder.encode(args.get(2));
+            if (strings.containsKey(key) || hash(SafeEncoder.encode(keys.get(1))).containsKey(id)) {
+                return 0L;
+            }
+            byte[] version = hash(SafeEncoder.encode(keys.get(2))).get(id);
+            if (!Arrays.equals(version == null ? new byte[0] : version, args.get(3))) {
+                return 0L;
+            }
+            strings.put(key, args.get(0));
+            return 1L;
+        }
+
+        @Override
+        public Transaction multi() {
+            check();
+            return new FakeTransaction(this);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    static class FakeTransaction extends Transaction {
+        private final FakeJedis jedis;
+
+        FakeTransaction(FakeJedis jedis) {
+            this.jedis = jedis;
+        }
+
+        @Override
+        public Response<Long> del(byte[] key) {
+            return del(SafeEncoder.encode(key));
+        }
+
+        @Override
+        public Response<Long> del(String key) {
+            jedis.strings.remove(key);
+            jedis.hashes.remove(key);
+            jedis.lists.remove(key);
+            return done(1L);
+        }
+
+        @Override
+        public Response<String> setex(byte[] key, int seconds, byte[] value) {
+            jedis.strings.put(SafeEncoder.encode(key), value);
+            return done("OK");
+        }
+
+        @Override
+        public Response<Long> hset(byte[] key, byte[] field, byte[] value) {
+            jedis.hash(SafeEncoder.encode(key)).put(SafeEncoder.encode(field), value);
+            return done(1L);
+        }
+
+        @Override
+        public Response<Long> hincrBy(byte[] key, byte[] field, long value) {
+            return hincrBy(SafeEncoder.encode(key), SafeEncoder.encode(field), value);
+        }
+
+        @Override
+        public Response<Long> hincrBy(String key, String field, long value) {
+            byte[] current = jedis.hash(key).get(field);
+            long next = (current == null ? 0 : Long.parseLong(SafeEncoder.encode(current))) + value;
+            jedis.hash(key).put(field, SafeEncoder.encode(String.valueOf(next)));
+            return done(next);
+        }
+
+        @Override
+        public Response<Long> expire(String key, int seconds) {
+            return done(1L);
+        }
+
+        @Override
+        public Response<Long> rpush(byte[] key, byte[]... values) {
+            List<String> list = jedis.list(SafeEncoder.encode(key));
+            for (byte[] value : values) {
+                list.add(SafeEncoder.encode(value));
+            }
+            return done((long) list.size());
+        }
+
+        @Override
+        public Response<List<byte[]>> hmget(byte[] key, byte[]... fields) {
+            List<byte[]> values = new ArrayList<>();
+            for (byte[] field : fields) {
+                values.add(jedis.hash(SafeEncoder.encode(key)).get(SafeEncoder.encode(field)));
+            }
+            return done(values);
+        }
+
+        @Override
+        public Response<List<String>> hmget(String key, String... fields) {
+            List<String> values = new ArrayList<>();
+            for (String field : fields) {
+                byte[] value = jedis.hash(key).get(field);
+                values.add(value == null ? null : SafeEncoder.encode(value));
+            }
+            return done(values);
+        }
+
+        @Override
+        public List<Object> exec() {
+            return Collections.emptyList();
+        }
+
+        private static <T> Response<T> done(T value) {
+            Response<T> response = new Response<>(new Builder<T>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public T build(Object data) {
+                    return (T) data;
+                }
+            });
+            response.set(value);
+            return response;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.springbootredisdemo.service;
+
+import com.example.springbootredisdemo.utils.RedisRouter;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 排行榜分页读取基准,默认跳过;-Dbenchmark=true开启,-Dbenchmark.leaderboard.members指定榜单人数(默认1000万)
+ * 随机读取前N名缓存之外的页,要求p99不超过-Dbenchmark.leaderboard.max-micros(默认1000微秒)
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class LeaderboardBenchmarkTests {
+    private static final Logger log = LoggerFactory.getLogger(LeaderboardBenchmarkTests.class);
+    private static final int MEMBERS = Integer.getInteger("benchmark.leaderboard.members", 10000000);
+    private static final long MAX_MICROS = Long.getLong("benchmark.leaderboard.max-micros", 1000L);
+    private static final int PAGE_SIZE = 20;
+    private static final int READS = 10000;
+    private static final String BOARD = "bench";
+
+    @Autowired
+    private Leaderboard leaderboard;
+    @Autowired
+    private RedisRouter redisRouter;
+
+    @Test
+    public void deepPageReadLatency() {
+        assumeTrue(Boolean.getBoolean("benchmark"));
+        String key = Leaderboard.key(BOARD, Leaderboard.Period.ALL, LocalDate.now());
+        try {
+            populate(key);
+            assertEquals(MEMBERS, leaderboard.size(BOARD, Leaderboard.Period.ALL).longValue());
+            int pages = MEMBERS / PAGE_SIZE;
+            for (int i = 0; i < 1000; i++) {
+                leaderboard.page(BOARD, Leaderboard.Period.ALL, ThreadLocalRandom.current().nextInt(10, pages), PAGE_SIZE);
+            }
+            long[] micros = new long[READS];
+            for (int i = 0; i < READS; i++) {
+                int page = ThreadLocalRandom.current().nextInt(10, pages);
+                long start = System.nanoTime();
+                List<Leaderboard.Entry> entries = leaderboard.page(BOARD, Leaderboard.Period.ALL, page, PAGE_SIZE);
+                micros[i] = (System.nanoTime() - start) / 1000;
+                assertEquals(PAGE_SIZE, entries.size());
+            }
+            Arrays.sort(micros);
+            long p50 = micros[READS / 2];
+            long p99 = micros[READS * 99 / 100];
+            log.info("排行榜分页基准：members=" + MEMBERS + ",p50Micros=" + p50 + ",p99Micros=" + p99
+                    + ",maxMicros=" + micros[READS - 1]);
+            assertTrue("p99 " + p99 + "微秒", p99 <= MAX_MICROS);
+        } finally {
+            try (Jedis jedis = redisRouter.getResource(key)) {
+                jedis.del(key);
+            }
+        }
+    }
+
+    private void populate(String key) {
+        try (Jedis jedis = redisRouter.getResource(key)) {
+            jedis.del(key);
+            Pipeline pipeline = jedis.pipelined();
+            for (int i = 0; i < MEMBERS; i++) {
+                pipeline.zadd(key, ThreadLocalRandom.current().nextInt(1000000), "member:" + i);
+                if (i % 10000 == 9999) {
+                    pipeline.sync();
+                }
+            }
+            pipeline.sync();
+        }
+    }
+}
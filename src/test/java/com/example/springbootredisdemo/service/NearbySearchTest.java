@@ -0,0 +1,171 @@
+package com.example.springbootredisdemo.service;
+
+import com.example.springbootredisdemo.utils.GeoHash;
+import com.example.springbootredisdemo.utils.RedisUtils;
+import org.junit.Test;
+import redis.clients.jedis.GeoCoordinate;
+import redis.clients.jedis.GeoRadiusResponse;
+import redis.clients.jedis.GeoUnit;
+import redis.clients.jedis.params.geo.GeoRadiusParam;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NearbySearchTest {
+
+    @Test
+    public void boxUsesPlaceLatitudeForEastWestDistance() {
+        // 纬度80度,东西200km、南北400km;经度差5度在78.5度约111km,在中心纬度80度只有约97km
+        assertFalse(NearbySearch.inBox(0, 80, 200000, 400000, 5, 78.5));
+        assertTrue(NearbySearch.inBox(0, 80, 200000, 400000, 5, 81.5));
+        assertFalse(NearbySearch.inBox(0, 80, 200000, 400000, 0, 82));
+    }
+
+    @Test
+    public void boxAcrossAntimeridian() {
+        assertTrue(NearbySearch.inBox(179.9, 0, 50000, 50000, -179.9, 0));
+        assertTrue(NearbySearch.inBox(-179.95, 0.1, 50000, 50000, 179.95, 0));
+        assertFalse(NearbySearch.inBox(179.9, 0, 50000, 50000, 179, 0));
+    }
+
+    @Test
+    public void boxNearPoleMatchesBruteForce() throws Exception {
+        assertMatchesBruteForce(10, 84.5, 300000, 200000);
+        assertMatchesBruteForce(0, -84, 100000, 100000);
+    }
+
+    @Test
+    public void boxAcrossAntimeridianMatchesBruteForce() throws Exception {
+        assertMatchesBruteForce(179.95, 0, 50000, 50000);
+        assertMatchesBruteForce(-179.99, -45, 80000, 30000);
+    }
+
+    @Test
+    public void radiusMatchesBruteForce() throws Exception {
+        Map<String, GeoCoordinate> places = scatter(new Random(3), 179.9, 60, 3);
+        NearbySearch search = search(new FakeGeo(places));
+        List<NearbySearch.Place> res = search.radius("shop", 179.9, 60, 50000, 1000);
+        Set<String> expected = new TreeSet<>();
+        for (Map.Entry<String, GeoCoordinate> entry : places.entrySet()) {
+            GeoCoordinate c = entry.getValue();
+            if (GeoHash.distance(60, 179.9, c.getLatitude(), c.getLongitude()) <= 50000) {
+                expected.add(entry.getKey());
+            }
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, members(res));
+    }
+
+    @Test
+    public void georadiusFailureIsNotAnEmptyResult() throws Exception {
+        NearbySearch search = search(new FakeGeo(null));
+        assertNull(search.radius("shop", 116.4, 39.9, 1000, 10));
+        assertNull(search.box("shop", 116.4, 39.9, 1000, 1000, 10));
+    }
+
+    private static void assertMatchesBruteForce(double longitude, double latitude, double width, double height)
+            throws Exception {
+        Map<String, GeoCoordinate> places = scatter(new Random(7), longitude, latitude, 4);
+        NearbySearch search = search(new FakeGeo(places));
+        NearbySearch.BoxResult res = search.box("shop", longitude, latitude, width, height, 100000);
+        Set<String> expected = new TreeSet<>();
+        for (Map.Entry<String, GeoCoordinate> entry : places.entrySet()) {
+            GeoCoordinate c = entry.getValue();
+            if (NearbySearch.inBox(longitude, latitude, width, height, c.getLongitude(), c.getLatitude())) {
+                expected.add(entry.getKey());
+            }
+        }
+        assertFalse(expected.isEmpty());
+        assertFalse(res.isTruncated());
+        assertEquals(expected, members(res.getPlaces()));
+    }
+
+    /**
+     * 中心周围±spread度内的随机点,纬度限制在redis GEOADD允许的±85.05度内,经度跨越±180度时回绕
+     */
+    private static Map<String, GeoCoordinate> scatter(Random random, double longitude, double latitude, double spread) {
+        Map<String, GeoCoordinate> places = new LinkedHashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            double lat = Math.max(-85.05, Math.min(85.05, latitude + (random.nextDouble() * 2 - 1) * spread));
+            double lon = longitude + (random.nextDouble() * 2 - 1) * spread * 4;
+            if (lon > 180) {
+                lon -= 360;
+            } else if (lon < -180) {
+                lon += 360;
+            }
+            places.put("p" + i, new GeoCoordinate(lon, lat));
+        }
+        return places;
+    }
+
+    private static Set<String> members(List<NearbySearch.Place> places) {
+        Set<String> members = new TreeSet<>();
+        for (NearbySearch.Place place : places) {
+            members.add(place.getMember());
+        }
+        return members;
+    }
+
+    private static NearbySearch search(RedisUtils redisUtils) throws Exception {
+        NearbySearch search = new NearbySearch();
+        set(search, "redisUtils", redisUtils);
+        set(search, "cellPrecision", 6);
+        set(search, "maxCandidates", 5000);
+        set(search, "batchSize", 1000);
+        set(search, "cacheSize", 10000);
+        set(search, "cacheTtl", 30000L);
+        return search;
+    }
+
+    private static void set(Object target, String name, Object value) throws Exception {
+        Field field = NearbySearch.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    /**
+     * 按球面距离暴力计算的GEORADIUS;places为null时模拟redis异常
+     */
+    private static class FakeGeo extends RedisUtils {
+        private final Map<String, GeoCoordinate> places;
+
+        private FakeGeo(Map<String, GeoCoordinate> places) {
+            this.places = places;
+        }
+
+        @Override
+        public List<GeoRadiusResponse> georadius(String key, double longitude, double latitude, double radius,
+                                                 GeoUnit unit, GeoRadiusParam param) {
+            if (places == null) {
+                return null;
+            }
+            List<GeoRadiusResponse> res = new ArrayList<>();
+            for (Map.Entry<String, GeoCoordinate> entry : places.entrySet()) {
+                GeoCoordinate c = entry.getValue();
+                double distance = GeoHash.distance(latitude, longitude, c.getLatitude(), c.getLongitude());
+                if (distance <= radius) {
+                    GeoRadiusResponse response = new GeoRadiusResponse(entry.getKey().getBytes(StandardCharsets.UTF_8));
+                    response.setCoordinate(c);
+                    response.setDistance(distance);
+                    res.add(response);
+                }
+            }
+            res.sort(Comparator.comparingDouble(GeoRadiusResponse::getDistance));
+            Integer count = param.getParam("count");
+            return count != null && res.size() > count ? new ArrayList<>(res.subList(0, count)) : res;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.springbootredisdemo.service;
+
+import com.example.springbootredisdemo.utils.RedisRouter;
+import com.example.springbootredisdemo.utils.RedisUtils;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import redis.clients.jedis.Jedis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class UniqueCounterTests {
+    private static final Logger log = LoggerFactory.getLogger(UniqueCounterTests.class);
+
+    @Autowired
+    private UniqueCounter uniqueCounter;
+    @Autowired
+    private RedisUtils redisUtils;
+    @Autowired
+    private RedisRouter redisRouter;
+
+    @Value("${spring.redis.unique.window-millis:3600000}")
+    private long windowMillis;
+
+    private final String name = "test-" + UUID.randomUUID();
+
+    @After
+    public void cleanup() {
+        long window = System.currentTimeMillis() / windowMillis * windowMillis;
+        redisUtils.del("uv:{" + name + "}:" + window, "uv:{" + name + "}:" + (window - windowMillis));
+    }
+
+    @Test
+    public void duplicatesAreCountedOnce() {
+        List<String> ids = ids(0, 100);
+        assertTrue(uniqueCounter.addAll(name, ids));
+        assertTrue(uniqueCounter.addAll(name, ids));
+        Long count = count();
+        assertNotNull(count);
+        assertEquals(100, count, 2);
+    }
+
+    @Test
+    public void largeCountWithinThreeStandardErrors() {
+        int total = 1000000;
+        int batch = 10000;
+        long start = System.nanoTime();
+        for (int i = 0; i < total; i += batch) {
+            assertTrue(uniqueCounter.addAll(name, ids(i, i + batch)));
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+        Long count = count();
+        assertNotNull(count);
+        double error = Math.abs(count - total) / (double) total;
+        log.info("HLL: " + total + " ids in " + millis + "ms (" + total * 1000L / Math.max(millis, 1)
+                + " ids/s), estimate " + count + ", error " + String.format("%.3f%%", error * 100));
+        // 标准误差0.81%,3倍以内
+        assertTrue("error " + error, error < 0.0243);
+    }
+
+    /**
+     * HyperLogLog与set(SADD/SCARD)的内存占用和准确度对比,默认跳过;-Dbenchmark=true开启,
+     * -Dbenchmark.unique.ids指定id数量(默认100万),id为36位的uuid
+     */
+    @Test
+    public void hyperLogLogVersusSet() {
+        assumeTrue(Boolean.getBoolean("benchmark"));
+        int total = Integer.getInteger("benchmark.unique.ids", 1000000);
+        int batch = 10000;
+        String setKey = "uv-set:{" + name + "}";
+        try {
+            for (int i = 0; i < total; i += batch) {
+                List<String> ids = uuids(i, Math.min(i + batch, total));
+                assertTrue(uniqueCounter.addAll(name, ids));
+                assertNotNull(redisUtils.sadd(setKey, ids.toArray(new String[0])));
+            }
+            Long estimate = count();
+            Long exact = redisUtils.scard(setKey);
+            assertNotNull(estimate);
+            assertEquals(total, exact.longValue());
+            long window = System.currentTimeMillis() / windowMillis * windowMillis;
+            long hllBytes = memoryUsage("uv:{" + name + "}:" + window);
+            long setBytes = memoryUsage(setKey);
+            double error = Math.abs(estimate - total) / (double) total;
+            log.info("HLL与set对比：ids=" + total + ",HLL " + hllBytes + "字节,估算" + estimate + ",误差"
+                    + String.format("%.3f%%", error * 100) + ";set " + setBytes + "字节,精确" + exact
+                    + ";set占用为HLL的" + setBytes / Math.max(hllBytes, 1) + "倍");
+            assertTrue("HLL " + hllBytes + "字节", hllBytes <= 16 * 1024);
+            assertTrue("error " + error, error < 0.0243);
+        } finally {
+            redisUtils.del(setKey);
+        }
+    }
+
+    private long memoryUsage(String key) {
+        try (Jedis jedis = redisRouter.getResource(key)) {
+            return (Long) jedis.eval("return redis.call('MEMORY', 'USAGE', KEYS[1], 'SAMPLES', '0')", 1, key);
+        }
+    }
+
+    private Long count() {
+        long now = System.currentTimeMillis();
+        return uniqueCounter.count(name, now - 1, now);
+    }
+
+    private static List<String> uuids(int from, int to) {
+        List<String> ids = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            ids.add(new UUID(0, i).toString());
+        }
+        return ids;
+    }
+
+    private static List<String> ids(int from, int to) {
+        List<String> ids = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            ids.add("user-" + i);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.springbootredisdemo.utils;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BulkheadTest {
+
+    @Test
+    public void acquireUpToMaxConcurrent() {
+        Bulkhead bulkhead = new Bulkhead("test", 2, 10, 10, Bulkhead.Policy.FAIL_FAST);
+        bulkhead.acquire();
+        bulkhead.acquire();
+        assertEquals(2, bulkhead.getStats().get("active"));
+        bulkhead.release();
+        bulkhead.acquire();
+        assertEquals(3L, bulkhead.getStats().get("acquired"));
+    }
+
+    @Test
+    public void failFastRejectsWhenFull() {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 1000, 10, Bulkhead.Policy.FAIL_FAST);
+        bulkhead.acquire();
+        long start = System.nanoTime();
+        try {
+            bulkhead.acquire();
+            fail();
+        } catch (RedisRejectedException e) {
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+        }
+        assertEquals(1L, bulkhead.getStats().get("rejected"));
+    }
+
+    @Test
+    public void waitRejectsAfterMaxWait() {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 50, 10, Bulkhead.Policy.WAIT);
+        bulkhead.acquire();
+        long start = System.nanoTime();
+        try {
+            bulkhead.acquire();
+            fail();
+        } catch (RedisRejectedException e) {
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        }
+        Map<String, Object> stats = bulkhead.getStats();
+        assertEquals(1L, stats.get("rejected"));
+        assertTrue((Long) stats.get("waitMaxMicros") >= 50000);
+    }
+
+    @Test
+    public void waitAcquiresReleasedPermit() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 5000, 10, Bulkhead.Policy.WAIT);
+        bulkhead.acquire();
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            bulkhead.acquire();
+            acquired.countDown();
+        });
+        waiter.start();
+        while (!Integer.valueOf(1).equals(bulkhead.getStats().get("waiting"))) {
+            Thread.sleep(1);
+        }
+        bulkhead.release();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        assertEquals(0L, bulkhead.getStats().get("rejected"));
+    }
+
+    @Test
+    public void queueLimitRejectsImmediately() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 5000, 1, Bulkhead.Policy.WAIT);
+        bulkhead.acquire();
+        Thread waiter = new Thread(() -> {
+            try {
+                bulkhead.acquire();
+            } catch (RedisRejectedException e) {
+                // 测试结束时释放名额前可能超时
+            }
+        });
+        waiter.start();
+        while (!Integer.valueOf(1).equals(bulkhead.getStats().get("waiting"))) {
+            Thread.sleep(1);
+        }
+        long start = System.nanoTime();
+        try {
+            bulkhead.acquire();
+            fail();
+        } catch (RedisRejectedException e) {
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1000));
+        }
+        bulkhead.release();
+        waiter.join();
+    }
+}
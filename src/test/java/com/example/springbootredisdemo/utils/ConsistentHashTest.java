@@ -0,0 +1,69 @@
+package com.example.springbootredisdemo.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConsistentHashTest {
+    private static final int KEYS = 100000;
+
+    @Test
+    public void emptyRingReturnsNull() {
+        assertNull(new ConsistentHash<String>(160).get("a"));
+    }
+
+    @Test
+    public void keysAreSpreadEvenly() {
+        ConsistentHash<String> ring = new ConsistentHash<>(160, Arrays.asList("n1", "n2", "n3", "n4"));
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.get("key:" + i), 1, Integer::sum);
+        }
+        for (int count : counts.values()) {
+            assertTrue("分布偏差过大：" + counts, Math.abs(count - KEYS / 4) < KEYS / 4 * 0.2);
+        }
+    }
+
+    @Test
+    public void addingNodeOnlyMovesKeysToNewNode() {
+        ConsistentHash<String> ring = new ConsistentHash<>(160, Arrays.asList("n1", "n2", "n3"));
+        ConsistentHash<String> target = ring.copy();
+        target.add("n4");
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String before = ring.get("key:" + i);
+            String after = target.get("key:" + i);
+            if (!before.equals(after)) {
+                assertEquals("n4", after);
+                moved++;
+            }
+        }
+        assertTrue("迁移比例应接近1/4：" + moved, Math.abs(moved - KEYS / 4) < KEYS / 4 * 0.2);
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        ConsistentHash<String> ring = new ConsistentHash<>(160, Arrays.asList("n1", "n2"));
+        ConsistentHash<String> copy = ring.copy();
+        copy.add("n3");
+        assertEquals(2, ring.getNodes().size());
+        assertEquals(3, copy.getNodes().size());
+    }
+
+    @Test
+    public void hashTagKeysShareNode() {
+        ConsistentHash<String> ring = new ConsistentHash<>(160, Arrays.asList("n1", "n2", "n3", "n4"));
+        String node = ring.get("{user:42}:profile");
+        for (int i = 0; i < 100; i++) {
+            assertEquals(node, ring.get("{user:42}:field" + i));
+        }
+        assertEquals("user:42", ConsistentHash.hashTag("{user:42}:x"));
+        assertEquals("{}x", ConsistentHash.hashTag("{}x"));
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.springbootredisdemo.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeoHashTest {
+
+    @Test
+    public void encodesKnownPoint() {
+        assertEquals("u4pruydqqvj", GeoHash.encode(57.64911, 10.40744, 11));
+        assertEquals("u4pruy", GeoHash.encode(57.64911, 10.40744, 6));
+    }
+
+    @Test
+    public void boundsContainEncodedPoint() {
+        double[][] points = {{57.64911, 10.40744}, {-33.8688, 151.2093}, {39.9042, 116.4074}, {0, 0}, {-89.9, -179.9}};
+        for (double[] point : points) {
+            for (int precision = 1; precision <= 9; precision++) {
+                double[] bounds = GeoHash.bounds(GeoHash.encode(point[0], point[1], precision));
+                assertTrue(bounds[0] <= point[0] && point[0] <= bounds[1]);
+                assertTrue(bounds[2] <= point[1] && point[1] <= bounds[3]);
+            }
+        }
+    }
+
+    @Test
+    public void sixCharacterCellSize() {
+        double[] bounds = GeoHash.bounds(GeoHash.encode(39.9042, 116.4074, 6));
+        double height = GeoHash.distance(bounds[0], bounds[2], bounds[1], bounds[2]);
+        double width = GeoHash.distance(bounds[0], bounds[2], bounds[0], bounds[3]);
+        assertEquals(610, height, 10);
+        assertTrue(width > 900 && width < 1225);
+    }
+
+    @Test
+    public void distanceBetweenCities() {
+        // 巴黎到伦敦约344km
+        double distance = GeoHash.distance(48.8566, 2.3522, 51.5074, -0.1278);
+        assertEquals(343500, distance, 2000);
+        assertEquals(distance, GeoHash.distance(51.5074, -0.1278, 48.8566, 2.3522), 1e-6);
+        assertEquals(0, GeoHash.distance(48.8566, 2.3522, 48.8566, 2.3522), 1e-9);
+    }
+}
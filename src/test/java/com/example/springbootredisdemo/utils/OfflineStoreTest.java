@@ -0,0 +1,92 @@
+package com.example.springbootredisdemo.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class OfflineStoreTest {
+
+    @Test
+    public void journalRecordRoundTrip() {
+        ByteBuffer buffer = journal(new OfflineStore.JournalRecord(OfflineStore.OP_SET, 3, "user:1", 1234L, "张三"),
+                new OfflineStore.JournalRecord(OfflineStore.OP_DEL, 0, "user:2", -1, ""));
+        OfflineStore.JournalRecord first = OfflineStore.decode(buffer);
+        assertEquals(OfflineStore.OP_SET, first.op);
+        assertEquals(3, first.indexdb);
+        assertEquals("user:1", first.key);
+        assertEquals(1234L, first.expireAt);
+        assertEquals("张三", first.value);
+        OfflineStore.JournalRecord second = OfflineStore.decode(buffer);
+        assertEquals(OfflineStore.OP_DEL, second.op);
+        assertEquals("user:2", second.key);
+        assertNull(OfflineStore.decode(buffer));
+    }
+
+    @Test
+    public void tornTailIsIgnored() {
+        ByteBuffer complete = journal(new OfflineStore.JournalRecord(OfflineStore.OP_SET, 0, "a", -1, "1"));
+        ByteBuffer torn = journal(new OfflineStore.JournalRecord(OfflineStore.OP_SET, 0, "b", -1, "2"));
+        for (int cut = 1; cut < torn.remaining(); cut++) {
+            ByteBuffer buffer = ByteBuffer.allocate(complete.remaining() + cut);
+            buffer.put(complete.duplicate());
+            ByteBuffer part = torn.duplicate();
+            part.limit(cut);
+            buffer.put(part);
+            buffer.flip();
+            assertEquals(complete.remaining(), OfflineStore.validLength(buffer));
+            assertEquals("a", OfflineStore.decode(buffer).key);
+            int position = buffer.position();
+            assertNull(OfflineStore.decode(buffer));
+            assertEquals(position, buffer.position());
+        }
+    }
+
+    @Test
+    public void corruptRecordFailsChecksum() {
+        ByteBuffer buffer = journal(new OfflineStore.JournalRecord(OfflineStore.OP_SET, 0, "key", -1, "value"));
+        buffer.put(buffer.limit() - 1, (byte) 'x');
+        assertEquals(0, OfflineStore.validLength(buffer));
+        assertNull(OfflineStore.decode(buffer));
+    }
+
+    @Test
+    public void slotRoundTrip() {
+        ByteBuffer slot = ByteBuffer.allocate(64);
+        OfflineStore.writeSlot(slot.duplicate(), 2, bytes("key"), 99L, bytes("value"));
+        OfflineStore.Slot entry = OfflineStore.readSlot(slot.duplicate());
+        assertEquals(2, entry.indexdb);
+        assertArrayEquals(bytes("key"), entry.key);
+        assertArrayEquals(bytes("value"), entry.value);
+        assertEquals(99L, entry.expireAt);
+        assertEquals(false, entry.expired(98L));
+        assertEquals(true, entry.expired(99L));
+    }
+
+    @Test
+    public void unusedOrInvalidSlotIsIgnored() {
+        assertNull(OfflineStore.readSlot(ByteBuffer.allocate(64)));
+        ByteBuffer slot = ByteBuffer.allocate(64);
+        OfflineStore.writeSlot(slot.duplicate(), 0, bytes("key"), -1, bytes("value"));
+        // value长度超出槽位
+        slot.putInt(1 + 4 + 4 + 8, 1000);
+        assertNull(OfflineStore.readSlot(slot.duplicate()));
+    }
+
+    private static ByteBuffer journal(OfflineStore.JournalRecord... records) {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        for (OfflineStore.JournalRecord record : records) {
+            buffer.put(OfflineStore.encode(record));
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.springbootredisdemo.utils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.StringUtils;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 连接池预热的负载测试,默认跳过;-Dbenchmark=true开启,-Dbenchmark.pool.threads指定并发数(默认64)
+ * 分别用冷连接池和预热warm-up-size个连接的连接池承接同一波并发请求,对比借连接耗时的p99
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class PoolWarmUpBenchmarkTests {
+    private static final Logger log = LoggerFactory.getLogger(PoolWarmUpBenchmarkTests.class);
+    private static final int THREADS = Integer.getInteger("benchmark.pool.threads", 64);
+
+    @Autowired
+    private JedisPoolConfig jedisPoolConfig;
+
+    @Value("${spring.redis.host}")
+    private String host;
+    @Value("${spring.redis.port}")
+    private int port;
+    @Value("${spring.redis.timeout}")
+    private int timeout;
+    @Value("${spring.redis.password}")
+    private String password;
+    @Value("${spring.redis.jedis.pool.warm-up-size:32}")
+    private int warmUpSize;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void warmPoolLowersFirstWaveBorrowLatency() throws InterruptedException {
+        assumeTrue(Boolean.getBoolean("benchmark"));
+        Map<String, Object> cold = firstWave(false);
+        Map<String, Object> warm = firstWave(true);
+        log.info("冷连接池：" + cold);
+        log.info("预热连接池：" + warm);
+        assertTrue((Long) warm.get("borrowP99Micros") <= (Long) cold.get("borrowP99Micros"));
+    }
+
+    private Map<String, Object> firstWave(boolean warmUp) throws InterruptedException {
+        ResizableJedisPool pool = new ResizableJedisPool(jedisPoolConfig, host, port, timeout,
+                StringUtils.isEmpty(password) ? null : password);
+        try {
+            if (warmUp) {
+                pool.addObjects(Math.min(warmUpSize, THREADS));
+            }
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                        try (Jedis jedis = pool.getResource()) {
+                            jedis.ping();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            return pool.getStats();
+        } finally {
+            pool.close();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.springbootredisdemo.utils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 事件总线扇出延迟基准,默认跳过;-Dbenchmark=true开启,-Dbenchmark.eventbus.rate指定每秒发布数(默认1万),
+ * -Dbenchmark.eventbus.seconds指定持续时间(默认10秒),-Dbenchmark.eventbus.listeners指定监听器数量(默认4)
+ * 事件内容为发布时的System.nanoTime(),监听器开始执行时计算延迟,要求不丢消息且p99不超过-Dbenchmark.eventbus.max-micros(默认10000微秒)
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class RedisEventBusBenchmarkTests {
+    private static final Logger log = LoggerFactory.getLogger(RedisEventBusBenchmarkTests.class);
+    private static final int RATE = Integer.getInteger("benchmark.eventbus.rate", 10000);
+    private static final int SECONDS = Integer.getInteger("benchmark.eventbus.seconds", 10);
+    private static final int LISTENERS = Integer.getInteger("benchmark.eventbus.listeners", 4);
+    private static final long MAX_MICROS = Long.getLong("benchmark.eventbus.max-micros", 10000L);
+
+    @Autowired
+    private RedisEventBus eventBus;
+
+    @Test
+    public void fanOutLatencyAtTenThousandEventsPerSecond() throws InterruptedException {
+        assumeTrue(Boolean.getBoolean("benchmark"));
+        int events = RATE * SECONDS;
+        RedisEventBus.Channel<Long> channel = RedisEventBus.Channel.of("bench:" + UUID.randomUUID(),
+                String::valueOf, Long::valueOf);
+        long[] micros = new long[events * LISTENERS];
+        AtomicInteger received = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(events * LISTENERS);
+        List<RedisEventBus.Subscription> subscriptions = new ArrayList<>();
+        try {
+            for (int i = 0; i < LISTENERS; i++) {
+                subscriptions.add(eventBus.subscribe(channel, sentAt -> {
+                    micros[received.getAndIncrement()] = (System.nanoTime() - sentAt) / 1000;
+                    done.countDown();
+                }, RedisEventBus.Overflow.BLOCK));
+            }
+            // 等待订阅生效,pub/sub不保留订阅前的消息
+            Thread.sleep(1000);
+            long start = System.nanoTime();
+            long interval = TimeUnit.SECONDS.toNanos(1) / RATE;
+            for (int i = 0; i < events; i++) {
+                long due = start + i * interval;
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                assertTrue(eventBus.publish(channel, System.nanoTime()));
+            }
+            boolean completed = done.await(30, TimeUnit.SECONDS);
+            int count = received.get();
+            long[] sorted = Arrays.copyOf(micros, count);
+            Arrays.sort(sorted);
+            long p50 = count == 0 ? 0 : sorted[count / 2];
+            long p99 = count == 0 ? 0 : sorted[count * 99 / 100];
+            log.info("事件总线扇出基准：rate=" + RATE + ",events=" + events + ",listeners=" + LISTENERS
+                    + ",delivered=" + count + ",p50Micros=" + p50 + ",p99Micros=" + p99
+                    + ",maxMicros=" + (count == 0 ? 0 : sorted[count - 1]) + ",stats=" + eventBus.getStats());
+            assertTrue(completed);
+            assertEquals(events * LISTENERS, count);
+            assertTrue("p99 " + p99 + "微秒", p99 <= MAX_MICROS);
+        } finally {
+            for (RedisEventBus.Subscription subscription : subscriptions) {
+                subscription.cancel();
+            }
+        }
+    }
+}
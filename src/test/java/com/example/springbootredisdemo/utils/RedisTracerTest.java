@@ -0,0 +1,100 @@
+package com.example.springbootredisdemo.utils;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class RedisTracerTest {
+    private static final Logger log = LoggerFactory.getLogger(RedisTracerTest.class);
+
+    @Test
+    public void numbersAndIdsAreMasked() {
+        assertEquals("user:{n}:profile", RedisTracer.keyPattern(new Object[]{"user:12345:profile", 0}));
+        assertEquals("session:{id}", RedisTracer.keyPattern(new Object[]{"session:0123456789abcdef0123"}));
+        assertEquals("order:{id}", RedisTracer.keyPattern(new Object[]{"order:123e4567-e89b-12d3-a456-426614174000"}));
+        // 不足16位的十六进制串按数字替换
+        assertEquals("tag:abc{n}", RedisTracer.keyPattern(new Object[]{"tag:abc123"}));
+    }
+
+    @Test
+    public void firstKeyArgumentIsUsed() {
+        assertEquals("a:{n}", RedisTracer.keyPattern(new Object[]{0, new String[]{"a:1", "b:2"}}));
+        assertEquals("bin:{n}", RedisTracer.keyPattern(new Object[]{"bin:7".getBytes(StandardCharsets.UTF_8)}));
+        assertNull(RedisTracer.keyPattern(new Object[]{0, new String[0]}));
+        assertNull(RedisTracer.keyPattern(new Object[0]));
+    }
+
+    @Test
+    public void longKeysAreTruncated() {
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < 150; i++) {
+            key.append('k');
+        }
+        String pattern = RedisTracer.keyPattern(new Object[]{key.toString()});
+        assertEquals(103, pattern.length());
+        assertTrue(pattern.endsWith("..."));
+    }
+
+    /**
+     * 采样开销基准,默认跳过;-Dbenchmark=true开启
+     * 分别在关闭追踪、不采样、1%采样和全部采样时执行空调用,对比每次调用的额外耗时
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void samplingOverhead() throws Throwable {
+        assumeTrue(Boolean.getBoolean("benchmark"));
+        int requests = Integer.getInteger("benchmark.trace.requests", 200000);
+        int calls = 10;
+        RedisTracer.Action action = () -> "value";
+        String[] names = {"key", "indexdb"};
+        Object[] args = {"user:1:profile", 0};
+        for (int round = 0; round < 2; round++) {
+            for (Object[] setting : new Object[][]{{false, 0.0}, {true, 0.0}, {true, 0.01}, {true, 1.0}}) {
+                RedisTracer tracer = tracer((Boolean) setting[0], (Double) setting[1]);
+                long start = System.nanoTime();
+                for (int i = 0; i < requests; i++) {
+                    tracer.start("/bench", false);
+                    for (int j = 0; j < calls; j++) {
+                        tracer.invoke("get", names, args, action);
+                    }
+                    tracer.finish();
+                }
+                long nanosPerCall = (System.nanoTime() - start) / ((long) requests * calls);
+                if (round == 1) {
+                    log.info("追踪开销：enabled=" + setting[0] + ",sample-rate=" + setting[1] + ",每次调用" + nanosPerCall + "ns");
+                }
+                if (Boolean.TRUE.equals(setting[0]) && (Double) setting[1] == 1.0) {
+                    List<Map<String, Object>> recent = tracer.getRecent();
+                    assertEquals(calls, recent.get(0).get("calls"));
+                }
+            }
+        }
+    }
+
+    private static RedisTracer tracer(boolean enabled, double sampleRate) throws Exception {
+        RedisTracer tracer = new RedisTracer();
+        set(tracer, "enabled", enabled);
+        set(tracer, "sampleRate", sampleRate);
+        set(tracer, "maxSpans", 200);
+        set(tracer, "recentSize", 100);
+        set(tracer, "slowMillis", 20L);
+        set(tracer, "slowLogSize", 200);
+        return tracer;
+    }
+
+    private static void set(Object target, String name, Object value) throws Exception {
+        Field field = RedisTracer.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+}
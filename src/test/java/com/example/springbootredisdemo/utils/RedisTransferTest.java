@@ -0,0 +1,121 @@
+package com.example.springbootredisdemo.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RedisTransferTest {
+    /**
+     * 区域远小于记录,读写都要多次重新映射
+     */
+    private static final int REGION = 64;
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("transfer", ".rdx");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void roundTripAcrossRegions() throws IOException {
+        List<byte[]> values = write(200);
+
+        try (RedisTransfer.MappedReader reader = new RedisTransfer.MappedReader(file, REGION)) {
+            reader.header();
+            for (int i = 0; i < values.size(); i++) {
+                RedisTransfer.Record record = reader.next();
+                assertEquals("key:" + i, new String(record.key, StandardCharsets.UTF_8));
+                assertEquals(i % 3 == 0 ? -1L : 1000L + i, record.expireAt);
+                assertArrayEquals(values.get(i), record.value);
+            }
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void seekResumesAtRecordOffset() throws IOException {
+        write(50);
+        List<Long> offsets = new ArrayList<>();
+        try (RedisTransfer.MappedReader reader = new RedisTransfer.MappedReader(file, REGION)) {
+            reader.header();
+            RedisTransfer.Record record;
+            while ((record = reader.next()) != null) {
+                offsets.add(record.offset);
+            }
+        }
+        assertEquals(50, offsets.size());
+
+        try (RedisTransfer.MappedReader reader = new RedisTransfer.MappedReader(file, REGION)) {
+            reader.header();
+            reader.seek(offsets.get(37));
+            assertEquals("key:37", new String(reader.next().key, StandardCharsets.UTF_8));
+            int rest = 1;
+            while (reader.next() != null) {
+                rest++;
+            }
+            assertEquals(13, rest);
+        }
+    }
+
+    @Test
+    public void truncatedTailIsIgnored() throws IOException {
+        write(10);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        try (RedisTransfer.MappedReader reader = new RedisTransfer.MappedReader(file, REGION)) {
+            reader.header();
+            int count = 0;
+            while (reader.next() != null) {
+                count++;
+            }
+            assertEquals(9, count);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsFileWithoutHeader() throws IOException {
+        Files.write(file, "not an export file".getBytes(StandardCharsets.UTF_8));
+        try (RedisTransfer.MappedReader reader = new RedisTransfer.MappedReader(file, REGION)) {
+            reader.header();
+        }
+    }
+
+    /**
+     * 写入count条记录,值的长度从0递增,部分值大于一个区域
+     */
+    private List<byte[]> write(int count) throws IOException {
+        List<byte[]> values = new ArrayList<>();
+        try (RedisTransfer.MappedWriter writer = new RedisTransfer.MappedWriter(file, 0, REGION)) {
+            writer.header();
+            for (int i = 0; i < count; i++) {
+                byte[] value = new byte[i];
+                Arrays.fill(value, (byte) i);
+                values.add(value);
+                writer.write(("key:" + i).getBytes(StandardCharsets.UTF_8), i % 3 == 0 ? -1L : 1000L + i, value);
+            }
+            writer.finish();
+        }
+        return values;
+    }
+}
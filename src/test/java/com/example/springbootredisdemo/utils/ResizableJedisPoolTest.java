@@ -0,0 +1,35 @@
+package com.example.springbootredisdemo.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ResizableJedisPoolTest {
+
+    @Test
+    public void bucketsArePowersOfTwo() {
+        assertEquals(0, ResizableJedisPool.bucket(0));
+        assertEquals(0, ResizableJedisPool.bucket(1));
+        assertEquals(1, ResizableJedisPool.bucket(2));
+        assertEquals(1, ResizableJedisPool.bucket(3));
+        assertEquals(10, ResizableJedisPool.bucket(1024));
+        assertEquals(31, ResizableJedisPool.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentileIsUpperBoundOfBucket() {
+        long[] counts = new long[32];
+        // 90次100us(桶6,上界128us),10次5000us(桶12,上界8192us)
+        counts[ResizableJedisPool.bucket(100)] = 90;
+        counts[ResizableJedisPool.bucket(5000)] = 10;
+        assertEquals(128, ResizableJedisPool.percentile(counts, 0.5));
+        assertEquals(128, ResizableJedisPool.percentile(counts, 0.9));
+        assertEquals(8192, ResizableJedisPool.percentile(counts, 0.91));
+        assertEquals(8192, ResizableJedisPool.percentile(counts, 0.99));
+    }
+
+    @Test
+    public void percentileOfEmptyHistogram() {
+        assertEquals(0, ResizableJedisPool.percentile(new long[32], 0.99));
+    }
+}